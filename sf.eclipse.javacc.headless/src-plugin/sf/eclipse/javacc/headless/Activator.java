@@ -14,14 +14,29 @@ public class Activator extends AbstractActivator {
 
   // MMa 12/2014 : simplified by extending AbstractActivator
 
+  /** The console set by the build application, or null if none */
+  private volatile IConsole jConsole = null;
+
   /**
-   * Creates a new output console. Specific to headless builds.
+   * Creates a new output console, or returns the one set by the build application. Specific to headless
+   * builds.
    * 
    * @return the console
    */
   @Override
   public IConsole getConsole() {
-    return new NullConsole();
+    final IConsole console = jConsole;
+    return console != null ? console : new NullConsole();
+  }
+
+  /**
+   * Sets the console to return instead of a new {@link NullConsole}.
+   * 
+   * @param aConsole - the console, or null to reset it
+   * @since 1.5.34
+   */
+  void setConsole(final IConsole aConsole) {
+    jConsole = aConsole;
   }
 
 }
@@ -0,0 +1,164 @@
+package sf.eclipse.javacc.headless;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.equinox.app.IApplication;
+import org.eclipse.equinox.app.IApplicationContext;
+
+import sf.eclipse.javacc.base.AbstractActivator;
+import sf.eclipse.javacc.base.Compiler;
+
+/**
+ * Headless build application : compiles all the grammars of the workspace (or of the given projects) on a
+ * pool of worker threads, writes a JSON and / or JUnit XML report of the compilations, and exits with a non
+ * zero code if a grammar failed.<br>
+ * Referenced by plugin.xml<br>
+ * <extension point="org.eclipse.core.runtime.applications"><br>
+ * Usage : <code>eclipse -nosplash -application sf.eclipse.javacc.headless.build -data &lt;workspace&gt;
+ * [-projects p1,p2,...] [-workers n] [-force] [-json file] [-junit file]</code>
+ * 
+ * @since 1.5.34
+ */
+public class BuildApplication implements IApplication {
+
+  /** The exit code when a grammar failed or the arguments are invalid */
+  public static final Integer EXIT_FAILURE = Integer.valueOf(1);
+
+  /** {@inheritDoc} */
+  @Override
+  public Object start(final IApplicationContext aContext) throws Exception {
+    final String[] args = (String[]) aContext.getArguments().get(IApplicationContext.APPLICATION_ARGS);
+    final List<String> projectNames = new ArrayList<String>();
+    int workers = Runtime.getRuntime().availableProcessors();
+    boolean force = false;
+    File json = null;
+    File junit = null;
+    try {
+      for (int i = 0; args != null && i < args.length; i++) {
+        final String arg = args[i];
+        if ("-projects".equals(arg)) { //$NON-NLS-1$
+          for (final String name : args[++i].split(",")) { //$NON-NLS-1$
+            if (name.trim().length() > 0) {
+              projectNames.add(name.trim());
+            }
+          }
+        }
+        else if ("-workers".equals(arg)) { //$NON-NLS-1$
+          workers = Math.max(1, Integer.parseInt(args[++i].trim()));
+        }
+        else if ("-force".equals(arg)) { //$NON-NLS-1$
+          force = true;
+        }
+        else if ("-json".equals(arg)) { //$NON-NLS-1$
+          json = new File(args[++i]);
+        }
+        else if ("-junit".equals(arg)) { //$NON-NLS-1$
+          junit = new File(args[++i]);
+        }
+        else {
+          System.err.println("Unknown argument : " + arg); //$NON-NLS-1$
+          usage();
+          return EXIT_FAILURE;
+        }
+      }
+    } catch (final ArrayIndexOutOfBoundsException e) {
+      usage();
+      return EXIT_FAILURE;
+    } catch (final NumberFormatException e) {
+      usage();
+      return EXIT_FAILURE;
+    }
+
+    // the projects
+    final IWorkspace ws = ResourcesPlugin.getWorkspace();
+    final List<IProject> projects = new ArrayList<IProject>();
+    boolean missing = false;
+    if (projectNames.isEmpty()) {
+      for (final IProject project : ws.getRoot().getProjects()) {
+        if (project.isOpen()) {
+          projects.add(project);
+        }
+      }
+    }
+    else {
+      for (final String name : projectNames) {
+        final IProject project = ws.getRoot().getProject(name);
+        if (project.isOpen()) {
+          projects.add(project);
+        }
+        else {
+          System.err.println("Project not found or closed : " + name); //$NON-NLS-1$
+          missing = true;
+        }
+      }
+    }
+
+    // compile in one workspace operation, with the console recording the outputs
+    final BuildReport report = new BuildReport();
+    final ReportConsole console = new ReportConsole(System.out);
+    final Activator activator = (Activator) AbstractActivator.getDefault();
+    final boolean forceAll = force;
+    final int nbWorkers = workers;
+    final long start = System.currentTimeMillis();
+    activator.setConsole(console);
+    try {
+      ws.run(new IWorkspaceRunnable() {
+
+        /** {@inheritDoc} */
+        @Override
+        public void run(final IProgressMonitor aMonitor) throws CoreException {
+          for (final IProject project : projects) {
+            project.refreshLocal(IResource.DEPTH_INFINITE, aMonitor);
+            report.add(new Compiler(project).compileProject(forceAll, nbWorkers, aMonitor), console);
+          }
+        }
+      }, ws.getRoot(), IWorkspace.AVOID_UPDATE, null);
+    } finally {
+      activator.setConsole(null);
+    }
+    report.setMillis(System.currentTimeMillis() - start);
+
+    // write the reports
+    boolean written = true;
+    try {
+      if (json != null) {
+        report.writeJson(json);
+      }
+      if (junit != null) {
+        report.writeJUnit(junit);
+      }
+    } catch (final IOException e) {
+      System.err.println("Unable to write the build report : " + e.getMessage()); //$NON-NLS-1$
+      written = false;
+    }
+    final int failures = report.getFailures();
+    System.out.println(report.getEntries().size() + " grammar(s) compiled, " + failures + " failed, in " //$NON-NLS-1$ //$NON-NLS-2$
+                       + (System.currentTimeMillis() - start) + " ms with " + workers + " worker(s)"); //$NON-NLS-1$ //$NON-NLS-2$
+    return failures == 0 && !missing && written ? EXIT_OK : EXIT_FAILURE;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void stop() {
+    /* the build cannot be interrupted, nothing done */
+  }
+
+  /**
+   * Prints the usage.
+   */
+  private static void usage() {
+    System.err.println("Usage : -application sf.eclipse.javacc.headless.build [-projects p1,p2,...] [-workers n]" //$NON-NLS-1$
+                       + " [-force] [-json file] [-junit file]"); //$NON-NLS-1$
+  }
+
+}
@@ -0,0 +1,324 @@
+package sf.eclipse.javacc.headless;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+
+import sf.eclipse.javacc.base.CompileResult;
+import sf.eclipse.javacc.tool.Problem;
+
+/**
+ * The report of a headless build : for each compiled grammar, the time spent, the problems reported and the
+ * generated files. It can be written in JSON or in the JUnit XML format (one test case per grammar, failed if
+ * the compilation could not be run or if an error was reported).
+ * 
+ * @since 1.5.34
+ */
+class BuildReport {
+
+  /** The report of a grammar */
+  static class Entry {
+
+    /** The project name */
+    final String           jProject;
+
+    /** The grammar path (relative to the project) */
+    final String           jPath;
+
+    /** The time spent (in milliseconds) */
+    final long             jMillis;
+
+    /** True if the compilation could not be run, false otherwise */
+    final boolean          jFailed;
+
+    /** The problems reported on the grammar and on the generated .jj files compiled in turn */
+    final List<Problem>    jProblems;
+
+    /** The paths (relative to the project) of the generated files */
+    final List<String>     jGenerated;
+
+    /** The tool output */
+    final String           jOutput;
+
+    /**
+     * Standard constructor.
+     * 
+     * @param aResult - the compilation result
+     * @param aConsole - the console which recorded the compilation output
+     */
+    Entry(final CompileResult aResult, final ReportConsole aConsole) {
+      final IFile file = aResult.getFile();
+      jProject = file.getProject().getName();
+      jPath = file.getProjectRelativePath().toString();
+      jMillis = aResult.getMillis();
+      jFailed = aResult.isFailed();
+      jGenerated = aResult.getGenerated();
+      jProblems = new ArrayList<Problem>(aConsole.getProblems(file));
+      final StringBuilder sb = new StringBuilder(aConsole.getOutput(file));
+      for (final IFile chained : aResult.getChained()) {
+        jProblems.addAll(aConsole.getProblems(chained));
+        sb.append(aConsole.getOutput(chained));
+      }
+      jOutput = sb.toString();
+    }
+
+    /**
+     * @return the number of errors reported
+     */
+    int getErrors() {
+      int nb = 0;
+      for (final Problem pb : jProblems) {
+        if (pb.getSeverity() == IMarker.SEVERITY_ERROR) {
+          nb++;
+        }
+      }
+      return nb;
+    }
+
+    /**
+     * @return true if the compilation could not be run or if an error was reported, false otherwise
+     */
+    boolean isFailed() {
+      return jFailed || getErrors() > 0;
+    }
+  }
+
+  /** The grammars reports */
+  private final List<Entry> jEntries = new ArrayList<Entry>();
+
+  /** The total build time (in milliseconds) */
+  private long              jMillis;
+
+  /**
+   * Adds the reports of compilation results.
+   * 
+   * @param aResults - the results
+   * @param aConsole - the console which recorded the compilations outputs
+   */
+  void add(final List<CompileResult> aResults, final ReportConsole aConsole) {
+    for (final CompileResult result : aResults) {
+      jEntries.add(new Entry(result, aConsole));
+    }
+  }
+
+  /**
+   * @param aMillis - the total build time (in milliseconds)
+   */
+  void setMillis(final long aMillis) {
+    jMillis = aMillis;
+  }
+
+  /**
+   * @return the grammars reports
+   */
+  List<Entry> getEntries() {
+    return jEntries;
+  }
+
+  /**
+   * @return the number of grammars which failed
+   */
+  int getFailures() {
+    int nb = 0;
+    for (final Entry entry : jEntries) {
+      if (entry.isFailed()) {
+        nb++;
+      }
+    }
+    return nb;
+  }
+
+  /**
+   * Writes the report in JSON.
+   * 
+   * @param aFile - the file to write
+   * @throws IOException - if the file cannot be written
+   */
+  void writeJson(final File aFile) throws IOException {
+    final StringBuilder sb = new StringBuilder(1024 * (1 + jEntries.size()));
+    sb.append("{\n  \"millis\": ").append(jMillis); //$NON-NLS-1$
+    sb.append(",\n  \"grammars\": ").append(jEntries.size()); //$NON-NLS-1$
+    sb.append(",\n  \"failures\": ").append(getFailures()); //$NON-NLS-1$
+    sb.append(",\n  \"results\": ["); //$NON-NLS-1$
+    for (int i = 0; i < jEntries.size(); i++) {
+      final Entry entry = jEntries.get(i);
+      sb.append(i == 0 ? "\n" : ",\n"); //$NON-NLS-1$ //$NON-NLS-2$
+      sb.append("    {\n      \"project\": ").append(jsonStr(entry.jProject)); //$NON-NLS-1$
+      sb.append(",\n      \"grammar\": ").append(jsonStr(entry.jPath)); //$NON-NLS-1$
+      sb.append(",\n      \"millis\": ").append(entry.jMillis); //$NON-NLS-1$
+      sb.append(",\n      \"failed\": ").append(entry.isFailed()); //$NON-NLS-1$
+      sb.append(",\n      \"diagnostics\": ["); //$NON-NLS-1$
+      for (int j = 0; j < entry.jProblems.size(); j++) {
+        final Problem pb = entry.jProblems.get(j);
+        sb.append(j == 0 ? "\n" : ",\n"); //$NON-NLS-1$ //$NON-NLS-2$
+        sb.append("        { \"severity\": ").append(jsonStr(severity(pb))); //$NON-NLS-1$
+        sb.append(", \"line\": ").append(pb.getLine()); //$NON-NLS-1$
+        sb.append(", \"column\": ").append(pb.getColumn()); //$NON-NLS-1$
+        sb.append(", \"message\": ").append(jsonStr(pb.getMessage())).append(" }"); //$NON-NLS-1$ //$NON-NLS-2$
+      }
+      sb.append(entry.jProblems.isEmpty() ? "]" : "\n      ]"); //$NON-NLS-1$ //$NON-NLS-2$
+      sb.append(",\n      \"generated\": ["); //$NON-NLS-1$
+      for (int j = 0; j < entry.jGenerated.size(); j++) {
+        sb.append(j == 0 ? "" : ", ").append(jsonStr(entry.jGenerated.get(j))); //$NON-NLS-1$ //$NON-NLS-2$
+      }
+      sb.append("]\n    }"); //$NON-NLS-1$
+    }
+    sb.append(jEntries.isEmpty() ? "]\n}\n" : "\n  ]\n}\n"); //$NON-NLS-1$ //$NON-NLS-2$
+    write(aFile, sb);
+  }
+
+  /**
+   * Writes the report in the JUnit XML format.
+   * 
+   * @param aFile - the file to write
+   * @throws IOException - if the file cannot be written
+   */
+  void writeJUnit(final File aFile) throws IOException {
+    final StringBuilder sb = new StringBuilder(1024 * (1 + jEntries.size()));
+    sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"); //$NON-NLS-1$
+    sb.append("<testsuite name=\"javacc\" tests=\"").append(jEntries.size()); //$NON-NLS-1$
+    sb.append("\" failures=\"").append(getFailures()); //$NON-NLS-1$
+    sb.append("\" errors=\"0\" time=\"").append(secs(jMillis)).append("\">\n"); //$NON-NLS-1$ //$NON-NLS-2$
+    for (final Entry entry : jEntries) {
+      sb.append("  <testcase classname=\"").append(xmlStr(entry.jProject)); //$NON-NLS-1$
+      sb.append("\" name=\"").append(xmlStr(entry.jPath)); //$NON-NLS-1$
+      sb.append("\" time=\"").append(secs(entry.jMillis)).append("\">\n"); //$NON-NLS-1$ //$NON-NLS-2$
+      if (entry.isFailed()) {
+        final int errors = entry.getErrors();
+        sb.append("    <failure message=\""); //$NON-NLS-1$
+        sb.append(errors > 0 ? errors + " error(s)" : "compilation not run").append("\">"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        for (final Problem pb : entry.jProblems) {
+          if (pb.getSeverity() == IMarker.SEVERITY_ERROR) {
+            sb.append(xmlStr(entry.jPath + ":" + pb.getLine() + ":" + pb.getColumn() + ": " + pb.getMessage())) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+              .append('\n');
+          }
+        }
+        sb.append("</failure>\n"); //$NON-NLS-1$
+      }
+      sb.append("    <system-out>").append(xmlStr(entry.jOutput)).append("</system-out>\n"); //$NON-NLS-1$ //$NON-NLS-2$
+      sb.append("  </testcase>\n"); //$NON-NLS-1$
+    }
+    sb.append("</testsuite>\n"); //$NON-NLS-1$
+    write(aFile, sb);
+  }
+
+  /**
+   * Writes a text in UTF-8.
+   * 
+   * @param aFile - the file to write
+   * @param aText - the text
+   * @throws IOException - if the file cannot be written
+   */
+  private static void write(final File aFile, final CharSequence aText) throws IOException {
+    final File dir = aFile.getAbsoluteFile().getParentFile();
+    if (dir != null) {
+      dir.mkdirs();
+    }
+    final Writer wr = new OutputStreamWriter(Files.newOutputStream(aFile.toPath()), "UTF-8"); //$NON-NLS-1$
+    try {
+      wr.append(aText);
+    } finally {
+      wr.close();
+    }
+  }
+
+  /**
+   * @param aProblem - a problem
+   * @return the problem severity name
+   */
+  private static String severity(final Problem aProblem) {
+    switch (aProblem.getSeverity()) {
+      case IMarker.SEVERITY_INFO:
+        return "info"; //$NON-NLS-1$
+      case IMarker.SEVERITY_WARNING:
+        return "warning"; //$NON-NLS-1$
+      default:
+        return "error"; //$NON-NLS-1$
+    }
+  }
+
+  /**
+   * @param aMillis - a time in milliseconds
+   * @return the time in seconds, formatted for the JUnit XML format
+   */
+  private static String secs(final long aMillis) {
+    return String.valueOf(aMillis / 1000.0);
+  }
+
+  /**
+   * @param aStr - a string
+   * @return the string as a JSON string literal
+   */
+  static String jsonStr(final String aStr) {
+    final StringBuilder sb = new StringBuilder(aStr.length() + 2);
+    sb.append('"');
+    for (int i = 0; i < aStr.length(); i++) {
+      final char c = aStr.charAt(i);
+      switch (c) {
+        case '"':
+          sb.append("\\\""); //$NON-NLS-1$
+          break;
+        case '\\':
+          sb.append("\\\\"); //$NON-NLS-1$
+          break;
+        case '\n':
+          sb.append("\\n"); //$NON-NLS-1$
+          break;
+        case '\r':
+          sb.append("\\r"); //$NON-NLS-1$
+          break;
+        case '\t':
+          sb.append("\\t"); //$NON-NLS-1$
+          break;
+        default:
+          if (c < ' ') {
+            sb.append(String.format("\\u%04x", Integer.valueOf(c))); //$NON-NLS-1$
+          }
+          else {
+            sb.append(c);
+          }
+          break;
+      }
+    }
+    return sb.append('"').toString();
+  }
+
+  /**
+   * @param aStr - a string
+   * @return the string escaped for an XML attribute or text (the invalid XML characters being dropped)
+   */
+  static String xmlStr(final String aStr) {
+    final StringBuilder sb = new StringBuilder(aStr.length() + 16);
+    for (int i = 0; i < aStr.length(); i++) {
+      final char c = aStr.charAt(i);
+      switch (c) {
+        case '<':
+          sb.append("&lt;"); //$NON-NLS-1$
+          break;
+        case '>':
+          sb.append("&gt;"); //$NON-NLS-1$
+          break;
+        case '&':
+          sb.append("&amp;"); //$NON-NLS-1$
+          break;
+        case '"':
+          sb.append("&quot;"); //$NON-NLS-1$
+          break;
+        default:
+          if (c >= ' ' || c == '\n' || c == '\r' || c == '\t') {
+            sb.append(c);
+          }
+          break;
+      }
+    }
+    return sb.toString();
+  }
+
+}
@@ -1,10 +1,12 @@
 package sf.eclipse.javacc.headless;
 
 import java.io.PrintStream;
+import java.util.List;
 
 import org.eclipse.core.resources.IFile;
 
 import sf.eclipse.javacc.base.IConsole;
+import sf.eclipse.javacc.tool.Problem;
 
 /**
  * Console for JavaCC output for headless builds.<br>
@@ -32,7 +34,8 @@ public class NullConsole implements IConsole {
 
   /** {@inheritDoc} */
   @Override
-  public void processReport(@SuppressWarnings("unused") final IFile aFile, @SuppressWarnings("unused") final boolean aIsJtb) {
+  public void processReport(@SuppressWarnings("unused") final IFile aFile,
+                            @SuppressWarnings("unused") final List<Problem> aProblems) {
     /* no console, nothing done */
   }
 
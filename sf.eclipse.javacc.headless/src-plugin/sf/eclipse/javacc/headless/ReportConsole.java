@@ -0,0 +1,135 @@
+package sf.eclipse.javacc.headless;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+
+import sf.eclipse.javacc.base.IConsole;
+import sf.eclipse.javacc.base.IConstants;
+import sf.eclipse.javacc.tool.Problem;
+
+/**
+ * Console for the headless build application : the output is echoed on a stream, and the output of each
+ * compilation is recorded with the problems found in it, for the build report. No marker is created.
+ * 
+ * @since 1.5.34
+ */
+class ReportConsole implements IConsole {
+
+  /** The stream where the output is echoed */
+  private final PrintStream                jEcho;
+
+  /** The tool output buffer */
+  private final ByteArrayOutputStream      jBaos     = new ByteArrayOutputStream(1024);
+
+  /** The print stream on the tool output buffer */
+  private final PrintStream                jPs       = new PrintStream(jBaos, true);
+
+  /** The output since the last report */
+  private final StringBuilder              jText     = new StringBuilder(1024);
+
+  /** The outputs of the compilations : key = file, val = output */
+  private final Map<IFile, String>         jOutputs  = new HashMap<IFile, String>();
+
+  /** The problems of the compilations : key = file, val = problems */
+  private final Map<IFile, List<Problem>>  jProblems = new HashMap<IFile, List<Problem>>();
+
+  /**
+   * Standard constructor.
+   * 
+   * @param aEcho - the stream where the output is echoed
+   */
+  ReportConsole(final PrintStream aEcho) {
+    jEcho = aEcho;
+  }
+
+  /**
+   * Appends the tool output printed since the last call to the output since the last report.
+   */
+  private void flushOutput() {
+    jPs.flush();
+    if (jBaos.size() > 0) {
+      final String out = jBaos.toString();
+      jBaos.reset();
+      jText.append(out);
+      jEcho.print(out);
+    }
+  }
+
+  /**
+   * @param aFile - a grammar file
+   * @return the output of its compilation, or an empty string if none
+   */
+  synchronized String getOutput(final IFile aFile) {
+    final String out = jOutputs.get(aFile);
+    return out == null ? "" : out; //$NON-NLS-1$
+  }
+
+  /**
+   * @param aFile - a grammar file
+   * @return the problems found in the output of its compilation
+   */
+  synchronized List<Problem> getProblems(final IFile aFile) {
+    final List<Problem> list = jProblems.get(aFile);
+    return list == null ? Collections.<Problem> emptyList() : list;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void clear() {
+    /* the echo stream cannot be cleared, nothing done */
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public PrintStream getPrintStream() {
+    return jPs;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void print(final String aStr, @SuppressWarnings("unused") final boolean aCmdFlag) {
+    flushOutput();
+    jText.append(aStr);
+    jEcho.print(aStr);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void println(final String aStr, final boolean aCmdFlag) {
+    print(aStr + IConstants.LS, aCmdFlag);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void println() {
+    print(IConstants.LS, false);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void displayOutput() {
+    flushOutput();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void processReport(final IFile aFile, final List<Problem> aProblems) {
+    flushOutput();
+    jOutputs.put(aFile, jText.toString());
+    jText.setLength(0);
+    jProblems.put(aFile, aProblems);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String fmtTS() {
+    return ""; //$NON-NLS-1$
+  }
+
+}
@@ -0,0 +1,340 @@
+package sf.eclipse.javacc.bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.eclipse.jface.text.Document;
+
+import sf.eclipse.javacc.editors.Elements;
+import sf.eclipse.javacc.editors.GrammarModelService;
+import sf.eclipse.javacc.handlers.Format;
+import sf.eclipse.javacc.parser.JJNode;
+import sf.eclipse.javacc.parser.JavaCCParser;
+import sf.eclipse.javacc.parser.JavaCCParserConstants;
+import sf.eclipse.javacc.parser.JavaCCParserTokenManager;
+import sf.eclipse.javacc.parser.JavaCharStream;
+import sf.eclipse.javacc.parser.Token;
+
+/**
+ * A command line benchmark of the editor parsing pipeline : the {@link JavaCCParser} parse, the model build
+ * after a one character edit by the {@link GrammarModelService} (which reparses only the modified productions,
+ * to compare with the full parse), the raw {@link JavaCCParserTokenManager} tokenization, the outline / call
+ * hierarchy elements build and the formatting, on a corpus of grammar files.<br>
+ * Each benchmark is run for a number of warmup then measurement iterations of a given duration ; it reports
+ * the throughput (operations per second) and the allocation rate (bytes allocated per operation, from the
+ * thread allocation counter of the JVM, if supported).<br>
+ * It needs no workbench : run it with the plugin classes and the org.eclipse.jface.text,
+ * org.eclipse.core.commands, org.eclipse.equinox.common and org.eclipse.ui.workbench jars on the classpath,
+ * for example :<br>
+ * <code>java -cp bin;bin-bench;&lt;plugins jars&gt; sf.eclipse.javacc.bench.EditorBench -w 5 -i 10 -t 1000
+ * src-plugin/sf/eclipse/javacc/parser/JavaCC15.jj templates</code><br>
+ * Arguments : <code>-w</code> the number of warmup iterations, <code>-i</code> the number of measurement
+ * iterations, <code>-t</code> the duration of an iteration in milliseconds, <code>-b</code> a comma separated
+ * list of benchmarks (among parse, reparse, tokenize, elements, format), then the grammar files or directories
+ * (by default the JavaCC grammar and the templates).
+ * 
+ * @since 1.5.34
+ */
+public class EditorBench {
+
+  /** The benchmark names */
+  static final String[]       BENCHS      = {
+      "parse", "reparse", "tokenize", "elements", "format" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+
+  /** The default corpus */
+  static final String[]       DEF_CORPUS  = {
+      "src-plugin/sf/eclipse/javacc/parser/JavaCC15.jj", "templates" }; //$NON-NLS-1$ //$NON-NLS-2$
+
+  /** The indentation string used for formatting */
+  static final String         INDENT      = "  ";                                         //$NON-NLS-1$
+
+  /** The special indentation string used for formatting */
+  static final String         SPEC_INDENT = "  ";                                         //$NON-NLS-1$
+
+  /** The thread MX bean */
+  static final ThreadMXBean   sMXBean     = ManagementFactory.getThreadMXBean();
+
+  /** The parser, reused across operations as in the editor */
+  private final JavaCCParser  jParser     = new JavaCCParser(new StringReader("")); //$NON-NLS-1$
+
+  /** The corpus texts */
+  private final List<String>  jTexts      = new ArrayList<String>();
+
+  /** The corpus file names */
+  private final List<String>  jNames      = new ArrayList<String>();
+
+  /** The number of warmup iterations */
+  private int                 jWarmups    = 5;
+
+  /** The number of measurement iterations */
+  private int                 jIters      = 10;
+
+  /** The duration of an iteration in milliseconds */
+  private long                jIterMillis = 1000;
+
+  /** A sink to keep the results alive */
+  private long                jSink;
+
+  /** The model service of the reparse benchmark */
+  private GrammarModelService jService;
+
+  /** The corpus text with an added character, for the reparse benchmark */
+  private String              jEdited;
+
+  /** The document modification stamp of the reparse benchmark */
+  private long                jStamp;
+
+  /**
+   * Runs the benchmarks.
+   * 
+   * @param aArgs - the arguments (see the class comment)
+   * @throws IOException - if a corpus file cannot be read
+   */
+  public static void main(final String[] aArgs) throws IOException {
+    final EditorBench bench = new EditorBench();
+    String[] benchs = BENCHS;
+    final List<String> files = new ArrayList<String>();
+    for (int i = 0; i < aArgs.length; i++) {
+      final String arg = aArgs[i];
+      if ("-w".equals(arg)) { //$NON-NLS-1$
+        bench.jWarmups = Integer.parseInt(aArgs[++i]);
+      }
+      else if ("-i".equals(arg)) { //$NON-NLS-1$
+        bench.jIters = Integer.parseInt(aArgs[++i]);
+      }
+      else if ("-t".equals(arg)) { //$NON-NLS-1$
+        bench.jIterMillis = Long.parseLong(aArgs[++i]);
+      }
+      else if ("-b".equals(arg)) { //$NON-NLS-1$
+        benchs = aArgs[++i].split(","); //$NON-NLS-1$
+      }
+      else {
+        files.add(arg);
+      }
+    }
+    if (files.isEmpty()) {
+      for (final String f : DEF_CORPUS) {
+        files.add(f);
+      }
+    }
+    for (final String f : files) {
+      bench.addCorpus(new File(f));
+    }
+    if (bench.jTexts.isEmpty()) {
+      System.err.println("No grammar file found"); //$NON-NLS-1$
+      return;
+    }
+    if (sMXBean instanceof com.sun.management.ThreadMXBean) {
+      ((com.sun.management.ThreadMXBean) sMXBean).setThreadAllocatedMemoryEnabled(true);
+    }
+    System.out.println(String.format(Locale.ROOT, "%-10s %-40s %12s %12s %14s", //$NON-NLS-1$
+                                     "Benchmark", "Grammar", "ops/s", "error", "bytes/op")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+    for (final String b : benchs) {
+      for (int k = 0; k < bench.jTexts.size(); k++) {
+        bench.run(b.trim(), k);
+      }
+    }
+  }
+
+  /**
+   * Adds a grammar file, or the grammar files of a directory, to the corpus.
+   * 
+   * @param aFile - a file or directory
+   * @throws IOException - if the file cannot be read
+   */
+  void addCorpus(final File aFile) throws IOException {
+    if (aFile.isDirectory()) {
+      final File[] files = aFile.listFiles();
+      if (files != null) {
+        for (final File f : files) {
+          addCorpus(f);
+        }
+      }
+      return;
+    }
+    final String name = aFile.getName();
+    if (!name.endsWith(".jj") && !name.endsWith(".jjt") && !name.endsWith(".jtb")) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+      return;
+    }
+    final StringBuilder sb = new StringBuilder((int) aFile.length());
+    final Reader in = new InputStreamReader(new FileInputStream(aFile), "UTF-8"); //$NON-NLS-1$
+    try {
+      final char[] buf = new char[8192];
+      int n;
+      while ((n = in.read(buf)) > 0) {
+        sb.append(buf, 0, n);
+      }
+    } finally {
+      in.close();
+    }
+    jTexts.add(sb.toString());
+    jNames.add(name);
+  }
+
+  /**
+   * Runs a benchmark on a corpus text and prints its results.
+   * 
+   * @param aBench - the benchmark name
+   * @param aIndex - the corpus text index
+   */
+  void run(final String aBench, final int aIndex) {
+    final String txt = jTexts.get(aIndex);
+    final int lastLine = countLines(txt) - 1;
+    if ("reparse".equals(aBench)) { //$NON-NLS-1$
+      // a new service, whose first model comes from a full parse
+      jService = GrammarModelService.get(new Document(txt));
+      jEdited = edit(txt);
+    }
+    for (int i = 0; i < jWarmups; i++) {
+      iteration(aBench, txt, lastLine);
+    }
+    final double[] rates = new double[jIters];
+    long ops = 0;
+    long bytes = 0;
+    for (int i = 0; i < jIters; i++) {
+      final long[] res = iteration(aBench, txt, lastLine);
+      rates[i] = res[0] * 1e9 / res[1];
+      ops += res[0];
+      bytes += res[2];
+    }
+    double mean = 0;
+    for (final double r : rates) {
+      mean += r;
+    }
+    mean /= jIters;
+    double var = 0;
+    for (final double r : rates) {
+      var += (r - mean) * (r - mean);
+    }
+    final double err = jIters > 1 ? Math.sqrt(var / (jIters - 1)) : 0;
+    final String alloc = bytes < 0 ? "n/a" : Long.toString(bytes / ops); //$NON-NLS-1$
+    System.out.println(String.format(Locale.ROOT, "%-10s %-40s %12.1f %12.1f %14s", //$NON-NLS-1$
+                                     aBench, jNames.get(aIndex), mean, err, alloc));
+  }
+
+  /**
+   * Runs one iteration of a benchmark.
+   * 
+   * @param aBench - the benchmark name
+   * @param aTxt - the corpus text
+   * @param aLastLine - the last line of the text
+   * @return the number of operations, the elapsed nanoseconds and the allocated bytes (-1 if unknown)
+   */
+  long[] iteration(final String aBench, final String aTxt, final int aLastLine) {
+    final long tid = Thread.currentThread().getId();
+    final long bytes0 = allocatedBytes(tid);
+    final long start = System.nanoTime();
+    final long end = start + jIterMillis * 1000000L;
+    long ops = 0;
+    long now;
+    do {
+      jSink += operation(aBench, aTxt, aLastLine);
+      ops++;
+    } while ((now = System.nanoTime()) < end);
+    final long bytes1 = allocatedBytes(tid);
+    return new long[] {
+        ops, now - start, bytes0 < 0 ? -1 : bytes1 - bytes0 };
+  }
+
+  /**
+   * Runs one operation of a benchmark.
+   * 
+   * @param aBench - the benchmark name
+   * @param aTxt - the corpus text
+   * @param aLastLine - the last line of the text
+   * @return a value depending on the result, to prevent dead code elimination
+   */
+  int operation(final String aBench, final String aTxt, final int aLastLine) {
+    if ("parse".equals(aBench)) { //$NON-NLS-1$
+      return parse(aTxt).jjtGetNumChildren();
+    }
+    if ("reparse".equals(aBench)) { //$NON-NLS-1$
+      // the text with and without the added character, as when typing then deleting it
+      final String txt = (++jStamp & 1) == 0 ? aTxt : jEdited;
+      return jService.getModel(txt, jStamp).getNodePositions().size();
+    }
+    if ("tokenize".equals(aBench)) { //$NON-NLS-1$
+      final JavaCCParserTokenManager tm = new JavaCCParserTokenManager(new JavaCharStream(new StringReader(aTxt),
+                                                                                          1, 1));
+      int n = 0;
+      for (Token t = tm.getNextToken(); t.kind != JavaCCParserConstants.EOF; t = tm.getNextToken()) {
+        n++;
+      }
+      return n;
+    }
+    if ("elements".equals(aBench)) { //$NON-NLS-1$
+      final JJNode root = parse(aTxt);
+      final Elements elements = new Elements();
+      root.buildElements(elements);
+      int n = 0;
+      for (final JJNode node : elements.getCompPropsIdentMap().values()) {
+        n += node.findCallers(elements).length + node.findCallees(elements).length;
+      }
+      return n;
+    }
+    if ("format".equals(aBench)) { //$NON-NLS-1$
+      final StringBuilder sb = new StringBuilder(aTxt.length() + 1024);
+      Format.formatText(jParser, aTxt, 0, aLastLine, INDENT, SPEC_INDENT, sb);
+      return sb.length();
+    }
+    throw new IllegalArgumentException("Unknown benchmark " + aBench); //$NON-NLS-1$
+  }
+
+  /**
+   * Parses a text with the reused parser.
+   * 
+   * @param aTxt - the text
+   * @return the AST root node
+   */
+  private JJNode parse(final String aTxt) {
+    final StringReader in = new StringReader(aTxt);
+    jParser.ReInit(in);
+    final JJNode root = jParser.parse(in);
+    in.close();
+    return root;
+  }
+
+  /**
+   * @param aTxt - a text
+   * @return the text with a space added at the beginning of its middle line
+   */
+  static String edit(final String aTxt) {
+    final int mid = aTxt.indexOf('\n', aTxt.length() / 2) + 1;
+    return aTxt.substring(0, mid) + ' ' + aTxt.substring(mid);
+  }
+
+  /**
+   * @param aTxt - a text
+   * @return the number of lines of the text
+   */
+  static int countLines(final String aTxt) {
+    int n = 1;
+    for (int i = 0; i < aTxt.length(); i++) {
+      if (aTxt.charAt(i) == '\n') {
+        n++;
+      }
+    }
+    return n;
+  }
+
+  /**
+   * @param aTid - a thread id
+   * @return the number of bytes allocated by the thread, or -1 if not supported
+   */
+  static long allocatedBytes(final long aTid) {
+    if (sMXBean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) sMXBean).getThreadAllocatedBytes(aTid);
+    }
+    return -1;
+  }
+
+}
@@ -0,0 +1,264 @@
+package sf.eclipse.javacc.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import sf.eclipse.javacc.tool.GrammarTool;
+import sf.eclipse.javacc.tool.Problem;
+import sf.eclipse.javacc.tool.ToolResult;
+
+/**
+ * A command line benchmark of the grammar compilation core : the {@link GrammarTool} run of JavaCC or JJTree
+ * on a corpus of grammar files, launched in an external JVM and / or in-process.<br>
+ * Each grammar is copied in a temporary directory, then compiled for a number of warmup then measurement
+ * runs, each run rewriting the files generated by the previous one (as in a workbench rebuild) ; it reports
+ * the launch kind, the mean and standard deviation of the tool time, the mean time of the generated files
+ * snapshot and directory diff, the number of generated files and the number of errors.<br>
+ * It needs neither the workbench nor OSGi : run it with the plugin classes only on the classpath, for
+ * example :<br>
+ * <code>java -cp bin;bin-bench sf.eclipse.javacc.bench.ToolBench -w 2 -i 5 -j jars/javacc-6.0.jar
+ * src-plugin/sf/eclipse/javacc/parser/JavaCC15.jj</code><br>
+ * Arguments : <code>-w</code> the number of warmup runs, <code>-i</code> the number of measurement runs,
+ * <code>-j</code> the JavaCC jar file, <code>-m</code> a comma separated list of launch modes (among
+ * external, inprocess), <code>-o</code> the tool options (as on a command line), then the grammar files (.jj
+ * or .jjt) or directories (by default the JavaCC grammars of the plugin).
+ * 
+ * @since 1.5.34
+ */
+public class ToolBench {
+
+  /** The launch mode names */
+  static final String[]       MODES      = {
+      "external", "inprocess" }; //$NON-NLS-1$ //$NON-NLS-2$
+
+  /** The launch kind names, indexed by the {@link ToolResult#getLaunch()} values */
+  static final String[]       LAUNCHES   = {
+      "none", "in-process", "daemon", "external" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+  /** The default corpus */
+  static final String[]       DEF_CORPUS = {
+      "src-plugin/sf/eclipse/javacc/parser/JavaCC15.jj", //$NON-NLS-1$
+      "src-plugin/sf/eclipse/javacc/parser/JavaCC15.jjt" }; //$NON-NLS-1$
+
+  /** The default JavaCC jar file */
+  static final String         DEF_JAR    = "jars/javacc-6.0.jar";                    //$NON-NLS-1$
+
+  /** The grammar files */
+  private final List<File>    jFiles     = new ArrayList<File>();
+
+  /** The JavaCC jar file */
+  private String              jJarFile   = new File(DEF_JAR).getAbsolutePath();
+
+  /** The tool options */
+  private String[]            jOptions   = new String[0];
+
+  /** The number of warmup runs */
+  private int                 jWarmups   = 2;
+
+  /** The number of measurement runs */
+  private int                 jIters     = 5;
+
+  /**
+   * Runs the benchmarks.
+   * 
+   * @param aArgs - the arguments (see the class comment)
+   * @throws IOException - if a grammar file cannot be copied
+   */
+  public static void main(final String[] aArgs) throws IOException {
+    final ToolBench bench = new ToolBench();
+    String[] modes = MODES;
+    final List<String> files = new ArrayList<String>();
+    for (int i = 0; i < aArgs.length; i++) {
+      final String arg = aArgs[i];
+      if ("-w".equals(arg)) { //$NON-NLS-1$
+        bench.jWarmups = Integer.parseInt(aArgs[++i]);
+      }
+      else if ("-i".equals(arg)) { //$NON-NLS-1$
+        bench.jIters = Integer.parseInt(aArgs[++i]);
+      }
+      else if ("-j".equals(arg)) { //$NON-NLS-1$
+        bench.jJarFile = new File(aArgs[++i]).getAbsolutePath();
+      }
+      else if ("-m".equals(arg)) { //$NON-NLS-1$
+        modes = aArgs[++i].split(","); //$NON-NLS-1$
+      }
+      else if ("-o".equals(arg)) { //$NON-NLS-1$
+        bench.jOptions = aArgs[++i].trim().split("\\s+"); //$NON-NLS-1$
+      }
+      else {
+        files.add(arg);
+      }
+    }
+    if (files.isEmpty()) {
+      for (final String f : DEF_CORPUS) {
+        files.add(f);
+      }
+    }
+    for (final String f : files) {
+      bench.addCorpus(new File(f));
+    }
+    if (bench.jFiles.isEmpty()) {
+      System.err.println("No grammar file found"); //$NON-NLS-1$
+      return;
+    }
+    if (!new File(bench.jJarFile).isFile()) {
+      System.err.println("JavaCC jar file not found : " + bench.jJarFile); //$NON-NLS-1$
+      return;
+    }
+    System.out.println(String.format(Locale.ROOT, "%-10s %-24s %-11s %10s %10s %10s %6s %6s", //$NON-NLS-1$
+                                     "Mode", "Grammar", "Launch", "tool ms", "error", "files ms", "files", "errors")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+    try {
+      for (final String m : modes) {
+        for (final File f : bench.jFiles) {
+          bench.run(m.trim(), f);
+        }
+      }
+    } finally {
+      GrammarTool.clearCaches();
+    }
+  }
+
+  /**
+   * Adds a grammar file, or the grammar files of a directory, to the corpus.
+   * 
+   * @param aFile - a file or directory
+   */
+  void addCorpus(final File aFile) {
+    if (aFile.isDirectory()) {
+      final File[] files = aFile.listFiles();
+      if (files != null) {
+        Arrays.sort(files);
+        for (final File f : files) {
+          addCorpus(f);
+        }
+      }
+      return;
+    }
+    final String name = aFile.getName();
+    if (name.endsWith(".jj") || name.endsWith(".jjt")) { //$NON-NLS-1$ //$NON-NLS-2$
+      jFiles.add(aFile);
+    }
+  }
+
+  /**
+   * Runs a benchmark on a grammar file and prints its results.
+   * 
+   * @param aMode - the launch mode name
+   * @param aFile - the grammar file
+   * @throws IOException - if the grammar file cannot be copied
+   */
+  void run(final String aMode, final File aFile) throws IOException {
+    final boolean inProcess = "inprocess".equals(aMode); //$NON-NLS-1$
+    if (!inProcess && !"external".equals(aMode)) { //$NON-NLS-1$
+      throw new IllegalArgumentException("Unknown launch mode " + aMode); //$NON-NLS-1$
+    }
+    final File dir = Files.createTempDirectory("toolbench").toFile(); //$NON-NLS-1$
+    try {
+      final File grammar = new File(dir, aFile.getName());
+      Files.copy(aFile.toPath(), grammar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      final String[] args = Arrays.copyOf(jOptions, jOptions.length + 1);
+      args[jOptions.length] = grammar.getName();
+      List<String> previous = Collections.<String> emptyList();
+      for (int i = 0; i < jWarmups; i++) {
+        previous = generated(runOnce(grammar, args, inProcess, previous), previous);
+      }
+      final double[] toolMs = new double[jIters];
+      double filesMs = 0;
+      ToolResult res = null;
+      for (int i = 0; i < jIters; i++) {
+        res = runOnce(grammar, args, inProcess, previous);
+        previous = generated(res, previous);
+        toolMs[i] = res.getNanos(ToolResult.TOOL) / 1e6;
+        filesMs += (res.getNanos(ToolResult.SNAPSHOT) + res.getNanos(ToolResult.DIFF)) / 1e6;
+      }
+      if (res == null) {
+        return;
+      }
+      double mean = 0;
+      for (final double t : toolMs) {
+        mean += t;
+      }
+      mean /= jIters;
+      double var = 0;
+      for (final double t : toolMs) {
+        var += (t - mean) * (t - mean);
+      }
+      final double err = jIters > 1 ? Math.sqrt(var / (jIters - 1)) : 0;
+      int errors = 0;
+      for (final Problem p : res.getProblems()) {
+        if (p.getSeverity() == Problem.ERROR) {
+          errors++;
+        }
+      }
+      System.out.println(String.format(Locale.ROOT, "%-10s %-24s %-11s %10.1f %10.1f %10.1f %6d %6d", //$NON-NLS-1$
+                                       aMode, aFile.getName(), LAUNCHES[res.getLaunch()], mean, err,
+                                       filesMs / jIters, previous.size(), errors));
+      if (res.getExitValue() != 0 || errors > 0) {
+        System.out.print(res.getOutputString());
+      }
+    } finally {
+      delete(dir);
+    }
+  }
+
+  /**
+   * Runs the tool once on a grammar file.
+   * 
+   * @param aGrammar - the grammar file
+   * @param aArgs - the tool arguments
+   * @param aInProcess - true to run the tool in-process if possible, false to launch an external JVM
+   * @param aPrevious - the files generated by the previous runs
+   * @return the result
+   */
+  ToolResult runOnce(final File aGrammar, final String[] aArgs, final boolean aInProcess,
+                     final List<String> aPrevious) {
+    final GrammarTool tool = new GrammarTool(aGrammar, aArgs, jJarFile);
+    tool.setInProcess(aInProcess);
+    tool.setPreviousFiles(aPrevious, Charset.defaultCharset(), false);
+    return tool.run();
+  }
+
+  /**
+   * @param aRes - a run result
+   * @param aPrevious - the files generated by the previous runs
+   * @return the files generated by the previous runs and this one (the files rewritten with the same
+   *         contents keep their date, so they are not in the run directory diff)
+   */
+  static List<String> generated(final ToolResult aRes, final List<String> aPrevious) {
+    final String[] gen = aRes.getGenerated();
+    if (gen == null) {
+      return aPrevious;
+    }
+    final Set<String> all = new LinkedHashSet<String>(aPrevious);
+    all.addAll(Arrays.asList(gen));
+    return new ArrayList<String>(all);
+  }
+
+  /**
+   * Deletes a file or a directory and its contents.
+   * 
+   * @param aFile - the file or directory
+   */
+  static void delete(final File aFile) {
+    final File[] files = aFile.listFiles();
+    if (files != null) {
+      for (final File f : files) {
+        delete(f);
+      }
+    }
+    if (!aFile.delete()) {
+      aFile.deleteOnExit();
+    }
+  }
+
+}
@@ -12,6 +12,9 @@ import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.BundleContext;
 
+import sf.eclipse.javacc.tool.GrammarTool;
+import sf.eclipse.javacc.tool.ToolLog;
+
 /**
  * The main plugin part, common for normal usage and headless builds (except for the
  * {@link #getImageDescriptor(String)} method which is specific to head builds).<br>
@@ -68,6 +71,27 @@ public abstract class AbstractActivator extends AbstractUIPlugin {
     }
     sJJVersion = PIB.getHeaders().get("Bundle-Version"); //$NON-NLS-1$
     sBugMsg = getMsg("Bug.Msg"); //$NON-NLS-1$
+    // the workbench independent classes log to the plugin log
+    ToolLog.setLogger(new ToolLog.ILogger() {
+
+      /** {@inheritDoc} */
+      @Override
+      public void logBug(final Throwable aTh, final String... aStringData) {
+        AbstractActivator.logBug(aTh, aStringData);
+      }
+
+      /** {@inheritDoc} */
+      @Override
+      public void logErr(final String aMsg) {
+        AbstractActivator.logErr(aMsg);
+      }
+
+      /** {@inheritDoc} */
+      @Override
+      public void logInfo(final String aMsg) {
+        AbstractActivator.logInfo(aMsg);
+      }
+    });
   }
 
   /**
@@ -77,6 +101,11 @@ public abstract class AbstractActivator extends AbstractUIPlugin {
    */
   @Override
   public void stop(final BundleContext aCtx) throws Exception {
+    GrammarTool.clearCaches();
+    CompileScheduler.stop();
+    ToolDaemon.stopAll();
+    GrammarGraph.clearAll();
+    ToolLog.setLogger(null);
     super.stop(aCtx);
     sActivator = null;
   }
@@ -0,0 +1,169 @@
+package sf.eclipse.javacc.base;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.resources.IFile;
+
+import sf.eclipse.javacc.tool.Problem;
+
+/**
+ * Console buffering the output of a compilation run outside the build thread.<br>
+ * All calls are recorded in order and replayed later, in one go, on the real console by the build thread
+ * (which then creates the markers through {@link IConsole#processReport(IFile, List)}).
+ * 
+ * @since 1.5.34
+ */
+class BufferedConsole implements IConsole {
+
+  /** Record kind : text printed */
+  private static final int            TEXT       = 0;
+  /** Record kind : text printed with the console command style */
+  private static final int            CMD        = 1;
+  /** Record kind : tool output */
+  private static final int            OUTPUT     = 2;
+  /** Record kind : display output */
+  private static final int            DISPLAY    = 3;
+  /** Record kind : process report */
+  private static final int            REPORT     = 4;
+
+  /** The real console (used only for the timestamps until replayed) */
+  private final IConsole              jTarget;
+
+  /** The tool output buffer */
+  private final ByteArrayOutputStream jBaos      = new ByteArrayOutputStream(1024);
+
+  /** The print stream on the tool output buffer */
+  private final PrintStream           jPs        = new PrintStream(jBaos, true);
+
+  /** The records kinds */
+  private final List<Integer>         jKinds     = new ArrayList<Integer>();
+
+  /** The records data */
+  private final List<Object>          jData      = new ArrayList<Object>();
+
+  /**
+   * Standard constructor.
+   * 
+   * @param aTarget - the real console the records will be replayed on
+   */
+  BufferedConsole(final IConsole aTarget) {
+    jTarget = aTarget;
+  }
+
+  /**
+   * Adds a record.
+   * 
+   * @param aKind - the record kind
+   * @param aData - the record data
+   */
+  private void add(final int aKind, final Object aData) {
+    jKinds.add(Integer.valueOf(aKind));
+    jData.add(aData);
+  }
+
+  /**
+   * Adds a record for the tool output printed since the last one, if any.
+   */
+  private void flushOutput() {
+    jPs.flush();
+    if (jBaos.size() > 0) {
+      add(OUTPUT, jBaos.toByteArray());
+      jBaos.reset();
+    }
+  }
+
+  /**
+   * Replays all the records on the real console. Must be called by the build thread.
+   */
+  void replay() {
+    flushOutput();
+    final PrintStream ps = jTarget.getPrintStream();
+    for (int i = 0; i < jKinds.size(); i++) {
+      final Object data = jData.get(i);
+      switch (jKinds.get(i).intValue()) {
+        case TEXT:
+          jTarget.print((String) data, false);
+          break;
+        case CMD:
+          jTarget.print((String) data, true);
+          break;
+        case OUTPUT:
+          final byte[] bytes = (byte[]) data;
+          ps.write(bytes, 0, bytes.length);
+          ps.flush();
+          break;
+        case DISPLAY:
+          jTarget.displayOutput();
+          break;
+        case REPORT:
+          final Object[] report = (Object[]) data;
+          @SuppressWarnings("unchecked")
+          final List<Problem> problems = (List<Problem>) report[1];
+          jTarget.processReport((IFile) report[0], problems);
+          break;
+        default:
+          break;
+      }
+    }
+    jKinds.clear();
+    jData.clear();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clear() {
+    /* the real console is cleared once by the build thread, nothing done */
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public PrintStream getPrintStream() {
+    return jPs;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void print(final String aStr, final boolean aCmdFlag) {
+    flushOutput();
+    add(aCmdFlag ? CMD : TEXT, aStr);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void println(final String aStr, final boolean aCmdFlag) {
+    print(aStr + IConstants.LS, aCmdFlag);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void println() {
+    print(IConstants.LS, false);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void displayOutput() {
+    flushOutput();
+    add(DISPLAY, null);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void processReport(final IFile aFile, final List<Problem> aProblems) {
+    flushOutput();
+    add(REPORT, new Object[] {
+        aFile, aProblems });
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String fmtTS() {
+    synchronized (jTarget) {
+      return jTarget.fmtTS();
+    }
+  }
+
+}
@@ -0,0 +1,312 @@
+package sf.eclipse.javacc.base;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import sf.eclipse.javacc.tool.FileUtils;
+import sf.eclipse.javacc.tool.GenFileSnapshot;
+
+/**
+ * A cache of the files generated by JavaCC / JJTree / JTB, stored under the plugin state location and keyed
+ * by the build fingerprint of the grammar (see {@link Compiler#computeFingerprint(org.eclipse.core.resources.IFile)}).<br>
+ * An entry is a directory named after the fingerprint, holding an index of the generated files paths
+ * (relative to the project location), the files themselves and the tool output (so the console and the
+ * markers are the same as for a real run). The files are the ones written by the run and the other files
+ * generated by the grammar, the support files (like Token.java), which the tools do not rewrite when they
+ * already exist.<br>
+ * On a cache hit the files are restored instead of launching the tool, as the tool would write them : a
+ * file written by the cached run is rewritten if its contents differ, a support file is restored only if it
+ * is missing (so the changes the user made to it are kept).<br>
+ * The entries hold the files as the tool wrote them, before any alteration ; the rewritten files go through
+ * the same {@link GenFileSnapshot} comparison as after a real run, so a file which is the same once altered
+ * again keeps its date (and the java builder does not recompile it).
+ * 
+ * @since 1.5.34
+ */
+class BuildCache {
+
+  /** The cache directory name (under the plugin state location) */
+  static final String                         CACHE_DIR   = "buildcache";                      //$NON-NLS-1$
+  /** The entry index file name */
+  static final String                         INDEX_FILE  = "index";                           //$NON-NLS-1$
+  /** The entry tool output file name */
+  static final String                         OUTPUT_FILE = "output";                          //$NON-NLS-1$
+  /** The maximum number of entries kept */
+  static final int                            MAX_ENTRIES = 256;
+  /** The first line of the index files (the entries of another format are not used) */
+  static final String                         FORMAT      = "#3";                              //$NON-NLS-1$
+  /** The index line prefix of a file written by the run */
+  static final String                         WRITTEN     = "W ";                              //$NON-NLS-1$
+  /** The index line prefix of a support file */
+  static final String                         SUPPORT     = "S ";                              //$NON-NLS-1$
+
+  /** The charset of the index file */
+  private static final Charset                UTF8        = Charset.forName("UTF-8");          //$NON-NLS-1$
+
+  /** The cache of the jars checksums : key = jar path, val = { length, date, checksum } */
+  private static final Map<String, Object[]>  sJarSums    = new HashMap<String, Object[]>(4);
+
+  /** The lock for the cache directory */
+  private static final Object                 sLock       = new Object();
+
+  /**
+   * @return the cache directory, or null if the plugin is not active
+   */
+  static File getCacheDir() {
+    final AbstractActivator act = AbstractActivator.getDefault();
+    if (act == null) {
+      return null;
+    }
+    return act.getStateLocation().append(CACHE_DIR).toFile();
+  }
+
+  /**
+   * Computes (or retrieves) the checksum of a jar file contents.
+   * 
+   * @param aJar - the jar path
+   * @return the checksum, or the jar length and date if the jar cannot be read
+   */
+  static String jarChecksum(final String aJar) {
+    final File jar = new File(aJar);
+    final Long len = Long.valueOf(jar.length());
+    final Long date = Long.valueOf(jar.lastModified());
+    synchronized (sJarSums) {
+      final Object[] sum = sJarSums.get(aJar);
+      if (sum != null && len.equals(sum[0]) && date.equals(sum[1])) {
+        return (String) sum[2];
+      }
+    }
+    String chk;
+    try {
+      final MessageDigest digest = MessageDigest.getInstance(Compiler.FP_ALGO);
+      final InputStream is = new DigestInputStream(Files.newInputStream(jar.toPath()), digest);
+      try {
+        final byte[] buf = new byte[8192];
+        while (is.read(buf) >= 0) {
+          // just digest
+        }
+      } finally {
+        is.close();
+      }
+      chk = FileUtils.toHexString(digest.digest());
+    } catch (final NoSuchAlgorithmException e) {
+      AbstractActivator.logBug(e, Compiler.FP_ALGO);
+      chk = len + "-" + date; //$NON-NLS-1$
+    } catch (final IOException e) {
+      // missing jar : the launch will report it
+      chk = len + "-" + date; //$NON-NLS-1$
+    }
+    synchronized (sJarSums) {
+      sJarSums.put(aJar, new Object[] {
+          len, date, chk });
+    }
+    return chk;
+  }
+
+  /**
+   * Restores the files of a cache entry.
+   * 
+   * @param aKey - the entry key (the grammar build fingerprint)
+   * @param aProjectDir - the project location
+   * @param aCharset - the charset of the generated java files
+   * @param aAlter - true if the generated java files are to be altered (see {@link GenFileSnapshot}), false
+   *          otherwise
+   * @param aOut - the stream where to write the tool output
+   * @return the absolute paths of the files written by the cached run and of the restored support files, or
+   *         null if there is no (valid) entry
+   */
+  static String[] restore(final String aKey, final String aProjectDir, final Charset aCharset,
+                          final boolean aAlter, final OutputStream aOut) {
+    final File root = getCacheDir();
+    if (root == null) {
+      return null;
+    }
+    final File entry = new File(root, aKey);
+    try {
+      synchronized (sLock) {
+        final File index = new File(entry, INDEX_FILE);
+        if (!index.isFile()) {
+          return null;
+        }
+        final List<String> paths = Files.readAllLines(index.toPath(), UTF8);
+        if (paths.isEmpty() || !FORMAT.equals(paths.remove(0))) {
+          // an entry of a previous format, which does not tell the support files
+          delete(entry);
+          return null;
+        }
+        final byte[] output = Files.readAllBytes(new File(entry, OUTPUT_FILE).toPath());
+        final List<String> written = new ArrayList<String>(paths.size());
+        for (final String line : paths) {
+          if (line.startsWith(WRITTEN)) {
+            written.add(new File(aProjectDir, line.substring(WRITTEN.length())).getPath());
+          }
+        }
+        final GenFileSnapshot snapshot = new GenFileSnapshot(written);
+        final List<String> res = new ArrayList<String>(paths.size());
+        final List<String> copied = new ArrayList<String>(written.size());
+        for (int i = 0; i < paths.size(); i++) {
+          final String line = paths.get(i);
+          final File src = new File(entry, String.valueOf(i));
+          final File dest = new File(aProjectDir, line.substring(WRITTEN.length()));
+          if (line.startsWith(SUPPORT)) {
+            // the tool does not rewrite an existing support file, nor does the restore
+            if (dest.isFile()) {
+              continue;
+            }
+          }
+          else {
+            if (sameContents(src, dest)) {
+              res.add(dest.getPath());
+              continue;
+            }
+            copied.add(dest.getPath());
+          }
+          dest.getParentFile().mkdirs();
+          Files.copy(src.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+          res.add(dest.getPath());
+        }
+        // the files altered on disk are altered again, and keep their date if they are then the same
+        snapshot.restoreUnchanged(copied.toArray(new String[copied.size()]), aCharset, aAlter);
+        // most recently used
+        entry.setLastModified(System.currentTimeMillis());
+        aOut.write(output, 0, output.length);
+        aOut.flush();
+        return res.toArray(new String[res.size()]);
+      }
+    } catch (final IOException e) {
+      // corrupted entry : forget it and run the tool
+      AbstractActivator.logBug(e, aKey);
+      synchronized (sLock) {
+        delete(entry);
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Stores the generated files in a cache entry.
+   * 
+   * @param aKey - the entry key (the grammar build fingerprint)
+   * @param aProjectDir - the project location
+   * @param aWritten - the absolute paths of the files written by the run (the ones outside the project are
+   *          ignored)
+   * @param aSupport - the absolute paths of the other existing files generated by the grammar (the support
+   *          files)
+   * @param aOutput - the tool output
+   */
+  static void store(final String aKey, final String aProjectDir, final String[] aWritten,
+                    final String[] aSupport, final byte[] aOutput) {
+    final File root = getCacheDir();
+    if (root == null) {
+      return;
+    }
+    final File tmp = new File(root, aKey + "." + Thread.currentThread().getId()); //$NON-NLS-1$
+    final File entry = new File(root, aKey);
+    try {
+      delete(tmp);
+      tmp.mkdirs();
+      final StringBuilder sb = new StringBuilder(64 * (aWritten.length + aSupport.length));
+      sb.append(FORMAT).append('\n');
+      int n = 0;
+      for (int i = 0; i < aWritten.length + aSupport.length; i++) {
+        final boolean written = i < aWritten.length;
+        final String file = written ? aWritten[i] : aSupport[i - aWritten.length];
+        if (!file.startsWith(aProjectDir)) {
+          continue;
+        }
+        Files.copy(new File(file).toPath(), new File(tmp, String.valueOf(n++)).toPath());
+        sb.append(written ? WRITTEN : SUPPORT).append(file.substring(aProjectDir.length() + 1)).append('\n');
+      }
+      Files.write(new File(tmp, OUTPUT_FILE).toPath(), aOutput);
+      // the index is written last, as it validates the entry
+      Files.write(new File(tmp, INDEX_FILE).toPath(), sb.toString().getBytes(UTF8));
+      synchronized (sLock) {
+        delete(entry);
+        if (!tmp.renameTo(entry)) {
+          delete(tmp);
+        }
+        prune(root);
+      }
+    } catch (final IOException e) {
+      AbstractActivator.logBug(e, aKey);
+      delete(tmp);
+    }
+  }
+
+  /**
+   * Removes the least recently used entries above {@link #MAX_ENTRIES}.
+   * 
+   * @param aRoot - the cache directory
+   */
+  private static void prune(final File aRoot) {
+    // the temporary directories of the entries being stored are not entries
+    final File[] entries = aRoot.listFiles(new FileFilter() {
+
+      /** {@inheritDoc} */
+      @Override
+      public boolean accept(final File aFile) {
+        return aFile.getName().indexOf('.') < 0;
+      }
+    });
+    if (entries == null || entries.length <= MAX_ENTRIES) {
+      return;
+    }
+    Arrays.sort(entries, new Comparator<File>() {
+
+      /** {@inheritDoc} */
+      @Override
+      public int compare(final File aF1, final File aF2) {
+        final long d1 = aF1.lastModified();
+        final long d2 = aF2.lastModified();
+        return d1 < d2 ? -1 : d1 == d2 ? 0 : 1;
+      }
+    });
+    for (int i = 0; i < entries.length - MAX_ENTRIES; i++) {
+      delete(entries[i]);
+    }
+  }
+
+  /**
+   * @param aF1 - a file
+   * @param aF2 - another file
+   * @return true if both files exist and have the same contents, false otherwise
+   * @throws IOException - if a file cannot be read
+   */
+  static boolean sameContents(final File aF1, final File aF2) throws IOException {
+    if (!aF2.isFile() || aF1.length() != aF2.length()) {
+      return false;
+    }
+    return Arrays.equals(Files.readAllBytes(aF1.toPath()), Files.readAllBytes(aF2.toPath()));
+  }
+
+  /**
+   * Deletes a file or a directory and its contents.
+   * 
+   * @param aFile - the file or directory
+   */
+  private static void delete(final File aFile) {
+    final File[] files = aFile.listFiles();
+    if (files != null) {
+      for (final File f : files) {
+        delete(f);
+      }
+    }
+    aFile.delete();
+  }
+
+}
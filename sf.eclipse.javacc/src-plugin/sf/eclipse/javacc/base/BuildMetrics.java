@@ -0,0 +1,283 @@
+package sf.eclipse.javacc.base;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An in-memory registry of the build timings, keeping the last {@link #HISTORY} records : one record per
+ * compiled grammar (including the compilation of the .jj file it may generate) with the time spent in each
+ * build phase, and one record per build of a list of grammars (for the phases done once for all of them).<br>
+ * Filled by the {@link Compiler}, read by the build metrics view and the exports.
+ * 
+ * @since 1.5.34
+ */
+public class BuildMetrics {
+
+  /** The options resolution phase (command line, jar, JVM options, fingerprint) */
+  public static final int             OPTIONS     = 0;
+  /** The output directories snapshot phase (before the tool run) */
+  public static final int             SNAPSHOT    = 1;
+  /** The tool launch and run (or build cache restore) phase */
+  public static final int             TOOL        = 2;
+  /** The output directories diff phase (after the tool run) */
+  public static final int             DIFF        = 3;
+  /** The problems report phase (parsing, console output and markers) */
+  public static final int             REPORT      = 4;
+  /** The workspace refresh phase */
+  public static final int             REFRESH     = 5;
+  /** The generated files post-processing phase (derived flags, properties, alteration) */
+  public static final int             POST        = 6;
+  /** The time not spent in the other phases */
+  public static final int             OTHER       = 7;
+  /** The number of phases */
+  public static final int             NB_PHASES   = 8;
+
+  /** The phases names (used in the exports) */
+  public static final String[]        PHASE_NAMES = {
+      "options", "snapshot", "tool", "diff", "report", "refresh", "post", "other" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+
+  /** The maximum number of records kept */
+  public static final int             HISTORY     = 1000;
+
+  /** The records, the oldest first */
+  private static final List<Record>   sRecords    = new LinkedList<Record>();
+
+  /** The listeners */
+  private static final List<Listener> sListeners  = new CopyOnWriteArrayList<Listener>();
+
+  /**
+   * A listener notified of the new records (in the thread which adds them).
+   */
+  public interface Listener {
+
+    /**
+     * Called when a record has been added.
+     * 
+     * @param aRecord - the record
+     */
+    void recordAdded(Record aRecord);
+  }
+
+  /**
+   * The timings of a grammar compilation or of a build.
+   */
+  public static class Record {
+
+    /** The grammar file full path, or the project full path for a build */
+    private final String  jName;
+
+    /** True for a build record, false for a grammar record */
+    private final boolean jBuild;
+
+    /** The start time (in milliseconds since the epoch) */
+    private final long    jStart;
+
+    /** The time spent in each phase (in nanoseconds) */
+    private final long[]  jNanos;
+
+    /** True if the compilation could not be run, false otherwise */
+    private final boolean jFailed;
+
+    /**
+     * Standard constructor ; the time not spent in the given phases is put in the {@link #OTHER} phase.
+     * 
+     * @param aName - the grammar file full path, or the project full path for a build
+     * @param aBuild - true for a build record, false for a grammar record
+     * @param aStart - the start time (in milliseconds since the epoch)
+     * @param aTotalNanos - the total time (in nanoseconds)
+     * @param aPhasesNanos - the time spent in each phase (in nanoseconds)
+     * @param aFailed - true if the compilation could not be run, false otherwise
+     */
+    Record(final String aName, final boolean aBuild, final long aStart, final long aTotalNanos,
+           final long[] aPhasesNanos, final boolean aFailed) {
+      jName = aName;
+      jBuild = aBuild;
+      jStart = aStart;
+      jNanos = new long[NB_PHASES];
+      long sum = 0;
+      for (int i = 0; i < OTHER; i++) {
+        jNanos[i] = aPhasesNanos[i];
+        sum += aPhasesNanos[i];
+      }
+      jNanos[OTHER] = Math.max(0, aTotalNanos - sum);
+      jFailed = aFailed;
+    }
+
+    /**
+     * @return the grammar file full path, or the project full path for a build
+     */
+    public String getName() {
+      return jName;
+    }
+
+    /**
+     * @return true for a build record, false for a grammar record
+     */
+    public boolean isBuild() {
+      return jBuild;
+    }
+
+    /**
+     * @return the start time (in milliseconds since the epoch)
+     */
+    public long getStart() {
+      return jStart;
+    }
+
+    /**
+     * @param aPhase - a phase
+     * @return the time spent in the phase (in milliseconds)
+     */
+    public double getMillis(final int aPhase) {
+      return jNanos[aPhase] / 1e6;
+    }
+
+    /**
+     * @return the total time (in milliseconds)
+     */
+    public double getTotalMillis() {
+      long sum = 0;
+      for (final long n : jNanos) {
+        sum += n;
+      }
+      return sum / 1e6;
+    }
+
+    /**
+     * @return true if the compilation could not be run, false otherwise
+     */
+    public boolean isFailed() {
+      return jFailed;
+    }
+  }
+
+  /**
+   * Adds a record, dropping the oldest one if the history is full, and notifies the listeners.
+   * 
+   * @param aRecord - the record
+   */
+  static void add(final Record aRecord) {
+    synchronized (sRecords) {
+      if (sRecords.size() == HISTORY) {
+        sRecords.remove(0);
+      }
+      sRecords.add(aRecord);
+    }
+    for (final Listener listener : sListeners) {
+      listener.recordAdded(aRecord);
+    }
+  }
+
+  /**
+   * @return a copy of the records, the oldest first
+   */
+  public static List<Record> getRecords() {
+    synchronized (sRecords) {
+      return new ArrayList<Record>(sRecords);
+    }
+  }
+
+  /**
+   * Removes all the records.
+   */
+  public static void clear() {
+    synchronized (sRecords) {
+      sRecords.clear();
+    }
+  }
+
+  /**
+   * @param aListener - a listener to add
+   */
+  public static void addListener(final Listener aListener) {
+    sListeners.add(aListener);
+  }
+
+  /**
+   * @param aListener - a listener to remove
+   */
+  public static void removeListener(final Listener aListener) {
+    sListeners.remove(aListener);
+  }
+
+  /**
+   * Writes records in CSV (one line per record, with a header line).
+   * 
+   * @param aRecords - the records
+   * @param aWriter - the writer
+   * @throws IOException if writing fails
+   */
+  public static void writeCsv(final List<Record> aRecords, final Writer aWriter) throws IOException {
+    final StringBuilder sb = new StringBuilder(256);
+    sb.append("name,kind,start,failed,total_ms"); //$NON-NLS-1$
+    for (final String phase : PHASE_NAMES) {
+      sb.append(',').append(phase).append("_ms"); //$NON-NLS-1$
+    }
+    aWriter.write(sb.append('\n').toString());
+    for (final Record rec : aRecords) {
+      sb.setLength(0);
+      sb.append('"').append(rec.jName.replace("\"", "\"\"")).append('"') //$NON-NLS-1$ //$NON-NLS-2$
+        .append(',').append(rec.jBuild ? "build" : "grammar") //$NON-NLS-1$ //$NON-NLS-2$
+        .append(',').append(rec.jStart).append(',').append(rec.jFailed).append(',')
+        .append(fmt(rec.getTotalMillis()));
+      for (int i = 0; i < NB_PHASES; i++) {
+        sb.append(',').append(fmt(rec.getMillis(i)));
+      }
+      aWriter.write(sb.append('\n').toString());
+    }
+  }
+
+  /**
+   * Writes records in JSON (an array of objects).
+   * 
+   * @param aRecords - the records
+   * @param aWriter - the writer
+   * @throws IOException if writing fails
+   */
+  public static void writeJson(final List<Record> aRecords, final Writer aWriter) throws IOException {
+    final StringBuilder sb = new StringBuilder(256);
+    aWriter.write("[\n"); //$NON-NLS-1$
+    for (int r = 0; r < aRecords.size(); r++) {
+      final Record rec = aRecords.get(r);
+      sb.setLength(0);
+      sb.append("  {\"name\": \""); //$NON-NLS-1$
+      for (int i = 0; i < rec.jName.length(); i++) {
+        final char c = rec.jName.charAt(i);
+        if (c == '"' || c == '\\') {
+          sb.append('\\').append(c);
+        }
+        else if (c < 0x20) {
+          sb.append(String.format("\\u%04x", Integer.valueOf(c))); //$NON-NLS-1$
+        }
+        else {
+          sb.append(c);
+        }
+      }
+      sb.append("\", \"kind\": \"").append(rec.jBuild ? "build" : "grammar") //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        .append("\", \"start\": ").append(rec.jStart) //$NON-NLS-1$
+        .append(", \"failed\": ").append(rec.jFailed) //$NON-NLS-1$
+        .append(", \"total_ms\": ").append(fmt(rec.getTotalMillis())) //$NON-NLS-1$
+        .append(", \"phases_ms\": {"); //$NON-NLS-1$
+      for (int i = 0; i < NB_PHASES; i++) {
+        sb.append(i == 0 ? "\"" : ", \"").append(PHASE_NAMES[i]).append("\": ").append(fmt(rec.getMillis(i))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+      }
+      sb.append(r == aRecords.size() - 1 ? "}}\n" : "}},\n"); //$NON-NLS-1$ //$NON-NLS-2$
+      aWriter.write(sb.toString());
+    }
+    aWriter.write("]\n"); //$NON-NLS-1$
+  }
+
+  /**
+   * @param aMillis - a time in milliseconds
+   * @return the time with 3 decimals (locale independent)
+   */
+  static String fmt(final double aMillis) {
+    return String.format(Locale.ROOT, "%.3f", Double.valueOf(aMillis)); //$NON-NLS-1$
+  }
+
+}
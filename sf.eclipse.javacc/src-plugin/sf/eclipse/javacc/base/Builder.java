@@ -2,9 +2,11 @@ package sf.eclipse.javacc.base;
 
 import static sf.eclipse.javacc.base.IConstants.*;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
-import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceDelta;
@@ -15,6 +17,9 @@ import org.eclipse.core.resources.ProjectScope;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.ProgressMonitorWrapper;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
@@ -47,6 +52,15 @@ public class Builder extends IncrementalProjectBuilder implements IResourceDelta
   /** The project's JavaCC preferences */
   private IEclipsePreferences jPrefs        = null;
 
+  /** The number of worker threads for the build (1 for a serial build) */
+  private int                 jWorkers      = 1;
+
+  /** The files to compile collected by the build */
+  private List<IFile>         jToCompile    = null;
+
+  /** The progress monitor of the build, also canceled when an auto build is interrupted */
+  private IProgressMonitor    jMonitor      = null;
+
   //  /** Standard constructor */
   //  public Builder() {
   //  }
@@ -74,18 +88,44 @@ public class Builder extends IncrementalProjectBuilder implements IResourceDelta
   @Override
   protected IProject[] build(final int aKind, @SuppressWarnings({
       "rawtypes", "unused" }) final Map aArgs, final IProgressMonitor aMonitor) throws CoreException {
-    if (aKind == IncrementalProjectBuilder.FULL_BUILD) {
-      fullBuild(aMonitor);
-    }
-    else if (aKind == IncrementalProjectBuilder.INCREMENTAL_BUILD
-             || aKind == IncrementalProjectBuilder.AUTO_BUILD) {
-      incrementalBuild(aMonitor);
+    jWorkers = getBuildWorkers();
+    jToCompile = new ArrayList<IFile>();
+    // an auto build interrupted by a workspace modification (like a new save) is stopped as if canceled, so
+    //  the build of the modification starts right away
+    jMonitor = new ProgressMonitorWrapper(aMonitor == null ? new NullProgressMonitor() : aMonitor) {
+
+      /** {@inheritDoc} */
+      @Override
+      public boolean isCanceled() {
+        return super.isCanceled() || isInterrupted();
+      }
+    };
+    try {
+      if (aKind == IncrementalProjectBuilder.FULL_BUILD) {
+        fullBuild(jMonitor);
+      }
+      else if (aKind == IncrementalProjectBuilder.INCREMENTAL_BUILD
+               || aKind == IncrementalProjectBuilder.AUTO_BUILD) {
+        incrementalBuild(jMonitor);
+      }
+      else if (aKind == IncrementalProjectBuilder.CLEAN_BUILD) {
+        clean(jMonitor);
+      }
+      // compile the collected files (this refreshes only the generated files)
+      final List<IFile> files = removeChained(jToCompile);
+      compiler.compileResources(files, jWorkers, jMonitor);
+    } finally {
+      jToCompile = null;
+      if (jMonitor.isCanceled()) {
+        // the grammars not compiled must be found by the next build, which so will be a full one (the
+        //  grammars which are up to date are skipped)
+        forgetLastBuiltState();
+      }
+      jMonitor = null;
     }
-    else if (aKind == IncrementalProjectBuilder.CLEAN_BUILD) {
-      clean(aMonitor);
+    if (aMonitor != null && aMonitor.isCanceled()) {
+      throw new OperationCanceledException();
     }
-    // refresh the whole project
-    getProject().refreshLocal(IResource.DEPTH_INFINITE, aMonitor);
     return null;
   }
 
@@ -96,7 +136,10 @@ public class Builder extends IncrementalProjectBuilder implements IResourceDelta
    *          desired
    * @exception CoreException if this build fails
    */
-  private void fullBuild(@SuppressWarnings("unused") final IProgressMonitor aMonitor) throws CoreException {
+  private void fullBuild(final IProgressMonitor aMonitor) throws CoreException {
+    if (aMonitor != null) {
+      aMonitor.subTask("Collecting the JavaCC grammars to compile"); //$NON-NLS-1$
+    }
     getProject().accept(this);
   }
 
@@ -125,33 +168,41 @@ public class Builder extends IncrementalProjectBuilder implements IResourceDelta
   @Override
   protected void clean(final IProgressMonitor aMonitor) throws CoreException {
     super.clean(aMonitor);
-    final IResource[] members = getProject().members();
-    clean(members, aMonitor);
+    clean(getProject(), aMonitor);
   }
 
   /**
-   * Deletes recursively generated and still derived files. A modified generated file, marked as not derived,
-   * shall not be deleted.
+   * Deletes the generated and still derived files found in the project generated files registry (see
+   * {@link GrammarGraph}). A modified generated file, marked as not derived, shall not be deleted.
    * 
-   * @param aMembers - the resources to delete
+   * @param aProject - the project
    * @param aMonitor - a progress monitor, or <code>null</code> if progress reporting and cancellation are not
    *          desired
    * @exception CoreException if this build fails
    */
-  private void clean(final IResource[] aMembers, final IProgressMonitor aMonitor) throws CoreException {
+  private void clean(final IProject aProject, final IProgressMonitor aMonitor) throws CoreException {
     final int updFlag = getKeepDelFilesInHistory() ? IResource.KEEP_HISTORY : 0;
-    for (final IResource res : aMembers) {
-      if (res.getType() == IResource.FOLDER) {
-        clean(((IFolder) res).members(), aMonitor);
+    final GrammarGraph graph = GrammarGraph.get(aProject);
+    final List<String> sources = graph.getAllSources();
+    for (final String gen : graph.getAllGenerated()) {
+      final IFile file = aProject.getFile(gen);
+      if (!file.exists()) {
+        graph.forget(gen);
       }
-      else if (res.isDerived() && res.getPersistentProperty(GEN_FILE_QN) != null) {
-        res.delete(updFlag, aMonitor);
+      else if (file.isDerived()) {
+        graph.forget(gen);
+        file.delete(updFlag, aMonitor);
       }
-      else {
-        // normally a .jj/.jjt/.jtb file
-        res.deleteMarkers(JJ_MARKER, false, IResource.DEPTH_ZERO);
+    }
+    graph.save();
+    // force the next build to recompile the grammars (normally .jj/.jjt/.jtb files)
+    for (final String src : sources) {
+      final IFile file = aProject.getFile(src);
+      if (file.exists()) {
+        file.setPersistentProperty(BUILD_FP_QN, null);
       }
     }
+    aProject.deleteMarkers(JJ_MARKER, false, IResource.DEPTH_INFINITE);
   }
 
   /** {@inheritDoc} */
@@ -166,13 +217,17 @@ public class Builder extends IncrementalProjectBuilder implements IResourceDelta
     if (aRes == null) {
       return false;
     }
+    if (jMonitor != null && jMonitor.isCanceled()) {
+      throw new OperationCanceledException();
+    }
     final String ext = aRes.getFileExtension();
     // test not a java file first as it is the most frequent case
     final boolean okToCompile = !"java".equals(ext) //$NON-NLS-1$
                                 && ("jj".equals(ext) || "jjt".equals(ext) || "jtb".equals(ext)) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
                                 && jJavaProject.isOnClasspath(aRes);
-    if (okToCompile) {
-      compiler.compileResource(aRes, false);
+    // skip the grammars unchanged (with unchanged options) since their last compilation
+    if (okToCompile && aRes instanceof IFile && !compiler.isUpToDate((IFile) aRes)) {
+      jToCompile.add((IFile) aRes);
     }
     // this prevents traversing output directories
     if (jOutputFolder == null) {
@@ -184,6 +239,32 @@ public class Builder extends IncrementalProjectBuilder implements IResourceDelta
     return !isOut;
   }
 
+  /**
+   * Removes from a list of grammars to compile the ones generated from another grammar of the list, as they
+   * will be compiled (after having been regenerated) with it.
+   * 
+   * @param aFiles - the grammars to compile
+   * @return the grammars to compile
+   */
+  private List<IFile> removeChained(final List<IFile> aFiles) {
+    final GrammarGraph graph = GrammarGraph.get(getProject());
+    final List<IFile> files = new ArrayList<IFile>(aFiles.size());
+    for (final IFile file : aFiles) {
+      final String path = file.getProjectRelativePath().toString();
+      boolean chained = false;
+      for (final IFile other : aFiles) {
+        if (other != file && graph.isGeneratedFrom(path, other.getProjectRelativePath().toString())) {
+          chained = true;
+          break;
+        }
+      }
+      if (!chained) {
+        files.add(file);
+      }
+    }
+    return files;
+  }
+
   /**
    * Retrieves the "keep deleted files from history" flag (from the preferences).
    * 
@@ -199,4 +280,22 @@ public class Builder extends IncrementalProjectBuilder implements IResourceDelta
     return "true".equals(flag); //$NON-NLS-1$
   }
 
+  /**
+   * Retrieves the number of worker threads for the build (from the preferences).
+   * 
+   * @return the number of worker threads (at least 1)
+   */
+  int getBuildWorkers() {
+    String num = DEF_BUILD_WORKERS;
+    try {
+      num = jPrefs.get(BUILD_WORKERS, DEF_BUILD_WORKERS);
+      return Math.max(1, Integer.parseInt(num.trim()));
+    } catch (final NumberFormatException e) {
+      AbstractActivator.logErr("Invalid number of build workers : " + num); //$NON-NLS-1$
+    } catch (final Exception e) {
+      AbstractActivator.logBug(e);
+    }
+    return 1;
+  }
+
 }
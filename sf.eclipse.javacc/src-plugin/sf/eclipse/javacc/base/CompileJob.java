@@ -0,0 +1,167 @@
+package sf.eclipse.javacc.base;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * A compilation of a .jj, .jjt or .jtb file, and of the .jj file it may generate.<br>
+ * A deferred job does not modify the workspace while it runs, so it can be run outside the build thread :
+ * its console output is buffered and the generated files are recorded, and the build thread applies them
+ * afterwards (see {@link Compiler#compileResources(List, int, IProgressMonitor)}).
+ * 
+ * @since 1.5.34
+ */
+class CompileJob {
+
+  /** The grammar file */
+  final IFile              jFile;
+
+  /** The console to print on */
+  final IConsole           jConsole;
+
+  /** True if the workspace modifications must be deferred to the build thread, false otherwise */
+  final boolean            jDeferred;
+
+  /** The directories where the files may be generated, or null if not known (then the whole project) */
+  final String[]           jOutDirs;
+
+  /** The generated .jj files which have been compiled in turn (to be reported on) */
+  final List<IFile>        jChained;
+
+  /**
+   * The generated files (to be marked) : pairs of the path (relative to the project) of the grammar file
+   * they are generated from and of their path (relative to the project)
+   */
+  final List<String[]>     jGenerated;
+
+  /** The build fingerprints of the compiled files (to be stored) */
+  final Map<IFile, String> jFingerprints;
+
+  /** The start time (in milliseconds since the epoch) */
+  final long               jStart;
+
+  /** The time spent in each build phase (in nanoseconds, see {@link BuildMetrics}) */
+  final long[]             jPhases;
+
+  /** The time spent running the job (in milliseconds) */
+  long                     jMillis;
+
+  /** The time spent running the job and applying its results (in nanoseconds) */
+  long                     jNanos;
+
+  /** True if the job (or the compilation of a generated .jj file) could not be run, false otherwise */
+  boolean                  jFailed;
+
+  /** The progress monitor of the build (checked to stop the tools), or null if none */
+  IProgressMonitor         jMonitor;
+
+  /**
+   * Standard constructor.
+   * 
+   * @param aFile - the grammar file
+   * @param aConsole - the console to print on
+   * @param aDeferred - true if the workspace modifications must be deferred to the build thread
+   * @param aOutDirs - the directories where the files may be generated, or null if not known
+   */
+  CompileJob(final IFile aFile, final IConsole aConsole, final boolean aDeferred, final String[] aOutDirs) {
+    jFile = aFile;
+    jConsole = aConsole;
+    jDeferred = aDeferred;
+    jOutDirs = aOutDirs;
+    jChained = new ArrayList<IFile>(1);
+    jGenerated = new ArrayList<String[]>(aDeferred ? 16 : 0);
+    jFingerprints = new LinkedHashMap<IFile, String>(2);
+    jStart = System.currentTimeMillis();
+    jPhases = new long[BuildMetrics.NB_PHASES];
+  }
+
+  /**
+   * Constructor for the compilation of a generated .jj file, sharing the parent job console, records and
+   * timings.
+   * 
+   * @param aParent - the job which generated the .jj file
+   * @param aFile - the generated .jj file
+   */
+  CompileJob(final CompileJob aParent, final IFile aFile) {
+    jFile = aFile;
+    jConsole = aParent.jConsole;
+    jDeferred = aParent.jDeferred;
+    jOutDirs = aParent.jOutDirs;
+    jChained = aParent.jChained;
+    jGenerated = aParent.jGenerated;
+    jFingerprints = aParent.jFingerprints;
+    jStart = aParent.jStart;
+    jPhases = aParent.jPhases;
+    jMonitor = aParent.jMonitor;
+    jChained.add(aFile);
+  }
+
+  /**
+   * Tells whether two jobs may write in the same directories, and so must not be run concurrently.
+   * 
+   * @param aOther - the other job
+   * @return true if the jobs overlap, false otherwise
+   */
+  boolean overlaps(final CompileJob aOther) {
+    if (jOutDirs == null || aOther.jOutDirs == null) {
+      return true;
+    }
+    for (final String d1 : jOutDirs) {
+      for (final String d2 : aOther.jOutDirs) {
+        if (isUnder(d1, d2) || isUnder(d2, d1)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param aDir - a directory
+   * @param aRoot - another directory
+   * @return true if the directory is the other directory or is under it, false otherwise
+   */
+  static boolean isUnder(final String aDir, final String aRoot) {
+    return aDir.equals(aRoot) || aDir.startsWith(aRoot.endsWith(File.separator) ? aRoot : aRoot + File.separator);
+  }
+
+  /**
+   * Groups jobs so that overlapping jobs end in the same group ; the groups can then be run concurrently,
+   * the jobs of a group being run in sequence. The jobs with unknown directories are not grouped.
+   * 
+   * @param aJobs - the jobs
+   * @param aExclusive - the list to fill with the jobs with unknown directories (to be run alone)
+   * @return the groups
+   */
+  static List<List<CompileJob>> group(final List<CompileJob> aJobs, final List<CompileJob> aExclusive) {
+    final List<List<CompileJob>> groups = new ArrayList<List<CompileJob>>(aJobs.size());
+    for (final CompileJob job : aJobs) {
+      if (job.jOutDirs == null) {
+        aExclusive.add(job);
+        continue;
+      }
+      // merge all the groups the job overlaps with into a new group
+      final List<CompileJob> merged = new ArrayList<CompileJob>(2);
+      for (int i = groups.size() - 1; i >= 0; i--) {
+        final List<CompileJob> group = groups.get(i);
+        for (final CompileJob other : group) {
+          if (job.overlaps(other)) {
+            merged.addAll(0, group);
+            groups.remove(i);
+            break;
+          }
+        }
+      }
+      merged.add(job);
+      groups.add(merged);
+    }
+    return groups;
+  }
+
+}
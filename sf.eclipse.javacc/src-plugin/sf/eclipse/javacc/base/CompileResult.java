@@ -0,0 +1,86 @@
+package sf.eclipse.javacc.base;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.core.resources.IFile;
+
+/**
+ * The result of the compilation of a .jj, .jjt or .jtb file by a build (see
+ * {@link Compiler#compileProject(boolean, int, org.eclipse.core.runtime.IProgressMonitor)}) : the time spent,
+ * the generated .jj files which have been compiled in turn and the generated files.
+ * 
+ * @since 1.5.34
+ */
+public class CompileResult {
+
+  /** The grammar file */
+  private final IFile        jFile;
+
+  /** The generated .jj files which have been compiled in turn */
+  private final List<IFile>  jChained;
+
+  /** The paths (relative to the project) of the generated files */
+  private final List<String> jGenerated;
+
+  /** The time spent (in milliseconds) */
+  private final long         jMillis;
+
+  /** True if the compilation could not be run, false otherwise */
+  private final boolean      jFailed;
+
+  /**
+   * Constructor from a job which has been run.
+   * 
+   * @param aJob - the job
+   */
+  CompileResult(final CompileJob aJob) {
+    jFile = aJob.jFile;
+    jChained = Collections.unmodifiableList(new ArrayList<IFile>(aJob.jChained));
+    final List<String> generated = new ArrayList<String>(aJob.jGenerated.size());
+    for (final String[] gen : aJob.jGenerated) {
+      generated.add(gen[1]);
+    }
+    jGenerated = Collections.unmodifiableList(generated);
+    jMillis = aJob.jMillis;
+    jFailed = aJob.jFailed;
+  }
+
+  /**
+   * @return the grammar file
+   */
+  public IFile getFile() {
+    return jFile;
+  }
+
+  /**
+   * @return the generated .jj files which have been compiled in turn
+   */
+  public List<IFile> getChained() {
+    return jChained;
+  }
+
+  /**
+   * @return the paths (relative to the project) of the generated files
+   */
+  public List<String> getGenerated() {
+    return jGenerated;
+  }
+
+  /**
+   * @return the time spent (in milliseconds)
+   */
+  public long getMillis() {
+    return jMillis;
+  }
+
+  /**
+   * @return true if the compilation could not be run (the tool jar was not found or an exception occurred),
+   *         false otherwise ; the problems reported by the tool are not taken in account
+   */
+  public boolean isFailed() {
+    return jFailed;
+  }
+
+}
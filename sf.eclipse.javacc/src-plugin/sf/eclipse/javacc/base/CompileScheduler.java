@@ -0,0 +1,239 @@
+package sf.eclipse.javacc.base;
+
+import static sf.eclipse.javacc.base.IConstants.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ProjectScope;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * The scheduler of the explicit grammar compilations (the compile command) : it keeps one pending request
+ * per grammar, a new request for a grammar replacing the pending one and restarting its quiet period, and
+ * compiles the grammars whose quiet period has elapsed in a background job, the grammar of the active editor
+ * first.<br>
+ * An explicit compilation so no longer touches the grammar to trigger the builder (which compiled it a
+ * second time). The builder compiles synchronously (the java builder needs the generated files), but it
+ * drops the pending requests of the grammars it compiles and it also gives the priority to the grammar of
+ * the active editor (see {@link #prioritize(List)}).<br>
+ * Each project batch is compiled in a workspace operation on the project, so it does not run concurrently
+ * with a build of the project.
+ * 
+ * @since 1.5.34
+ */
+public class CompileScheduler extends Job {
+
+  /** The scheduler */
+  private static final CompileScheduler sScheduler = new CompileScheduler();
+
+  /** The pending requests : key = grammar, val = time (System.nanoTime()) after which it can be compiled */
+  private final Map<IFile, Long>        jPending   = new LinkedHashMap<IFile, Long>();
+
+  /** The grammar of the active editor, or null if none */
+  private volatile IFile                jActive    = null;
+
+  /**
+   * Standard constructor.
+   */
+  private CompileScheduler() {
+    super("JavaCC compile scheduler"); //$NON-NLS-1$
+    setSystem(false);
+    setPriority(Job.BUILD);
+  }
+
+  /**
+   * Requests the compilation of a grammar, replacing its pending request if any. The grammar is compiled
+   * after the quiet period of its project, if no other request arrives in the meantime.
+   * 
+   * @param aFile - the grammar file
+   */
+  public static void request(final IFile aFile) {
+    final long delay = getQuietPeriod(aFile.getProject());
+    synchronized (sScheduler.jPending) {
+      sScheduler.jPending.remove(aFile);
+      sScheduler.jPending.put(aFile, Long.valueOf(System.nanoTime() + delay * 1000000L));
+    }
+    sScheduler.schedule(delay);
+  }
+
+  /**
+   * Drops the pending requests of grammars about to be compiled by other means (the builder).
+   * 
+   * @param aFiles - the grammar files
+   */
+  static void forget(final Collection<IFile> aFiles) {
+    synchronized (sScheduler.jPending) {
+      if (!sScheduler.jPending.isEmpty()) {
+        sScheduler.jPending.keySet().removeAll(aFiles);
+      }
+    }
+  }
+
+  /**
+   * Records the grammar of the active editor (called when a grammar editor gets the focus).
+   * 
+   * @param aFile - the grammar file
+   */
+  public static void setActiveGrammar(final IFile aFile) {
+    sScheduler.jActive = aFile;
+  }
+
+  /**
+   * Forgets the grammar of the active editor if it is a given one (called when a grammar editor is closed).
+   * 
+   * @param aFile - the grammar file
+   */
+  public static void clearActiveGrammar(final IFile aFile) {
+    if (aFile != null && aFile.equals(sScheduler.jActive)) {
+      sScheduler.jActive = null;
+    }
+  }
+
+  /**
+   * Moves the grammar of the active editor to the head of a list of grammars to compile.
+   * 
+   * @param aFiles - the grammars to compile
+   * @return the same grammars, the active one first
+   */
+  static List<IFile> prioritize(final List<IFile> aFiles) {
+    final IFile active = sScheduler.jActive;
+    if (active == null || aFiles.size() < 2 || !aFiles.contains(active) || aFiles.get(0).equals(active)) {
+      return aFiles;
+    }
+    final List<IFile> files = new ArrayList<IFile>(aFiles.size());
+    files.add(active);
+    for (final IFile file : aFiles) {
+      if (!file.equals(active)) {
+        files.add(file);
+      }
+    }
+    return files;
+  }
+
+  /**
+   * Cancels the pending requests (called on plugin stop).
+   */
+  static void stop() {
+    synchronized (sScheduler.jPending) {
+      sScheduler.jPending.clear();
+    }
+    sScheduler.cancel();
+  }
+
+  /**
+   * Retrieves the quiet period of the explicit compilations of a project (from the preferences).
+   * 
+   * @param aProject - the project
+   * @return the quiet period in milliseconds
+   */
+  static long getQuietPeriod(final IProject aProject) {
+    String num = DEF_COMPILE_DELAY;
+    try {
+      num = new ProjectScope(aProject).getNode(PLUGIN_QN).get(COMPILE_DELAY, DEF_COMPILE_DELAY);
+      return Math.max(0, Long.parseLong(num.trim()));
+    } catch (final NumberFormatException e) {
+      AbstractActivator.logErr("Invalid compilation quiet period : " + num); //$NON-NLS-1$
+    } catch (final Exception e) {
+      AbstractActivator.logBug(e);
+    }
+    return Long.parseLong(DEF_COMPILE_DELAY);
+  }
+
+  /**
+   * Compiles the grammars whose quiet period has elapsed, grouped by project, the grammar of the active
+   * editor first ; reschedules itself for the others.
+   * <p>
+   * {@inheritDoc}
+   */
+  @Override
+  protected IStatus run(final IProgressMonitor aMonitor) {
+    final long now = System.nanoTime();
+    final Map<IProject, List<IFile>> batches = new LinkedHashMap<IProject, List<IFile>>(2);
+    long next = Long.MAX_VALUE;
+    synchronized (jPending) {
+      final List<IFile> due = new ArrayList<IFile>(jPending.size());
+      for (final Iterator<Map.Entry<IFile, Long>> it = jPending.entrySet().iterator(); it.hasNext();) {
+        final Map.Entry<IFile, Long> entry = it.next();
+        final long time = entry.getValue().longValue();
+        if (time - now <= 0) {
+          due.add(entry.getKey());
+          it.remove();
+        }
+        else {
+          next = Math.min(next, time - now);
+        }
+      }
+      for (final IFile file : prioritize(due)) {
+        List<IFile> batch = batches.get(file.getProject());
+        if (batch == null) {
+          batch = new ArrayList<IFile>(due.size());
+          batches.put(file.getProject(), batch);
+        }
+        batch.add(file);
+      }
+    }
+    final SubMonitor progress = SubMonitor.convert(aMonitor, batches.size());
+    for (final Map.Entry<IProject, List<IFile>> batch : batches.entrySet()) {
+      if (progress.isCanceled()) {
+        // the pending requests are dropped, as for a canceled build
+        return Status.CANCEL_STATUS;
+      }
+      compile(batch.getKey(), batch.getValue(), progress.newChild(1));
+    }
+    if (next != Long.MAX_VALUE) {
+      schedule(Math.max(1, next / 1000000L));
+    }
+    return Status.OK_STATUS;
+  }
+
+  /**
+   * Compiles grammars of a project in a workspace operation on the project.
+   * 
+   * @param aProject - the project
+   * @param aFiles - the grammar files
+   * @param aMonitor - a progress monitor
+   */
+  private static void compile(final IProject aProject, final List<IFile> aFiles, final IProgressMonitor aMonitor) {
+    if (!aProject.isAccessible()) {
+      return;
+    }
+    final Compiler compiler = new Compiler(aProject);
+    try {
+      aProject.getWorkspace().run(new IWorkspaceRunnable() {
+
+        /** {@inheritDoc} */
+        @Override
+        public void run(final IProgressMonitor aPM) throws CoreException {
+          final SubMonitor progress = SubMonitor.convert(aPM, aFiles.size());
+          boolean first = true;
+          for (final IFile file : aFiles) {
+            if (progress.isCanceled()) {
+              return;
+            }
+            progress.subTask(file.getFullPath().toString());
+            // clear the console only once ; canceling the job stops the running tool
+            compiler.compileResource(file, first, progress.newChild(1));
+            first = false;
+          }
+        }
+      }, aProject, IWorkspace.AVOID_UPDATE, aMonitor);
+    } catch (final CoreException e) {
+      AbstractActivator.logBug(e, aProject.getName());
+    }
+  }
+
+}
@@ -1,38 +1,68 @@
 package sf.eclipse.javacc.base;
 
 import static sf.eclipse.javacc.base.IConstants.*;
-import static sf.eclipse.javacc.base.JarLauncher.sJavaCmd;
+import static sf.eclipse.javacc.tool.JarLauncher.sJavaCmd;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
-import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
 import java.net.URL;
-import java.security.DigestOutputStream;
+import java.nio.charset.Charset;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceVisitor;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
 import org.eclipse.core.resources.ProjectScope;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.FileLocator;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
 import org.eclipse.core.variables.VariablesPlugin;
 import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+
+import sf.eclipse.javacc.tool.FileUtils;
+import sf.eclipse.javacc.tool.GenFileAlterer;
+import sf.eclipse.javacc.tool.GrammarTool;
+import sf.eclipse.javacc.tool.JarLauncher;
+import sf.eclipse.javacc.tool.JvmProfile;
+import sf.eclipse.javacc.tool.OutputSink;
+import sf.eclipse.javacc.tool.Problem;
+import sf.eclipse.javacc.tool.ProblemParser;
+import sf.eclipse.javacc.tool.ToolResult;
+import sf.eclipse.javacc.tool.ToolWatchdog;
 
 /**
  * Compiler for .jj, .jjt and .jtb files.<br>
@@ -76,46 +106,11 @@ public class Compiler {
   /** A flag to tell whether to suppress warnings in the derived files (from the preferences) */
   private boolean                jSuppressWarnings = false;
 
-  /** A buffer */
-  private final StringBuilder    jSb               = new StringBuilder(10240);
-
   /** Compile level counter (for clearing or not the Console) */
   private int                    jCLC              = -1;
 
-  /**
-   * Regular expression to capture the class declaration, including potential @SuppressWarnings annotations.<br>
-   * (?:@SuppressWarnings\\(\\\"(?:all|serial|unused)\\\"\\)..?)? : non capturing group, once or not at all.<br>
-   * ((?:public )?(?:final )?(?:class|interface|enum)) : capturing group $1.<br>
-   * This group $1 will by prefixed by a new line containing <code>@SuppressWarnings(\"all\")</code> and will
-   * replace the whole string (group $0).
-   */
-  protected final static String  sClassDeclRegExpr = "^(?:@SuppressWarnings\\(\\\"(?:all|serial|unused)\\\"\\).?.?)?" //$NON-NLS-1$
-                                                     + "((?:public )?(?:final )?(?:class|interface|enum))"; //NON-NLS-1$ //$NON-NLS-1$
-  /** Corresponding pattern */
-  protected final static Pattern sClassDeclPatt    = Pattern.compile(sClassDeclRegExpr, Pattern.MULTILINE
-                                                                                        | Pattern.DOTALL);
-  /** Replacement string */
-  protected final static String  sReplStr          = "@SuppressWarnings(\"all\")" + LS + "$1";             //$NON-NLS-1$ //$NON-NLS-2$
-
-  /** Array of hexadecimal characters */
-  protected final static char[]  HEX_DIGITS        = new char[] {
-      '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
-
-  /**
-   * The algorithm used by JavaCC to compute the checksum.<br>
-   * Duplicated from JavaCC 5.0 org.javacc.parser.OutputFile constant
-   */
-  protected static final String  MD5_ALGO          = "MD5";                                                //$NON-NLS-1$
-  /**
-   * Beginning of the checksum line generated by JavaCC.<br>
-   * Duplicated from JavaCC 5.0 org.javacc.parser.OutputFile.MD5_LINE_PART_1
-   */
-  protected static final String  MD5_LINE_PART_1   = "/* JavaCC - OriginalChecksum=";                      //$NON-NLS-1$
-  /**
-   * End of the checksum line generated by JavaCC.<br>
-   * Duplicated from JavaCC 5.0 org.javacc.parser.OutputFile.MD5_LINE_PART_2
-   */
-  protected static final String  MD5_LINE_PART_2   = " (do not edit this line) */";                        //$NON-NLS-1$
+  /** The algorithm used to compute the build fingerprints */
+  protected static final String  FP_ALGO           = "SHA-256";                                            //$NON-NLS-1$
 
   /**
    * Instantiated by the the compile commands.
@@ -144,7 +139,8 @@ public class Compiler {
   }
 
   /**
-   * Compiles a jj/jjt/jtb resource.
+   * Requests the compilation of a jj/jjt/jtb resource to the {@link CompileScheduler}, which compiles it
+   * after a quiet period, coalescing repeated requests.
    * 
    * @param aRes - the resource
    */
@@ -152,41 +148,34 @@ public class Compiler {
     if (aRes == null || !(aRes instanceof IFile)) {
       return;
     }
-    setProjectInfo(aRes);
     try {
-      // touch the file
-      aRes.touch(null);
-      // explicitly compile the file if the project has a nature, if the file is on the classpath and if
-      //  the project is not in auto build mode (if the project is in auto build mode, touching it will
-      //  trigger the build(...) method
-      if (!("true").equals(jPrefs.get(NATURE, "false")) //$NON-NLS-1$ //$NON-NLS-2$
-          || !isJJFileAndOnClasspath(aRes) || !aRes.getWorkspace().isAutoBuilding()) {
-        compileResource(aRes, true);
-      }
-      // refresh the whole project to trigger compilation of generated .jj and .java files
-      aRes.getProject().refreshLocal(IResource.DEPTH_INFINITE, null);
+      // an explicit compilation is never skipped as up to date
+      aRes.setPersistentProperty(BUILD_FP_QN, null);
     } catch (final CoreException e) {
       AbstractActivator.logBug(e);
     }
-    return;
+    // the file is no longer touched, as the builder would compile it a second time
+    CompileScheduler.request((IFile) aRes);
   }
 
   /**
    * Compiles a .jj, .jjt or .jtb file given its {@link IResource}.<br>
-   * Called by {@link Builder#visit(IResource)} and {@link #jj_compile(IResource)} and recursively.
+   * Called by {@link Builder#visit(IResource)}, the {@link CompileScheduler} and recursively.
    * 
    * @param aRes - the IResource to compile
    * @param aClearConsole - true to clear the console, false otherwise
+   * @param aMonitor - a progress monitor, or <code>null</code> if cancellation is not desired (canceling it
+   *          stops the running tool)
    * @exception CoreException if this compile fails
    */
-  void compileResource(final IResource aRes, final boolean aClearConsole) throws CoreException {
+  void compileResource(final IResource aRes, final boolean aClearConsole,
+                       final IProgressMonitor aMonitor) throws CoreException {
     if (!(aRes instanceof IFile) || !aRes.exists()) {
       return;
     }
 
-    // the file, the project and the directory
+    // the file
     final IFile file = (IFile) aRes;
-    final String projectDir = jProject.getLocation().toOSString();
 
     // delete problem markers
     try {
@@ -195,13 +184,6 @@ public class Compiler {
       AbstractActivator.logBug(e);
     }
 
-    // JavaCC / JTB are launched in the directory where the file is
-    final String resPath = file.getLocation().toString();
-    final String resName = resPath.substring(resPath.lastIndexOf("/") + 1); //$NON-NLS-1$
-    final String resDir = resPath.substring(0, resPath.lastIndexOf("/")); //$NON-NLS-1$
-    final String resExt = file.getFullPath().getFileExtension();
-    final String resRelPath = resPath.substring(projectDir.length());
-
     final IConsole console = AbstractActivator.getDefault().getConsole();
     // have seen the case of null, but don't know why null can occur
     // one case is when launching Eclipse with a JJEditor on a grammar with problems
@@ -219,6 +201,272 @@ public class Compiler {
       }
     }
 
+    final CompileJob job = new CompileJob(file, console, false, getOutputDirs(file));
+    job.jMonitor = aMonitor;
+    final long start = System.nanoTime();
+    compile(job);
+    job.jNanos = System.nanoTime() - start;
+    recordMetrics(job);
+    jCLC--;
+  }
+
+  /**
+   * Compiles a list of .jj, .jjt or .jtb files, on a pool of worker threads if more than one worker is allowed.<br>
+   * The tools are run (concurrently for the files which write in distinct directories, the in-process runs each with
+   * its own tool class loader) with their console output buffered ; then the generated files are refreshed in one
+   * workspace operation, and the outputs are displayed, the markers created and the generated files marked, in the
+   * files order, by the calling (build) thread.<br>
+   * Called by {@link Builder#build(int, java.util.Map, IProgressMonitor)} and
+   * {@link #compileProject(boolean, int, IProgressMonitor)}.
+   * 
+   * @param aFiles - the files to compile
+   * @param aWorkers - the maximum number of worker threads
+   * @param aMonitor - a progress monitor, or <code>null</code> if progress reporting and cancellation are not
+   *          desired
+   * @return the results of the compilations, in the files order
+   * @exception CoreException if the final refresh fails
+   */
+  List<CompileResult> compileResources(final List<IFile> aFiles, final int aWorkers,
+                                       final IProgressMonitor aMonitor) throws CoreException {
+    final IConsole console = AbstractActivator.getDefault().getConsole();
+    Assert.isNotNull(console);
+    final long buildStart = System.nanoTime();
+    final long buildStartMillis = System.currentTimeMillis();
+    // the phases done once for all the files
+    final long[] buildPhases = new long[BuildMetrics.NB_PHASES];
+
+    // the build supersedes the pending explicit compilations of these files
+    CompileScheduler.forget(aFiles);
+
+    // prepare the jobs in the build thread, the grammar of the active editor first
+    final List<CompileJob> jobs = new ArrayList<CompileJob>(aFiles.size());
+    for (final IFile file : CompileScheduler.prioritize(aFiles)) {
+      if (!file.exists()) {
+        continue;
+      }
+      try {
+        file.deleteMarkers(IMarker.PROBLEM, false, IResource.DEPTH_ZERO);
+      } catch (final CoreException e) {
+        AbstractActivator.logBug(e);
+      }
+      final CompileJob job = new CompileJob(file, new BufferedConsole(console), true, getOutputDirs(file));
+      job.jMonitor = aMonitor;
+      jobs.add(job);
+    }
+    // the progress is reported per grammar, from the threads running the jobs
+    final IProgressMonitor progress = SubMonitor.convert(aMonitor, "Compiling JavaCC grammars", jobs.size()); //$NON-NLS-1$
+    final List<CompileJob> exclusive = new ArrayList<CompileJob>();
+    final List<List<CompileJob>> groups;
+    if (aWorkers <= 1) {
+      // run all the jobs in sequence in the build thread
+      groups = new ArrayList<List<CompileJob>>(0);
+      exclusive.addAll(jobs);
+    }
+    else {
+      groups = CompileJob.group(jobs, exclusive);
+    }
+
+    // run the independent groups concurrently
+    if (!groups.isEmpty()) {
+      final ExecutorService pool = Executors.newFixedThreadPool(Math.min(aWorkers, groups.size()));
+      final List<Future<?>> futures = new ArrayList<Future<?>>(groups.size());
+      for (final List<CompileJob> group : groups) {
+        futures.add(pool.submit(new Runnable() {
+
+          /** {@inheritDoc} */
+          @Override
+          public void run() {
+            for (final CompileJob job : group) {
+              if (aMonitor != null && aMonitor.isCanceled()) {
+                return;
+              }
+              safeCompile(job, progress);
+            }
+          }
+        }));
+      }
+      pool.shutdown();
+      for (final Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        } catch (final ExecutionException e) {
+          AbstractActivator.logBug(e.getCause());
+        }
+      }
+    }
+    // run alone the jobs for which the output directories are not known (or all for a serial build)
+    for (final CompileJob job : exclusive) {
+      if (aMonitor != null && aMonitor.isCanceled()) {
+        break;
+      }
+      safeCompile(job, progress);
+    }
+
+    // apply the results in the build thread
+    final List<CompileResult> results = new ArrayList<CompileResult>(jobs.size());
+    final List<String> generated = new ArrayList<String>();
+    for (final CompileJob job : jobs) {
+      for (final String[] gen : job.jGenerated) {
+        generated.add(gen[1]);
+      }
+    }
+    // in one workspace operation, so the listeners get one delta for the refresh, the markers (created by the
+    // console) and the properties of all the files
+    final List<IFile> toAlter = new ArrayList<IFile>(generated.size());
+    jProject.getWorkspace().run(new IWorkspaceRunnable() {
+
+      /** {@inheritDoc} */
+      @Override
+      public void run(final IProgressMonitor aPM) throws CoreException {
+        long t = System.nanoTime();
+        refreshGenerated(generated, aPM);
+        buildPhases[BuildMetrics.REFRESH] += System.nanoTime() - t;
+        readGenFilesPrefs();
+        for (final CompileJob job : jobs) {
+          final long jobStart = System.nanoTime();
+          for (final IFile chained : job.jChained) {
+            try {
+              chained.deleteMarkers(IMarker.PROBLEM, false, IResource.DEPTH_ZERO);
+            } catch (final CoreException e) {
+              AbstractActivator.logBug(e);
+            }
+          }
+          ((BufferedConsole) job.jConsole).replay();
+          t = lap(job, BuildMetrics.REPORT, jobStart);
+          for (final Map.Entry<IFile, String> fp : job.jFingerprints.entrySet()) {
+            setFingerprint(fp.getKey(), fp.getValue());
+          }
+          for (final String[] gen : job.jGenerated) {
+            final IResource genFileRes = jProject.findMember(gen[1]);
+            if (genFileRes != null && markAsDerived(gen[0], genFileRes, gen[1].endsWith(".java"))) { //$NON-NLS-1$
+              toAlter.add((IFile) genFileRes);
+            }
+          }
+          t = lap(job, BuildMetrics.POST, t);
+          job.jNanos += t - jobStart;
+          recordMetrics(job);
+          results.add(new CompileResult(job));
+        }
+      }
+    }, jProject, IWorkspace.AVOID_UPDATE, aMonitor);
+    GrammarGraph.get(jProject).save();
+    final long t = System.nanoTime();
+    alterGenerated(toAlter, aWorkers);
+    final long end = System.nanoTime();
+    buildPhases[BuildMetrics.POST] += end - t;
+    BuildMetrics.add(new BuildMetrics.Record(jProject.getFullPath().toString(), true, buildStartMillis,
+                                             end - buildStart, buildPhases, false));
+    return results;
+  }
+
+  /**
+   * Compiles all the .jj, .jjt and .jtb files of the project which are on the classpath, except the generated
+   * ones (which are compiled with the grammars they are generated from), as a build does.<br>
+   * Called by headless builds, in a workspace operation.
+   * 
+   * @param aForce - true to compile also the grammars which are up to date, false to skip them
+   * @param aWorkers - the maximum number of worker threads
+   * @param aMonitor - a progress monitor, or <code>null</code> if progress reporting and cancellation are not
+   *          desired
+   * @return the results of the compilations
+   * @exception CoreException if the project cannot be visited or the final refresh fails
+   */
+  public List<CompileResult> compileProject(final boolean aForce, final int aWorkers,
+                                            final IProgressMonitor aMonitor) throws CoreException {
+    final List<IFile> files = new ArrayList<IFile>();
+    jProject.accept(new IResourceVisitor() {
+
+      /** {@inheritDoc} */
+      @Override
+      public boolean visit(final IResource aRes) throws CoreException {
+        if (aRes.getType() != IResource.FILE) {
+          // do not traverse the derived folders (like the output folder)
+          return !aRes.isDerived();
+        }
+        if (isJJFileAndOnClasspath(aRes) && GrammarGraph.getSource(aRes) == null
+            && (aForce || !isUpToDate((IFile) aRes))) {
+          files.add((IFile) aRes);
+        }
+        return false;
+      }
+    });
+    return compileResources(files, aWorkers, aMonitor);
+  }
+
+  /**
+   * Compiles a deferred job, logging any exception (called in the worker threads).
+   * 
+   * @param aJob - the job
+   * @param aProgress - the progress monitor where to report the job (shared by the worker threads)
+   */
+  void safeCompile(final CompileJob aJob, final IProgressMonitor aProgress) {
+    synchronized (aProgress) {
+      aProgress.subTask(aJob.jFile.getFullPath().toString());
+    }
+    final long start = System.nanoTime();
+    try {
+      compile(aJob);
+    } catch (final Throwable t) {
+      aJob.jFailed = true;
+      AbstractActivator.logBug(t, aJob.jFile.getFullPath().toString());
+    }
+    aJob.jNanos = System.nanoTime() - start;
+    aJob.jMillis = aJob.jNanos / 1000000;
+    synchronized (aProgress) {
+      aProgress.worked(1);
+    }
+  }
+
+  /**
+   * Adds the time elapsed since a given time to a job build phase.
+   * 
+   * @param aJob - the job
+   * @param aPhase - the phase (see {@link BuildMetrics})
+   * @param aFrom - the given time (in nanoseconds)
+   * @return the current time (in nanoseconds)
+   */
+  private static long lap(final CompileJob aJob, final int aPhase, final long aFrom) {
+    final long now = System.nanoTime();
+    aJob.jPhases[aPhase] += now - aFrom;
+    return now;
+  }
+
+  /**
+   * Records the timings of a job in the {@link BuildMetrics}.
+   * 
+   * @param aJob - the job
+   */
+  private static void recordMetrics(final CompileJob aJob) {
+    BuildMetrics.add(new BuildMetrics.Record(aJob.jFile.getFullPath().toString(), false, aJob.jStart,
+                                             aJob.jNanos, aJob.jPhases, aJob.jFailed));
+  }
+
+  /**
+   * Runs JavaCC, JJTree or JTB on a job's file, then compiles the generated .jj file if a .jjt or .jtb file
+   * was processed.<br>
+   * For a deferred job, this does not modify the workspace and does not use the compiler's mutable fields,
+   * so it can be run outside the build thread.
+   * 
+   * @param aJob - the job
+   * @exception CoreException if this compile fails
+   */
+  private void compile(final CompileJob aJob) throws CoreException {
+    // the file, the project and the directory
+    final IFile file = aJob.jFile;
+    final String projectDir = jProject.getLocation().toOSString();
+
+    // JavaCC / JTB are launched in the directory where the file is (by the core)
+    final String resPath = file.getLocation().toString();
+    final String resName = resPath.substring(resPath.lastIndexOf("/") + 1); //$NON-NLS-1$
+    final String resExt = file.getFullPath().getFileExtension();
+    final String resRelPath = resPath.substring(projectDir.length());
+
+    final IConsole console = aJob.jConsole;
+    long t = System.nanoTime();
+
     // retrieve command line
     final String[] args = getArgs(file, resName);
     final String jarfile = getJarFile(file, null);
@@ -226,70 +474,153 @@ public class Compiler {
       console.print("Error !!! Unable to find jar file (for extension " + resExt //$NON-NLS-1$
                     + "), check the JavaCC options of the project", true); //$NON-NLS-1$
       console.println(console.fmtTS(), false);
+      aJob.jFailed = true;
       return;
     }
-    // we trim the options to avoid empty tokens passed to the ProcessBuilder
-    final String jvmOptions = getJvmOptions().trim();
-
-    // save standard out and error streams
-    final PrintStream orgOut = System.out;
-    final PrintStream orgErr = System.err;
-    // redirect out and error streams
+    // the tool output goes to the console print stream
     final PrintStream consolePS = console.getPrintStream();
-    System.setOut(consolePS);
-    System.setErr(consolePS);
 
-    // build the command line
-    boolean isJtb = false;
-    final List<String> cmd = new ArrayList<String>(6 + args.length);
-    cmd.add(sJavaCmd);
-    if (jvmOptions.length() > 0) {
-      cmd.add(jvmOptions);
-    }
-    if (resExt.equals("jj")) { //$NON-NLS-1$ 
-      cmd.add(CLASSPATH_ARG);
-      cmd.add(jarfile);
-      cmd.add(JAVACC_ARG);
+    // the grammar compilation, run by the workbench independent core
+    final GrammarTool tool = newGrammarTool(new File(resPath), args, jarfile);
+    tool.setStop(getToolTimeout(), toCancelable(aJob.jMonitor));
+
+    // the fingerprint of what is compiled (taken before the tool may overwrite a generated grammar)
+    final String fingerprint = computeFingerprint(file);
+    if (aJob.jMonitor != null && aJob.jMonitor.isCanceled()) {
+      aJob.jFailed = true;
+      return;
     }
-    else if (resExt.equals("jjt")) { //$NON-NLS-1$
-      cmd.add(CLASSPATH_ARG);
-      cmd.add(jarfile);
-      cmd.add(JJTREE_ARG);
+    t = lap(aJob, BuildMetrics.OPTIONS, t);
+
+    // restore the generated files from the build cache, or call JavaCC, JJTree or JTB (in-process if
+    // possible, otherwise in an external JVM)
+    // the output is captured for this invocation only and parsed for problems while it is written, then given
+    //  to the console and the build cache
+    final boolean useCache = fingerprint != null && "true".equals(jPrefs.get(BUILD_CACHE, DEF_BUILD_CACHE)); //$NON-NLS-1$
+    // the previous files altered on disk are altered again before being compared only if they are still to be
+    final boolean alter = "true".equals(jPrefs.get(SUPPRESS_WARNINGS, "false")); //$NON-NLS-1$ //$NON-NLS-2$
+    String[] generatedFiles = null;
+    byte[] output = null;
+    List<Problem> problems = null;
+    if (useCache) {
+      final OutputSink sink = new OutputSink();
+      final ProblemParser parser = new ProblemParser("jtb".equals(resExt)); //$NON-NLS-1$
+      sink.addListener(parser);
+      generatedFiles = BuildCache.restore(fingerprint, projectDir, getCharset(file), alter, sink);
+      if (generatedFiles != null
+          && !allExist(GrammarGraph.get(jProject).getGenerated(GrammarGraph.norm(resRelPath)))) {
+        // an entry missing some of the generated files : run the tool
+        generatedFiles = null;
+      }
+      problems = parser.end();
+      output = sink.toByteArray();
     }
-    else if (resExt.equals("jtb")) { //$NON-NLS-1$
-      cmd.add(JAR_ARG);
-      cmd.add(jarfile);
-      isJtb = true;
+    boolean stopped = false;
+    boolean toStore = false;
+    if (generatedFiles != null) {
+      displayCommand(console, tool.getCommand());
+      console.println("Generated files restored from the build cache", false); //$NON-NLS-1$
+      t = lap(aJob, BuildMetrics.TOOL, t);
     }
-    // args[0] is the file name
-    for (int i = 0; i < args.length; i++) {
-      cmd.add(args[i]);
+    else {
+      // the files rewritten with the same contents keep their date, so the java builder ignores them
+      final List<String> previous = new ArrayList<String>();
+      for (final String gen : GrammarGraph.get(jProject).getGenerated(GrammarGraph.norm(resRelPath))) {
+        previous.add(new File(projectDir, gen).getPath());
+      }
+      tool.setOutputDirs(aJob.jOutDirs == null ? new String[] {
+        projectDir } : aJob.jOutDirs, getPrunedDirs());
+      tool.setPreviousFiles(previous, getCharset(file), alter);
+      final ToolResult res = tool.run();
+      if (res.getLaunch() == ToolResult.NONE) {
+        // canceled in the meantime
+        aJob.jFailed = true;
+        return;
+      }
+      // the command actually launched (with the fast start options of an external JVM)
+      displayCommand(console, res.getCommand());
+      aJob.jPhases[BuildMetrics.SNAPSHOT] += res.getNanos(ToolResult.SNAPSHOT);
+      aJob.jPhases[BuildMetrics.TOOL] += res.getNanos(ToolResult.TOOL);
+      aJob.jPhases[BuildMetrics.DIFF] += res.getNanos(ToolResult.DIFF);
+      if (res.isTruncated()) {
+        console.println("Tool output truncated to " + OutputSink.MAX_SIZE + " bytes", false); //$NON-NLS-1$ //$NON-NLS-2$
+      }
+      if (res.isTimedOut()) {
+        console.println("Compilation stopped after the time limit of " + getToolTimeout() / 1000 //$NON-NLS-1$
+                        + " s", false); //$NON-NLS-1$
+        aJob.jFailed = true;
+      }
+      else if (res.isStopped()) {
+        console.println("Compilation canceled", false); //$NON-NLS-1$
+        aJob.jFailed = true;
+      }
+      stopped = res.isStopped();
+      generatedFiles = res.getGenerated();
+      output = res.getOutput();
+      problems = res.getProblems();
+      t = System.nanoTime();
+      toStore = useCache && generatedFiles != null && !res.isTruncated() && !stopped;
     }
-    displayCommand(console, cmd);
+    consolePS.write(output, 0, output.length);
 
-    // call JavaCC, JJTree or JTB
-    DirList.snapshot(projectDir);
-    JarLauncher.pb_launch(cmd, resDir);
+    // notify the console with the file the console should report errors to
+    console.processReport(file, problems);
+    t = lap(aJob, BuildMetrics.REPORT, t);
 
-    // restore standard out and error streams
-    System.setOut(orgOut);
-    System.setErr(orgErr);
+    // record the fingerprint (none for a stopped run, so the grammar is compiled again by the next build)
+    final String newFingerprint = stopped ? null : fingerprint;
+    if (aJob.jDeferred) {
+      aJob.jFingerprints.put(file, newFingerprint);
+    }
+    else {
+      setFingerprint(file, newFingerprint);
+    }
 
-    // notify the console with the file the console should report errors to
-    console.processReport(file, isJtb);
+    final int prjdirlenp1 = projectDir.length() + 1;
+    final List<String> genFileNames = new ArrayList<String>(generatedFiles == null ? 0
+                                                                                  : generatedFiles.length);
+    if (generatedFiles != null) {
+      for (int i = 0; i < generatedFiles.length; i++) {
+        // the files generated outside the project (through an output directory option) are ignored ; the
+        //  names have '/' separators, as the grammar graph keys
+        if (generatedFiles[i].startsWith(projectDir)) {
+          genFileNames.add(GrammarGraph.norm(generatedFiles[i].substring(prjdirlenp1)));
+        }
+      }
+    }
+    // after a complete run the generated files of the grammar are the ones of this run (and the support files
+    //  which were already there)
+    if (!stopped && !hasErrors(problems)) {
+      GrammarGraph.get(jProject).replace(resRelPath, genFileNames);
+    }
+    if (toStore) {
+      // the files written by the run, and the support files the tool has not rewritten, as a restore must give
+      //  back the missing ones (after a clean for example)
+      t = System.nanoTime();
+      BuildCache.store(fingerprint, projectDir, generatedFiles, getSupportFiles(resRelPath, genFileNames, projectDir),
+                       output);
+      lap(aJob, BuildMetrics.DIFF, t);
+    }
 
     // compile the generated .jj file if a .jjt or .jtb file was processed
-    final String[] generatedFiles = DirList.getDiff(projectDir);
     if (generatedFiles != null) {
-      // reread preferences only once a compilation launch
-      jDerived = "true".equals(jPrefs.get(MARK_GEN_FILES_DERIVED, "true")); //$NON-NLS-1$ //$NON-NLS-2$
-      jSuppressWarnings = "true".equals(jPrefs.get(SUPPRESS_WARNINGS, "false")); //$NON-NLS-1$ //$NON-NLS-2$
-      final int prjdirlenp1 = projectDir.length() + 1;
-      for (int i = 0; i < generatedFiles.length; i++) {
-        final String genFileName = generatedFiles[i].substring(prjdirlenp1);
-        IResource genFileRes = jProject.findMember(genFileName);
-        if (genFileRes == null) {
-          jProject.refreshLocal(IResource.DEPTH_INFINITE, null);
+      if (!aJob.jDeferred) {
+        // reread preferences only once a compilation launch
+        readGenFilesPrefs();
+      }
+      if (!aJob.jDeferred) {
+        t = System.nanoTime();
+        refreshGenerated(genFileNames, null);
+        lap(aJob, BuildMetrics.REFRESH, t);
+      }
+      final List<IResource> toMark = new ArrayList<IResource>(genFileNames.size());
+      for (final String genFileName : genFileNames) {
+        IResource genFileRes;
+        if (aJob.jDeferred) {
+          // a handle only, the build thread will refresh the workspace
+          genFileRes = jProject.getFile(genFileName);
+        }
+        else {
           genFileRes = jProject.findMember(genFileName);
         }
         // compile .jj only if .jjt or .jtb was compiled and .jj was generated
@@ -299,27 +630,344 @@ public class Compiler {
           //          if (!project.getDescription().hasNature(NATURE_ID) || !project.getWorkspace().isAutoBuilding()) {
           //          if (!("true").equals(prefs.get(NATURE, "false")) //$NON-NLS-1$ //$NON-NLS-2$
           //              || !project.getWorkspace().isAutoBuilding()) {
-          compileResource(genFileRes, aClearConsole);
+          CompileJob chainedJob = null;
+          if (aJob.jDeferred) {
+            chainedJob = new CompileJob(aJob, (IFile) genFileRes);
+          }
+          else if (genFileRes instanceof IFile) {
+            final IFile genFile = (IFile) genFileRes;
+            genFile.deleteMarkers(IMarker.PROBLEM, false, IResource.DEPTH_ZERO);
+            chainedJob = new CompileJob(aJob, genFile);
+          }
+          if (chainedJob != null && !stopped) {
+            compile(chainedJob);
+            aJob.jFailed |= chainedJob.jFailed;
+          }
           //          }
         }
         // mark them with a decorating 'G' and alter .java files
-        markAsDerivedAndAlter(resRelPath, genFileRes, genFileName.endsWith(".java")); //$NON-NLS-1$
+        if (aJob.jDeferred) {
+          aJob.jGenerated.add(new String[] {
+              resRelPath, genFileName });
+        }
+        else if (genFileRes != null) {
+          toMark.add(genFileRes);
+        }
+      }
+      if (!toMark.isEmpty()) {
+        // the chained compilation has recorded its own timings
+        t = System.nanoTime();
+        markGenerated(resRelPath, toMark);
+        lap(aJob, BuildMetrics.POST, t);
       }
     }
-    jCLC--;
   }
 
   /**
-   * Marks the generated file as derived and adds the @SuppressWarnings annotation according to corresponding
-   * preference.
+   * @param aProblems - the problems reported by a tool
+   * @return true if one is an error, false otherwise
+   */
+  private static boolean hasErrors(final List<Problem> aProblems) {
+    for (final Problem pb : aProblems) {
+      if (pb.getSeverity() == Problem.ERROR) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Marks the files generated by a grammar compilation in one workspace operation (so the listeners get one
+   * delta for all of them), then alters the java ones.
+   * 
+   * @param aRelPath - the path to the grammar file (relative to the project) the files are generated from
+   * @param aGenFiles - the generated files
+   * @throws CoreException if the workspace operation fails
+   */
+  private void markGenerated(final String aRelPath, final List<IResource> aGenFiles) throws CoreException {
+    final List<IFile> toAlter = new ArrayList<IFile>(aGenFiles.size());
+    jProject.getWorkspace().run(new IWorkspaceRunnable() {
+
+      /** {@inheritDoc} */
+      @Override
+      public void run(@SuppressWarnings("unused") final IProgressMonitor aPM) throws CoreException {
+        for (final IResource genFileRes : aGenFiles) {
+          if (markAsDerived(aRelPath, genFileRes, "java".equals(genFileRes.getFileExtension()))) { //$NON-NLS-1$
+            toAlter.add((IFile) genFileRes);
+          }
+        }
+      }
+    }, jProject, IWorkspace.AVOID_UPDATE, null);
+    GrammarGraph.get(jProject).save();
+    alterGenerated(toAlter, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Refreshes the generated files in one workspace operation : only the folders containing them are refreshed
+   * (at depth one), or the nearest existing ancestor folders (at infinite depth) for the folders the tools
+   * have created.
+   * 
+   * @param aGenFileNames - the generated files paths (relative to the project)
+   * @param aMonitor - a progress monitor, or <code>null</code> if progress reporting and cancellation are not
+   *          desired
+   * @exception CoreException if the refresh fails
+   */
+  private void refreshGenerated(final List<String> aGenFileNames, final IProgressMonitor aMonitor)
+                                                                                                   throws CoreException {
+    if (aGenFileNames.isEmpty()) {
+      return;
+    }
+    // key = container to refresh, val = depth
+    final Map<IContainer, Integer> toRefresh = new HashMap<IContainer, Integer>();
+    for (final String genFileName : aGenFileNames) {
+      IPath path = new Path(genFileName).removeLastSegments(1);
+      int depth = IResource.DEPTH_ONE;
+      IResource res = path.segmentCount() == 0 ? jProject : jProject.findMember(path);
+      while (!(res instanceof IContainer)) {
+        path = path.removeLastSegments(1);
+        depth = IResource.DEPTH_INFINITE;
+        res = path.segmentCount() == 0 ? jProject : jProject.findMember(path);
+      }
+      final Integer old = toRefresh.get(res);
+      if (old == null || old.intValue() < depth) {
+        toRefresh.put((IContainer) res, Integer.valueOf(depth));
+      }
+    }
+    // drop the containers under another one refreshed at infinite depth
+    final Iterator<Map.Entry<IContainer, Integer>> it = toRefresh.entrySet().iterator();
+    while (it.hasNext()) {
+      final IPath path = it.next().getKey().getFullPath();
+      for (final Map.Entry<IContainer, Integer> other : toRefresh.entrySet()) {
+        final IPath otherPath = other.getKey().getFullPath();
+        if (other.getValue().intValue() == IResource.DEPTH_INFINITE && !otherPath.equals(path)
+            && otherPath.isPrefixOf(path)) {
+          it.remove();
+          break;
+        }
+      }
+    }
+    jProject.getWorkspace().run(new IWorkspaceRunnable() {
+
+      /** {@inheritDoc} */
+      @Override
+      public void run(final IProgressMonitor aPM) throws CoreException {
+        for (final Map.Entry<IContainer, Integer> entry : toRefresh.entrySet()) {
+          entry.getKey().refreshLocal(entry.getValue().intValue(), aPM);
+        }
+      }
+    }, jProject, IWorkspace.AVOID_UPDATE, aMonitor);
+  }
+
+  /**
+   * Rereads the preferences for the generated files.
+   */
+  private void readGenFilesPrefs() {
+    jDerived = "true".equals(jPrefs.get(MARK_GEN_FILES_DERIVED, "true")); //$NON-NLS-1$ //$NON-NLS-2$
+    jSuppressWarnings = "true".equals(jPrefs.get(SUPPRESS_WARNINGS, "false")); //$NON-NLS-1$ //$NON-NLS-2$
+  }
+
+  /**
+   * Computes the directories where the tools may generate files for a grammar (including the .jj file
+   * generated by JJTree or JTB and the files generated by JavaCC from it), from the project options.
+   * 
+   * @param aFile - the grammar file
+   * @return the directories (none being under another one), or null if they cannot be known (the grammar
+   *         sets them in its options section)
+   */
+  String[] getOutputDirs(final IFile aFile) {
+    final String resPath = aFile.getLocation().toString();
+    final String resDir = resPath.substring(0, resPath.lastIndexOf("/")); //$NON-NLS-1$
+    final String ext = aFile.getFileExtension();
+    final String grammar = FileUtils.getFileContents(resPath).toUpperCase(Locale.ENGLISH);
+    if (grammar.indexOf("OUTPUT_DIRECTORY") >= 0 || ("jtb".equals(ext) && grammar.indexOf("JTB_") >= 0)) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+      return null;
+    }
+    final List<File> dirs = new ArrayList<File>(4);
+    // the directory of the .jj file JavaCC will process
+    File jjDir = new File(resDir);
+    dirs.add(jjDir);
+    if ("jjt".equals(ext)) { //$NON-NLS-1$
+      final String[] opts = OptionSet.tokenize(jPrefs.get(JJTREE_OPTIONS, "")); //$NON-NLS-1$
+      final String outDir = getOptionValue(opts, "OUTPUT_DIRECTORY", true); //$NON-NLS-1$
+      final String jjtOutDir = getOptionValue(opts, "JJTREE_OUTPUT_DIRECTORY", true); //$NON-NLS-1$
+      if (outDir != null) {
+        dirs.add(resolve(resDir, outDir));
+      }
+      if (jjtOutDir != null) {
+        jjDir = resolve(resDir, jjtOutDir);
+      }
+      else if (outDir != null) {
+        jjDir = resolve(resDir, outDir);
+      }
+      dirs.add(jjDir);
+    }
+    else if ("jtb".equals(ext)) { //$NON-NLS-1$
+      final String[] opts = OptionSet.tokenize(jPrefs.get(JTB_OPTIONS, "")); //$NON-NLS-1$
+      final String outFile = getOptionValue(opts, "o", false); //$NON-NLS-1$
+      if (outFile != null) {
+        jjDir = resolve(resDir, outFile).getParentFile();
+        dirs.add(jjDir);
+      }
+      for (final String opt : new String[] {
+          "d", "nd", "vd" }) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        final String dir = getOptionValue(opts, opt, false);
+        if (dir != null) {
+          dirs.add(resolve(resDir, dir));
+        }
+      }
+    }
+    final String[] opts = OptionSet.tokenize(jPrefs.get(JAVACC_OPTIONS, "")); //$NON-NLS-1$
+    final String outDir = getOptionValue(opts, "OUTPUT_DIRECTORY", true); //$NON-NLS-1$
+    if (outDir != null) {
+      dirs.add(resolve(jjDir.getPath(), outDir));
+    }
+    // keep only the top directories
+    final List<String> paths = new ArrayList<String>(dirs.size());
+    for (final File dir : dirs) {
+      final String path = dir.getAbsolutePath();
+      boolean add = true;
+      for (int i = paths.size() - 1; i >= 0; i--) {
+        if (CompileJob.isUnder(path, paths.get(i))) {
+          add = false;
+          break;
+        }
+        if (CompileJob.isUnder(paths.get(i), path)) {
+          paths.remove(i);
+        }
+      }
+      if (add) {
+        paths.add(path);
+      }
+    }
+    return paths.toArray(new String[paths.size()]);
+  }
+
+  /**
+   * Computes the directories the generated files detection must not descend into : the java project output
+   * folder (the hidden directories are skipped by {@link sf.eclipse.javacc.tool.DirList} itself).
+   * 
+   * @return the absolute paths of the directories
+   */
+  private Set<String> getPrunedDirs() {
+    final Set<String> pruned = new HashSet<String>(2);
+    try {
+      final IPath outLoc = jJavaProject.getOutputLocation();
+      if (outLoc != null && outLoc.segmentCount() > 1) {
+        pruned.add(jProject.getLocation().append(outLoc.removeFirstSegments(1)).toFile().getPath());
+      }
+    } catch (final JavaModelException e) {
+      AbstractActivator.logBug(e, jProject.getName());
+    }
+    return pruned;
+  }
+
+  /**
+   * Finds the value of an option in a tokenized command line.
+   * 
+   * @param aArgs - the command line arguments
+   * @param aName - the option name (without the leading '-')
+   * @param aNeedsEqual - true if the value follows an '=' (JavaCC / JJTree), false if it is the next
+   *          argument (JTB)
+   * @return the option value, or null if the option is not set
+   */
+  private static String getOptionValue(final String[] aArgs, final String aName, final boolean aNeedsEqual) {
+    final String key = "-" + aName + (aNeedsEqual ? "=" : ""); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    for (int i = 0; i < aArgs.length; i++) {
+      if (aNeedsEqual) {
+        if (aArgs[i].regionMatches(true, 0, key, 0, key.length())) {
+          return aArgs[i].substring(key.length());
+        }
+      }
+      else if (aArgs[i].equals(key) && i + 1 < aArgs.length) {
+        return aArgs[i + 1];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param aDir - a directory
+   * @param aPath - a path, absolute or relative to the directory
+   * @return the resolved path
+   */
+  private static File resolve(final String aDir, final String aPath) {
+    final File f = new File(aPath);
+    return f.isAbsolute() ? f : new File(aDir, aPath);
+  }
+
+  /**
+   * Creates the core running JavaCC, JJTree or JTB on a grammar, with the runtime preferences of the project :
+   * the JVM options, the in-process run, the tool daemons and the fast start.
+   * 
+   * @param aGrammar - the grammar file
+   * @param aArgs - the command line arguments
+   * @param aJarFile - the tool jar file
+   * @return the core
+   */
+  private GrammarTool newGrammarTool(final File aGrammar, final String[] aArgs, final String aJarFile) {
+    final boolean useDaemon = "true".equals(jPrefs.get(RUNTIME_DAEMON, DEF_RUNTIME_DAEMON)); //$NON-NLS-1$
+    final GrammarTool tool = new GrammarTool(aGrammar, aArgs, aJarFile) {
+
+      /** {@inheritDoc} */
+      @Override
+      protected boolean launchInDaemon(final boolean aIsJjt, final String aJar, final String aJvmOptions,
+                                       final String[] aToolArgs, final OutputStream aOut,
+                                       final ToolWatchdog aWatchdog) {
+        return useDaemon
+               && ToolDaemon.launch(sJavaCmd, aJvmOptions, aJar, aIsJjt, aToolArgs, aOut, aWatchdog);
+      }
+    };
+    // we trim the options to avoid empty tokens passed to the ProcessBuilder
+    tool.setJvmOptions(getJvmOptions());
+    tool.setInProcess("true".equals(jPrefs.get(RUNTIME_IN_PROCESS, DEF_RUNTIME_IN_PROCESS))); //$NON-NLS-1$
+    tool.setFastStart(isFastStart(), getCdsDir());
+    return tool;
+  }
+
+  /**
+   * @param aMonitor - a progress monitor (may be null)
+   * @return the cancellation indicator polling the progress monitor, or null if none
+   */
+  private static GrammarTool.ICancelable toCancelable(final IProgressMonitor aMonitor) {
+    if (aMonitor == null) {
+      return null;
+    }
+    return new GrammarTool.ICancelable() {
+
+      /** {@inheritDoc} */
+      @Override
+      public boolean isCanceled() {
+        return aMonitor.isCanceled();
+      }
+    };
+  }
+
+  /**
+   * @return the directory of the class data sharing archives of the tools (under the plugin state location),
+   *         or null if the plugin is not active
+   */
+  private static File getCdsDir() {
+    final AbstractActivator act = AbstractActivator.getDefault();
+    if (act == null) {
+      return null;
+    }
+    return act.getStateLocation().append(JvmProfile.CDS_DIR).toFile();
+  }
+
+  /**
+   * Marks the generated file as derived and tells if the @SuppressWarnings annotation must be added according
+   * to corresponding preference.
    * 
    * @param aRelPath - the path to the grammar file (relative to the project) this resource is generated from
-   * @param aRes - the IResource to mark and to correct
-   * @param aAlter - true if alter the file, false otherwise
+   * @param aRes - the IResource to mark
+   * @param aAlter - true if the file may be altered, false otherwise
+   * @return true if the file must be altered (see {@link #alterGenerated(List, int)}), false otherwise
    * @throws CoreException - see {@link IResource#setDerived(boolean, IProgressMonitor)}
    */
-  private void markAsDerivedAndAlter(final String aRelPath, final IResource aRes, final boolean aAlter)
-                                                                                                       throws CoreException {
+  private boolean markAsDerived(final String aRelPath, final IResource aRes, final boolean aAlter)
+                                                                                                  throws CoreException {
+    // record in the grammar dependency graph
+    GrammarGraph.get(jProject).record(aRelPath, aRes.getProjectRelativePath().toString());
     // mark
     // the calls cost a lot, so don't do it if the properties are already set
     if (jDerived != aRes.isDerived()) {
@@ -330,69 +978,188 @@ public class Compiler {
     }
     // alter if set in preferences
     final IJavaElement element = (IJavaElement) aRes.getAdapter(IJavaElement.class);
-    if (jSuppressWarnings && aAlter && element instanceof ICompilationUnit) {
-      // direct access to the file !
-      final String filename = ((IFile) aRes).getLocation().toOSString();
-      final String source = FileUtils.getFileContents(filename);
-      final Matcher matcher = sClassDeclPatt.matcher(source);
-      if (matcher.find()) {
-        // add the annotation
-        //        String newsource = matcher.replaceFirst(sReplStr);
-        String newsource = matcher.replaceAll(sReplStr);
-        final int ix = newsource.indexOf(MD5_LINE_PART_1);
-        if (ix >= 0) {
-          // strip the old checksum line
-          newsource = newsource.substring(0, ix);
-          // compute the new checksum and add a new checksum line
-          final String chksum = computeCheksum(newsource);
-          jSb.setLength(0);
-          jSb.append(newsource).append(MD5_LINE_PART_1).append(chksum).append(MD5_LINE_PART_2).append(LS);
-          newsource = jSb.toString();
+    return jSuppressWarnings && aAlter && element instanceof ICompilationUnit;
+  }
+
+  /**
+   * Adds the @SuppressWarnings annotation and recomputes the checksum line of generated java files (see
+   * {@link GenFileAlterer}), concurrently if there are several files (the files are accessed directly, not
+   * through the workspace).
+   * 
+   * @param aFiles - the generated java files
+   * @param aWorkers - the maximum number of worker threads
+   */
+  private void alterGenerated(final List<IFile> aFiles, final int aWorkers) {
+    final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(aFiles.size());
+    for (final IFile file : aFiles) {
+      final File loc = file.getLocation().toFile();
+      final Charset cs = getCharset(file);
+      tasks.add(new Callable<Void>() {
+
+        /** {@inheritDoc} */
+        @Override
+        public Void call() throws IOException {
+          GenFileAlterer.alter(loc, cs);
+          return null;
+        }
+      });
+    }
+    if (tasks.size() <= 1 || aWorkers <= 1) {
+      for (final Callable<Void> task : tasks) {
+        try {
+          task.call();
+        } catch (final Exception e) {
+          AbstractActivator.logBug(e);
         }
-        // save the file
-        FileUtils.saveFileContents(filename, newsource);
       }
+      return;
+    }
+    final ExecutorService pool = Executors.newFixedThreadPool(Math.min(aWorkers, tasks.size()));
+    try {
+      for (final Future<Void> future : pool.invokeAll(tasks)) {
+        try {
+          future.get();
+        } catch (final ExecutionException e) {
+          AbstractActivator.logBug(e.getCause());
+        }
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * @param aFile - a file
+   * @return the file charset, or the default charset if it cannot be retrieved or is not supported
+   */
+  private static Charset getCharset(final IFile aFile) {
+    try {
+      return Charset.forName(aFile.getCharset());
+    } catch (final CoreException e) {
+      return Charset.defaultCharset();
+    } catch (final IllegalArgumentException e) {
+      // unsupported charset
+      return Charset.defaultCharset();
     }
   }
 
   /**
-   * Recomputes the last line checksum.<br>
-   * Duplicated from JavaCC 5.0 org.javacc.parser.OutputFile.java OutputFile() constructor.
+   * Computes the build fingerprint of a grammar : a digest of its path and contents, of the tool options
+   * and of the tool jar contents. Two compilations with the same fingerprint generate the same files, so it
+   * is also the key of the {@link BuildCache}.
    * 
-   * @param aSource - the source to modify
-   * @return the modified source
+   * @param aFile - the grammar file
+   * @return the fingerprint, or null if it cannot be computed
    */
-  private String computeCheksum(final String aSource) {
+  String computeFingerprint(final IFile aFile) {
     MessageDigest digest;
     try {
-      digest = MessageDigest.getInstance(MD5_ALGO);
+      digest = MessageDigest.getInstance(FP_ALGO);
     } catch (final NoSuchAlgorithmException e) {
-      AbstractActivator.logErr("No MD5 implementation (should not happen as JavaCC should use it also)"); //$NON-NLS-1$
-      // do not modify the source
-      return aSource;
+      AbstractActivator.logBug(e, FP_ALGO);
+      return null;
+    }
+    final String resPath = aFile.getLocation().toString();
+    final String resName = resPath.substring(resPath.lastIndexOf("/") + 1); //$NON-NLS-1$
+    final String[] args = getArgs(aFile, resName);
+    final String jarfile = getJarFile(aFile, null);
+    if (args == null || jarfile == null) {
+      return null;
+    }
+    final StringBuilder sb = new StringBuilder(256);
+    sb.append(aFile.getProjectRelativePath().toString()).append('\0');
+    for (final String arg : args) {
+      sb.append(arg).append('\0');
+    }
+    sb.append(BuildCache.jarChecksum(jarfile));
+    try {
+      digest.update(FileUtils.getFileContents(resPath).getBytes("UTF-8")); //$NON-NLS-1$
+      digest.update((byte) 0);
+      digest.update(sb.toString().getBytes("UTF-8")); //$NON-NLS-1$
+    } catch (final UnsupportedEncodingException e) {
+      // should not occur
+      AbstractActivator.logBug(e);
+      return null;
+    }
+    return FileUtils.toHexString(digest.digest());
+  }
+
+  /**
+   * Tells whether a grammar is up to date : it has been compiled with the same fingerprint as now, and the
+   * files it generated still exist.<br>
+   * Called by {@link Builder} to skip the grammars which do not need to be recompiled.
+   * 
+   * @param aFile - the grammar file
+   * @return true if the grammar does not need to be recompiled, false otherwise
+   */
+  boolean isUpToDate(final IFile aFile) {
+    String fp;
+    try {
+      fp = aFile.getPersistentProperty(BUILD_FP_QN);
+    } catch (final CoreException e) {
+      // the file does not exist (anymore)
+      return false;
+    }
+    if (fp == null) {
+      return false;
+    }
+    final Set<String> generated = GrammarGraph.get(jProject).getGenerated(aFile.getProjectRelativePath()
+                                                                               .toString());
+    if (generated.isEmpty() || !allExist(generated)) {
+      return false;
+    }
+    return fp.equals(computeFingerprint(aFile));
+  }
+
+  /**
+   * @param aGenerated - generated files paths (relative to the project)
+   * @return true if all the files exist, false otherwise
+   */
+  private boolean allExist(final Collection<String> aGenerated) {
+    for (final String gen : aGenerated) {
+      final IPath loc = jProject.getFile(gen).getLocation();
+      if (loc == null || !loc.toFile().isFile()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Lists the support files to store in the build cache entry of a grammar : the existing files recorded as
+   * generated by the grammar which the run has not written.
+   * 
+   * @param aRelPath - the grammar path (relative to the project)
+   * @param aWritten - the paths of the files written by the run (relative to the project)
+   * @param aProjectDir - the project location
+   * @return the absolute paths of the files
+   */
+  private String[] getSupportFiles(final String aRelPath, final List<String> aWritten, final String aProjectDir) {
+    final List<String> files = new ArrayList<String>();
+    for (final String gen : GrammarGraph.get(jProject).getGenerated(GrammarGraph.norm(aRelPath))) {
+      if (!aWritten.contains(gen) && allExist(Collections.singleton(gen))) {
+        files.add(new File(aProjectDir, gen).getPath());
+      }
     }
-    final DigestOutputStream dios = new DigestOutputStream(new NullOutputStream(), digest);
-    final PrintWriter pw = new PrintWriter(dios);
-    pw.print(aSource);
-    pw.close();
-    final byte[] digestStr = dios.getMessageDigest().digest();
-    final String newChecksum = toHexString(digestStr);
-    return newChecksum;
+    return files.toArray(new String[files.size()]);
   }
 
   /**
-   * Converts a byte array into an hexadecimal string.
+   * Stores the build fingerprint of a grammar (in the build thread).
    * 
-   * @param aBytes - a byte array
-   * @return the hexadecimal string
+   * @param aFile - the grammar file
+   * @param aFingerprint - the fingerprint (may be null)
    */
-  private String toHexString(final byte[] aBytes) {
-    jSb.setLength(0);
-    for (int i = 0; i < aBytes.length; i++) {
-      final byte b = aBytes[i];
-      jSb.append(HEX_DIGITS[(b & 0xF0) >> 4]).append(HEX_DIGITS[b & 0x0F]);
+  private static void setFingerprint(final IFile aFile, final String aFingerprint) {
+    try {
+      if (aFile.exists()) {
+        aFile.setPersistentProperty(BUILD_FP_QN, aFingerprint);
+      }
+    } catch (final CoreException e) {
+      AbstractActivator.logBug(e, aFile.getName());
     }
-    return jSb.toString();
   }
 
   /**
@@ -437,12 +1204,7 @@ public class Compiler {
     final String jarfile = getJarFile(file, "jj"); //$NON-NLS-1$
     final String jvmOptions = getJvmOptions();
 
-    // redirect standard and error streams
-    final PrintStream orgOut = System.out;
-    final PrintStream orgErr = System.err;
     final PrintStream consolePS = console.getPrintStream();
-    System.setOut(consolePS);
-    System.setErr(consolePS);
 
     // build the command line 
     final List<String> cmd = new ArrayList<String>(6);
@@ -455,20 +1217,27 @@ public class Compiler {
     for (int i = 0; i < args.length; i++) {
       cmd.add(args[i]);
     }
-    displayCommand(console, cmd);
 
     // call JJDoc
     //    JarLauncher.launchJJDoc(jvmOptions, jarfile, args, resDir);
-    JarLauncher.pb_launch(cmd, resDir);
+    final OutputSink sink = new OutputSink();
+    final ProblemParser parser = new ProblemParser(false);
+    sink.addListener(parser);
+    final JvmProfile profile = JvmProfile.get(jvmOptions.trim(), jarfile, isFastStart(), getCdsDir());
+    final List<String> launched = profile.apply(cmd);
+    displayCommand(console, launched);
+    profile.end(JarLauncher.pb_launch(launched, resDir, sink), false);
+    final List<Problem> problems = parser.end();
+    try {
+      sink.writeTo(consolePS);
+    } catch (final IOException e) {
+      AbstractActivator.logBug(e);
+    }
     console.println();
-
-    // restore standard and error streams
-    System.setOut(orgOut);
-    System.setErr(orgErr);
     consolePS.close();
 
     // notify Console with the file the Console should report errors to
-    console.processReport(file, false);
+    console.processReport(file, problems);
   }
 
   /**
@@ -665,6 +1434,32 @@ public class Compiler {
     return jvmOptions;
   }
 
+  /**
+   * @return true if the external tool JVMs are started with the fast start options (from the preferences),
+   *         false otherwise
+   */
+  private boolean isFastStart() {
+    return "true".equals(jPrefs.get(FAST_START, DEF_FAST_START)); //$NON-NLS-1$
+  }
+
+  /**
+   * Retrieves the grammar compilation time limit (from the preferences).
+   * 
+   * @return the time limit in milliseconds (0 for none)
+   */
+  private long getToolTimeout() {
+    String num = DEF_TOOL_TIMEOUT;
+    try {
+      num = jPrefs.get(TOOL_TIMEOUT, DEF_TOOL_TIMEOUT);
+      return Math.max(0, Long.parseLong(num.trim())) * 1000;
+    } catch (final NumberFormatException e) {
+      AbstractActivator.logErr("Invalid grammar compilation time limit : " + num); //$NON-NLS-1$
+    } catch (final Exception e) {
+      AbstractActivator.logBug(e);
+    }
+    return 0;
+  }
+
   /**
    * Checks if the resource is a .jj / .jjt / .jtb file and is on classpath.
    * 
@@ -717,13 +1512,8 @@ public class Compiler {
     final String defJavaccJarFile = getDefaultJarFile("jj"); //$NON-NLS-1$
     final String defJtbJarFile = getDefaultJarFile("jtb"); //$NON-NLS-1$
 
-    // save standard out and error streams
-    final PrintStream orgOut = System.out;
-    final PrintStream orgErr = System.err;
-    // redirect out and error streams
+    // the commands output goes to the console print stream
     final PrintStream consolePS = console.getPrintStream();
-    System.setOut(consolePS);
-    System.setErr(consolePS);
 
     console.print("~~~ ProcessBuilder / System environment ~~~", true); //$NON-NLS-1$
     console.println(console.fmtTS(), false);
@@ -783,7 +1573,7 @@ public class Compiler {
     cmd.add(sJavaCmd);
     cmd.add("-version"); //$NON-NLS-1$ 
     displayCommand(console, cmd);
-    JarLauncher.pb_launch(cmd, resDir);
+    JarLauncher.pb_launch(cmd, resDir, consolePS);
     console.displayOutput();
     console.println();
 
@@ -797,7 +1587,7 @@ public class Compiler {
     cmd.add(javaccJarfile);
     cmd.add(JAVACC_ARG);
     displayCommand(console, cmd);
-    JarLauncher.pb_launch(cmd, resDir);
+    JarLauncher.pb_launch(cmd, resDir, consolePS);
     console.displayOutput();
     console.println();
 
@@ -810,13 +1600,9 @@ public class Compiler {
     cmd.add(JAR_ARG);
     cmd.add(jtbJarFile);
     displayCommand(console, cmd);
-    JarLauncher.pb_launch(cmd, resDir);
+    JarLauncher.pb_launch(cmd, resDir, consolePS);
     console.displayOutput();
     console.println();
-
-    // restore standard out and error streams
-    System.setOut(orgOut);
-    System.setErr(orgErr);
     consolePS.close();
 
     return;
@@ -834,29 +1620,4 @@ public class Compiler {
     aConsole.println(aConsole.fmtTS(), false);
   }
 
-  /**
-   * A custom OutputStream.
-   */
-  class NullOutputStream extends OutputStream {
-
-    /** {@inheritDoc} */
-    @Override
-    public void write(@SuppressWarnings("unused") final byte[] arg0,
-                      @SuppressWarnings("unused") final int arg1, @SuppressWarnings("unused") final int arg2) {
-      // No action
-    }
-
-    /** {@inheritDoc} */
-    @Override
-    public void write(@SuppressWarnings("unused") final byte[] arg0) {
-      // No action
-    }
-
-    /** {@inheritDoc} */
-    @Override
-    public void write(@SuppressWarnings("unused") final int arg0) {
-      // No action
-    }
-  }
-
 }
@@ -0,0 +1,444 @@
+package sf.eclipse.javacc.base;
+
+import static sf.eclipse.javacc.base.IConstants.DECORATOR_ID;
+import static sf.eclipse.javacc.base.IConstants.GEN_FILE_QN;
+import static sf.eclipse.javacc.base.IConstants.PLUGIN_QN;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceVisitor;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * The dependency graph of the grammars of a project : source grammar (.jjt / .jtb / .jj) -> generated files
+ * (.jj / .java), the generated .jj files being in turn source grammars.<br>
+ * It is the registry of the generated files used by the clean, the delete derived files command, the
+ * generated files filter and the decorator, which so do hash lookups instead of reading the persistent
+ * properties of every resource.<br>
+ * The graph is persisted in a file of the project working location (a source grammar path line followed by
+ * its generated files paths lines, each prefixed by a tab), written after the compiler or the builder has
+ * changed it. When the file does not exist (the first time in a workspace) it is rebuilt from the
+ * {@link IConstants#GEN_FILE_QN} persistent properties the compiler also sets on the generated files.<br>
+ * The UI thread (decorator, generated files filter) never loads a graph : it gets "unknown" until a
+ * background job (or the builder) has loaded it, and the decorations are then updated.<br>
+ * All paths are project relative, without a leading '/'.
+ * 
+ * @since 1.5.34
+ */
+public class GrammarGraph {
+
+  /** The registry file name (under the project working location) */
+  static final String                              REGISTRY_FILE  = "generated";                       //$NON-NLS-1$
+
+  /** The charset of the registry file */
+  private static final Charset                     UTF8           = Charset.forName("UTF-8");          //$NON-NLS-1$
+
+  /** The graphs : key = project, val = graph */
+  private static final Map<IProject, GrammarGraph> sGraphs        = new HashMap<IProject, GrammarGraph>(4);
+
+  /** The project */
+  private final IProject                           jProject;
+
+  /** The sources : key = generated file path, val = source grammar path (also read without the lock) */
+  private Map<String, String>                      jSources;
+
+  /** The generated files : key = source grammar path, val = generated files paths */
+  private Map<String, Set<String>>                 jGenerated;
+
+  /** True if the graph has changed since it was loaded or saved, false otherwise */
+  private boolean                                  jDirty;
+
+  /** True if the graph is loaded (the sources can then be read without the lock), false otherwise */
+  private volatile boolean                         jLoaded;
+
+  /** True if the background load job has been scheduled, false otherwise */
+  private final AtomicBoolean                      jLoadScheduled = new AtomicBoolean();
+
+  /**
+   * Standard constructor.
+   * 
+   * @param aProject - the project
+   */
+  private GrammarGraph(final IProject aProject) {
+    jProject = aProject;
+  }
+
+  /**
+   * Returns the graph of a project, creating it if needed.
+   * 
+   * @param aProject - the project
+   * @return the graph
+   */
+  public static GrammarGraph get(final IProject aProject) {
+    synchronized (sGraphs) {
+      GrammarGraph gg = sGraphs.get(aProject);
+      if (gg == null) {
+        gg = new GrammarGraph(aProject);
+        sGraphs.put(aProject, gg);
+      }
+      return gg;
+    }
+  }
+
+  /**
+   * Saves and forgets all the graphs (called on plugin stop).
+   */
+  static void clearAll() {
+    synchronized (sGraphs) {
+      for (final GrammarGraph gg : sGraphs.values()) {
+        gg.save();
+      }
+      sGraphs.clear();
+    }
+  }
+
+  /**
+   * Returns the source grammar of a generated file, from the graph of its project.<br>
+   * The resource is not required to be derived : the callers which care check it (which is cheap, unlike
+   * reading a persistent property).
+   * 
+   * @param aRes - a resource
+   * @return the path of the grammar the resource is generated from, or null if it is not a generated file
+   */
+  public static String getSource(final IResource aRes) {
+    if (aRes.getType() != IResource.FILE) {
+      return null;
+    }
+    return get(aRes.getProject()).getSource(aRes.getProjectRelativePath().toString());
+  }
+
+  /**
+   * Returns the source grammar of a generated file without waiting for the graph of its project to be loaded
+   * (for the UI thread) : if it is not loaded yet, a job loading it is scheduled and null is returned.
+   * 
+   * @param aRes - a resource
+   * @return the path of the grammar the resource is generated from, or null if it is not a generated file or
+   *         if it is not known yet
+   */
+  public static String peekSource(final IResource aRes) {
+    if (aRes.getType() != IResource.FILE) {
+      return null;
+    }
+    final GrammarGraph gg = get(aRes.getProject());
+    if (!gg.jLoaded) {
+      gg.scheduleLoad();
+      return null;
+    }
+    return gg.jSources.get(aRes.getProjectRelativePath().toString());
+  }
+
+  /**
+   * Tells whether a resource is a generated file still derived (not modified by the user), without waiting
+   * for the graph of its project to be loaded (see {@link #peekSource(IResource)}).
+   * 
+   * @param aRes - a resource
+   * @return true if the resource is a derived generated file, false otherwise or if it is not known yet
+   */
+  public static boolean isDerivedGenerated(final IResource aRes) {
+    return aRes.isDerived() && peekSource(aRes) != null;
+  }
+
+  /**
+   * Schedules (once) a job loading the graph, which then updates the decorations.
+   */
+  private void scheduleLoad() {
+    if (!jLoadScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    final Job job = new Job("JavaCC generated files registry loading") { //$NON-NLS-1$
+
+      /** {@inheritDoc} */
+      @Override
+      protected IStatus run(@SuppressWarnings("unused") final IProgressMonitor aMonitor) {
+        synchronized (GrammarGraph.this) {
+          load();
+        }
+        final AbstractActivator act = AbstractActivator.getDefault();
+        if (act != null) {
+          act.getWorkbench().getDisplay().asyncExec(new Runnable() {
+
+            /** {@inheritDoc} */
+            @Override
+            public void run() {
+              act.getWorkbench().getDecoratorManager().update(DECORATOR_ID);
+            }
+          });
+        }
+        return Status.OK_STATUS;
+      }
+    };
+    job.setSystem(true);
+    job.schedule();
+  }
+
+  /**
+   * @return the registry file, or null if the project is not accessible
+   */
+  private File getRegistryFile() {
+    if (!jProject.isAccessible()) {
+      return null;
+    }
+    final IPath loc = jProject.getWorkingLocation(PLUGIN_QN);
+    return loc == null ? null : loc.append(REGISTRY_FILE).toFile();
+  }
+
+  /**
+   * Loads the graph from the registry file, or builds it from the generated files persistent properties if
+   * there is no registry file, if not already done.
+   */
+  private void load() {
+    if (jSources != null) {
+      return;
+    }
+    jSources = new ConcurrentHashMap<String, String>(64);
+    jGenerated = new HashMap<String, Set<String>>(16);
+    final File file = getRegistryFile();
+    if (file != null && file.isFile()) {
+      try {
+        String src = null;
+        for (final String line : Files.readAllLines(file.toPath(), UTF8)) {
+          if (line.length() == 0) {
+            continue;
+          }
+          if (line.charAt(0) != '\t') {
+            src = line;
+          }
+          else if (src != null) {
+            add(src, line.substring(1));
+          }
+        }
+        jLoaded = true;
+        return;
+      } catch (final IOException e) {
+        AbstractActivator.logBug(e, file.getPath());
+        jSources.clear();
+        jGenerated.clear();
+      }
+    }
+    jDirty = true;
+    try {
+      jProject.accept(new IResourceVisitor() {
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean visit(final IResource aRes) throws CoreException {
+          if (aRes.getType() == IResource.FILE) {
+            final String src = aRes.getPersistentProperty(GEN_FILE_QN);
+            if (src != null) {
+              add(norm(src), aRes.getProjectRelativePath().toString());
+            }
+          }
+          return true;
+        }
+      });
+    } catch (final CoreException e) {
+      AbstractActivator.logBug(e, jProject.getName());
+    }
+    jLoaded = true;
+  }
+
+  /**
+   * Adds an edge to the graph.
+   * 
+   * @param aSource - the source grammar path
+   * @param aGenerated - the generated file path
+   */
+  private void add(final String aSource, final String aGenerated) {
+    final String old = jSources.put(aGenerated, aSource);
+    if (old != null && !old.equals(aSource)) {
+      final Set<String> oldSet = jGenerated.get(old);
+      if (oldSet != null) {
+        oldSet.remove(aGenerated);
+      }
+    }
+    Set<String> set = jGenerated.get(aSource);
+    if (set == null) {
+      set = new HashSet<String>(8);
+      jGenerated.put(aSource, set);
+    }
+    set.add(aGenerated);
+  }
+
+  /**
+   * Records that a file has been generated from a grammar.
+   * 
+   * @param aSource - the source grammar path (a leading '/' is accepted)
+   * @param aGenerated - the generated file path (OS separators are accepted)
+   */
+  synchronized void record(final String aSource, final String aGenerated) {
+    load();
+    final String src = norm(aSource);
+    final String gen = norm(aGenerated);
+    if (!src.equals(jSources.get(gen))) {
+      add(src, gen);
+      jDirty = true;
+    }
+  }
+
+  /**
+   * Replaces the generated files of a grammar after a complete run (not stopped, without error) : they become
+   * the files the run has written, plus the previously recorded ones which still exist (the tools do not
+   * rewrite the support files which already exist, like Token.java). The recorded files which no longer exist
+   * and which the run has not written are forgotten, so a file the grammar does not generate anymore (after a
+   * renaming or an option change) does not keep the grammar out of date once deleted.
+   * 
+   * @param aSource - the source grammar path (a leading '/' is accepted)
+   * @param aGenerated - the paths of the files written by the run (OS separators are accepted)
+   */
+  synchronized void replace(final String aSource, final Collection<String> aGenerated) {
+    load();
+    final String src = norm(aSource);
+    final Set<String> written = new HashSet<String>(aGenerated.size() * 2);
+    for (final String gen : aGenerated) {
+      written.add(norm(gen));
+    }
+    final Set<String> old = jGenerated.get(src);
+    if (old != null) {
+      for (final String gen : new ArrayList<String>(old)) {
+        if (!written.contains(gen)) {
+          final IPath loc = jProject.getFile(gen).getLocation();
+          if (loc == null || !loc.toFile().isFile()) {
+            forget(gen);
+          }
+        }
+      }
+    }
+    for (final String gen : written) {
+      record(src, gen);
+    }
+  }
+
+  /**
+   * Forgets a generated file.
+   * 
+   * @param aGenerated - the generated file path (OS separators are accepted)
+   */
+  public synchronized void forget(final String aGenerated) {
+    load();
+    final String gen = norm(aGenerated);
+    final String src = jSources.remove(gen);
+    if (src != null) {
+      final Set<String> set = jGenerated.get(src);
+      if (set != null) {
+        set.remove(gen);
+        if (set.isEmpty()) {
+          jGenerated.remove(src);
+        }
+      }
+      jDirty = true;
+    }
+  }
+
+  /**
+   * Writes the graph to the registry file if it has changed.
+   */
+  public synchronized void save() {
+    if (!jDirty) {
+      return;
+    }
+    final File file = getRegistryFile();
+    if (file == null) {
+      return;
+    }
+    final StringBuilder sb = new StringBuilder(64 * jSources.size());
+    for (final Map.Entry<String, Set<String>> entry : jGenerated.entrySet()) {
+      sb.append(entry.getKey()).append('\n');
+      for (final String gen : entry.getValue()) {
+        sb.append('\t').append(gen).append('\n');
+      }
+    }
+    final File tmp = new File(file.getPath() + ".tmp"); //$NON-NLS-1$
+    try {
+      Files.write(tmp.toPath(), sb.toString().getBytes(UTF8));
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      jDirty = false;
+    } catch (final IOException e) {
+      AbstractActivator.logBug(e, file.getPath());
+      tmp.delete();
+    }
+  }
+
+  /**
+   * @param aGenerated - a file path
+   * @return the path of the grammar the file is generated from, or null if it is not a generated file
+   */
+  public synchronized String getSource(final String aGenerated) {
+    load();
+    return jSources.get(aGenerated);
+  }
+
+  /**
+   * @return the paths of all the generated files (a copy)
+   */
+  public synchronized List<String> getAllGenerated() {
+    load();
+    return new ArrayList<String>(jSources.keySet());
+  }
+
+  /**
+   * @return the paths of all the source grammars (a copy)
+   */
+  synchronized List<String> getAllSources() {
+    load();
+    return new ArrayList<String>(jGenerated.keySet());
+  }
+
+  /**
+   * @param aSource - a grammar path
+   * @return the paths of the files generated from the grammar (a copy, empty if none)
+   */
+  synchronized Set<String> getGenerated(final String aSource) {
+    load();
+    final Set<String> set = jGenerated.get(aSource);
+    return set == null ? new HashSet<String>(0) : new HashSet<String>(set);
+  }
+
+  /**
+   * @param aSource - a grammar path
+   * @param aAncestor - another grammar path
+   * @return true if the grammar is (directly or not) generated from the other grammar, false otherwise
+   */
+  synchronized boolean isGeneratedFrom(final String aSource, final String aAncestor) {
+    load();
+    String src = jSources.get(aSource);
+    // the depth is at most 2 (.jtb / .jjt -> .jj -> .java), the counter only protects from cycles
+    for (int i = 0; src != null && i < 8; i++) {
+      if (src.equals(aAncestor)) {
+        return true;
+      }
+      src = jSources.get(src);
+    }
+    return false;
+  }
+
+  /**
+   * @param aPath - a path, project relative or from the project location (then with a leading '/'), with '/'
+   *          or OS (i.e. '\\' on Windows) separators
+   * @return the path with '/' separators and without a leading '/'
+   */
+  static String norm(final String aPath) {
+    final String path = aPath.replace('\\', '/');
+    return path.startsWith("/") ? path.substring(1) : path; //$NON-NLS-1$
+  }
+
+}
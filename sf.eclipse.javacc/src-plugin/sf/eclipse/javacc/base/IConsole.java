@@ -1,9 +1,12 @@
 package sf.eclipse.javacc.base;
 
 import java.io.PrintStream;
+import java.util.List;
 
 import org.eclipse.core.resources.IFile;
 
+import sf.eclipse.javacc.tool.Problem;
+
 /**
  * Interface for a Console for JavaCC output.
  * 
@@ -52,12 +55,14 @@ public interface IConsole {
   public abstract void displayOutput();
 
   /**
-   * Displays and processes compilation report. Called when the compile commands have finished.
+   * Displays the command output and processes the compilation report. Called when the compile commands have
+   * finished.
    * 
    * @param aFile - the file to report on
-   * @param aIsJtb - true if file is a JTB one, false otherwise
+   * @param aProblems - the problems found in the command output (their offsets are relative to the output
+   *          beginning)
    */
-  public abstract void processReport(IFile aFile, boolean aIsJtb);
+  public abstract void processReport(IFile aFile, List<Problem> aProblems);
 
   /**
    * @return a formatted date/timestamp
@@ -4,6 +4,8 @@ import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.QualifiedName;
 import org.osgi.framework.Bundle;
 
+import sf.eclipse.javacc.tool.ToolConstants;
+
 /*import org.eclipse.jface.text.IDocument;*/
 
 /**
@@ -14,7 +16,7 @@ import org.osgi.framework.Bundle;
  * @author Marc Mazas 2009-2010-2011-2012-2013-2014-2015-2016
  * @author Bill Fenlason 2012
  */
-public interface IConstants {
+public interface IConstants extends ToolConstants {
 
   // MMa 04/2009 : formatting and javadoc revision ; added and removed some entries
   // MMa 12/2009 : changed JTB version
@@ -31,18 +33,8 @@ public interface IConstants {
   //               added format before save strings ; moved some constants value in the plugin properties
 
   /*
-   *  Arguments
+   *  Arguments : inherited from ToolConstants
    */
-  /** Argument for javacc compiling */
-  static final String          JAVACC_ARG                 = "javacc";                                              //$NON-NLS-1$
-  /** Argument for jjtree compiling */
-  static final String          JJTREE_ARG                 = "jjtree";                                              //$NON-NLS-1$
-  /** Argument for jjdoc compiling */
-  static final String          JJDOC_ARG                  = "jjdoc";                                               //$NON-NLS-1$
-  /** Argument for javacc & jjtree compiling */
-  static final String          CLASSPATH_ARG              = "-classpath";                                          //$NON-NLS-1$
-  /** Argument for jtb compiling */
-  static final String          JAR_ARG                    = "-jar";                                                //$NON-NLS-1$
 
   /*
    *  Project options (preferences)
@@ -91,6 +83,34 @@ public interface IConstants {
   static final String          RUNTIME_JTBJAR             = "RUNTIME_JTBJAR";                                      //$NON-NLS-1$
   /** JVM options run-time option qualified name suffix */
   static final String          RUNTIME_JVMOPTIONS         = "RUNTIME_JVMOPTIONS";                                  //$NON-NLS-1$
+  /** Run JavaCC / JJTree in-process run-time option qualified name suffix */
+  static final String          RUNTIME_IN_PROCESS         = "RUNTIME_IN_PROCESS";                                  //$NON-NLS-1$
+  /** Default value for {@link #RUNTIME_IN_PROCESS} (opt-in, external JVM) */
+  static final String          DEF_RUNTIME_IN_PROCESS     = "false";                                               //$NON-NLS-1$
+  /** Run JavaCC / JJTree in a tool daemon JVM run-time option qualified name suffix */
+  static final String          RUNTIME_DAEMON             = "RUNTIME_DAEMON";                                      //$NON-NLS-1$
+  /** Default value for {@link #RUNTIME_DAEMON} */
+  static final String          DEF_RUNTIME_DAEMON         = "false";                                               //$NON-NLS-1$
+  /** Start the external tool JVMs with the fast start options run-time option qualified name suffix */
+  static final String          FAST_START                 = "FAST_START";                                          //$NON-NLS-1$
+  /** Default value for {@link #FAST_START} (opt-in) */
+  static final String          DEF_FAST_START             = "false";                                               //$NON-NLS-1$
+  /** Number of build worker threads run-time option qualified name suffix */
+  static final String          BUILD_WORKERS              = "BUILD_WORKERS";                                       //$NON-NLS-1$
+  /** Default value for {@link #BUILD_WORKERS} (serial build) */
+  static final String          DEF_BUILD_WORKERS          = "1";                                                   //$NON-NLS-1$
+  /** Grammar compilation time limit (in seconds) run-time option qualified name suffix */
+  static final String          TOOL_TIMEOUT               = "TOOL_TIMEOUT";                                        //$NON-NLS-1$
+  /** Default value for {@link #TOOL_TIMEOUT} (no limit) */
+  static final String          DEF_TOOL_TIMEOUT           = "0";                                                   //$NON-NLS-1$
+  /** Explicit compilation quiet period (in milliseconds) run-time option qualified name suffix */
+  static final String          COMPILE_DELAY              = "COMPILE_DELAY";                                       //$NON-NLS-1$
+  /** Default value for {@link #COMPILE_DELAY} */
+  static final String          DEF_COMPILE_DELAY          = "300";                                                 //$NON-NLS-1$
+  /** Use the build cache run-time option qualified name suffix */
+  static final String          BUILD_CACHE                = "BUILD_CACHE";                                         //$NON-NLS-1$
+  /** Default value for {@link #BUILD_CACHE} (opt-in) */
+  static final String          DEF_BUILD_CACHE            = "false";                                               //$NON-NLS-1$
 
   /*
    *   plugin.xml
@@ -100,6 +120,8 @@ public interface IConstants {
   static final String          PLUGIN_QN                  = "sf.eclipse.javacc";                                   //$NON-NLS-1$
   /** Generated file qualified name */
   static final QualifiedName   GEN_FILE_QN                = new QualifiedName(PLUGIN_QN, "GENERATED_FILE");        //$NON-NLS-1$
+  /** Grammar build fingerprint qualified name */
+  static final QualifiedName   BUILD_FP_QN                = new QualifiedName(PLUGIN_QN, "BUILD_FINGERPRINT");     //$NON-NLS-1$
   /** Plugin name */
   public static final String   PLUGIN_NAME                = "JavaCC";                                              //$NON-NLS-1$
 
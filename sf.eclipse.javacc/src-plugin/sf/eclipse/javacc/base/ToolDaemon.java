@@ -0,0 +1,366 @@
+package sf.eclipse.javacc.base;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
+
+import sf.eclipse.javacc.tool.ToolWatchdog;
+
+/**
+ * A long-lived JVM running JavaCC and JJTree compilations (see {@link ToolDaemonMain}), used instead of an
+ * external launch for each grammar when the tool cannot run inside the Eclipse JVM (JVM options are set, or
+ * in-process runs are not allowed), so the JVM startup and warm-up are paid once.<br>
+ * The daemons are started on demand for a java command / JVM options / jar triple and pooled : a daemon runs
+ * one compilation at a time, so concurrent builds start as many daemons as they need. A daemon which dies
+ * (for example because the tool exited the JVM) is forgotten and the compilation falls back to an external
+ * launch ; the next compilation starts a new daemon. A daemon which is not ready within {@link #READY_MILLIS}
+ * is destroyed, and the compilations fall back to external launches. The daemons idle for more than
+ * {@link #IDLE_MILLIS} are stopped, and all of them are stopped with the plugin.
+ * 
+ * @since 1.5.34
+ */
+class ToolDaemon {
+
+  /** The daemon directory name (under the plugin state location) */
+  static final String                                DAEMON_DIR   = "daemon";     //$NON-NLS-1$
+  /** The daemon JVM error output file name (in the daemon directory) */
+  static final String                                LOG_FILE     = "daemon.log"; //$NON-NLS-1$
+  /** The time after which an idle daemon is stopped */
+  static final long                                  IDLE_MILLIS  = 5 * 60 * 1000L;
+  /** The time after which a daemon not yet ready is destroyed */
+  static final long                                  READY_MILLIS = 30 * 1000L;
+
+  /** The idle daemons : key = java command / JVM options / jar, val = daemons */
+  private static final Map<String, List<ToolDaemon>> sIdle        = new HashMap<String, List<ToolDaemon>>(4);
+
+  /** The keys for which a daemon could not be started (not to try again) */
+  private static final Set<String>                   sBroken      = new HashSet<String>(4);
+
+  /** The timer stopping the idle daemons, or null if not started */
+  private static Timer                               sTimer       = null;
+
+  /** The key */
+  private final String                               jKey;
+
+  /** The daemon process */
+  private final Process                              jProc;
+
+  /** The stream of the responses */
+  private final DataInputStream                      jIn;
+
+  /** The stream of the requests */
+  private final DataOutputStream                     jOut;
+
+  /** The time of the last use */
+  private long                                       jLastUse;
+
+  /**
+   * Constructor, for a started process.
+   * 
+   * @param aKey - the key
+   * @param aProc - the process
+   */
+  private ToolDaemon(final String aKey, final Process aProc) {
+    jKey = aKey;
+    jProc = aProc;
+    jIn = new DataInputStream(new BufferedInputStream(aProc.getInputStream()));
+    jOut = new DataOutputStream(new BufferedOutputStream(aProc.getOutputStream()));
+  }
+
+  /**
+   * Runs JavaCC or JJTree in a daemon.
+   * 
+   * @param aJavaCmd - the java command
+   * @param aJvmOptions - the (trimmed) JVM options
+   * @param aJarFile - the tool jar file
+   * @param aIsJjt - true for JJTree, false for JavaCC
+   * @param aArgs - the command line arguments (with absolute paths, as the daemon does not run in the
+   *          grammar's directory)
+   * @param aOut - the stream where to write the tool output
+   * @param aWatchdog - the watchdog, which destroys the daemon if the run must be stopped
+   * @return true if the tool has been run (or stopped), false if the caller must fall back to an external
+   *         launch
+   */
+  static boolean launch(final String aJavaCmd, final String aJvmOptions, final String aJarFile,
+                        final boolean aIsJjt, final String[] aArgs, final OutputStream aOut,
+                        final ToolWatchdog aWatchdog) {
+    final String key = aJavaCmd + '\n' + aJvmOptions + '\n' + aJarFile;
+    final ToolDaemon daemon = acquire(key, aJavaCmd, aJvmOptions, aWatchdog);
+    if (daemon == null) {
+      return aWatchdog.isStopped();
+    }
+    final byte[] output;
+    final int rc;
+    // the daemon cannot be told to abort a compilation : it is destroyed (and a new one started next time)
+    final ScheduledFuture<?> watch = aWatchdog.watch(new Runnable() {
+
+      /** {@inheritDoc} */
+      @Override
+      public void run() {
+        daemon.jProc.destroy();
+      }
+    });
+    try {
+      daemon.jOut.writeUTF(aIsJjt ? IConstants.JJTREE_MAIN : IConstants.JAVACC_MAIN);
+      daemon.jOut.writeUTF(aJarFile);
+      daemon.jOut.writeInt(aArgs.length);
+      for (final String arg : aArgs) {
+        daemon.jOut.writeUTF(arg);
+      }
+      daemon.jOut.flush();
+      rc = daemon.jIn.readInt();
+      output = new byte[daemon.jIn.readInt()];
+      daemon.jIn.readFully(output);
+    } catch (final IOException e) {
+      ToolWatchdog.unwatch(watch);
+      // the daemon died (or has been destroyed by the watchdog) : forget it
+      daemon.stop();
+      return aWatchdog.isStopped();
+    }
+    ToolWatchdog.unwatch(watch);
+    if (aWatchdog.isStopped()) {
+      // stopped just after the end of the compilation
+      daemon.stop();
+    }
+    else {
+      release(daemon);
+    }
+    if (rc == ToolDaemonMain.RC_NOT_RUN) {
+      return false;
+    }
+    try {
+      aOut.write(output);
+      aOut.flush();
+    } catch (final IOException e) {
+      AbstractActivator.logBug(e);
+    }
+    return true;
+  }
+
+  /**
+   * Takes an idle daemon for a key, or starts a new one.
+   * 
+   * @param aKey - the key
+   * @param aJavaCmd - the java command
+   * @param aJvmOptions - the (trimmed) JVM options
+   * @param aWatchdog - the watchdog of the run, which destroys a starting daemon if the run must be stopped
+   * @return the daemon, or null if none could be started
+   */
+  private static ToolDaemon acquire(final String aKey, final String aJavaCmd, final String aJvmOptions,
+                                    final ToolWatchdog aWatchdog) {
+    synchronized (sIdle) {
+      if (sBroken.contains(aKey)) {
+        return null;
+      }
+      final List<ToolDaemon> idle = sIdle.get(aKey);
+      if (idle != null && !idle.isEmpty()) {
+        return idle.remove(idle.size() - 1);
+      }
+    }
+    final ToolDaemon daemon = start(aKey, aJavaCmd, aJvmOptions, aWatchdog);
+    if (daemon == null && !aWatchdog.isStopped()) {
+      synchronized (sIdle) {
+        sBroken.add(aKey);
+      }
+    }
+    return daemon;
+  }
+
+  /**
+   * Gives back a daemon to the pool.
+   * 
+   * @param aDaemon - the daemon
+   */
+  private static void release(final ToolDaemon aDaemon) {
+    aDaemon.jLastUse = System.currentTimeMillis();
+    synchronized (sIdle) {
+      List<ToolDaemon> idle = sIdle.get(aDaemon.jKey);
+      if (idle == null) {
+        idle = new ArrayList<ToolDaemon>(2);
+        sIdle.put(aDaemon.jKey, idle);
+      }
+      idle.add(aDaemon);
+      if (sTimer == null) {
+        sTimer = new Timer("JavaCC tool daemons reaper", true); //$NON-NLS-1$
+        sTimer.schedule(new TimerTask() {
+
+          /** {@inheritDoc} */
+          @Override
+          public void run() {
+            stopIdle(System.currentTimeMillis() - IDLE_MILLIS);
+          }
+        }, IDLE_MILLIS / 5, IDLE_MILLIS / 5);
+      }
+    }
+  }
+
+  /**
+   * Starts a daemon and waits for it to be ready, at most {@link #READY_MILLIS} and while the run is not
+   * stopped.
+   * 
+   * @param aKey - the key
+   * @param aJavaCmd - the java command
+   * @param aJvmOptions - the (trimmed) JVM options
+   * @param aWatchdog - the watchdog of the run, which destroys the daemon if the run must be stopped
+   * @return the daemon, or null if it could not be started (or has been stopped)
+   */
+  private static ToolDaemon start(final String aKey, final String aJavaCmd, final String aJvmOptions,
+                                  final ToolWatchdog aWatchdog) {
+    final File dir = getClassDir();
+    if (dir == null) {
+      return null;
+    }
+    final List<String> cmd = new ArrayList<String>(5);
+    cmd.add(aJavaCmd);
+    if (aJvmOptions.length() > 0) {
+      cmd.add(aJvmOptions);
+    }
+    cmd.add(IConstants.CLASSPATH_ARG);
+    cmd.add(dir.getPath());
+    cmd.add(ToolDaemonMain.class.getName());
+    Process proc = null;
+    try {
+      final ProcessBuilder pb = new ProcessBuilder(cmd);
+      pb.redirectError(Redirect.appendTo(new File(dir, LOG_FILE)));
+      final Process started = pb.start();
+      proc = started;
+      final ToolDaemon daemon = new ToolDaemon(aKey, started);
+      // destroying the process ends the wait for the ready message
+      final Runnable destroy = new Runnable() {
+
+        /** {@inheritDoc} */
+        @Override
+        public void run() {
+          started.destroy();
+        }
+      };
+      final ScheduledFuture<?> watch = aWatchdog.watch(destroy);
+      final ScheduledFuture<?> readyWatch = new ToolWatchdog(null, READY_MILLIS).watch(destroy);
+      try {
+        if (ToolDaemonMain.READY.equals(daemon.jIn.readUTF())) {
+          return daemon;
+        }
+      } finally {
+        ToolWatchdog.unwatch(watch);
+        ToolWatchdog.unwatch(readyWatch);
+      }
+    } catch (final IOException e) {
+      // the JVM could not be started, died or has been destroyed (the reason is in the log file)
+    }
+    if (proc != null) {
+      proc.destroy();
+    }
+    if (aWatchdog.isStopped()) {
+      return null;
+    }
+    AbstractActivator.logErr("Unable to start the tool daemon with " + cmd + ", see " + LOG_FILE); //$NON-NLS-1$ //$NON-NLS-2$
+    return null;
+  }
+
+  /**
+   * Returns the directory holding a copy of the daemon main class, (re)writing it if needed.
+   * 
+   * @return the directory, or null if the plugin is not active or if the class cannot be copied
+   */
+  private static File getClassDir() {
+    final AbstractActivator act = AbstractActivator.getDefault();
+    if (act == null) {
+      return null;
+    }
+    final File dir = act.getStateLocation().append(DAEMON_DIR).toFile();
+    final String path = ToolDaemonMain.class.getName().replace('.', '/') + ".class"; //$NON-NLS-1$
+    final File file = new File(dir, path);
+    try {
+      final InputStream is = ToolDaemonMain.class.getClassLoader().getResourceAsStream(path);
+      if (is == null) {
+        return null;
+      }
+      final File tmp = new File(dir, path + ".tmp"); //$NON-NLS-1$
+      try {
+        tmp.getParentFile().mkdirs();
+        Files.copy(is, tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      } finally {
+        is.close();
+      }
+      // the class changes only with the plugin
+      if (!BuildCache.sameContents(tmp, file)) {
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+      else {
+        tmp.delete();
+      }
+      return dir;
+    } catch (final IOException e) {
+      AbstractActivator.logBug(e, file.getPath());
+      return null;
+    }
+  }
+
+  /**
+   * Stops the idle daemons last used before a given time.
+   * 
+   * @param aTime - the time
+   */
+  static void stopIdle(final long aTime) {
+    final List<ToolDaemon> toStop = new ArrayList<ToolDaemon>();
+    synchronized (sIdle) {
+      for (final List<ToolDaemon> idle : sIdle.values()) {
+        for (final Iterator<ToolDaemon> it = idle.iterator(); it.hasNext();) {
+          final ToolDaemon daemon = it.next();
+          if (daemon.jLastUse < aTime) {
+            it.remove();
+            toStop.add(daemon);
+          }
+        }
+      }
+    }
+    for (final ToolDaemon daemon : toStop) {
+      daemon.stop();
+    }
+  }
+
+  /**
+   * Stops all the idle daemons and the timer, and forgets the broken keys (called on plugin stop).
+   */
+  static void stopAll() {
+    synchronized (sIdle) {
+      if (sTimer != null) {
+        sTimer.cancel();
+        sTimer = null;
+      }
+      sBroken.clear();
+    }
+    stopIdle(Long.MAX_VALUE);
+  }
+
+  /**
+   * Stops the daemon : closing its input makes it exit.
+   */
+  private void stop() {
+    try {
+      jOut.close();
+    } catch (final IOException e) {
+      // already dead
+    }
+    jProc.destroy();
+  }
+
+}
@@ -0,0 +1,136 @@
+package sf.eclipse.javacc.base;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import sf.eclipse.javacc.tool.ToolConstants;
+
+/**
+ * Main class of the tool daemon JVM (see {@link ToolDaemon}) : it reads compile requests on its standard
+ * input, runs JavaCC or JJTree in a fresh class loader for each request, and writes the exit code and the
+ * tool output on its standard output ; it exits at the end of its standard input.<br>
+ * It runs outside Eclipse, from a copy of its class file, so it must use only the JDK classes (and no inner
+ * class) and be compatible with the oldest supported JVM.<br>
+ * Protocol (through {@link DataInputStream} / {@link DataOutputStream}) : the daemon first writes
+ * {@link #READY} ; a request is the tool main class, the jar path, the number of arguments and the arguments
+ * (as UTF strings) ; a response is the exit code (0 if ok, 1 if the tool threw an exception, 2 if it could not
+ * be run), the output length and the output bytes.
+ * 
+ * @since 1.5.34
+ */
+public class ToolDaemonMain {
+
+  /** The string written by the daemon when it is ready */
+  static final String READY      = "JAVACC_TOOL_DAEMON_1"; //$NON-NLS-1$
+
+  /** Exit code : ok */
+  static final int    RC_OK      = 0;
+  /** Exit code : the tool threw an exception (reported in the output) */
+  static final int    RC_TOOL    = 1;
+  /** Exit code : the tool could not be run */
+  static final int    RC_NOT_RUN = 2;
+
+  /**
+   * Serves the requests until the end of the standard input.
+   * 
+   * @param aArgs - not used
+   * @throws IOException - if the standard streams cannot be read or written
+   */
+  public static void main(@SuppressWarnings("unused") final String[] aArgs) throws IOException {
+    final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(FileDescriptor.in)));
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+    // the tools must not write on the protocol stream
+    final PrintStream sysOut = System.out;
+    final PrintStream sysErr = System.err;
+    out.writeUTF(READY);
+    out.flush();
+    for (;;) {
+      final String main;
+      try {
+        main = in.readUTF();
+      } catch (final EOFException e) {
+        return;
+      }
+      final String jar = in.readUTF();
+      final String[] args = new String[in.readInt()];
+      for (int i = 0; i < args.length; i++) {
+        args[i] = in.readUTF();
+      }
+      final ByteArrayOutputStream baos = new ByteArrayOutputStream(4096);
+      final PrintStream capture = new PrintStream(baos, true);
+      System.setOut(capture);
+      System.setErr(capture);
+      int rc;
+      try {
+        rc = run(main, jar, args, capture);
+      } finally {
+        System.setOut(sysOut);
+        System.setErr(sysErr);
+        capture.flush();
+      }
+      out.writeInt(rc);
+      out.writeInt(baos.size());
+      baos.writeTo(out);
+      out.flush();
+    }
+  }
+
+  /**
+   * Runs a tool in a fresh class loader (as JavaCC and JJTree keep their state in static fields).
+   * 
+   * @param aMain - the tool main class ({@link ToolConstants#JAVACC_MAIN} or
+   *          {@link ToolConstants#JJTREE_MAIN})
+   * @param aJar - the tool jar path
+   * @param aArgs - the tool arguments
+   * @param aOut - the stream where to report the exceptions
+   * @return the exit code
+   */
+  static int run(final String aMain, final String aJar, final String[] aArgs, final PrintStream aOut) {
+    URLClassLoader loader = null;
+    try {
+      loader = new URLClassLoader(new URL[] {
+        new File(aJar).toURI().toURL() }, ClassLoader.getSystemClassLoader().getParent());
+      final Class<?> main = Class.forName(aMain, true, loader);
+      Thread.currentThread().setContextClassLoader(loader);
+      if (ToolConstants.JJTREE_MAIN.equals(aMain)) {
+        final Method m = main.getMethod(ToolConstants.JJTREE_METHOD, String[].class);
+        m.invoke(main.newInstance(), (Object) aArgs);
+      }
+      else {
+        final Method m = main.getMethod(ToolConstants.JAVACC_METHOD, String[].class);
+        m.invoke(null, (Object) aArgs);
+      }
+      return RC_OK;
+    } catch (final InvocationTargetException e) {
+      e.getCause().printStackTrace(aOut);
+      return RC_TOOL;
+    } catch (final Exception e) {
+      e.printStackTrace(aOut);
+      return RC_NOT_RUN;
+    } finally {
+      Thread.currentThread().setContextClassLoader(null);
+      if (loader != null) {
+        try {
+          loader.close();
+        } catch (final IOException e) {
+          // ignored
+        }
+      }
+    }
+  }
+
+}
@@ -22,7 +22,19 @@ class CallHierarchyContentProvider implements ITreeContentProvider {
   // MMa 11/2014 : added some final modifiers 
 
   /** True for callers mode, false for callees mode */
-  protected int mode;
+  protected int           mode;
+
+  /** The view holding the callers and callees */
+  final CallHierarchyView jView;
+
+  /**
+   * Standard constructor.
+   * 
+   * @param aView - the view holding the callers and callees
+   */
+  CallHierarchyContentProvider(final CallHierarchyView aView) {
+    jView = aView;
+  }
 
   /**
    * Set the mode, can be {@link CallHierarchyView#CALLERS} or {@link CallHierarchyView#CALLEES}.
@@ -64,9 +76,9 @@ class CallHierarchyContentProvider implements ITreeContentProvider {
   public final Object[] getChildren(final Object aObj) {
     final JJNode node = (JJNode) aObj;
     if (mode == CallHierarchyView.CALLERS) {
-      return node.getCallers();
+      return jView.getCallers(node);
     }
-    return node.getCallees();
+    return jView.getCallees(node);
   }
 
   /** {@inheritDoc} */
@@ -74,9 +86,9 @@ class CallHierarchyContentProvider implements ITreeContentProvider {
   public final boolean hasChildren(final Object aObj) {
     final JJNode node = (JJNode) aObj;
     if (mode == CallHierarchyView.CALLERS) {
-      return node.getCallers().length != 0;
+      return jView.getCallers(node).length != 0;
     }
-    return node.getCallees().length != 0;
+    return jView.getCallees(node).length != 0;
   }
 
 }
@@ -4,6 +4,9 @@ import static sf.eclipse.javacc.base.IConstants.CALL_HIERARCHY_SYNC;
 import static sf.eclipse.javacc.base.IConstants.JJEDITOR_ID;
 import static sf.eclipse.javacc.base.IConstants.PLUGIN_QN;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 import org.eclipse.core.commands.ExecutionEvent;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.ProjectScope;
@@ -45,7 +48,9 @@ import sf.eclipse.javacc.parser.JJNode;
  * Builds trees of callers/callees and allows the user to double click on an entry to go to the selected
  * method.<br>
  * Inspired from org.eclipse.jdt.internal.ui.callhierarchy and simplified to the minimum required.<br>
- * The chosen synchronization mode is stored under the project of the current JJEdited file.
+ * The chosen synchronization mode is stored under the project of the current JJEdited file.<br>
+ * The callers and callees are kept in the view, keyed by node, as the nodes are shared by the grammar models
+ * and must not be modified.
  * 
  * @author Remi Koutcherawy 2003-2010 CeCILL license http://www.cecill.info/index.en.html
  * @author Marc Mazas 2009-2010-2011-2012-2013-2014-2015-2016
@@ -97,6 +102,12 @@ public class CallHierarchyView extends ViewPart implements ISelectionChangedList
   /** The synchronization action */
   ToggleSynchronizingAction              jTsa;
 
+  /** The callers of the nodes built so far : key = node, val = its callers */
+  final Map<JJNode, JJNode[]>            jCallers       = new IdentityHashMap<JJNode, JJNode[]>();
+
+  /** The callees of the nodes built so far : key = node, val = its callees */
+  final Map<JJNode, JJNode[]>            jCallees       = new IdentityHashMap<JJNode, JJNode[]>();
+
   /** {@inheritDoc} */
   @Override
   public void createPartControl(final Composite aParent) {
@@ -105,7 +116,7 @@ public class CallHierarchyView extends ViewPart implements ISelectionChangedList
     jTreeViewer = new TreeViewer(aParent, SWT.SINGLE | SWT.H_SCROLL | SWT.V_SCROLL);
     jTreeViewer.setAutoExpandLevel(2);
     jTreeViewer.addSelectionChangedListener(this);
-    jCHCP = new CallHierarchyContentProvider();
+    jCHCP = new CallHierarchyContentProvider(this);
     jTreeViewer.setContentProvider(jCHCP);
     jNLP = new NodeLabelProvider();
     jTreeViewer.setLabelProvider(jNLP);
@@ -158,8 +169,7 @@ public class CallHierarchyView extends ViewPart implements ISelectionChangedList
           // find or bring up JJEditor and select the node 
           showNodeInJJEditor(node);
           // add children and expand one level
-          node.buildCallees(jEditor.getElements());
-          node.buildCallers();
+          buildCalls(node);
           jTreeViewer.expandToLevel(node, 1);
           jTreeViewer.refresh();
         }
@@ -242,23 +252,57 @@ public class CallHierarchyView extends ViewPart implements ISelectionChangedList
    */
   void setSelection(final JJNode aJJNode) {
     jNode = aJJNode;
+    jCallers.clear();
+    jCallees.clear();
     // need a root which is not displayed
     final JJNode root = new JJNode(0);
     if (aJJNode == null) {
       // show an "empty" view
-      root.resetCallersToOohsJJNode();
-      root.resetCalleesToOohsJJNode();
+      final JJNode[] oohs = new JJNode[] {
+        JJNode.getOohsjjnode() };
+      jCallers.put(root, oohs);
+      jCallees.put(root, oohs);
     }
     else {
       // add the node to the root as a caller and a callee
-      root.addCaller(aJJNode);
-      root.addCallee(aJJNode);
-      aJJNode.buildCallees(jEditor.getElements());
-      aJJNode.buildCallers();
+      final JJNode[] node = new JJNode[] {
+        aJJNode };
+      jCallers.put(root, node);
+      jCallees.put(root, node);
+      buildCalls(aJJNode);
     }
     jTreeViewer.setInput(root);
   }
 
+  /**
+   * Builds the callers and callees of a node (without modifying it).
+   * 
+   * @param aJJNode - the node
+   */
+  private void buildCalls(final JJNode aJJNode) {
+    final Elements elements = jEditor.getElements();
+    jCallees.put(aJJNode, aJJNode.findCallees(elements));
+    jCallers.put(aJJNode, aJJNode.findCallers(elements));
+  }
+
+  /**
+   * @param aJJNode - a node
+   * @return the callers of the node (none if they have not been built yet)
+   */
+  final JJNode[] getCallers(final JJNode aJJNode) {
+    final JJNode[] callers = jCallers.get(aJJNode);
+    return callers == null ? new JJNode[0] : callers;
+  }
+
+  /**
+   * @param aJJNode - a node
+   * @return the callees of the node (none if they have not been built yet)
+   */
+  final JJNode[] getCallees(final JJNode aJJNode) {
+    final JJNode[] callees = jCallees.get(aJJNode);
+    return callees == null ? new JJNode[0] : callees;
+  }
+
   /**
    * Rebuilds the whole AST from the root.
    */
@@ -90,8 +90,12 @@ class CompletionProcessor implements IContentAssistProcessor {
       return null;
     }
 
+    // the grammar model of the current document (usually already built by the reconciler), shared with the
+    // other editor features ; its text avoids a copy of the document
+    final GrammarModel model = GrammarModelService.get(currentDocument).getModel(currentDocument);
+
     // compute the completion proposal place (start, length)
-    final String text = aTextViewer.getDocument().get();
+    final String text = model.getText();
     int start = 0;
     int length = 0;
     final List<String> props;
@@ -159,7 +163,7 @@ class CompletionProcessor implements IContentAssistProcessor {
         // should not occur
         AbstractActivator.logBug(e, aDocOffset);
       }
-      final Elements jElements = jjeditor.getElements();
+      final Elements jElements = model.getElements();
       final int topNodeId = jElements.getEnclosingNodeId(line, column);
       // choose the proposals depending on the file extension and the location in the document
       props = new ArrayList<String>(30);
@@ -3,6 +3,7 @@ package sf.eclipse.javacc.editors;
 import static sf.eclipse.javacc.parser.JavaCCParserTreeConstants.*;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -57,6 +58,19 @@ public class Elements {
    */
   protected final List<JJNode>        jOpChvList              = new ArrayList<JJNode>(30);
 
+  /** The index of the lines spans of the nodes of {@link #jCompPropsRangeList} */
+  protected final SpanIndex           jCompPropsRangeIndex    = new SpanIndex();
+
+  /** The index of the lines spans of the nodes of {@link #jOpChvList} */
+  protected final SpanIndex           jOpChvIndex             = new SpanIndex();
+
+  /**
+   * The map of node names to the nodes which may reference them (identifiers in expansions and regular
+   * expressions, node descriptors, bnf productions) ; the lists are in the document order<br>
+   * Used by {@link JJNode#findCallers(Elements)}
+   */
+  protected final Map<String, List<JJNode>> jUseSitesMap = new HashMap<String, List<JJNode>>(64);
+
   /**
    * The map of node keys (image) to nodes for hyperlinks<br>
    * Used by {@link HyperlinkDetector}
@@ -145,18 +159,27 @@ public class Elements {
   public void addNode(final String aImage, final JJNode aJJNode) {
     final int ndId = aJJNode.getId();
 
+    if (aImage != null && isUseSite(ndId)) {
+      List<JJNode> sites = jUseSitesMap.get(aImage);
+      if (sites == null) {
+        sites = new ArrayList<JJNode>(4);
+        jUseSitesMap.put(aImage, sites);
+      }
+      sites.add(aJJNode);
+    }
+
     // the line number is prepended to the text to distinguish between multiples occurrences of the node
 
     switch (ndId) {
       case JJTPARSER_BEGIN:
         jNonIdentNorNodeDescMap.put(aImage, aJJNode);
-        jOpChvList.add(aJJNode);
-        jCompPropsRangeList.add(aJJNode);
+        addOpChvNode(aJJNode);
+        addCompPropsRangeNode(aJJNode);
         jIsParserBeginThere = true;
         break;
       case JJTJAVACC_OPTIONS:
         jNonIdentNorNodeDescMap.put(aImage, aJJNode);
-        jCompPropsRangeList.add(aJJNode);
+        addCompPropsRangeNode(aJJNode);
         jIsOptionsThere = true;
         break;
       case JJTOPTION_BINDING:
@@ -178,24 +201,24 @@ public class Elements {
       case JJTJAVACODE_PROD:
       case JJTREGULAR_EXPR_PROD:
         jNonIdentNorNodeDescMap.put(aImage, aJJNode);
-        jOpChvList.add(aJJNode);
-        jCompPropsRangeList.add(aJJNode);
+        addOpChvNode(aJJNode);
+        addCompPropsRangeNode(aJJNode);
         break;
       case JJTMETHODDECL:
       case JJTCLAORINTDECL:
       case JJTENUMDECL:
       case JJTANNOTTYPEDECL:
         jNonIdentNorNodeDescMap.put(aImage, aJJNode);
-        jOpChvList.add(aJJNode);
+        addOpChvNode(aJJNode);
         break;
       case JJTCONSTRDECL:
-        jOpChvList.add(aJJNode);
+        addOpChvNode(aJJNode);
         break;
       case JJTBNF_PROD:
         jNonIdentNorNodeDescMap.put(aImage, aJJNode);
-        jOpChvList.add(aJJNode);
+        addOpChvNode(aJJNode);
         jCompPropsIdentMap.put(aImage, aJJNode);
-        jCompPropsRangeList.add(aJJNode);
+        addCompPropsRangeNode(aJJNode);
         break;
       case JJTIDENT_BNF_DECL:
         jIdentOrNodeDescMap.put(getNodeBeginLine(aJJNode) + aImage, aJJNode);
@@ -215,7 +238,7 @@ public class Elements {
         break;
       case JJTBNF_PROD_JAVA_BLOCK:
       case JJTBNF_PROD_EXP_BLOCK:
-        jCompPropsRangeList.add(aJJNode);
+        addCompPropsRangeNode(aJJNode);
         break;
       case JJTIDENT_REG_EXPR_LABEL:
         jIdentOrNodeDescMap.put(getNodeBeginLine(aJJNode) + aImage, aJJNode);
@@ -241,7 +264,7 @@ public class Elements {
       case JJTTOKEN_MANAGER_DECLS:
       case JJTREGEXPR_SPEC_JAVA_BLOCK:
       case JJTEXP_UNIT_JAVA_BLOCK:
-        jCompPropsRangeList.add(aJJNode);
+        addCompPropsRangeNode(aJJNode);
         break;
       case JJTJAVAIDENTINMETHODDECL:
       case JJTJAVAIDENTINCLAORINTDECL:
@@ -257,6 +280,54 @@ public class Elements {
     }
   }
 
+  /**
+   * Adds a node to the OP / CHV list and its index.
+   * 
+   * @param aJJNode - the node
+   */
+  private void addOpChvNode(final JJNode aJJNode) {
+    jOpChvList.add(aJJNode);
+    jOpChvIndex.add(getNodeBeginLine(aJJNode), getNodeEndLine(aJJNode));
+  }
+
+  /**
+   * Adds a node to the completion proposals range list and its index.
+   * 
+   * @param aJJNode - the node
+   */
+  private void addCompPropsRangeNode(final JJNode aJJNode) {
+    jCompPropsRangeList.add(aJJNode);
+    jCompPropsRangeIndex.add(getNodeBeginLine(aJJNode), getNodeEndLine(aJJNode));
+  }
+
+  /**
+   * Adds the elements of some following nodes (in the document order), as if their nodes had been added with
+   * {@link #addNode(String, JJNode)}.
+   * 
+   * @param aElements - the elements of the following nodes
+   */
+  void addAll(final Elements aElements) {
+    jIdentOrNodeDescMap.putAll(aElements.jIdentOrNodeDescMap);
+    jNonIdentNorNodeDescMap.putAll(aElements.jNonIdentNorNodeDescMap);
+    jCompPropsIdentMap.putAll(aElements.jCompPropsIdentMap);
+    jCompPropsRangeList.addAll(aElements.jCompPropsRangeList);
+    jCompPropsRangeIndex.addAll(aElements.jCompPropsRangeIndex);
+    jOpChvList.addAll(aElements.jOpChvList);
+    jOpChvIndex.addAll(aElements.jOpChvIndex);
+    jHyperlinksMap.putAll(aElements.jHyperlinksMap);
+    for (final Map.Entry<String, List<JJNode>> entry : aElements.jUseSitesMap.entrySet()) {
+      final List<JJNode> sites = jUseSitesMap.get(entry.getKey());
+      if (sites == null) {
+        jUseSitesMap.put(entry.getKey(), new ArrayList<JJNode>(entry.getValue()));
+      }
+      else {
+        sites.addAll(entry.getValue());
+      }
+    }
+    jIsOptionsThere |= aElements.jIsOptionsThere;
+    jIsParserBeginThere |= aElements.jIsParserBeginThere;
+  }
+
   /**
    * Clears maps.
    */
@@ -265,8 +336,11 @@ public class Elements {
     jNonIdentNorNodeDescMap.clear();
     jCompPropsIdentMap.clear();
     jCompPropsRangeList.clear();
+    jCompPropsRangeIndex.clear();
     jOpChvList.clear();
+    jOpChvIndex.clear();
     jHyperlinksMap.clear();
+    jUseSitesMap.clear();
     jIsOptionsThere = jIsParserBeginThere = false;
   }
 
@@ -277,6 +351,28 @@ public class Elements {
   //    return identOrNodeDescMap;
   //  }
 
+  /**
+   * @param aNodeId - a node id
+   * @return true if a node of this kind may reference (call) another node, false otherwise
+   */
+  private static boolean isUseSite(final int aNodeId) {
+    return aNodeId == JJTIDENT_REG_EXPR_LABEL || aNodeId == JJTIDENT_REG_EXPR_PRIVATE_LABEL
+           || aNodeId == JJTIDENT_IN_COMP_REG_EXPR_UNIT || aNodeId == JJTIDENT_IN_REG_EXPR
+           || aNodeId == JJTIDENT_IN_EXP_UNIT || aNodeId == JJTNODE_DESC_IN_EXP || aNodeId == JJTBNF_PROD
+           || aNodeId == JJTNODE_DESC_BNF_DECL || aNodeId == JJTNODE_DESC_IN_METH;
+  }
+
+  /**
+   * Returns the nodes which may reference a given name.
+   * 
+   * @param aName - a node name
+   * @return the nodes (in the document order), or an empty list if none
+   */
+  public final List<JJNode> getUseSites(final String aName) {
+    final List<JJNode> sites = jUseSitesMap.get(aName);
+    return sites == null ? Collections.<JJNode> emptyList() : sites;
+  }
+
   /**
    * Returns the node from the identifier or node descriptor nodes map given its key (must be line + image or
    * line + '#' + image).<br>
@@ -385,26 +481,21 @@ public class Elements {
   public JJNode getOpChvNodeFromLine(final boolean aTop, final int aLine) {
     // Eclipse numbers are 0-relative, JavaCC are 1-relative
     final int line = aLine + 1;
-    JJNode foundNd = null;
-    for (final JJNode nd : jOpChvList) {
-      final int bl = getNodeBeginLine(nd);
-      final int el = getNodeEndLine(nd);
-      if (line < bl) {
-        // already passed
-        return foundNd;
-      }
-      else if (line > el) {
-        // not yet
-      }
-      else {
-        // between
-        if (aTop) {
-          return nd;
-        }
-        foundNd = nd;
+    // the nodes before first all end before the line, the nodes from last begin after the line
+    final int first = jOpChvIndex.firstEndingFrom(line);
+    final int last = jOpChvIndex.firstBeginningAfter(line);
+    if (aTop) {
+      // the first node ending on or after the line is the highest one around it if it begins before
+      return first < last ? jOpChvList.get(first) : null;
+    }
+    // the lowest node around the line is the last one beginning before the line and ending after it
+    for (int i = last - 1; i >= first; i--) {
+      final JJNode nd = jOpChvList.get(i);
+      if (getNodeEndLine(nd) >= line) {
+        return nd;
       }
     }
-    return foundNd;
+    return null;
   }
 
   //  /**
@@ -470,7 +561,10 @@ public class Elements {
     // so we have to find if we are in the inner or outer nodes
     boolean inOuter = false;
     int outerId = JJTVOID;
-    for (final JJNode nd : jCompPropsRangeList) {
+    // skip directly the nodes ending before the line (they do not change the state)
+    final int size = jCompPropsRangeList.size();
+    for (int i = jCompPropsRangeIndex.firstEndingFrom(line); i < size; i++) {
+      final JJNode nd = jCompPropsRangeList.get(i);
       final int ndId = nd.getId();
       if (!inOuter && ndId != JJTPARSER_BEGIN && ndId != JJTJAVACC_OPTIONS && ndId != JJTJAVACODE_PROD
           && ndId != JJTBNF_PROD && ndId != JJTREGULAR_EXPR_PROD && ndId != JJTTOKEN_MANAGER_DECLS) {
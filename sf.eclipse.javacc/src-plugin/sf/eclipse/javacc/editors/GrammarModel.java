@@ -0,0 +1,119 @@
+package sf.eclipse.javacc.editors;
+
+import java.util.List;
+
+import org.eclipse.jface.text.Position;
+
+import sf.eclipse.javacc.parser.JJNode;
+
+/**
+ * The model of a grammar document at a given modification stamp, built once by its
+ * {@link GrammarModelService} and shared by all the editor features (outline, call hierarchy, completion,
+ * hover, hyperlinks, formatting and folding) : the text, the AST (and its token chain), the elements and the
+ * nodes foldable positions.<br>
+ * A model is immutable : the readers must not modify its nodes and tokens, and the next models share them or
+ * are built incrementally on copies of them. So a model can be read from any thread, even when it is no
+ * longer the current one.
+ * 
+ * @since 1.5.34
+ */
+public final class GrammarModel {
+
+  /** The modification stamp of the document snapshot */
+  final long           jStamp;
+
+  /** The document text */
+  final String         jText;
+
+  /**
+   * The AST root node ; if parsing failed it is an ASTroot with a single Token whose image is the error text
+   */
+  final JJNode         jAstRoot;
+
+  /** True if the parsing succeeded, false otherwise */
+  final boolean        jParsed;
+
+  /** The elements built from the AST root node (from the last successful parse if parsing failed) */
+  final Elements       jElements;
+
+  /** The elements of each AST root node child (merged into the elements), or null if unknown */
+  final Elements[]     jChildElements;
+
+  /** The foldable positions of the nodes */
+  final List<Position> jNodePositions;
+
+  /**
+   * The indexes of the first foldable positions of the AST root node children (followed by the number of
+   * positions), or null if unknown
+   */
+  final int[]          jChildPositions;
+
+  /**
+   * Standard constructor.
+   * 
+   * @param aStamp - the modification stamp of the document snapshot
+   * @param aText - the document text
+   * @param aAstRoot - the AST root node
+   * @param aParsed - true if the parsing succeeded, false otherwise
+   * @param aElements - the elements
+   * @param aChildElements - the elements of each AST root node child, or null if unknown
+   * @param aNodePositions - the foldable positions of the nodes
+   * @param aChildPositions - the indexes of the first foldable positions of the AST root node children
+   *          (followed by the number of positions), or null if unknown
+   */
+  GrammarModel(final long aStamp, final String aText, final JJNode aAstRoot, final boolean aParsed,
+               final Elements aElements, final Elements[] aChildElements, final List<Position> aNodePositions,
+               final int[] aChildPositions) {
+    jStamp = aStamp;
+    jText = aText;
+    jAstRoot = aAstRoot;
+    jParsed = aParsed;
+    jElements = aElements;
+    jChildElements = aChildElements;
+    jNodePositions = aNodePositions;
+    jChildPositions = aChildPositions;
+  }
+
+  /**
+   * @return the modification stamp of the document snapshot
+   */
+  public long getStamp() {
+    return jStamp;
+  }
+
+  /**
+   * @return the document text
+   */
+  public String getText() {
+    return jText;
+  }
+
+  /**
+   * @return the AST root node ; its first token is the head of the token chain
+   */
+  public JJNode getAstRoot() {
+    return jAstRoot;
+  }
+
+  /**
+   * @return true if the parsing succeeded, false otherwise (then the AST root node holds only the error)
+   */
+  public boolean isParsed() {
+    return jParsed;
+  }
+
+  /**
+   * @return the elements built from the AST root node (from the last successful parse if parsing failed)
+   */
+  public Elements getElements() {
+    return jElements;
+  }
+
+  /**
+   * @return the foldable positions of the nodes (not to be modified)
+   */
+  public List<Position> getNodePositions() {
+    return jNodePositions;
+  }
+
+}
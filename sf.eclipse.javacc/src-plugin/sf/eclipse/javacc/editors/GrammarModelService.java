@@ -0,0 +1,261 @@
+package sf.eclipse.javacc.editors;
+
+import static sf.eclipse.javacc.parser.JavaCCParserTreeConstants.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
+import org.eclipse.jface.text.Position;
+
+import sf.eclipse.javacc.parser.JJNode;
+import sf.eclipse.javacc.parser.Node;
+
+/**
+ * The grammar model service of a document : it builds the {@link GrammarModel} of the document at most once
+ * per modification stamp (parsing only the modified productions if possible, see {@link IncrementalParser}),
+ * and gives the same model to all the editor features and to all the editors opened on the document.<br>
+ * The reconciler builds the model from a text snapshot taken in the UI thread (see
+ * {@link JJEditor#performUpdates()}) ; the features running in the UI thread (completion, formatting) get the
+ * model of the current document, which is usually already built.<br>
+ * The models are built one at a time by the incremental parser, which shares the unchanged tokens and nodes of
+ * the current model and works on copies of the others, so the models are immutable. The UI thread never waits for a build : if the
+ * reconciler is building a model, it parses the document on its own.
+ * 
+ * @since 1.5.34
+ */
+public final class GrammarModelService {
+
+  /** The services : key = document, val = service */
+  private static final Map<IDocument, GrammarModelService> sServices = new WeakHashMap<IDocument, GrammarModelService>();
+
+  /** The incremental parser */
+  private final IncrementalParser                          jParser   = new IncrementalParser();
+
+  /** The lock serializing the incremental builds */
+  private final ReentrantLock                              jLock     = new ReentrantLock();
+
+  /** The current model, or null if none yet */
+  private volatile GrammarModel                            jModel;
+
+  /**
+   * Standard constructor.
+   */
+  private GrammarModelService() {
+    // one per document
+  }
+
+  /**
+   * Retrieves (or creates) the service of a document.
+   * 
+   * @param aDoc - the document
+   * @return the service
+   */
+  public static GrammarModelService get(final IDocument aDoc) {
+    synchronized (sServices) {
+      GrammarModelService service = sServices.get(aDoc);
+      if (service == null) {
+        service = new GrammarModelService();
+        sServices.put(aDoc, service);
+      }
+      return service;
+    }
+  }
+
+  /**
+   * Gives the model of the current state of a document, building it if needed. Must be called in the UI
+   * thread (the document text is read only if the current model is not the one of the document). If the
+   * reconciler is building a model, the document is fully parsed into a model which is not kept, rather than
+   * waiting for the build to end.
+   * 
+   * @param aDoc - the document (the one of the service)
+   * @return the model
+   */
+  public GrammarModel getModel(final IDocument aDoc) {
+    final long stamp = getModificationStamp(aDoc);
+    final GrammarModel model = jModel;
+    if (model != null && stamp != IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP && model.jStamp == stamp) {
+      return model;
+    }
+    final String text = aDoc.get();
+    if (jLock.tryLock()) {
+      try {
+        return build(text, stamp);
+      } finally {
+        jLock.unlock();
+      }
+    }
+    return newModel(stamp, text, new IncrementalParser().parse(text), model);
+  }
+
+  /**
+   * @return the current model (the last one built), or null if none yet
+   */
+  public GrammarModel getCurrentModel() {
+    return jModel;
+  }
+
+  /**
+   * Gives the model of a document snapshot, building it if it is not the current one.
+   * 
+   * @param aText - the document text
+   * @param aStamp - the document modification stamp
+   * @return the model
+   */
+  public GrammarModel getModel(final String aText, final long aStamp) {
+    jLock.lock();
+    try {
+      return build(aText, aStamp);
+    } finally {
+      jLock.unlock();
+    }
+  }
+
+  /**
+   * Builds the model of a document snapshot if it is not the current one, and makes it the current one.
+   * Must be called under the lock.
+   * 
+   * @param aText - the document text
+   * @param aStamp - the document modification stamp
+   * @return the model
+   */
+  private GrammarModel build(final String aText, final long aStamp) {
+    final GrammarModel model = jModel;
+    if (model != null && aStamp != IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP) {
+      if (model.jStamp == aStamp) {
+        return model;
+      }
+      if (aText.equals(model.jText)) {
+        // same text (e.g. a change undone), same model
+        return jModel = new GrammarModel(aStamp, aText, model.jAstRoot, model.jParsed, model.jElements,
+                                         model.jChildElements, model.jNodePositions, model.jChildPositions);
+      }
+    }
+    return jModel = newModel(aStamp, aText, jParser.parse(aText), model);
+  }
+
+  /**
+   * Creates a model from a parse. The elements and the foldable positions are built for each top level node ;
+   * the ones of the productions shared with the previous AST (see {@link IncrementalParser}) are taken from
+   * the previous model (the positions being shifted if they follow the modification), so only the ones of
+   * the reparsed or copied productions are built.
+   * 
+   * @param aStamp - the document modification stamp
+   * @param aText - the document text
+   * @param aRoot - the AST root node of the text
+   * @param aPrevious - the previous model (whose elements are kept if parsing failed), or null if none
+   * @return the model
+   */
+  private static GrammarModel newModel(final long aStamp, final String aText, final JJNode aRoot,
+                                       final GrammarModel aPrevious) {
+    // if parsing failed root is an ASTroot with a single Token whose image is the error text
+    if (aRoot.getFirstToken().next == null) {
+      final Elements elements = aPrevious == null ? new Elements() : aPrevious.jElements;
+      return new GrammarModel(aStamp, aText, aRoot, false, elements, null, Collections.<Position> emptyList(),
+                              null);
+    }
+    // the children shared with the previous AST are at the beginning and at the end
+    final int nb = aRoot.jjtGetNumChildren();
+    final JJNode prevRoot = aPrevious == null || aPrevious.jChildElements == null ? null : aPrevious.jAstRoot;
+    final int prevNb = prevRoot == null ? 0 : prevRoot.jjtGetNumChildren();
+    int head = 0;
+    while (head < nb && head < prevNb && aRoot.jjtGetChild(head) == prevRoot.jjtGetChild(head)) {
+      head++;
+    }
+    int tail = 0;
+    while (tail < nb - head && tail < prevNb - head
+           && aRoot.jjtGetChild(nb - 1 - tail) == prevRoot.jjtGetChild(prevNb - 1 - tail)) {
+      tail++;
+    }
+    // the offsets of the lines of the other children
+    int firstLine = 0;
+    int[] lineOffsets = null;
+    if (head < nb - tail) {
+      firstLine = ((JJNode) aRoot.jjtGetChild(head)).getBeginLine();
+      lineOffsets = IncrementalParser.lineOffsets(aText, firstLine,
+                                                  ((JJNode) aRoot.jjtGetChild(nb - 1 - tail)).getEndLine() + 1);
+    }
+    final Elements elements = new Elements();
+    final Elements[] childElements = new Elements[nb];
+    final List<Position> positions = new ArrayList<Position>(100);
+    final int[] childPositions = new int[nb + 1];
+    for (int k = 0; k < nb; k++) {
+      childPositions[k] = positions.size();
+      if (k < head) {
+        childElements[k] = aPrevious.jChildElements[k];
+        positions.addAll(aPrevious.jNodePositions.subList(aPrevious.jChildPositions[k],
+                                                          aPrevious.jChildPositions[k + 1]));
+      }
+      else if (k >= nb - tail) {
+        final int prevK = k - nb + prevNb;
+        final int shift = aText.length() - aPrevious.jText.length();
+        childElements[k] = aPrevious.jChildElements[prevK];
+        for (final Position pos : aPrevious.jNodePositions.subList(aPrevious.jChildPositions[prevK],
+                                                                   aPrevious.jChildPositions[prevK + 1])) {
+          positions.add(shift == 0 ? pos : new Position(pos.getOffset() + shift, pos.getLength()));
+        }
+      }
+      else {
+        final JJNode child = (JJNode) aRoot.jjtGetChild(k);
+        childElements[k] = new Elements();
+        child.buildElements(childElements[k]);
+        addNodeFoldablePositions(child, lineOffsets, firstLine, positions);
+      }
+      elements.addAll(childElements[k]);
+    }
+    childPositions[nb] = positions.size();
+    return new GrammarModel(aStamp, aText, aRoot, true, elements, childElements,
+                            Collections.unmodifiableList(positions), childPositions);
+  }
+
+  /**
+   * @param aDoc - a document
+   * @return the document modification stamp, or {@link IDocumentExtension4#UNKNOWN_MODIFICATION_STAMP}
+   */
+  static long getModificationStamp(final IDocument aDoc) {
+    return aDoc instanceof IDocumentExtension4 ? ((IDocumentExtension4) aDoc).getModificationStamp()
+                                              : IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+  }
+
+  /**
+   * Processes recursively a given node and adds its folding positions if applicable.
+   * 
+   * @param aJJNode - the node to process
+   * @param aLineOffsets - the offsets of the lines of the node in the document (snapshot) it has been parsed
+   *          from, from the first line to the line following the last one
+   * @param aFirstLine - the first line of the line offsets
+   * @param aPositions - the list to add the positions to
+   */
+  private static void addNodeFoldablePositions(final JJNode aJJNode, final int[] aLineOffsets,
+                                               final int aFirstLine, final List<Position> aPositions) {
+    // add a region if the node is one of the appropriate types
+    // note that JJTJAVACODE_PROD is not foldable as the just following method declaration is foldable
+    final int id = aJJNode.getId();
+    if (id == JJTBNF_PROD || id == JJTREGULAR_EXPR_PROD || id == JJTREGEXPR_SPEC || id == JJTCLAORINTDECL
+        || id == JJTENUMDECL || id == JJTANNOTTYPEDECL || id == JJTMETHODDECL || id == JJTCONSTRDECL
+        || id == JJTJAVACC_OPTIONS || id == JJTTOKEN_MANAGER_DECLS || id == JJTPARSER_BEGIN) {
+      // take nodes only on 2 or more lines ; the end is the beginning of the next line, or the end of the text
+      final int startLine = aJJNode.getBeginLine();
+      final int endLine = aJJNode.getEndLine();
+      if (startLine < endLine) {
+        final int start = aLineOffsets[startLine - aFirstLine];
+        final int end = aLineOffsets[endLine + 1 - aFirstLine];
+        aPositions.add(new Position(start, end - start));
+      }
+    }
+    // process children
+    final Node[] children = aJJNode.getChildren();
+    if (children != null) {
+      for (final Node child : children) {
+        addNodeFoldablePositions((JJNode) child, aLineOffsets, aFirstLine, aPositions);
+      }
+    }
+    return;
+  }
+
+}
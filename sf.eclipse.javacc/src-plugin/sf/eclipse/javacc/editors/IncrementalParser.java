@@ -0,0 +1,447 @@
+package sf.eclipse.javacc.editors;
+
+import static sf.eclipse.javacc.parser.JavaCCParserTreeConstants.*;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import sf.eclipse.javacc.parser.ASTroot;
+import sf.eclipse.javacc.parser.JJNode;
+import sf.eclipse.javacc.parser.JavaCCParser;
+import sf.eclipse.javacc.parser.Node;
+import sf.eclipse.javacc.parser.Token;
+
+/**
+ * Parses the editor document, reusing the AST of the previous successful parse when possible.<br>
+ * The text is compared to the previously parsed one, and only the top level productions (bnf, regular
+ * expression, javacode and token manager declarations) spanning the modified lines are reparsed ; the new
+ * production nodes are spliced into a new root node with the unchanged ones, which are shared with the
+ * previous AST. Only the productions following the modification are copied, with their tokens, if they must
+ * be shifted by the number of added / removed lines (or else only the next one, whose first token holds the
+ * comments following the reparsed lines). As the last token of the production preceding the reparsed lines
+ * is shared, its next token is recorded in the new root node (see {@link JJNode#getNextToken(Token)}).<br>
+ * The previous AST and its tokens are never modified, as they may still be read through the previous model.<br>
+ * The whole document is parsed when there is no previous AST, when the modification touches the options, the
+ * parser class or the text after the last production, or when reparsing the productions fails.
+ * 
+ * @since 1.5.34
+ */
+class IncrementalParser {
+
+  /** The parser */
+  private final JavaCCParser jParser;
+
+  /** The text of the last successful parse, or null if none */
+  private String             jText;
+
+  /** The AST root node of the last successful parse, or null if none */
+  private JJNode             jRoot;
+
+  /**
+   * Standard constructor. The parser is not shared : there is one per {@link GrammarModelService}, which
+   * serializes the parses.
+   */
+  IncrementalParser() {
+    jParser = new JavaCCParser(new StringReader("")); //$NON-NLS-1$
+  }
+
+  /**
+   * Parses a text.
+   * 
+   * @param aText - the text
+   * @return the AST root node ; if parsing failed it is an ASTroot with a single Token whose image is the
+   *         error text
+   */
+  JJNode parse(final String aText) {
+    if (jRoot != null && aText.equals(jText)) {
+      return jRoot;
+    }
+    JJNode root = jRoot == null ? null : reparse(aText);
+    if (root == null) {
+      final StringReader in = new StringReader(aText);
+      jParser.ReInit(in);
+      root = jParser.parse(in);
+      in.close();
+    }
+    if (root.getFirstToken().next != null) {
+      jText = aText;
+      jRoot = root;
+    }
+    else {
+      // the next parse will be a full one
+      jText = null;
+      jRoot = null;
+    }
+    return root;
+  }
+
+  /**
+   * Reparses the productions spanning the lines modified since the last successful parse.
+   * 
+   * @param aText - the new text
+   * @return the new AST root node, or null if the whole text must be parsed
+   */
+  private JJNode reparse(final String aText) {
+    final String old = jText;
+    final int oldLen = old.length();
+    final int newLen = aText.length();
+    final int min = Math.min(oldLen, newLen);
+    int pre = 0;
+    while (pre < min && old.charAt(pre) == aText.charAt(pre)) {
+      pre++;
+    }
+    if (pre > 0 && old.charAt(pre - 1) == '\r') {
+      // a modification just after a carriage return may join it to a line feed or split them
+      pre--;
+    }
+    int suf = 0;
+    while (suf < min - pre && old.charAt(oldLen - 1 - suf) == aText.charAt(newLen - 1 - suf)) {
+      suf++;
+    }
+    // the modified lines in the old text, and the number of added (or removed) lines
+    final int firstLine = lineOf(old, pre);
+    final int lastLine = lineOf(old, oldLen - suf);
+    final int delta = lineOf(aText, newLen - suf) - lastLine;
+
+    // find the productions spanning the modified lines
+    final int nb = jRoot.jjtGetNumChildren();
+    if (nb < 3 || ((JJNode) jRoot.jjtGetChild(1)).getId() != JJTPARSER_BEGIN) {
+      return null;
+    }
+    for (int k = 2; k < nb; k++) {
+      if (!isProduction((JJNode) jRoot.jjtGetChild(k))) {
+        return null;
+      }
+    }
+    int i = 2;
+    while (i < nb && child(i).getLastToken().endLine < firstLine) {
+      i++;
+    }
+    if (i == nb) {
+      // after the last production
+      return null;
+    }
+    // a production sharing a line with the previous one is reparsed with it
+    while (i > 1 && child(i - 1).getLastToken().endLine >= child(i).getFirstToken().beginLine) {
+      i--;
+    }
+    if (i < 2 || child(i - 1).getLastToken().endLine >= firstLine) {
+      // the parser class is touched
+      return null;
+    }
+    int j = i;
+    // a production sharing a line with the next one is reparsed with it
+    while (j + 1 < nb) {
+      final int endLine = child(j).getLastToken().endLine;
+      if (endLine >= lastLine && child(j + 1).getFirstToken().beginLine > endLine) {
+        break;
+      }
+      j++;
+    }
+    if (child(j).getLastToken().endLine < lastLine) {
+      return null;
+    }
+    final int startLine = child(i - 1).getLastToken().endLine + 1;
+    final int endLine = child(j).getLastToken().endLine;
+    // the reparsed lines must not split a (multi lines) comment
+    if (crosses(child(i).getFirstToken(), startLine - 1)
+        || crosses(jRoot.getNextToken(child(j).getLastToken()), endLine)) {
+      return null;
+    }
+
+    // reparse from the line following the previous production to the last line of the last production
+    final int start = lineOffset(aText, startLine);
+    final int end = lineOffset(aText, endLine + delta + 1);
+    if (end < start) {
+      return null;
+    }
+    final StringReader in = new StringReader(aText.substring(start, end));
+    final JJNode seg = jParser.parseProductions(in, startLine);
+    in.close();
+    if (seg == null) {
+      return null;
+    }
+
+    // the following productions are copied only if their lines are shifted, except the first one, whose first
+    // token receives the special tokens of the end of the reparsed lines
+    final Token oldNextTok = jRoot.getNextToken(child(j).getLastToken());
+    final int lastCopied = delta != 0 ? nb - 1 : Math.min(j + 1, nb - 1);
+    final Token lastCopiedTok = lastCopied == nb - 1 ? jRoot.getLastToken() : child(lastCopied).getLastToken();
+    final Map<Token, Token> copies = copyTokens(oldNextTok, lastCopiedTok);
+    final Token prevTok = child(i - 1).getLastToken();
+    final Token nextTok = copies.get(oldNextTok);
+
+    // shift the following tokens
+    if (delta != 0) {
+      for (Token t = nextTok; t != null; t = t.next) {
+        shift(t, delta);
+        for (Token s = t.specialToken; s != null; s = s.specialToken) {
+          shift(s, delta);
+        }
+      }
+    }
+    // relink the special tokens (the kept special tokens of the previous production line are copied)
+    final Token segFirst = seg.getFirstToken();
+    final Token eof = seg.getLastToken();
+    Token keptSpe = child(i).getFirstToken().specialToken;
+    while (keptSpe != null && keptSpe.beginLine >= startLine) {
+      keptSpe = keptSpe.specialToken;
+    }
+    linkSpecials(segFirst, copySpecials(keptSpe));
+    keptSpe = null;
+    for (Token s = nextTok.specialToken; s != null && s.beginLine > endLine + delta; s = s.specialToken) {
+      keptSpe = s;
+    }
+    if (keptSpe == null) {
+      nextTok.specialToken = eof.specialToken;
+    }
+    else {
+      keptSpe.specialToken = eof.specialToken;
+    }
+    if (eof.specialToken != null) {
+      eof.specialToken.next = keptSpe;
+    }
+    // relink the token chain : the last token of the previous production is shared, so its next token is
+    // recorded in the new root node, with the ones of the other shared productions
+    final Map<Token, Token> nextTokens = new IdentityHashMap<Token, Token>();
+    for (int k = 0; k < nb; k++) {
+      if (k < i - 1 || k > lastCopied) {
+        final Token t = child(k).getLastToken();
+        final Token next = jRoot.getNextToken(t);
+        if (next != t.next) {
+          nextTokens.put(t, next);
+        }
+      }
+    }
+    final int nbSeg = seg.jjtGetNumChildren();
+    if (nbSeg == 0) {
+      nextTokens.put(prevTok, nextTok);
+    }
+    else {
+      nextTokens.put(prevTok, segFirst);
+      ((JJNode) seg.jjtGetChild(nbSeg - 1)).getLastToken().next = nextTok;
+    }
+
+    // splice the new productions nodes between the shared (and copied) ones ; the shared ones keep their
+    // previous parent
+    final JJNode root = new ASTroot(JJTROOT);
+    final Token lastTok = copies.get(jRoot.getLastToken());
+    root.setFirstToken(jRoot.getFirstToken());
+    root.setLastToken(lastTok == null ? jRoot.getLastToken() : lastTok);
+    root.setNextTokens(nextTokens);
+    final Node[] nodes = new Node[nb - (j - i + 1) + nbSeg];
+    int n = 0;
+    for (int k = 0; k < i; k++) {
+      nodes[n++] = child(k);
+    }
+    for (int k = 0; k < nbSeg; k++) {
+      final Node nd = seg.jjtGetChild(k);
+      nd.jjtSetParent(root);
+      nodes[n++] = nd;
+    }
+    for (int k = j + 1; k < nb; k++) {
+      nodes[n++] = k <= lastCopied ? child(k).copyTree(copies, root) : child(k);
+    }
+    // add the children from the last one (as JJTree does) so the array is allocated once
+    for (int k = nodes.length - 1; k >= 0; k--) {
+      root.jjtAddChild(nodes[k], k);
+    }
+    return root;
+  }
+
+  /**
+   * Copies a part of the token chain of the previous AST, with the special tokens of each token.
+   * 
+   * @param aFirst - the first token to copy
+   * @param aLast - the last token to copy (its copy is linked to the token following it)
+   * @return the copies of the tokens : key = token, val = copy
+   */
+  private Map<Token, Token> copyTokens(final Token aFirst, final Token aLast) {
+    final Map<Token, Token> copies = new IdentityHashMap<Token, Token>();
+    Token prev = null;
+    for (Token t = aFirst;; t = jRoot.getNextToken(t)) {
+      final Token c = copy(t);
+      c.specialToken = copySpecials(t.specialToken);
+      copies.put(t, c);
+      if (prev != null) {
+        prev.next = c;
+      }
+      prev = c;
+      if (t == aLast) {
+        c.next = jRoot.getNextToken(t);
+        return copies;
+      }
+    }
+  }
+
+  /**
+   * Copies a chain of special tokens.
+   * 
+   * @param aNewest - the newest special token of the chain, or null
+   * @return the copy of the newest special token, or null
+   */
+  private static Token copySpecials(final Token aNewest) {
+    // the special tokens are chained backwards through specialToken and forwards through next
+    Token newest = null;
+    Token newer = null;
+    for (Token s = aNewest; s != null; s = s.specialToken) {
+      final Token sc = copy(s);
+      if (newer == null) {
+        newest = sc;
+      }
+      else {
+        newer.specialToken = sc;
+        sc.next = newer;
+      }
+      newer = sc;
+    }
+    return newest;
+  }
+
+  /**
+   * @param aTok - a token
+   * @return a copy of the token, unlinked
+   */
+  private static Token copy(final Token aTok) {
+    final Token c = new Token(aTok.kind, aTok.image);
+    c.beginLine = aTok.beginLine;
+    c.beginColumn = aTok.beginColumn;
+    c.endLine = aTok.endLine;
+    c.endColumn = aTok.endColumn;
+    return c;
+  }
+
+  /**
+   * @param aIx - a child index
+   * @return the child of the previous AST root node
+   */
+  private JJNode child(final int aIx) {
+    return (JJNode) jRoot.jjtGetChild(aIx);
+  }
+
+  /**
+   * @param aNode - a root node child
+   * @return true if the node is a top level production, false otherwise
+   */
+  private static boolean isProduction(final JJNode aNode) {
+    final int id = aNode.getId();
+    return id == JJTBNF_PROD || id == JJTREGULAR_EXPR_PROD || id == JJTJAVACODE_PROD
+           || id == JJTTOKEN_MANAGER_DECLS;
+  }
+
+  /**
+   * @param aTok - a token
+   * @param aLine - a line
+   * @return true if one of the special tokens of the token begins before or on the line and ends after it
+   */
+  private static boolean crosses(final Token aTok, final int aLine) {
+    for (Token s = aTok.specialToken; s != null; s = s.specialToken) {
+      if (s.beginLine <= aLine && s.endLine > aLine) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Appends the special tokens of a token to a chain of previous special tokens.
+   * 
+   * @param aTok - the token
+   * @param aPrev - the last of the previous special tokens, or null if none
+   */
+  private static void linkSpecials(final Token aTok, final Token aPrev) {
+    if (aTok.specialToken == null) {
+      aTok.specialToken = aPrev;
+      return;
+    }
+    Token s = aTok.specialToken;
+    while (s.specialToken != null) {
+      s = s.specialToken;
+    }
+    s.specialToken = aPrev;
+    if (aPrev != null) {
+      aPrev.next = s;
+    }
+  }
+
+  /**
+   * Shifts a token by a number of lines.
+   * 
+   * @param aTok - the token
+   * @param aDelta - the number of lines
+   */
+  private static void shift(final Token aTok, final int aDelta) {
+    aTok.beginLine += aDelta;
+    aTok.endLine += aDelta;
+  }
+
+  /**
+   * Computes the line of an offset, counting the line terminators as the parser does ("\n", "\r" and "\r\n").
+   * 
+   * @param aText - the text
+   * @param aOffset - the offset
+   * @return the line (1 based)
+   */
+  static int lineOf(final String aText, final int aOffset) {
+    int line = 1;
+    for (int k = 0; k < aOffset; k++) {
+      final char c = aText.charAt(k);
+      if (c == '\n' || (c == '\r' && (k + 1 == aText.length() || aText.charAt(k + 1) != '\n'))) {
+        line++;
+      }
+    }
+    return line;
+  }
+
+  /**
+   * Computes the offset of the beginning of a line.
+   * 
+   * @param aText - the text
+   * @param aLine - the line (1 based)
+   * @return the offset of the first character of the line, or the text length if there is no such line
+   */
+  static int lineOffset(final String aText, final int aLine) {
+    int line = 1;
+    final int len = aText.length();
+    for (int k = 0; k < len && line < aLine; k++) {
+      final char c = aText.charAt(k);
+      if (c == '\n' || (c == '\r' && (k + 1 == len || aText.charAt(k + 1) != '\n'))) {
+        line++;
+        if (line == aLine) {
+          return k + 1;
+        }
+      }
+    }
+    return line == aLine ? 0 : len;
+  }
+
+  /**
+   * Computes the offsets of the beginnings of a range of lines.
+   * 
+   * @param aText - the text
+   * @param aFirst - the first line (1 based)
+   * @param aLast - the last line
+   * @return the offsets of the first character of the lines from the first one to the last one (the text
+   *         length for the lines after the end of the text)
+   */
+  static int[] lineOffsets(final String aText, final int aFirst, final int aLast) {
+    final int len = aText.length();
+    final int[] offsets = new int[aLast - aFirst + 1];
+    // the lines before the second one begin at 0
+    Arrays.fill(offsets, Math.min(offsets.length, Math.max(0, 2 - aFirst)), offsets.length, len);
+    int line = 1;
+    for (int k = 0; k < len && line < aLast; k++) {
+      final char c = aText.charAt(k);
+      if (c == '\n' || (c == '\r' && (k + 1 == len || aText.charAt(k + 1) != '\n'))) {
+        line++;
+        if (line >= aFirst) {
+          offsets[line - aFirst] = k + 1;
+        }
+      }
+    }
+    return offsets;
+  }
+
+}
@@ -1,10 +1,9 @@
 package sf.eclipse.javacc.editors;
 
 import static sf.eclipse.javacc.base.IConstants.*;
-import static sf.eclipse.javacc.parser.JavaCCParserTreeConstants.*;
 
-import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -21,6 +20,7 @@ import org.eclipse.jface.preference.IPreferenceStore;
 import org.eclipse.jface.preference.PreferenceConverter;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.ITextSelection;
 import org.eclipse.jface.text.ITextViewerExtension2;
@@ -58,12 +58,11 @@ import org.eclipse.ui.texteditor.AbstractTextEditor;
 import org.eclipse.ui.views.contentoutline.IContentOutlinePage;
 
 import sf.eclipse.javacc.base.AbstractActivator;
+import sf.eclipse.javacc.base.CompileScheduler;
 import sf.eclipse.javacc.handlers.Format;
 import sf.eclipse.javacc.handlers.GotoRule;
 import sf.eclipse.javacc.handlers.ShowCallHierarchy;
 import sf.eclipse.javacc.parser.JJNode;
-import sf.eclipse.javacc.parser.JavaCCParser;
-import sf.eclipse.javacc.parser.Node;
 import sf.eclipse.javacc.parser.Token;
 import sf.eclipse.javacc.preferences.IPrefConstants;
 
@@ -133,14 +132,8 @@ public class JJEditor extends TextEditor implements IPrefConstants {
   /** The Outline Page */
   private OutlinePage                               jOutlinePage;
 
-  /** The parser */
-  private JavaCCParser                              jParser;
-
-  /** The AST root node built from the text */
-  protected JJNode                                  jAstRoot;
-
-  /** The elements built from the AST root node */
-  private Elements                                  jElements;
+  /** The grammar model last applied (AST root node, elements, ...) */
+  private GrammarModel                              jModel;
 
   //  /** A flag to tell whether we have just passed the initialization or not, in order not to reparse */
   //  private boolean                                   jJustInitialized   = false;
@@ -170,8 +163,9 @@ public class JJEditor extends TextEditor implements IPrefConstants {
     // used to synchronize Outline Page, folding structure and check spelling
     // source viewer not yet known
     jReconStrategy = new ReconcilingStrategy(null, this, svc);
-    // used to retrieve Elements updated at each document parsing
-    jElements = new Elements();
+    // the empty model until the first reconciling
+    jModel = new GrammarModel(IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP, "", null, false, new Elements(), //$NON-NLS-1$
+                              null, Collections.<Position> emptyList(), null);
   }
 
   /**
@@ -254,6 +248,8 @@ public class JJEditor extends TextEditor implements IPrefConstants {
    */
   @Override
   public void dispose() {
+    // no longer give the priority to the grammar in the compilations
+    CompileScheduler.clearActiveGrammar(getEditedFile());
     // dispose Color
     if (jColorMatchingChar != null) {
       jColorMatchingChar.dispose();
@@ -284,6 +280,28 @@ public class JJEditor extends TextEditor implements IPrefConstants {
     super.dispose();
   }
 
+  /**
+   * Gives the priority to the edited grammar in the compilations.
+   * <p>
+   * {@inheritDoc}
+   */
+  @Override
+  public void setFocus() {
+    super.setFocus();
+    final IFile file = getEditedFile();
+    if (file != null) {
+      CompileScheduler.setActiveGrammar(file);
+    }
+  }
+
+  /**
+   * @return the edited file, or null if the editor input is not a file
+   */
+  private IFile getEditedFile() {
+    final IEditorInput editorInput = getEditorInput();
+    return editorInput instanceof IFileEditorInput ? ((IFileEditorInput) editorInput).getFile() : null;
+  }
+
   /**
    * Returns the OutlinePage declared on IAdaptable for an {@link IContentOutlinePage} class, and for other
    * classes calls the super method.
@@ -316,8 +334,7 @@ public class JJEditor extends TextEditor implements IPrefConstants {
   @Override
   public void doSave(final IProgressMonitor aProgressMonitor) {
     if (getFormatBeforeSave()) {
-      Assert.isNotNull(jParser);
-      Format.doFormat(this, jParser);
+      Format.doFormat(this);
     }
     super.doSave(aProgressMonitor);
   }
@@ -355,39 +372,75 @@ public class JJEditor extends TextEditor implements IPrefConstants {
 
   /**
    * Performs the different updates (Outline Page, Call Hierarchy View, Folding Structure) after parsing the
-   * document.
+   * document.<br>
+   * Called by the reconciling strategy in the reconciler thread : only the document snapshot and the updates
+   * are done in the UI thread, the parsing and the model building are done in the calling thread.
    */
   public void performUpdates() {
-    parse();
-    updateOutlinePage();
-    updateCallHierarchyView();
-    updateFoldingStructure();
+    final Display display = Display.getDefault();
+    final String[] text = new String[1];
+    final long[] stamp = new long[1];
+    final GrammarModelService[] service = new GrammarModelService[1];
+    display.syncExec(new Runnable() {
+
+      /** {@inheritDoc} */
+      @Override
+      public void run() {
+        final IDocument doc = getDocument();
+        if (doc != null) {
+          service[0] = GrammarModelService.get(doc);
+          stamp[0] = GrammarModelService.getModificationStamp(doc);
+          // no copy of the text if the model is already built (e.g. by the completion)
+          final GrammarModel current = service[0].getCurrentModel();
+          text[0] = current != null && current.jStamp == stamp[0]
+                    && stamp[0] != IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP ? current.jText : doc.get();
+        }
+      }
+    });
+    if (text[0] == null) {
+      // editor closed
+      return;
+    }
+    final GrammarModel model = service[0].getModel(text[0], stamp[0]);
+    display.asyncExec(new Runnable() {
+
+      /** {@inheritDoc} */
+      @Override
+      public void run() {
+        applyModel(model);
+      }
+    });
   }
 
   /**
-   * Parses the document and builds the elements if parsing did not fail.
+   * Applies a model built by the {@link GrammarModelService} and performs the different updates, unless the
+   * document has changed since (then a new reconciling will follow). Must be called in the UI thread.
+   * 
+   * @param aModel - the model
    */
-  private void parse() {
-    //    if (!jJustInitialized) {
-    final StringReader in = new StringReader(getDocument().get());
-    if (jParser == null) {
-      jParser = new JavaCCParser(in);
-    }
-    else {
-      jParser.ReInit(in);
-    }
-    jAstRoot = jParser.parse(in);
-    in.close();
-    // if parsing failed astRoot is an ASTroot with a single Token whose image is the error text
-    if (jAstRoot != null && jAstRoot.getFirstToken().next != null) {
-      jElements.clear();
-      jAstRoot.buildElements(jElements);
+  void applyModel(final GrammarModel aModel) {
+    final IDocument doc = getDocument();
+    if (doc == null || GrammarModelService.getModificationStamp(doc) != aModel.jStamp) {
+      return;
     }
-    else {
+    if (!aModel.jParsed && jOutlinePage != null) {
       jOutlinePage.jRevealing = false;
     }
-    //    }
-    //    jJustInitialized = false;
+    jModel = aModel;
+    updateOutlinePage();
+    updateCallHierarchyView();
+    updateFoldingStructure(aModel.jNodePositions);
+  }
+
+  /**
+   * Gives the grammar model of the current state of the document (shared with the other editor features),
+   * building it if needed. Must be called in the UI thread.
+   * 
+   * @return the model, or the last applied one if the editor has no document
+   */
+  public GrammarModel getModel() {
+    final IDocument doc = getDocument();
+    return doc == null ? jModel : GrammarModelService.get(doc).getModel(doc);
   }
 
   /**
@@ -401,7 +454,7 @@ public class JJEditor extends TextEditor implements IPrefConstants {
     }
     // if synchronized, update it
     if (jOutlinePage.isSyncWithEditor()) {
-      jOutlinePage.setNodes(jAstRoot, getOpchvNodeFromSelection(true));
+      jOutlinePage.setNodes(jModel.jAstRoot, getOpchvNodeFromSelection(true));
     }
   }
 
@@ -450,7 +503,7 @@ public class JJEditor extends TextEditor implements IPrefConstants {
     if (selection instanceof ITextSelection) {
       line = ((ITextSelection) selection).getStartLine() + 1;
       final String text = ((ITextSelection) selection).getText();
-      return jElements.getIdentOrNodeDesc(line + text);
+      return jModel.jElements.getIdentOrNodeDesc(line + text);
     }
     return null;
   }
@@ -465,13 +518,15 @@ public class JJEditor extends TextEditor implements IPrefConstants {
     if (selection instanceof ITextSelection) {
       line = ((ITextSelection) selection).getStartLine();
     }
-    return jElements.getOpChvNodeFromLine(aTop, line);
+    return jModel.jElements.getOpChvNodeFromLine(aTop, line);
   }
 
   /**
    * Tells the editor which regions are expandable or collapsable.
+   * 
+   * @param aNodePositions - the foldable positions of the nodes
    */
-  private void updateFoldingStructure() {
+  private void updateFoldingStructure(final List<Position> aNodePositions) {
     final ProjectionViewer pv = (ProjectionViewer) getSourceViewer();
     final ProjectionAnnotationModel model = pv.getProjectionAnnotationModel();
     if (model == null) {
@@ -480,7 +535,7 @@ public class JJEditor extends TextEditor implements IPrefConstants {
                                + " please report this message with the actions which led to it"); //$NON-NLS-1$
       return;
     }
-    computeFoldablePositions();
+    computeFoldablePositions(aNodePositions);
     final Map<ProjectionAnnotation, Position> additions;
     additions = new HashMap<ProjectionAnnotation, Position>(jFoldablePositions.size());
     for (final Position pos : jFoldablePositions) {
@@ -567,62 +622,20 @@ public class JJEditor extends TextEditor implements IPrefConstants {
 
   /**
    * Computes and adds the folding positions.
+   * 
+   * @param aNodePositions - the foldable positions of the nodes
    */
-  private void computeFoldablePositions() {
-    if (jAstRoot == null) {
-      return;
-    }
+  private void computeFoldablePositions(final List<Position> aNodePositions) {
     // clean old positions map
     jFoldablePositions.clear();
-    // process the tree to add foldable nodes
-    addNodeFoldablePositions(jAstRoot);
+    // add the foldable nodes (computed in the reconciler thread), copied as the annotation model updates them
+    for (final Position pos : aNodePositions) {
+      jFoldablePositions.add(new Position(pos.getOffset(), pos.getLength()));
+    }
     // add the foldable comments
     addFoldableComments();
   }
 
-  /**
-   * Processes recursively a given node and adds its folding positions if applicable.
-   * 
-   * @param aJJNode - the node to process
-   */
-  private void addNodeFoldablePositions(final JJNode aJJNode) {
-    // add a region if the node is one of the appropriate types
-    // note that JJTJAVACODE_PROD is not foldable as the just following method declaration is foldable
-    final int id = aJJNode.getId();
-    if (id == JJTBNF_PROD || id == JJTREGULAR_EXPR_PROD || id == JJTREGEXPR_SPEC || id == JJTCLAORINTDECL
-        || id == JJTENUMDECL || id == JJTANNOTTYPEDECL || id == JJTMETHODDECL || id == JJTCONSTRDECL
-        || id == JJTJAVACC_OPTIONS || id == JJTTOKEN_MANAGER_DECLS || id == JJTPARSER_BEGIN) {
-      try {
-        final IDocument doc = getDocument();
-        // lines in JavaCC begin at 1, in Eclipse begin at 0 ; take nodes only on 2 or more lines
-        final int startLine = aJJNode.getBeginLine() - 1;
-        final int endLine = aJJNode.getEndLine() - 1;
-        if (startLine < endLine) {
-          final int start = doc.getLineOffset(startLine);
-          int end;
-          if (doc.getNumberOfLines() > endLine + 1) {
-            end = doc.getLineOffset(endLine + 1);
-          }
-          else {
-            end = doc.getLineOffset(endLine) + doc.getLineLength(endLine);
-          }
-          jFoldablePositions.add(new Position(start, end - start));
-        }
-      } catch (final BadLocationException e) {
-        AbstractActivator.logBug(e, aJJNode.getBeginLine(), aJJNode.getEndLine());
-        return;
-      }
-    }
-    // process children
-    final Node[] children = aJJNode.getChildren();
-    if (children != null) {
-      for (final Node child : children) {
-        addNodeFoldablePositions((JJNode) child);
-      }
-    }
-    return;
-  }
-
   /**
    * Adds the multi line comments and the blocs of single line comments on full lines.
    */
@@ -797,10 +810,10 @@ public class JJEditor extends TextEditor implements IPrefConstants {
   }
 
   /**
-   * @return the astRoot
+   * @return the AST root node of the grammar model last applied
    */
   public final JJNode getAstRoot() {
-    return jAstRoot;
+    return jModel.jAstRoot;
   }
 
   /**
@@ -811,10 +824,10 @@ public class JJEditor extends TextEditor implements IPrefConstants {
   }
 
   /**
-   * @return jElements
+   * @return the elements of the grammar model last applied
    */
   public final Elements getElements() {
-    return jElements;
+    return jModel.jElements;
   }
 
   /**
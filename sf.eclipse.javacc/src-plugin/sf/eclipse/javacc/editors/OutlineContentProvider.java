@@ -57,7 +57,12 @@ class OutlineContentProvider implements ITreeContentProvider {
   /** {@inheritDoc} */
   @Override
   public Object getParent(final Object aObj) {
-    return aObj == null ? null : ((JJNode) aObj).jjtGetParent();
+    if (aObj == null) {
+      return null;
+    }
+    final JJNode parent = (JJNode) ((JJNode) aObj).jjtGetParent();
+    // the top level nodes shared by the incremental parser with a previous AST keep its root node as parent
+    return parent != null && parent.jjtGetParent() == null ? jAstRoot : parent;
   }
 
   /** {@inheritDoc} */
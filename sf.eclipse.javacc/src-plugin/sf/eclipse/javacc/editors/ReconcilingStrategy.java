@@ -155,17 +155,11 @@ public class ReconcilingStrategy implements IReconcilingStrategy, IReconcilingSt
   }
 
   /**
-   * Tells and waits for the JJEditor to perform its different updates (Outline Page, folding structure).
+   * Tells the JJEditor to perform its different updates (Outline Page, folding structure) ; the parsing is
+   * done in the reconciler thread, and only the updates in the UI thread.
    */
   private void updateJEditor() {
-    Display.getDefault().syncExec(new Runnable() {
-
-      /** {@inheritDoc} */
-      @Override
-      public void run() {
-        jEditor.performUpdates();
-      }
-    });
+    jEditor.performUpdates();
   }
 
   /**
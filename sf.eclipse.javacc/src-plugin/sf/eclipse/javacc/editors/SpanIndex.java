@@ -0,0 +1,100 @@
+package sf.eclipse.javacc.editors;
+
+/**
+ * A binary searchable index of the line spans of a list of nodes sorted by begin lines (the nodes being
+ * added in the document order, the enclosing ones before the enclosed ones).<br>
+ * It holds the begin lines and the running maximum of the end lines, so the first node which may enclose a
+ * line and the first node beginning after a line are found in O(log n).
+ * 
+ * @since 1.5.34
+ */
+class SpanIndex {
+
+  /** The begin lines */
+  private int[] jBegins  = new int[32];
+
+  /** The maximum end lines of the nodes up to each index */
+  private int[] jMaxEnds = new int[32];
+
+  /** The number of nodes */
+  private int   jSize;
+
+  /**
+   * Adds the span of the next node.
+   * 
+   * @param aBeginLine - the node begin line
+   * @param aEndLine - the node end line
+   */
+  void add(final int aBeginLine, final int aEndLine) {
+    if (jSize == jBegins.length) {
+      final int[] begins = new int[2 * jSize];
+      System.arraycopy(jBegins, 0, begins, 0, jSize);
+      jBegins = begins;
+      final int[] maxEnds = new int[2 * jSize];
+      System.arraycopy(jMaxEnds, 0, maxEnds, 0, jSize);
+      jMaxEnds = maxEnds;
+    }
+    jBegins[jSize] = aBeginLine;
+    jMaxEnds[jSize] = jSize == 0 ? aEndLine : Math.max(jMaxEnds[jSize - 1], aEndLine);
+    jSize++;
+  }
+
+  /**
+   * Adds the spans of the nodes of another index, which follow the nodes of this one.
+   * 
+   * @param aIndex - the other index
+   */
+  void addAll(final SpanIndex aIndex) {
+    for (int k = 0; k < aIndex.jSize; k++) {
+      // the running maximum of the other index gives the same running maximum once added
+      add(aIndex.jBegins[k], aIndex.jMaxEnds[k]);
+    }
+  }
+
+  /**
+   * Clears the index.
+   */
+  void clear() {
+    jSize = 0;
+  }
+
+  /**
+   * @param aLine - a line
+   * @return the index of the first node ending on or after the line (all the previous nodes end before the
+   *         line), or the number of nodes if none
+   */
+  int firstEndingFrom(final int aLine) {
+    int lo = 0;
+    int hi = jSize;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (jMaxEnds[mid] < aLine) {
+        lo = mid + 1;
+      }
+      else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * @param aLine - a line
+   * @return the index of the first node beginning after the line, or the number of nodes if none
+   */
+  int firstBeginningAfter(final int aLine) {
+    int lo = 0;
+    int hi = jSize;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (jBegins[mid] <= aLine) {
+        lo = mid + 1;
+      }
+      else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+}
@@ -1,14 +1,11 @@
 package sf.eclipse.javacc.filters;
 
-import static sf.eclipse.javacc.base.IConstants.GEN_FILE_QN;
-
 import org.eclipse.core.resources.IResource;
-import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IAdaptable;
 import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.jface.viewers.ViewerFilter;
 
-import sf.eclipse.javacc.base.AbstractActivator;
+import sf.eclipse.javacc.base.GrammarGraph;
 
 /**
  * Filters the generated JavaCC files.<br>
@@ -27,11 +24,8 @@ public class FilterGeneratedJavaCCFiles extends ViewerFilter {
     if (aObj instanceof IAdaptable) {
       final IResource resource = (IResource) ((IAdaptable) aObj).getAdapter(IResource.class);
       if (resource != null) {
-        try {
-          return !(resource.isDerived() && resource.getPersistentProperty(GEN_FILE_QN) != null);
-        } catch (final CoreException e) {
-          AbstractActivator.logBug(e);
-        }
+        // unknown (not filtered) until the graph is loaded
+        return !GrammarGraph.isDerivedGenerated(resource);
       }
     }
     return true;
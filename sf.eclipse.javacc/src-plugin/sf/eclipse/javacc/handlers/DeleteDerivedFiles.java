@@ -1,13 +1,16 @@
 package sf.eclipse.javacc.handlers;
 
 import static sf.eclipse.javacc.base.IConstants.DEF_KEEP_DEL_FILES_IN_HIST;
-import static sf.eclipse.javacc.base.IConstants.GEN_FILE_QN;
 import static sf.eclipse.javacc.base.IConstants.KEEP_DEL_FILES_IN_HIST;
 import static sf.eclipse.javacc.base.IConstants.PLUGIN_QN;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.eclipse.core.commands.AbstractHandler;
 import org.eclipse.core.commands.ExecutionEvent;
 import org.eclipse.core.expressions.IEvaluationContext;
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
@@ -28,6 +31,7 @@ import org.eclipse.ui.IWorkbenchPart;
 import org.eclipse.ui.handlers.HandlerUtil;
 
 import sf.eclipse.javacc.base.AbstractActivator;
+import sf.eclipse.javacc.base.GrammarGraph;
 import sf.eclipse.javacc.base.IConsole;
 import sf.eclipse.javacc.base.Nature;
 
@@ -141,10 +145,8 @@ public class DeleteDerivedFiles extends AbstractHandler {
     console.print(parentFolder.getFullPath().toOSString(), false);
     console.print(" : ", true); //$NON-NLS-1$
     console.println(console.fmtTS(), false);
-    IResource[] members;
     try {
-      members = parentFolder.members();
-      delete(members, updFlag, console, new NullProgressMonitor());
+      delete(parentFolder, updFlag, console, new NullProgressMonitor());
     } catch (final CoreException e) {
       AbstractActivator.logBug(e);
     }
@@ -153,30 +155,38 @@ public class DeleteDerivedFiles extends AbstractHandler {
   }
 
   /**
-   * Deletes recursively generated AND derived files. A modified generated file, marked as not derived, shall
-   * not be deleted.
+   * Deletes the generated AND derived files under a folder, found in the project generated files registry
+   * (see {@link GrammarGraph}). A modified generated file, marked as not derived, shall not be deleted.
    * 
-   * @param aMembers - the IResource[] to delete
+   * @param aFolder - the folder under which to delete
    * @param aUpdFlag - flag passed to {@link IResource#delete(int, IProgressMonitor)}
    * @param aConsole - the console to print the deleted files names
    * @param aMonitor - a progress monitor, or <code>null</code> if progress reporting and cancellation are not
    *          desired
    * @exception CoreException if this build fails
    */
-  private void delete(final IResource[] aMembers, final int aUpdFlag, final IConsole aConsole,
+  private void delete(final IFolder aFolder, final int aUpdFlag, final IConsole aConsole,
                       final IProgressMonitor aMonitor) throws CoreException {
-    for (final IResource res : aMembers) {
-      if (res.getType() == IResource.FOLDER) {
-        delete(((IFolder) res).members(), aUpdFlag, aConsole, aMonitor);
+    final IProject project = aFolder.getProject();
+    final GrammarGraph graph = GrammarGraph.get(project);
+    final String prefix = aFolder.getProjectRelativePath().toString() + "/"; //$NON-NLS-1$
+    final List<String> gens = graph.getAllGenerated();
+    Collections.sort(gens);
+    for (final String gen : gens) {
+      if (!gen.startsWith(prefix)) {
+        continue;
       }
-      else if (res.isDerived() && res.getPersistentProperty(GEN_FILE_QN) != null) {
-        res.delete(aUpdFlag, aMonitor);
-        aConsole.println(res.getFullPath().toOSString(), false);
+      final IFile file = project.getFile(gen);
+      if (!file.exists()) {
+        graph.forget(gen);
       }
-      else {
-        // normally a .jj/.jjt/.jtb file
+      else if (file.isDerived()) {
+        graph.forget(gen);
+        file.delete(aUpdFlag, aMonitor);
+        aConsole.println(file.getFullPath().toOSString(), false);
       }
     }
+    graph.save();
   }
 
   /**
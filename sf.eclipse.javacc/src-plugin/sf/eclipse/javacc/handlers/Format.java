@@ -50,9 +50,6 @@ public class Format extends AbstractHandler {
 
   // TODO see if it would not be better to use JTB's JavaCCPrinter
 
-  /** The parser */
-  private final JavaCCParser jParser = new JavaCCParser(new StringReader("")); //$NON-NLS-1$
-
   /** {@inheritDoc} */
   @Override
   public Object execute(final ExecutionEvent event) {
@@ -71,17 +68,17 @@ public class Format extends AbstractHandler {
     }
     // our editor
     final JJEditor jEditor = (JJEditor) editor;
-    doFormat(jEditor, jParser);
+    doFormat(jEditor);
     return null;
   }
 
   /**
-   * Formats the selection or the whole document.
+   * Formats the selection or the whole document, from the grammar model of the document (parsed only if the
+   * reconciler has not already done it).
    * 
    * @param aJJEditor - the JJ editor
-   * @param aParser - a non null parser
    */
-  public static void doFormat(final JJEditor aJJEditor, final JavaCCParser aParser) {
+  public static void doFormat(final JJEditor aJJEditor) {
     final IDocument doc = aJJEditor.getDocument();
     final ISelection selection = aJJEditor.getSelectionProvider().getSelection();
     if (!(selection instanceof ITextSelection)) {
@@ -127,8 +124,7 @@ public class Format extends AbstractHandler {
       }
       //  process the editor full text using the JavaCC grammar and replace only part of it
       final StringBuilder buf = new StringBuilder(2 * tslen);
-      final String docText = doc.get();
-      if (formatSelection(aParser, docText, tssl + 1, tsel + 1, buf) == true) {
+      if (formatSelection(aJJEditor.getModel().getAstRoot(), tssl + 1, tsel + 1, buf) == true) {
         // replace the text with the modified version
         doc.replace(sloffset, tslen, buf.toString());
         // reposition
@@ -156,6 +152,32 @@ public class Format extends AbstractHandler {
   /** Number sign string */
   public static final String NB    = "#";   //$NON-NLS-1$
 
+  /**
+   * Formats the selected text with the indentation preferences, warning the user if the text cannot be parsed.
+   * 
+   * @param aRoot - the AST root node of the text to format
+   * @param aFirstLine - the line number of the first character of the selected text
+   * @param aLastLine - the line number of the last character of the selected text
+   * @param aSb - the StringBuilder to receive the formatted text
+   * @return true if successful, false otherwise
+   */
+  private static boolean formatSelection(final JJNode aRoot, final int aFirstLine, final int aLastLine,
+                                         final StringBuilder aSb) {
+    if (formatNodes(aRoot, aFirstLine, aLastLine, CodeColorScanner.getIndentString(),
+                    CodeColorScanner.getSpecIndentString(), aSb)) {
+      return true;
+    }
+    // warn nothing shall be done if parsing failed
+    final IWorkbench workbench = PlatformUI.getWorkbench();
+    final Shell shell = workbench.getDisplay().getActiveShell();
+    final MessageDialog dialog = new MessageDialog(shell, AbstractActivator.getMsg("Format.Title"), //$NON-NLS-1$
+                                                   null, AbstractActivator.getMsg("Format.Message"), //$NON-NLS-1$
+                                                   MessageDialog.QUESTION, new String[] {
+                                                     IDialogConstants.OK_LABEL }, 0);
+    dialog.open();
+    return false;
+  }
+
   /**
    * Formats the selected text.
    * <p>
@@ -168,25 +190,39 @@ public class Format extends AbstractHandler {
    * @param aTxt - the text to format
    * @param aFirstLine - the line number of the first character of the selected text
    * @param aLastLine - the line number of the last character of the selected text
+   * @param aIndent - the indentation string
+   * @param aSpecIndent - the special indentation string (for after a '|')
    * @param aSb - the StringBuilder to receive the formatted text
-   * @return true if successful, false otherwise
+   * @return true if successful, false if the text cannot be parsed
    */
-  private static boolean formatSelection(final JavaCCParser aParser, final String aTxt, final int aFirstLine,
-                                         final int aLastLine, final StringBuilder aSb) {
+  public static boolean formatText(final JavaCCParser aParser, final String aTxt, final int aFirstLine,
+                                   final int aLastLine, final String aIndent, final String aSpecIndent,
+                                   final StringBuilder aSb) {
     // Parse the full text, retain only the chain of Tokens (with their special tokens)
     final StringReader in = new StringReader(aTxt);
     aParser.ReInit(in);
     final JJNode node = aParser.parse(in);
     in.close();
-    if (node.getFirstToken().next == null) {
-      // warn nothing shall be done if parsing failed
-      final IWorkbench workbench = PlatformUI.getWorkbench();
-      final Shell shell = workbench.getDisplay().getActiveShell();
-      final MessageDialog dialog = new MessageDialog(shell, AbstractActivator.getMsg("Format.Title"), //$NON-NLS-1$
-                                                     null, AbstractActivator.getMsg("Format.Message"), //$NON-NLS-1$
-                                                     MessageDialog.QUESTION, new String[] {
-                                                       IDialogConstants.OK_LABEL }, 0);
-      dialog.open();
+    return formatNodes(node, aFirstLine, aLastLine, aIndent, aSpecIndent, aSb);
+  }
+
+  /**
+   * Formats the selected text from the AST of the full text (only its chain of tokens, with their special
+   * tokens, is read, through {@link JJNode#getNextToken(Token)}). See
+   * {@link #formatText(JavaCCParser, String, int, int, String, String, StringBuilder)}.
+   * 
+   * @param aRoot - the AST root node of the full text
+   * @param aFirstLine - the line number of the first character of the selected text
+   * @param aLastLine - the line number of the last character of the selected text
+   * @param aIndent - the indentation string
+   * @param aSpecIndent - the special indentation string (for after a '|')
+   * @param aSb - the StringBuilder to receive the formatted text
+   * @return true if successful, false if the text could not be parsed
+   */
+  public static boolean formatNodes(final JJNode aRoot, final int aFirstLine, final int aLastLine,
+                                    final String aIndent, final String aSpecIndent, final StringBuilder aSb) {
+    if (aRoot.getFirstToken().next == null) {
+      // nothing shall be done if parsing failed
       return false;
     }
     /*
@@ -205,9 +241,9 @@ public class Format extends AbstractHandler {
      *   * within everything else : yes if bracesIndentLevel >= 2
      */
     /** The current token */
-    Token currToken = node.getFirstToken();
+    Token currToken = aRoot.getFirstToken();
     /** The next token */
-    Token nextToken = (currToken == null ? null : currToken.next);
+    Token nextToken = (currToken == null ? null : aRoot.getNextToken(currToken));
     /** A special token */
     Token specToken = null;
     /** The last token kind */
@@ -398,7 +434,7 @@ public class Format extends AbstractHandler {
       if (currKind == LBRACE && parLevelInLAC < 0) {
         if (nextKind != RBRACE || !isAfterParserEnd) {
           needOneNewline = true;
-          nextLineIndent.append(CodeColorScanner.getIndentString());
+          nextLineIndent.append(aIndent);
           // currLineIndent will be set at the end of the loop
         }
       }
@@ -408,7 +444,7 @@ public class Format extends AbstractHandler {
       if (currKind == RBRACE && parLevelInLAC < 0) {
         needOneNewline = true;
         if (lastKind != LBRACE || !isAfterParserEnd) {
-          decrementIndent(nextLineIndent);
+          decrementIndent(nextLineIndent, aIndent);
           // currLineIndent will be set at the end of the loop
         }
         if (nextKind != EOF && nextKind != LBRACE && nextLineIndent.length() == 0) {
@@ -464,7 +500,7 @@ public class Format extends AbstractHandler {
               break;
             }
             pt = nt;
-            nt = nt.next;
+            nt = aRoot.getNextToken(nt);
           }
         }
         // after a '(' and not in lookahead constraints nor in a conditional node
@@ -481,11 +517,11 @@ public class Format extends AbstractHandler {
             else if (nt.kind == LPAREN || nt.kind == BIT_OR) {
               needOneNewline = true;
               lastParLPnotRPnorBO = false;
-              nextLineIndent.append(CodeColorScanner.getIndentString());
+              nextLineIndent.append(aIndent);
               // currLineIndent will be set at the end of the loop
               break;
             }
-            nt = nt.next;
+            nt = aRoot.getNextToken(nt);
           }
         }
         // after a ')' and before a TRY (in expansion_unit), need for a newline,
@@ -500,7 +536,7 @@ public class Format extends AbstractHandler {
           }
           else if (!lastParLPnotRPnorBO) {
             needOneNewline = true;
-            decrementIndent(nextLineIndent);
+            decrementIndent(nextLineIndent, aIndent);
             // currLineIndent will be set at the end of the loop
           }
           lastParLPnotRPnorBO = false;
@@ -529,7 +565,7 @@ public class Format extends AbstractHandler {
           boolean nextParenLeftNorRight = false;
           Token nt = nextToken;
           if (nt != null) {
-            nt = nt.next;
+            nt = aRoot.getNextToken(nt);
             while (nt != null) {
               if (nt.kind == RPAREN) {
                 nextParenLeftNorRight = false;
@@ -539,7 +575,7 @@ public class Format extends AbstractHandler {
                 nextParenLeftNorRight = true;
                 break;
               }
-              nt = nt.next;
+              nt = aRoot.getNextToken(nt);
             }
           }
           if (nextParenLeftNorRight) {
@@ -576,11 +612,11 @@ public class Format extends AbstractHandler {
                 || (nt.kind == LPAREN && nbParen > 1)) {
               needOneNewline = true;
               lastBraLBnotOthers = false;
-              nextLineIndent.append(CodeColorScanner.getIndentString());
+              nextLineIndent.append(aIndent);
               // currLineIndent will be set at the end of the loop
               break;
             }
-            nt = nt.next;
+            nt = aRoot.getNextToken(nt);
           }
         }
         // after a ']' and after a lookahead expression, or not at the last enclosing level,
@@ -589,7 +625,7 @@ public class Format extends AbstractHandler {
         if (currKind == RBRACKET) {
           if (!lastBraLBnotOthers) {
             needOneNewline = true;
-            decrementIndent(nextLineIndent);
+            decrementIndent(nextLineIndent, aIndent);
             // currLineIndent will be set at the end of the loop
           }
           lastBraLBnotOthers = false;
@@ -600,7 +636,7 @@ public class Format extends AbstractHandler {
         if (nextKind == LBRACKET) {
           Token nt = nextToken;
           if (nt != null) {
-            nt = nt.next;
+            nt = aRoot.getNextToken(nt);
             int nbParen = 0;
             while (nt != null) {
               if (nt.kind == LPAREN) {
@@ -617,7 +653,7 @@ public class Format extends AbstractHandler {
                 needOneNewline = true;
                 break;
               }
-              nt = nt.next;
+              nt = aRoot.getNextToken(nt);
             }
           }
         }
@@ -635,11 +671,11 @@ public class Format extends AbstractHandler {
         }
         // increment indentation for a '<', and decrement indentation for a '>' in a regular expression
         if (currKind == LT && parLevelInJN < 0 && bracesIndentLevel <= 1) {
-          nextLineIndent.append(CodeColorScanner.getIndentString());
+          nextLineIndent.append(aIndent);
           // currLineIndent will be set at the end of the loop
         }
         else if (currKind == GT && parLevelInJN < 0 && bracesIndentLevel <= 1) {
-          decrementIndent(nextLineIndent);
+          decrementIndent(nextLineIndent, aIndent);
           // currLineIndent will be set at the end of the loop
         }
       } // end if (isAfterParserEnd)
@@ -898,7 +934,7 @@ public class Format extends AbstractHandler {
         }
         else if (currKind == BIT_OR || currKind == GT) {
           if (outputToken) {
-            decrementIndent(currLineIndent);
+            decrementIndent(currLineIndent, aIndent);
             aSb.append(currLineIndent);
           }
         }
@@ -933,7 +969,7 @@ public class Format extends AbstractHandler {
         else if (newlineJustWritten && currKind == BIT_OR) {
           // case of an unindented '|' : re-indent
           if (outputToken) {
-            aSb.append(CodeColorScanner.getSpecIndentString());
+            aSb.append(aSpecIndent);
           }
         }
         else {
@@ -1074,13 +1110,13 @@ public class Format extends AbstractHandler {
       lastKind = currKind;
       currToken = nextToken;
       currKind = nextKind;
-      nextToken = (currToken == null ? null : currToken.next);
+      nextToken = (currToken == null ? null : aRoot.getNextToken(currToken));
       nextKind = (nextToken == null ? -1 : nextToken.kind);
       nextImage = (nextToken == null ? EMPTY : nextToken.image);
       final int clen = currLineIndent.length();
       final int nlen = nextLineIndent.length();
       if (clen < nlen) {
-        currLineIndent.append(CodeColorScanner.getIndentString());
+        currLineIndent.append(aIndent);
       }
       else if (nlen < clen) {
         currLineIndent.setLength(nlen);
@@ -1095,9 +1131,10 @@ public class Format extends AbstractHandler {
    * Decrements indentation by shortening the given StringBuffer with the given indentation String.
    * 
    * @param aSb - the indentation StringBuffer
+   * @param aIndent - the indentation string
    */
-  private static void decrementIndent(final StringBuffer aSb) {
-    final int len = aSb.length() - CodeColorScanner.getIndentString().length();
+  private static void decrementIndent(final StringBuffer aSb, final String aIndent) {
+    final int len = aSb.length() - aIndent.length();
     if (len >= 0) {
       aSb.setLength(len);
     }
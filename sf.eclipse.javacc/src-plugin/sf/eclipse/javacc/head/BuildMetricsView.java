@@ -0,0 +1,393 @@
+package sf.eclipse.javacc.head;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jface.action.Action;
+import org.eclipse.jface.action.IMenuManager;
+import org.eclipse.jface.action.IToolBarManager;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.ITableLabelProvider;
+import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerComparator;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.FileDialog;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.ui.part.ViewPart;
+
+import sf.eclipse.javacc.base.AbstractActivator;
+import sf.eclipse.javacc.base.BuildMetrics;
+
+/**
+ * The JavaCC build metrics view, referenced by plugin.xml.<br>
+ * Shows the {@link BuildMetrics} records aggregated per grammar (and per project for the builds), the slowest
+ * first, with the average time of each build phase, and the share of each phase in the total time of the
+ * grammar compilations ; the records can be exported in CSV or JSON.
+ * 
+ * @since 1.5.34
+ */
+public class BuildMetricsView extends ViewPart implements BuildMetrics.Listener {
+
+  /** The number of columns before the phases columns */
+  static final int NB_FIXED_COLS = 6;
+
+  /** The column of the average total time (the default sort column) */
+  static final int AVG_COL       = 4;
+
+  /** The summary label */
+  Label            jSummary;
+
+  /** The table viewer */
+  TableViewer      jViewer;
+
+  /** The sort column */
+  int              jSortCol      = AVG_COL;
+
+  /** True if a refresh has been posted and not yet run, false otherwise */
+  boolean          jRefreshPosted;
+
+  /**
+   * The aggregated records of a grammar or of the builds of a project.
+   */
+  static class Row {
+
+    /** The grammar or project full path */
+    final String   jName;
+
+    /** True for the builds of a project, false for a grammar */
+    final boolean  jBuild;
+
+    /** The number of records */
+    int            jRuns;
+
+    /** The number of failed compilations */
+    int            jFailed;
+
+    /** The total time of the last record (in milliseconds) */
+    double         jLast;
+
+    /** The sum of the total times (in milliseconds) */
+    double         jSum;
+
+    /** The maximum total time (in milliseconds) */
+    double         jMax;
+
+    /** The sums of the phases times (in milliseconds) */
+    final double[] jPhaseSums = new double[BuildMetrics.NB_PHASES];
+
+    /**
+     * Standard constructor.
+     * 
+     * @param aName - the grammar or project full path
+     * @param aBuild - true for the builds of a project, false for a grammar
+     */
+    Row(final String aName, final boolean aBuild) {
+      jName = aName;
+      jBuild = aBuild;
+    }
+
+    /**
+     * @param aCol - a column index
+     * @return the numeric value of the column (the name column has none)
+     */
+    double value(final int aCol) {
+      switch (aCol) {
+        case 1:
+          return jRuns;
+        case 2:
+          return jFailed;
+        case 3:
+          return jLast;
+        case 4:
+          return jSum / jRuns;
+        case 5:
+          return jMax;
+        default:
+          return aCol >= NB_FIXED_COLS ? jPhaseSums[aCol - NB_FIXED_COLS] / jRuns : 0;
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void createPartControl(final Composite aParent) {
+    final Composite comp = new Composite(aParent, SWT.NONE);
+    final GridLayout layout = new GridLayout(1, false);
+    layout.marginWidth = 0;
+    layout.marginHeight = 0;
+    comp.setLayout(layout);
+
+    jSummary = new Label(comp, SWT.WRAP);
+    jSummary.setLayoutData(new GridData(SWT.FILL, SWT.TOP, true, false));
+
+    jViewer = new TableViewer(comp, SWT.SINGLE | SWT.FULL_SELECTION | SWT.H_SCROLL | SWT.V_SCROLL);
+    final Table table = jViewer.getTable();
+    table.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
+    table.setHeaderVisible(true);
+    table.setLinesVisible(true);
+    final String[] titles = {
+        AbstractActivator.getMsg("Metrics.Grammar"), //$NON-NLS-1$
+        AbstractActivator.getMsg("Metrics.Runs"), //$NON-NLS-1$
+        AbstractActivator.getMsg("Metrics.Failed"), //$NON-NLS-1$
+        AbstractActivator.getMsg("Metrics.Last"), //$NON-NLS-1$
+        AbstractActivator.getMsg("Metrics.Average"), //$NON-NLS-1$
+        AbstractActivator.getMsg("Metrics.Max") }; //$NON-NLS-1$
+    for (int i = 0; i < NB_FIXED_COLS + BuildMetrics.NB_PHASES; i++) {
+      final TableColumn col = new TableColumn(table, i == 0 ? SWT.LEFT : SWT.RIGHT);
+      col.setText(i < NB_FIXED_COLS ? titles[i] : BuildMetrics.PHASE_NAMES[i - NB_FIXED_COLS]);
+      col.setWidth(i == 0 ? 300 : 70);
+      final int index = i;
+      col.addSelectionListener(new SelectionAdapter() {
+
+        /** {@inheritDoc} */
+        @Override
+        public void widgetSelected(@SuppressWarnings("unused") final SelectionEvent e) {
+          jSortCol = index;
+          jViewer.refresh();
+        }
+      });
+    }
+    jViewer.setContentProvider(ArrayContentProvider.getInstance());
+    jViewer.setLabelProvider(new RowLabelProvider());
+    jViewer.setComparator(new ViewerComparator() {
+
+      /** {@inheritDoc} */
+      @Override
+      public int compare(@SuppressWarnings("unused") final Viewer aViewer, final Object aE1, final Object aE2) {
+        final Row r1 = (Row) aE1;
+        final Row r2 = (Row) aE2;
+        if (jSortCol == 0) {
+          return r1.jName.compareTo(r2.jName);
+        }
+        // the highest values first
+        return Double.compare(r2.value(jSortCol), r1.value(jSortCol));
+      }
+    });
+
+    // the actions
+    final Action clear = new Action(AbstractActivator.getMsg("Metrics.Clear")) { //$NON-NLS-1$
+
+      /** {@inheritDoc} */
+      @Override
+      public void run() {
+        BuildMetrics.clear();
+        refresh();
+      }
+    };
+    clear.setImageDescriptor(AbstractActivator.getImageDescriptor("jj_clear_co.gif")); //$NON-NLS-1$
+    clear.setToolTipText(AbstractActivator.getMsg("Metrics.Clear_metrics")); //$NON-NLS-1$
+    final Action exportCsv = new Action(AbstractActivator.getMsg("Metrics.Export_CSV")) { //$NON-NLS-1$
+
+      /** {@inheritDoc} */
+      @Override
+      public void run() {
+        export(false);
+      }
+    };
+    final Action exportJson = new Action(AbstractActivator.getMsg("Metrics.Export_JSON")) { //$NON-NLS-1$
+
+      /** {@inheritDoc} */
+      @Override
+      public void run() {
+        export(true);
+      }
+    };
+    final IToolBarManager tbm = getViewSite().getActionBars().getToolBarManager();
+    tbm.add(clear);
+    final IMenuManager mm = getViewSite().getActionBars().getMenuManager();
+    mm.add(exportCsv);
+    mm.add(exportJson);
+
+    BuildMetrics.addListener(this);
+    refresh();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void dispose() {
+    BuildMetrics.removeListener(this);
+    super.dispose();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void setFocus() {
+    jViewer.getControl().setFocus();
+  }
+
+  /**
+   * Posts a refresh to the UI thread (once for a burst of records).
+   * <p>
+   * {@inheritDoc}
+   */
+  @Override
+  public void recordAdded(@SuppressWarnings("unused") final BuildMetrics.Record aRecord) {
+    synchronized (this) {
+      if (jRefreshPosted) {
+        return;
+      }
+      jRefreshPosted = true;
+    }
+    Display.getDefault().asyncExec(new Runnable() {
+
+      /** {@inheritDoc} */
+      @Override
+      public void run() {
+        synchronized (BuildMetricsView.this) {
+          jRefreshPosted = false;
+        }
+        if (!jViewer.getControl().isDisposed()) {
+          refresh();
+        }
+      }
+    });
+  }
+
+  /**
+   * Aggregates the records and refreshes the summary and the table.
+   */
+  void refresh() {
+    final List<BuildMetrics.Record> records = BuildMetrics.getRecords();
+    final Map<String, Row> rows = new LinkedHashMap<String, Row>();
+    final double[] phaseTotals = new double[BuildMetrics.NB_PHASES];
+    double total = 0;
+    int nb = 0;
+    for (final BuildMetrics.Record rec : records) {
+      final String key = (rec.isBuild() ? "B" : "G") + rec.getName(); //$NON-NLS-1$ //$NON-NLS-2$
+      Row row = rows.get(key);
+      if (row == null) {
+        row = new Row(rec.getName(), rec.isBuild());
+        rows.put(key, row);
+      }
+      final double ms = rec.getTotalMillis();
+      row.jRuns++;
+      row.jFailed += rec.isFailed() ? 1 : 0;
+      row.jLast = ms;
+      row.jSum += ms;
+      row.jMax = Math.max(row.jMax, ms);
+      for (int i = 0; i < BuildMetrics.NB_PHASES; i++) {
+        row.jPhaseSums[i] += rec.getMillis(i);
+      }
+      if (!rec.isBuild()) {
+        nb++;
+        total += ms;
+        for (int i = 0; i < BuildMetrics.NB_PHASES; i++) {
+          phaseTotals[i] += rec.getMillis(i);
+        }
+      }
+    }
+
+    // the phases, the slowest first
+    final Integer[] order = new Integer[BuildMetrics.NB_PHASES];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = Integer.valueOf(i);
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+
+      /** {@inheritDoc} */
+      @Override
+      public int compare(final Integer aI1, final Integer aI2) {
+        return Double.compare(phaseTotals[aI2.intValue()], phaseTotals[aI1.intValue()]);
+      }
+    });
+    final StringBuilder sb = new StringBuilder(256);
+    sb.append(MessageFormat.format(AbstractActivator.getMsg("Metrics.Summary"), Integer.valueOf(nb))); //$NON-NLS-1$
+    for (final Integer i : order) {
+      final double ms = phaseTotals[i.intValue()];
+      if (total > 0 && ms > 0) {
+        sb.append("  ").append(BuildMetrics.PHASE_NAMES[i.intValue()]).append(' ') //$NON-NLS-1$
+          .append(Math.round(100 * ms / total)).append("% (").append(Math.round(ms)).append(" ms)"); //$NON-NLS-1$ //$NON-NLS-2$
+      }
+    }
+    jSummary.setText(sb.toString());
+    jSummary.getParent().layout();
+    jViewer.setInput(new ArrayList<Row>(rows.values()));
+  }
+
+  /**
+   * Exports the records to a file chosen by the user.
+   * 
+   * @param aJson - true for JSON, false for CSV
+   */
+  void export(final boolean aJson) {
+    final FileDialog dialog = new FileDialog(jViewer.getControl().getShell(), SWT.SAVE);
+    dialog.setFilterExtensions(new String[] {
+      aJson ? "*.json" : "*.csv" }); //$NON-NLS-1$ //$NON-NLS-2$
+    dialog.setFileName(aJson ? "javacc-build-metrics.json" : "javacc-build-metrics.csv"); //$NON-NLS-1$ //$NON-NLS-2$
+    dialog.setOverwrite(true);
+    final String path = dialog.open();
+    if (path == null) {
+      return;
+    }
+    Writer w = null;
+    try {
+      w = new OutputStreamWriter(new FileOutputStream(path), "UTF-8"); //$NON-NLS-1$
+      if (aJson) {
+        BuildMetrics.writeJson(BuildMetrics.getRecords(), w);
+      }
+      else {
+        BuildMetrics.writeCsv(BuildMetrics.getRecords(), w);
+      }
+    } catch (final IOException e) {
+      AbstractActivator.logBug(e, path);
+      MessageDialog.openError(jViewer.getControl().getShell(), getPartName(),
+                              AbstractActivator.getMsg("Metrics.Export_failed") + " : " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+    } finally {
+      if (w != null) {
+        try {
+          w.close();
+        } catch (final IOException e) {
+          AbstractActivator.logBug(e, path);
+        }
+      }
+    }
+  }
+
+  /**
+   * The label provider of the table rows.
+   */
+  static class RowLabelProvider extends LabelProvider implements ITableLabelProvider {
+
+    /** {@inheritDoc} */
+    @Override
+    public Image getColumnImage(@SuppressWarnings("unused") final Object aElement,
+                                @SuppressWarnings("unused") final int aColumnIndex) {
+      return null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getColumnText(final Object aElement, final int aColumnIndex) {
+      final Row row = (Row) aElement;
+      if (aColumnIndex == 0) {
+        return row.jBuild ? row.jName + " " + AbstractActivator.getMsg("Metrics.Build") : row.jName; //$NON-NLS-1$ //$NON-NLS-2$
+      }
+      if (aColumnIndex == 1 || aColumnIndex == 2) {
+        return String.valueOf((int) row.value(aColumnIndex));
+      }
+      return String.valueOf(Math.round(row.value(aColumnIndex)));
+    }
+  }
+
+}
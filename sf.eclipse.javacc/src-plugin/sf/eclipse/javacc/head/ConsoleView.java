@@ -13,15 +13,20 @@ import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceRuleFactory;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.MultiRule;
 import org.eclipse.jface.action.Action;
 import org.eclipse.jface.action.IToolBarManager;
 import org.eclipse.jface.action.MenuManager;
@@ -31,7 +36,6 @@ import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.StyleRange;
 import org.eclipse.swt.custom.StyledText;
-import org.eclipse.swt.custom.StyledTextContent;
 import org.eclipse.swt.events.DisposeEvent;
 import org.eclipse.swt.events.DisposeListener;
 import org.eclipse.swt.graphics.Color;
@@ -42,6 +46,7 @@ import org.eclipse.ui.part.ViewPart;
 
 import sf.eclipse.javacc.base.AbstractActivator;
 import sf.eclipse.javacc.base.IConsole;
+import sf.eclipse.javacc.tool.Problem;
 
 /**
  * Console for JavaCC output for normal usage (ie non headless builds).<br>
@@ -84,21 +89,6 @@ public class ConsoleView extends ViewPart implements IConsole {
   /** The print stream */
   final ByteArrayOutputStream                jBaos;
 
-  /** The last parsed position, from where to start when retrieving text from viewer */
-  private int                                jLastOffset;
-
-  /** Pattern to extract lines in JavaCC / JJTree compilation messages */
-  private final static Pattern               sLinePattern    = Pattern.compile("^.*", Pattern.MULTILINE);                                                         //$NON-NLS-1$
-
-  /** Pattern to find the Error or Warning or ParseException message in JavaCC / JJTree compilation messages */
-  private final static Pattern               sJjPbPattern    = Pattern.compile("(^Error:|^Warning:|^Error parsing input|Lexical error|Encountered[: ])(.+)$");    //$NON-NLS-1$
-
-  /** Pattern to find the line and column numbers in a JavaCC / JJTree compilation messages line */
-  private final static Pattern               sLineColPattern = Pattern.compile("[lL]ine (\\d+), [cC]olumn (\\d+)");                                               //$NON-NLS-1$
-
-  /** Pattern to find the Info or Warning or Error message in a JTB compilation messages line */
-  private final static Pattern               sJtbPbPattern   = Pattern.compile("\\((\\d+),(\\d+)\\):  (warning|info|soft error|unexpected program error):  (.*)"); //$NON-NLS-1$
-
   /**
    * Table of tables to manage multiple messages on the same line for the different files : key = line, val =
    * marker
@@ -217,7 +207,6 @@ public class ConsoleView extends ViewPart implements IConsole {
         jCommandColor = null;
       }
       ConsoleHyperlink.clear();
-      jLastOffset = 0;
     }
   }
 
@@ -265,10 +254,14 @@ public class ConsoleView extends ViewPart implements IConsole {
 
   /** {@inheritDoc} */
   @Override
-  public void processReport(final IFile aFile, final boolean aIsJtb) {
-    displayOutput();
-    // add markers and hyperlinks
-    processConsoleOutput(aFile, aIsJtb);
+  public void processReport(final IFile aFile, final List<Problem> aProblems) {
+    final String output = jBaos.toString();
+    jBaos.reset();
+    // add the markers in the calling thread (in the build operation when called from a build),
+    // then the output and the hyperlinks in the UI thread
+    final IFile markedFile = getMarkedFile(aFile);
+    addMarkers(aFile, markedFile, aProblems);
+    processConsoleOutput(aFile, markedFile, output, aProblems);
   }
 
   /**
@@ -309,235 +302,178 @@ public class ConsoleView extends ViewPart implements IConsole {
   }
 
   /**
-   * Decodes console output, catches lines reporting problems (infos / warnings / errors), adds hyperlinks and
-   * markers for them.
+   * Displays a command output, and adds hyperlinks for the problems (infos / warnings / errors) found in it
+   * while the command was running (see {@link Problem}).
    * 
    * @param aFile - the file to report on
-   * @param aIsJtb - true if file is a JTB one, false otherwise
+   * @param aMarkedFile - the file holding the line related problems markers (see {@link #getMarkedFile(IFile)})
+   * @param aOutput - the command output
+   * @param aProblems - the problems found in the output
    */
-  void processConsoleOutput(final IFile aFile, final boolean aIsJtb) {
-    // test before retrieving text from the viewer
+  void processConsoleOutput(final IFile aFile, final IFile aMarkedFile, final String aOutput,
+                            final List<Problem> aProblems) {
+    // test before updating the viewer
     if (Thread.currentThread() != jStyledText.getDisplay().getThread()) {
       Display.getDefault().asyncExec(new Runnable() {
 
         /** {@inheritDoc} */
         @Override
         public void run() {
-          processConsoleOutput(aFile, aIsJtb);
+          processConsoleOutput(aFile, aMarkedFile, aOutput, aProblems);
         }
       });
     }
     else {
-      final String fn = aFile.getName();
-      Map<Integer, IMarker> fmht = jMarkersHT.get(fn);
-      if (fmht != null) {
-        // delete current markers
-        final Collection<IMarker> currMarkers = fmht.values();
-        for (final IMarker mark : currMarkers) {
-          try {
-            mark.delete();
-          } catch (final CoreException e) {
-            // nothing to do
-            AbstractActivator.logBug(e);
+      // display the output ; the problems offsets are relative to its beginning
+      final int base = jStyledText.getCharCount();
+      addText(aOutput, false);
+      println();
+
+      for (final Problem pb : aProblems) {
+        final int line = pb.getLine();
+        if (line == 0) {
+          if (isSkipped(aFile, pb)) {
+            continue;
           }
-        }
-        fmht.clear();
-      }
-      else {
-        fmht = new HashMap<Integer, IMarker>(4, 1);
-        jMarkersHT.put(fn, fmht);
-      }
-      // get the text from the console
-      final StyledTextContent c = jStyledText.getContent();
-      final int count = jStyledText.getCharCount();
-      final String txt = c.getTextRange(jLastOffset, count - jLastOffset);
-
-      String report; // the message for the marker
-      int line, col; // location of the faulty text in editor
-      IMarker topWarningMarker = null; // the warning marker at the top of the file
-      IMarker topErrorMarker = null; // the error marker at the top of the file
-      int offset, length; // location of the link in console
-      int start = 0; // line number of the message
-
-      /*
-       *  .jj or .jjt file or .jtb file for the parser phase : we get outputs like :
-       */
-      // -- messages with line and column numbers
-      //  (from JavaCCErrors parse_error, semantic_error & warning methods)
-      // Warning: Line 83, Column 13: Encountered LOOKAHEAD(...) at a non-choice location.  This will be ignored.
-      // Error: Line 61, Column 5: Undefined lexical token name "HEX_LITERA".
-      //  (from JavaCCErrors methods and direct println() calls in LookaheadCalc)
-      // Warning: Choice conflict in (...)* construct at line 99, column 3.
-      // Warning: Choice conflict involving two expansions at
-      //          line 99, column 3 and line 109, column 22 respectively.
-      //  (from direct println(ex.toString()) calls in Main after a ParseException or Exception from JavaCCParser)
-      // Exception in thread "main" org.javacc.jjtree.TokenMgrError: Lexical error at line 40, column 6.  Encountered: "\r" (13), after : "\"\\t"
-      //  (from direct io.getMsg().println(("Error parsing input: " + ex.toString())) calls in JJTree after a ParseException or Exception from JJTreeParser)
-      // Error parsing input: org.javacc.jjtree.ParseException: Encountered " "static" "static "" at line 8, column 3.
-      // -- messages without line and column numbers (not always at the end of the report)
-      // Warning: Lookahead adequacy checking not being performed since option LOOKAHEAD is more than 1.  Set option FORCE_LA_CHECK to true to force checking.
-      // Warning: ParseException.java: File is obsolete.  Please rename or delete this file so that a new one can be generated for you.
-
-      // parse line by line to find problems
-      // then get the numbers following 'line ' and 'column ' on the line or the next line
-      // hyperlinks are added with offset, length in the text and file, line, column references
-      // creating multiple markers on the same line does not seem to work (only the first one seems displayed), however
-      // - very few cases seem possible for multiple errors on the same line (choice conflict involving two expansions, incoherences with the parser class name),
-      //   so showing only one is not a big deal (the solution would be to maintain a map of the lines / markers)
-      // - only one case seems to occur for multiple warnings on the same line (warnings not related to a specific line and shown on top of the file)
-      //   for which we have set a special processing for updating the (single) marker
-
-      // match line by line
-      final Matcher lineMatcher = sLinePattern.matcher(txt);
-      while (lineMatcher.find()) {
-        report = lineMatcher.group();
-        start = lineMatcher.start();
-
-        // look for problems
-        final Matcher jjPbMatcher = sJjPbPattern.matcher(report);
-        if (!jjPbMatcher.find()) {
+          // create an hyperlink pointing to the beginning of the file
+          @SuppressWarnings("unused")
+          final ConsoleHyperlink chl = new ConsoleHyperlink(base + pb.getOffset(), pb.getLength(), aFile, 0, 0);
           continue;
         }
+        // add an hyperlink in the console
+        // the first line or column is 1 for JavaCC / JTB and 0 for Eclipse editors
+        @SuppressWarnings("unused")
+        final ConsoleHyperlink chl = new ConsoleHyperlink(base + pb.getOffset(), pb.getLength(), aMarkedFile,
+                                                          line - 1, pb.getColumn() - 1);
+      }
+    }
+  }
 
-        // set severity accordingly
-        final int severity = (jjPbMatcher.group().indexOf("arning") != -1) ? IMarker.SEVERITY_WARNING //$NON-NLS-1$
-                                                                          : IMarker.SEVERITY_ERROR;
-        // note the position of the problem in the text
-        offset = start + jjPbMatcher.start();
-        length = jjPbMatcher.end(1) - jjPbMatcher.start();
-
-        // look for line and column numbers
-        Matcher lineColumnMatcher = sLineColPattern.matcher(report);
-
-        boolean hasNext = false;
-        if (!lineColumnMatcher.find()) {
-          // if there are no line & column numbers
-          if (report.startsWith("Warning: Choice conflict involving")) { //$NON-NLS-1$
-            hasNext = true;
-            // if a lookahead conflict message involving two expansions, take the line & column numbers in the next line
-            lineMatcher.find();
-            start = lineMatcher.start();
-            final String nextLine = lineMatcher.group();
-            lineColumnMatcher = sLineColPattern.matcher(nextLine);
-            if (!lineColumnMatcher.find()) {
-              continue;
-            }
-            // add the next line to the report
-            report = report.concat(LS).concat(nextLine);
-          }
-          else if ((report.contains("File is obsolete") && aFile.isDerived())) { //$NON-NLS-1$
-            // do not take these warnings in generated .jj files, as they should not be there in that case (JavaCC bug ?)
-            // and as it produces squiggly lines throughout the file when the file is already opened in a JJEditor
-            // (it seems there is something to be done in the Editor / viewer to update the view)
-            continue;
-          }
-          else if ((report.contains(":  Encountered error(s) during parsing."))) { //$NON-NLS-1$
-            // do not take this last message
-            continue;
-          }
-          else {
-            // create an hyperlink pointing to the beginning of the file
-            @SuppressWarnings("unused")
-            final ConsoleHyperlink chl = new ConsoleHyperlink(jLastOffset + offset, length, aFile, 0, 0);
-            IMarker topMarker = (severity == IMarker.SEVERITY_WARNING ? topWarningMarker : topErrorMarker);
-            // mark the problem at the beginning of the editor
-            if (topMarker == null) {
-              // create the marker
-              topMarker = addMarker(aFile, report, severity, 1);
-              if (severity == IMarker.SEVERITY_WARNING) {
-                topWarningMarker = topMarker;
-              }
-              else {
-                topErrorMarker = topMarker;
-              }
-            }
-            else {
-              // update the existing marker
-              addProblem(topMarker, report);
-            }
-            continue;
-          }
+  /**
+   * Returns the file the line related problems of a file are reported on : the .jjt file a .jj file derives
+   * from (but not the .jtb file), or the file itself.
+   * 
+   * @param aFile - the file to report on
+   * @return the file to put the markers on
+   */
+  private static IFile getMarkedFile(final IFile aFile) {
+    try {
+      if (aFile.isDerived()) {
+        final String from = aFile.getPersistentProperty(GEN_FILE_QN);
+        final IProject project = aFile.getProject();
+        final IResource resFrom = from == null ? null : project.findMember(from);
+        if (resFrom != null && !"jtb".equals(resFrom.getFileExtension())) { //$NON-NLS-1$
+          return (IFile) resFrom;
         }
+      }
+    } catch (final CoreException e) {
+      AbstractActivator.logBug(e);
+    }
+    return aFile;
+  }
 
-        // for each line and column group in the message, add a marker and an hyperlink
-        do {
-          line = Integer.parseInt(lineColumnMatcher.group(1));
-          col = Integer.parseInt(lineColumnMatcher.group(2));
-          offset = lineColumnMatcher.start();
-          length = lineColumnMatcher.end() - offset;
-
-          // replace the .jj file by the .jjt file if it derives from (but not by the .jtb file)
-          IFile newFile = aFile;
-          try {
-            if (aFile.isDerived()) {
-              final String from = aFile.getPersistentProperty(GEN_FILE_QN);
-              final IProject project = aFile.getProject();
-              final IResource resFrom = project.findMember(from);
-              if (resFrom != null) {
-                newFile = (IFile) resFrom;
-                if (newFile.getFileExtension().equals("jtb")) { //$NON-NLS-1$
-                  newFile = aFile;
-                }
-              }
-            }
-          } catch (final CoreException e) {
-            AbstractActivator.logBug(e);
-          }
+  /**
+   * @param aFile - the file to report on
+   * @param aPb - a problem not related to a line
+   * @return true if the problem is not to be reported, false otherwise
+   */
+  private static boolean isSkipped(final IFile aFile, final Problem aPb) {
+    // do not take these warnings in generated .jj files, as they should not be there in that case (JavaCC bug ?)
+    // and as it produces squiggly lines throughout the file when the file is already opened in a JJEditor
+    // (it seems there is something to be done in the Editor / viewer to update the view)
+    return aPb.getMessage().contains("File is obsolete") && aFile.isDerived(); //$NON-NLS-1$
+  }
 
-          // for lookahead conflict message involving two expansions, add also the 2 next lines to the report
-          if (hasNext) {
-            hasNext = false;
-            lineMatcher.find();
-            report = report.concat(LS).concat(lineMatcher.group());
-            lineMatcher.find();
-            report = report.concat(LS).concat(lineMatcher.group());
-          }
+  /**
+   * Replaces the markers of the previous report on a file by the markers of the new problems, in one workspace
+   * operation (nested in the build operation when called from a build), so the resource change listeners get
+   * one delta for all of them.
+   * 
+   * @param aFile - the file to report on
+   * @param aMarkedFile - the file holding the line related problems markers
+   * @param aProblems - the problems
+   */
+  private void addMarkers(final IFile aFile, final IFile aMarkedFile, final List<Problem> aProblems) {
+    final IWorkspace ws = aFile.getWorkspace();
+    final IResourceRuleFactory factory = ws.getRuleFactory();
+    final ISchedulingRule rule = MultiRule.combine(factory.markerRule(aFile), factory.markerRule(aMarkedFile));
+    try {
+      ws.run(new IWorkspaceRunnable() {
 
-          // add the problem to the editor problems
-          addMarker(newFile, report, severity, line);
+        /** {@inheritDoc} */
+        @Override
+        public void run(@SuppressWarnings("unused") final IProgressMonitor aMonitor) {
+          synchronized (jMarkersHT) {
+            doAddMarkers(aFile, aMarkedFile, aProblems);
+          }
+        }
+      }, rule, IWorkspace.AVOID_UPDATE, null);
+    } catch (final CoreException e) {
+      AbstractActivator.logBug(e);
+    }
+  }
 
-          // add an hyperlink in the console
-          // the first line is 1 for JavaCC and 0 for Eclipse editors
-          @SuppressWarnings("unused")
-          final ConsoleHyperlink chl = new ConsoleHyperlink(jLastOffset + start + offset, length, newFile,
-                                                            line - 1, col - 1);
-        } // do this for all occurrences on the line
-        while (lineColumnMatcher.find());
+  /**
+   * Replaces the markers of the previous report on a file by the markers of the new problems.
+   * 
+   * @param aFile - the file to report on
+   * @param aMarkedFile - the file holding the line related problems markers
+   * @param aProblems - the problems
+   */
+  private void doAddMarkers(final IFile aFile, final IFile aMarkedFile, final List<Problem> aProblems) {
+    final String fn = aFile.getName();
+    Map<Integer, IMarker> fmht = jMarkersHT.get(fn);
+    if (fmht != null) {
+      // delete current markers
+      final Collection<IMarker> currMarkers = fmht.values();
+      for (final IMarker mark : currMarkers) {
+        try {
+          mark.delete();
+        } catch (final CoreException e) {
+          // nothing to do
+          AbstractActivator.logBug(e);
+        }
       }
+      fmht.clear();
+    }
+    else {
+      fmht = new HashMap<Integer, IMarker>(4, 1);
+      jMarkersHT.put(fn, fmht);
+    }
 
-      if (aIsJtb) {
-        /*
-         *  .jtb file for the pure JTB phase : we get in the console outputs like :
-         */
-        // new.jtb (406,3):  warning:  Non initialized user variable 'isTypedef'. May lead to compiler error(s) (specially for 'Token' variables). Check in generated parser.
-        // new.jtb (461,2):  info:  Non "void" BNFProduction. Result type 'boolean' will be changed into 'type_modifiers', and a parser class variable 'jtbrt_type_modifiers' of type 'boolean' will be added to hold the return values.
-        // new.jtb (340,3):  soft error:  Empty BNF expansion in "<production>()", 345
-        // new.jtb (234,8):  unexpected program error:  <exception / throwable message>
-
-        final Matcher jtbPbMatcher = sJtbPbPattern.matcher(txt);
-        while (jtbPbMatcher.find()) {
-          report = jtbPbMatcher.group();
-          final String sevStr = jtbPbMatcher.group(3);
-          final int severity = "info".equals(sevStr) ? IMarker.SEVERITY_INFO //$NON-NLS-1$
-                                                    : "warning".equals(sevStr) ? IMarker.SEVERITY_WARNING //$NON-NLS-1$
-                                                                              : IMarker.SEVERITY_ERROR;
-
-          line = Integer.parseInt(jtbPbMatcher.group(1));
-          col = Integer.parseInt(jtbPbMatcher.group(2));
-          offset = jtbPbMatcher.start(0);
-          // show the hyperlink only up to "info" or "warning" or "error" to increase Console readability
-          length = jtbPbMatcher.end(3) - offset;
-          // add the problem in the editor problems
-          addMarker(aFile, report, severity, line);
-          // the first line or column is 1 for JTB and 0 for Eclipse editors
-          @SuppressWarnings("unused")
-          final ConsoleHyperlink chl = new ConsoleHyperlink(jLastOffset + offset, length, aFile, line - 1,
-                                                            col - 1);
+    IMarker topWarningMarker = null; // the warning marker at the top of the file
+    IMarker topErrorMarker = null; // the error marker at the top of the file
+    // creating multiple markers on the same line does not seem to work (only the first one seems displayed), so
+    // the messages on the same line are added to the same marker, and the ones not related to a specific line
+    // are added to a (single) marker at the top of the file
+    for (final Problem pb : aProblems) {
+      final String report = pb.getMessage();
+      final int severity = pb.getSeverity();
+      final int line = pb.getLine();
+      if (line == 0) {
+        if (isSkipped(aFile, pb)) {
+          continue;
+        }
+        IMarker topMarker = (severity == IMarker.SEVERITY_WARNING ? topWarningMarker : topErrorMarker);
+        // mark the problem at the beginning of the editor
+        if (topMarker == null) {
+          // create the marker
+          topMarker = addMarker(aFile, report, severity, 1);
+          if (severity == IMarker.SEVERITY_WARNING) {
+            topWarningMarker = topMarker;
+          }
+          else {
+            topErrorMarker = topMarker;
+          }
         }
+        else {
+          // update the existing marker
+          addProblem(topMarker, report);
+        }
+        continue;
       }
-
-      // next time the text shall be parsed from lastOffset
-      jLastOffset = count;
+      // add the problem to the editor problems
+      addMarker(aMarkedFile, report, severity, line);
     }
   }
 
@@ -1,10 +1,7 @@
 package sf.eclipse.javacc.head;
 
-import static sf.eclipse.javacc.base.IConstants.GEN_FILE_QN;
-
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
-import org.eclipse.core.runtime.CoreException;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jface.resource.ImageDescriptor;
@@ -16,6 +13,7 @@ import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.widgets.Display;
 
 import sf.eclipse.javacc.base.AbstractActivator;
+import sf.eclipse.javacc.base.GrammarGraph;
 
 /**
  * Used to decorate generated files.<br>
@@ -112,17 +110,13 @@ public class Decorator extends LabelProvider implements ILabelDecorator {
     String gen = null;
     if (aElement instanceof IResource) {
       final IResource res = (IResource) aElement;
-      try {
-        if (res.isDerived()) {
-          gen = res.getPersistentProperty(GEN_FILE_QN);
-          if (gen == null) {
-            return null;
-          }
-          gen = gen.substring(gen.lastIndexOf('/') + 1);
+      if (res.isDerived()) {
+        // unknown (not decorated) until the graph is loaded, then the decorations are updated
+        gen = GrammarGraph.peekSource(res);
+        if (gen == null) {
+          return null;
         }
-      } catch (final CoreException e) {
-        AbstractActivator.logBug(e);
-        return null;
+        gen = gen.substring(gen.lastIndexOf('/') + 1);
       }
     }
     return gen;
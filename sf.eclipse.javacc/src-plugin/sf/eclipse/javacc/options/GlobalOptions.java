@@ -11,6 +11,8 @@ import org.eclipse.jface.window.Window;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.SelectionAdapter;
 import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.events.VerifyEvent;
+import org.eclipse.swt.events.VerifyListener;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Button;
@@ -49,6 +51,12 @@ class GlobalOptions extends Composite {
   protected String             jDefJTBJarFile;
   /** The JVM options */
   protected Text               jJvmOptions;
+  /** The number of build worker threads */
+  protected Text               jBuildWorkers;
+  /** The grammar compilation time limit (in seconds) */
+  protected Text               jToolTimeout;
+  /** The explicit compilation quiet period */
+  protected Text               jCompileDelay;
   /** The clear console flag */
   protected BooleanFieldEditor jClearConsole;
   /** The add Nature flag */
@@ -61,6 +69,14 @@ class GlobalOptions extends Composite {
   protected BooleanFieldEditor jKeepDelFilesInHistory;
   /** The format before save flag */
   protected BooleanFieldEditor jFormatOnSave;
+  /** The run JavaCC / JJTree in the Eclipse JVM flag */
+  protected BooleanFieldEditor jInProcess;
+  /** The use build cache flag */
+  protected BooleanFieldEditor jBuildCache;
+  /** The run in a tool daemon JVM field */
+  protected BooleanFieldEditor jDaemon;
+  /** The Fast start of the external tool JVMs */
+  protected BooleanFieldEditor jFastStart;
   /** The Resource to work on */
   protected IResource          jResource;
 
@@ -232,6 +248,50 @@ class GlobalOptions extends Composite {
         }
       }
     });
+    new Label(compSubGroup, SWT.LEFT | SWT.HORIZONTAL).setText(""); //$NON-NLS-1$
+
+    // add number of build workers control
+    new Label(compSubGroup, SWT.LEFT | SWT.HORIZONTAL).setText(AbstractActivator.getMsg("OptGlob.Set_the_Build_Workers")); //$NON-NLS-1$
+    jBuildWorkers = new Text(compSubGroup, SWT.BORDER | SWT.SINGLE);
+    gd = new GridData();
+    gd.widthHint = 40;
+    jBuildWorkers.setLayoutData(gd);
+    final VerifyListener digitsOnly = new VerifyListener() {
+
+      /** {@inheritDoc} */
+      @Override
+      public void verifyText(final VerifyEvent event) {
+        for (int i = 0; i < event.text.length(); i++) {
+          if (!Character.isDigit(event.text.charAt(i))) {
+            event.doit = false;
+            return;
+          }
+        }
+      }
+    };
+    jBuildWorkers.addVerifyListener(digitsOnly);
+    new Label(compSubGroup, SWT.LEFT | SWT.HORIZONTAL).setText(""); //$NON-NLS-1$
+    new Label(compSubGroup, SWT.LEFT | SWT.HORIZONTAL).setText(""); //$NON-NLS-1$
+
+    // add grammar compilation time limit control
+    new Label(compSubGroup, SWT.LEFT | SWT.HORIZONTAL).setText(AbstractActivator.getMsg("OptGlob.Set_the_Tool_Timeout")); //$NON-NLS-1$
+    jToolTimeout = new Text(compSubGroup, SWT.BORDER | SWT.SINGLE);
+    gd = new GridData();
+    gd.widthHint = 40;
+    jToolTimeout.setLayoutData(gd);
+    jToolTimeout.addVerifyListener(digitsOnly);
+    new Label(compSubGroup, SWT.LEFT | SWT.HORIZONTAL).setText(""); //$NON-NLS-1$
+    new Label(compSubGroup, SWT.LEFT | SWT.HORIZONTAL).setText(""); //$NON-NLS-1$
+
+    // add explicit compilation quiet period control
+    new Label(compSubGroup, SWT.LEFT | SWT.HORIZONTAL).setText(AbstractActivator.getMsg("OptGlob.Set_the_Compile_Delay")); //$NON-NLS-1$
+    jCompileDelay = new Text(compSubGroup, SWT.BORDER | SWT.SINGLE);
+    gd = new GridData();
+    gd.widthHint = 40;
+    jCompileDelay.setLayoutData(gd);
+    jCompileDelay.addVerifyListener(digitsOnly);
+    new Label(compSubGroup, SWT.LEFT | SWT.HORIZONTAL).setText(""); //$NON-NLS-1$
+    new Label(compSubGroup, SWT.LEFT | SWT.HORIZONTAL).setText(""); //$NON-NLS-1$
 
     // add second sub group
     final Group subGroup2 = new Group(groupProject, SWT.NONE);
@@ -269,6 +329,22 @@ class GlobalOptions extends Composite {
                            .concat(DEF_FORMAT_ON_SAVE).concat(")"); //$NON-NLS-1$
     jFormatOnSave = new BooleanFieldEditor(FORMAT_ON_SAVE, str, checkGroup);
 
+    str = AbstractActivator.getMsg(AbstractActivator.getMsg("OptGlob.Run_in_process")).concat(def) //$NON-NLS-1$
+                           .concat(DEF_RUNTIME_IN_PROCESS).concat(")"); //$NON-NLS-1$
+    jInProcess = new BooleanFieldEditor(RUNTIME_IN_PROCESS, str, checkGroup);
+
+    str = AbstractActivator.getMsg(AbstractActivator.getMsg("OptGlob.Use_build_cache")).concat(def) //$NON-NLS-1$
+                           .concat(DEF_BUILD_CACHE).concat(")"); //$NON-NLS-1$
+    jBuildCache = new BooleanFieldEditor(BUILD_CACHE, str, checkGroup);
+
+    str = AbstractActivator.getMsg(AbstractActivator.getMsg("OptGlob.Run_in_daemon")).concat(def) //$NON-NLS-1$
+                           .concat(DEF_RUNTIME_DAEMON).concat(")"); //$NON-NLS-1$
+    jDaemon = new BooleanFieldEditor(RUNTIME_DAEMON, str, checkGroup);
+
+    str = AbstractActivator.getMsg(AbstractActivator.getMsg("OptGlob.Fast_start")).concat(def) //$NON-NLS-1$
+                           .concat(DEF_FAST_START).concat(")"); //$NON-NLS-1$
+    jFastStart = new BooleanFieldEditor(FAST_START, str, checkGroup);
+
     // read and set values
     if (aResource != null) {
       final IEclipsePreferences prefs = new ProjectScope(aResource.getProject()).getNode(PLUGIN_QN);
@@ -277,6 +353,9 @@ class GlobalOptions extends Composite {
         jJavaCCjarFile.setText(prefs.get(RUNTIME_JJJAR, "")); //$NON-NLS-1$
         jJTBJarFile.setText(prefs.get(RUNTIME_JTBJAR, "")); //$NON-NLS-1$
         jJvmOptions.setText(prefs.get(RUNTIME_JVMOPTIONS, "")); //$NON-NLS-1$
+        jBuildWorkers.setText(prefs.get(BUILD_WORKERS, DEF_BUILD_WORKERS));
+        jToolTimeout.setText(prefs.get(TOOL_TIMEOUT, DEF_TOOL_TIMEOUT));
+        jCompileDelay.setText(prefs.get(COMPILE_DELAY, DEF_COMPILE_DELAY));
         jClearConsole.setBooleanValue(isTrue(prefs.get(CLEAR_CONSOLE, DEF_CLEAR_CONSOLE)));
         final boolean hasJavaccNature = aResource.getProject().getDescription().hasNature(NATURE_ID);
         jNature.setBooleanValue(hasJavaccNature);
@@ -286,6 +365,10 @@ class GlobalOptions extends Composite {
         jKeepDelFilesInHistory.setBooleanValue(isTrue(prefs.get(KEEP_DEL_FILES_IN_HIST,
                                                                 DEF_KEEP_DEL_FILES_IN_HIST)));
         jFormatOnSave.setBooleanValue(isTrue(prefs.get(FORMAT_ON_SAVE, DEF_FORMAT_ON_SAVE)));
+        jInProcess.setBooleanValue(isTrue(prefs.get(RUNTIME_IN_PROCESS, DEF_RUNTIME_IN_PROCESS)));
+        jBuildCache.setBooleanValue(isTrue(prefs.get(BUILD_CACHE, DEF_BUILD_CACHE)));
+        jDaemon.setBooleanValue(isTrue(prefs.get(RUNTIME_DAEMON, DEF_RUNTIME_DAEMON)));
+        jFastStart.setBooleanValue(isTrue(prefs.get(FAST_START, DEF_FAST_START)));
       } catch (final CoreException e) {
         AbstractActivator.logBug(e);
       }
@@ -300,12 +383,19 @@ class GlobalOptions extends Composite {
     // keep empty for using the plugin's default jars
     jJTBJarFile.setText(""); //$NON-NLS-1$
     jJvmOptions.setText(""); //$NON-NLS-1$
+    jBuildWorkers.setText(DEF_BUILD_WORKERS);
+    jToolTimeout.setText(DEF_TOOL_TIMEOUT);
+    jCompileDelay.setText(DEF_COMPILE_DELAY);
     jClearConsole.setBooleanValue(isTrue(DEF_CLEAR_CONSOLE));
     jNature.setBooleanValue(isTrue(DEF_NATURE));
     jSuppressWarnings.setBooleanValue(isTrue(DEF_SUPPRESS_WARNINGS));
     jMarkGenFilesAsDerived.setBooleanValue(isTrue(DEF_MARK_GEN_FILES_DERIVED));
     jKeepDelFilesInHistory.setBooleanValue(isTrue(DEF_KEEP_DEL_FILES_IN_HIST));
     jFormatOnSave.setBooleanValue(isTrue(DEF_FORMAT_ON_SAVE));
+    jInProcess.setBooleanValue(isTrue(DEF_RUNTIME_IN_PROCESS));
+    jBuildCache.setBooleanValue(isTrue(DEF_BUILD_CACHE));
+    jDaemon.setBooleanValue(isTrue(DEF_RUNTIME_DAEMON));
+    jFastStart.setBooleanValue(isTrue(DEF_FAST_START));
     //    fCheckSpelling.setBooleanValue(true);
   }
 
@@ -329,12 +419,22 @@ class GlobalOptions extends Composite {
       prefs.put(RUNTIME_JJJAR, jJavaCCjarFile.getText());
       prefs.put(RUNTIME_JTBJAR, jJTBJarFile.getText());
       prefs.put(RUNTIME_JVMOPTIONS, jJvmOptions.getText());
+      final String workers = jBuildWorkers.getText().trim();
+      prefs.put(BUILD_WORKERS, workers.length() == 0 ? DEF_BUILD_WORKERS : workers);
+      final String timeout = jToolTimeout.getText().trim();
+      prefs.put(TOOL_TIMEOUT, timeout.length() == 0 ? DEF_TOOL_TIMEOUT : timeout);
+      final String delay = jCompileDelay.getText().trim();
+      prefs.put(COMPILE_DELAY, delay.length() == 0 ? DEF_COMPILE_DELAY : delay);
       prefs.put(NATURE, String.valueOf(jNature.getBooleanValue()));
       prefs.put(CLEAR_CONSOLE, String.valueOf(jClearConsole.getBooleanValue()));
       prefs.put(SUPPRESS_WARNINGS, String.valueOf(jSuppressWarnings.getBooleanValue()));
       prefs.put(MARK_GEN_FILES_DERIVED, String.valueOf(jMarkGenFilesAsDerived.getBooleanValue()));
       prefs.put(KEEP_DEL_FILES_IN_HIST, String.valueOf(jKeepDelFilesInHistory.getBooleanValue()));
       prefs.put(FORMAT_ON_SAVE, String.valueOf(jFormatOnSave.getBooleanValue()));
+      prefs.put(RUNTIME_IN_PROCESS, String.valueOf(jInProcess.getBooleanValue()));
+      prefs.put(BUILD_CACHE, String.valueOf(jBuildCache.getBooleanValue()));
+      prefs.put(RUNTIME_DAEMON, String.valueOf(jDaemon.getBooleanValue()));
+      prefs.put(FAST_START, String.valueOf(jFastStart.getBooleanValue()));
 
       // set the nature
       Nature.setNature(jNature.getBooleanValue(), jResource.getProject());
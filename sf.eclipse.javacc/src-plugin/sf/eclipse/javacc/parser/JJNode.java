@@ -3,8 +3,13 @@ package sf.eclipse.javacc.parser;
 import static sf.eclipse.javacc.parser.JavaCCParserConstants.*;
 import static sf.eclipse.javacc.parser.JavaCCParserTreeConstants.*;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 
 import sf.eclipse.javacc.base.AbstractActivator;
 import sf.eclipse.javacc.editors.Elements;
@@ -16,7 +21,7 @@ import sf.eclipse.javacc.editors.Elements;
  * @author Marc Mazas 2009-2010-2011-2012-2013-2014-2015-2016
  * @author Bill Fenlason 2012
  */
-public class JJNode implements Node {
+public class JJNode implements Node, Cloneable {
 
   // MMa 11/2009 : javadoc and formatting revision ; fixed duplicated JJT identifiers (node #node) in maps ;
   //               added lexical states and JJTree nodes in labels (to be displayed in outline and call
@@ -52,10 +57,8 @@ public class JJNode implements Node {
   protected Token               first;
   /** The last node */
   protected Token               last;
-  /** The callers */
-  protected JJNode[]            callers   = new JJNode[0];
-  /** The callees */
-  protected JJNode[]            callees   = new JJNode[0];
+  /** The next tokens of the children last tokens whose next link is not valid (root node only), or null */
+  protected Map<Token, Token>   nextTokens;
   /** The separator string for display names */
   public static final String    DASH_SEP  = " - ";        //$NON-NLS-1$
   /** The separator string for lexical states */
@@ -265,6 +268,34 @@ public class JJNode implements Node {
     return last;
   }
 
+  /**
+   * Sets the next tokens of the last tokens of some children, which replace their next links. Used by the
+   * incremental parser on the root nodes whose children share their tokens with a previous AST (where these
+   * last tokens were followed by other tokens).
+   * 
+   * @param aNextTokens - the next tokens : key = a child last token, val = the token following it
+   */
+  public void setNextTokens(final Map<Token, Token> aNextTokens) {
+    nextTokens = aNextTokens;
+  }
+
+  /**
+   * Gives the token following a token in the token chain of this node, which must be used instead of the next
+   * link when walking across the children of a root node.
+   * 
+   * @param aToken - a token of this node
+   * @return the next token
+   */
+  public Token getNextToken(final Token aToken) {
+    if (nextTokens != null) {
+      final Token next = nextTokens.get(aToken);
+      if (next != null) {
+        return next;
+      }
+    }
+    return aToken.next;
+  }
+
   /**
    * Returns the node's name. Comes from SimpleNode.
    * <p>
@@ -282,6 +313,44 @@ public class JJNode implements Node {
     return jjtNodeName[id];
   }
 
+  /**
+   * Copies the subtree of this node, replacing its tokens by their copies.
+   * 
+   * @param aTokens - the copies of the tokens : key = token, val = copy (a token not found is kept)
+   * @param aParent - the parent of the copy
+   * @return the copy
+   */
+  public JJNode copyTree(final Map<Token, Token> aTokens, final Node aParent) {
+    final JJNode copy;
+    try {
+      copy = (JJNode) clone();
+    } catch (final CloneNotSupportedException e) {
+      // should not happen as JJNode is Cloneable
+      throw new IllegalStateException(e);
+    }
+    copy.parent = aParent;
+    copy.first = copyOf(aTokens, first);
+    copy.last = copyOf(aTokens, last);
+    copy.nameToken = copyOf(aTokens, nameToken);
+    if (children != null) {
+      copy.children = new Node[children.length];
+      for (int i = 0; i < children.length; i++) {
+        copy.children[i] = ((JJNode) children[i]).copyTree(aTokens, copy);
+      }
+    }
+    return copy;
+  }
+
+  /**
+   * @param aTokens - the copies of the tokens : key = token, val = copy
+   * @param aTok - a token, or null
+   * @return the copy of the token if any, otherwise the token
+   */
+  private static Token copyOf(final Map<Token, Token> aTokens, final Token aTok) {
+    final Token copy = aTok == null ? null : aTokens.get(aTok);
+    return copy == null ? aTok : copy;
+  }
+
   /**
    * Returns the node's name.
    * 
@@ -610,11 +679,15 @@ public class JJNode implements Node {
   }
 
   /**
-   * Builds the array of callers for this node.
+   * Finds the callers of this node ; it does not modify any node, so it can be called on the shared nodes of
+   * a model.
+   * 
+   * @param aElements - the JJ elements (holding the nodes which may reference this node)
+   * @return the array of callers for this node
    */
-  public void buildCallers() {
-    // clear callers
-    callers = new JJNode[0];
+  public JJNode[] findCallers(final Elements aElements) {
+    // the callers, without duplicates
+    final Set<JJNode> found = new LinkedHashSet<JJNode>();
     String sel = name;
     // for java code, build first elements directly from the parents
     if (id == JJTMETHODDECL //
@@ -625,17 +698,9 @@ public class JJNode implements Node {
         || id == JJTANNOTTYPEDECL //
     ) {
       // record the parent
-      addCaller((JJNode) parent);
+      found.add((JJNode) parent);
     }
 
-    // get up to the root
-    JJNode root = this;
-    while (root.parent != null) {
-      root = (JJNode) root.parent;
-    }
-    // search the whole tree from the root
-    final Queue<JJNode> stack = new LinkedList<JJNode>();
-    stack.offer(root);
     // take the display name for node descriptors and private label identifiers for later comparison
     if (id == JJTNODE_DESC_BNF_DECL //
         || id == JJTNODE_DESC_IN_EXP //
@@ -643,115 +708,74 @@ public class JJNode implements Node {
     ) {
       sel = displayName;
     }
-    // examine each element of the stack
-    while (!stack.isEmpty()) {
-      final JJNode nd = stack.remove();
+    // examine each node having the searched name
+    for (final JJNode nd : aElements.getUseSites(sel)) {
       final int ndId = nd.getId();
-      final String ndName = nd.name;
-      if (sel.equals(ndName)) {
-        if (ndId == JJTIDENT_REG_EXPR_LABEL //
-            || ndId == JJTIDENT_REG_EXPR_PRIVATE_LABEL //
-            || ndId == JJTIDENT_IN_COMP_REG_EXPR_UNIT //
-            || ndId == JJTIDENT_IN_REG_EXPR // 
-            || ndId == JJTIDENT_IN_EXP_UNIT //
-            || ndId == JJTNODE_DESC_IN_EXP //
-        ) {
-          final JJNode ndGrandParent = (JJNode) (((JJNode) nd.parent)).parent;
-          if (ndGrandParent.id == JJTBNF_PROD) {
-            // found a caller (the grand parent), record it
-            addCaller(ndGrandParent);
-            // for JJTIDENT_IN_COMP_REG_EXPR_UNIT, see if it is defined in a regular expression label
-            if (ndId == JJTIDENT_IN_COMP_REG_EXPR_UNIT) {
-              final JJNode brother = (JJNode) ((JJNode) nd.parent).children[0];
-              final int brId = brother.id;
-              if (brId == JJTIDENT_REG_EXPR_LABEL || brId == JJTIDENT_REG_EXPR_PRIVATE_LABEL) {
-                addCaller(brother);
-              }
+      if (ndId == JJTIDENT_REG_EXPR_LABEL //
+          || ndId == JJTIDENT_REG_EXPR_PRIVATE_LABEL //
+          || ndId == JJTIDENT_IN_COMP_REG_EXPR_UNIT //
+          || ndId == JJTIDENT_IN_REG_EXPR // 
+          || ndId == JJTIDENT_IN_EXP_UNIT //
+          || ndId == JJTNODE_DESC_IN_EXP //
+      ) {
+        final JJNode ndGrandParent = (JJNode) (((JJNode) nd.parent)).parent;
+        if (ndGrandParent.id == JJTBNF_PROD) {
+          // found a caller (the grand parent), record it
+          found.add(ndGrandParent);
+          // for JJTIDENT_IN_COMP_REG_EXPR_UNIT, see if it is defined in a regular expression label
+          if (ndId == JJTIDENT_IN_COMP_REG_EXPR_UNIT) {
+            final JJNode brother = (JJNode) ((JJNode) nd.parent).children[0];
+            final int brId = brother.id;
+            if (brId == JJTIDENT_REG_EXPR_LABEL || brId == JJTIDENT_REG_EXPR_PRIVATE_LABEL) {
+              found.add(brother);
             }
           }
-          else if (ndGrandParent.id == JJTREG_EXPR_PROD_BLOCK) {
-            // Found a caller (the grand grand parent, the JJTREGEXPR_KIND), record it
-            addCaller((JJNode) ndGrandParent.parent);
-            // for JJTIDENT_IN_COMP_REG_EXPR_UNIT, see if it is defined in a regular expression label
-            if (ndId == JJTIDENT_IN_COMP_REG_EXPR_UNIT) {
-              final JJNode brother = (JJNode) ((JJNode) nd.parent).children[0];
-              final int brId = brother.id;
-              if (brId == JJTIDENT_REG_EXPR_LABEL || brId == JJTIDENT_REG_EXPR_PRIVATE_LABEL) {
-                addCaller(brother);
-              }
+        }
+        else if (ndGrandParent.id == JJTREG_EXPR_PROD_BLOCK) {
+          // Found a caller (the grand grand parent, the JJTREGEXPR_KIND), record it
+          found.add((JJNode) ndGrandParent.parent);
+          // for JJTIDENT_IN_COMP_REG_EXPR_UNIT, see if it is defined in a regular expression label
+          if (ndId == JJTIDENT_IN_COMP_REG_EXPR_UNIT) {
+            final JJNode brother = (JJNode) ((JJNode) nd.parent).children[0];
+            final int brId = brother.id;
+            if (brId == JJTIDENT_REG_EXPR_LABEL || brId == JJTIDENT_REG_EXPR_PRIVATE_LABEL) {
+              found.add(brother);
             }
           }
         }
-        else if ((ndId == JJTBNF_PROD && id != JJTIDENT_IN_EXP_UNIT && id != JJTBNF_PROD && id != JJTIDENT_BNF_DECL)//
-                 || ndId == JJTNODE_DESC_BNF_DECL //
-                 || ndId == JJTNODE_DESC_IN_METH //
-        ) {
-          // found a caller (the node), record it
-          addCaller(nd);
-        }
-      } // end if (sel.equals(ndName))
-      // if it has children, push them if they are not blocks or push their children if they are blocks
-      if (nd.children != null) {
-        for (final Node child : nd.children) {
-          addNonBlockChild(stack, child);
-        }
       }
-    } // end while
-  } // end buildCallers()
-
-  /**
-   * Adds a given node at the end of the array of callers of this node only if it does not exist yet in the
-   * array.<br>
-   * 
-   * @param aNode - the node to add
-   */
-  public void addCaller(final JJNode aNode) {
-    for (final JJNode caller : callers) {
-      if (caller == aNode) {
-        return;
+      else if ((ndId == JJTBNF_PROD && id != JJTIDENT_IN_EXP_UNIT && id != JJTBNF_PROD && id != JJTIDENT_BNF_DECL)//
+               || ndId == JJTNODE_DESC_BNF_DECL //
+               || ndId == JJTNODE_DESC_IN_METH //
+      ) {
+        // found a caller (the node), record it
+        found.add(nd);
       }
-    }
-    final JJNode newCallers[] = new JJNode[callers.length + 1];
-    System.arraycopy(callers, 0, newCallers, 0, callers.length);
-    newCallers[callers.length] = aNode;
-    callers = newCallers;
-  }
-
-  /**
-   * @return the array of callers for this node
-   */
-  public JJNode[] getCallers() {
-    return callers;
-  }
-
-  /**
-   * Resets the array of callers for this node with the fake "out of hierarchy selection" node.
-   */
-  public void resetCallersToOohsJJNode() {
-    callers = new JJNode[1];
-    callers[0] = oohsJJNode;
-  }
+    } // end for
+    return found.toArray(new JJNode[found.size()]);
+  } // end findCallers()
 
   /**
-   * Builds the array of callees for this node.
+   * Finds the callees of this node ; it does not modify any node, so it can be called on the shared nodes of
+   * a model.
    * 
    * @param aElements - the JJ elements
+   * @return the array of callees for this node
    */
-  public void buildCallees(final Elements aElements) {
-    // clear callees
-    callees = new JJNode[0];
+  public JJNode[] findCallees(final Elements aElements) {
+    final List<JJNode> found = new ArrayList<JJNode>();
     // Get the node to which this node belongs
     String declName = name;
     if (id == JJTCONSTRDECL) {
       // TODO see if in Java 7/8 we can have something
-      return;
+      return new JJNode[0];
     }
     if (id == JJTNODE_DESC_BNF_DECL) {
       declName = declName.substring(1) + DASH_SEP + declName;
     }
     final JJNode declNode = aElements.getNonIdentNorNodeDesc(declName);
     if (declNode == null) {
-      return;
+      return new JJNode[0];
     }
     // search callees within the declaration node tree
     final Queue<JJNode> stack = new LinkedList<JJNode>();
@@ -793,37 +817,10 @@ public class JJNode implements Node {
           continue;
         }
         // found a callee, record it
-        addCallee(nd);
+        found.add(nd);
       }
     }
-    return;
-  } // end buildCallees()
-
-  /**
-   * Adds a given node at the end of the array of callees of this node.
-   * 
-   * @param aNode - the node to add
-   */
-  public void addCallee(final JJNode aNode) {
-    final JJNode newCallees[] = new JJNode[callees.length + 1];
-    System.arraycopy(callees, 0, newCallees, 0, callees.length);
-    newCallees[callees.length] = aNode;
-    callees = newCallees;
-  }
-
-  /**
-   * @return the array of callees
-   */
-  public JJNode[] getCallees() {
-    return callees;
-  }
-
-  /**
-   * Resets the array of callees for this node with the fake "out of hierarchy selection" node.
-   */
-  public void resetCalleesToOohsJJNode() {
-    callees = new JJNode[1];
-    callees[0] = oohsJJNode;
-  }
+    return found.toArray(new JJNode[found.size()]);
+  } // end findCallees()
 
 }
@@ -44,6 +44,35 @@ public class JavaCCParser/*@bgen(jjtree)*/implements JavaCCParserTreeConstants,
     return lastGoodJJNode;
   }
 
+  /**
+   * Parses a sequence of productions (used by the editor to reparse only the modified productions)
+   * The text is supposed to start at the given line, at column 1, so the tokens get the document lines
+   * Returns an ASTroot node whose children are the productions nodes, whose first token is the first token
+   * of the text and whose last token is the EOF token (which holds the trailing special tokens),
+   * or null if parsing failed
+   */
+  public JJNode parseProductions(Reader in, int line)
+  {
+    ReInit(in);
+    jj_input_stream.ReInit(in, line, 1);
+    token_source.ReInit(jj_input_stream);
+    ASTroot n = new ASTroot(JJTROOT);
+    try
+    {
+      jjtree.openNodeScope(n);
+      jjtreeOpenNodeScope(n);
+      while (getToken(1).kind != EOF)
+        production();
+      jjtree.closeNodeScope(n, true);
+      n.setLastToken(getToken(1));
+    }
+    catch (Throwable e)
+    {
+      return null;
+    }
+    return n;
+  }
+
   /**
    * Looks for Errors reported by JavaCC the form is more or less standard
    * "Parse error at line 315, column 3."
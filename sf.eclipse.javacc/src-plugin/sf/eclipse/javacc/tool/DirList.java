@@ -0,0 +1,118 @@
+package sf.eclipse.javacc.tool;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Find last added or modified files after a compilation of a .jjt or .jj file.<br>
+ * Only the directories where the tools may write are listed, and the listing is indexed by path, so the
+ * differences are found in a time proportional to the number of files in these directories.
+ * 
+ * @author Remi Koutcherawy 2003-2010 CeCILL license http://www.cecill.info/index.en.html
+ * @author Marc Mazas 2009-2010-2011-2012-2013-2014-2015
+ * @author Bill Fenlason 2012
+ */
+public class DirList {
+
+  // MMa 02/2010 : formatting and javadoc revision
+  // BF  06/2012 : added required hashCode method to avoid warning message
+  // MMa 11/2014 : some renamings
+
+  /** The directories under which files are listed */
+  private final String[]          jDirs;
+
+  /** The directories not to descend into (absolute paths) */
+  private final Set<String>       jPruned;
+
+  /** The snapshot : key = file path, val = file modification date */
+  private final Map<String, Long> jIndex;
+
+  /**
+   * Standard constructor. Takes a snapshot of files under the given directories.<br>
+   * Each compilation uses its own instance, so compilations writing in distinct directories can be run
+   * concurrently.
+   * 
+   * @param aDirs - the directories (none of them being under another one)
+   */
+  public DirList(final String... aDirs) {
+    this(aDirs, Collections.<String> emptySet());
+  }
+
+  /**
+   * Constructor with pruned directories. Takes a snapshot of files under the given directories.
+   * 
+   * @param aDirs - the directories (none of them being under another one)
+   * @param aPruned - the directories not to descend into (absolute paths) ; hidden directories (.git,
+   *          .settings...) are never descended into
+   */
+  public DirList(final String[] aDirs, final Set<String> aPruned) {
+    jDirs = aDirs;
+    jPruned = aPruned;
+    jIndex = new HashMap<String, Long>(64);
+    for (final String dir : jDirs) {
+      indexFiles(new File(dir), jIndex);
+    }
+  }
+
+  /**
+   * Adds all files found under a given root directory to a given index.
+   * 
+   * @param aRoot - the root directory
+   * @param aIndex - the index to fill
+   */
+  private void indexFiles(final File aRoot, final Map<String, Long> aIndex) {
+    final File[] f = aRoot.listFiles();
+    if (f == null) {
+      // not (yet) existing directory
+      return;
+    }
+    for (int i = 0; i < f.length; i++) {
+      if (f[i].isDirectory()) {
+        if (!isPruned(f[i])) {
+          indexFiles(f[i], aIndex);
+        }
+      }
+      else {
+        aIndex.put(f[i].getPath(), Long.valueOf(f[i].lastModified()));
+      }
+    }
+  }
+
+  /**
+   * @param aDir - a directory
+   * @return true if the directory must not be descended into, false otherwise
+   */
+  private boolean isPruned(final File aDir) {
+    return aDir.getName().startsWith(".") || jPruned.contains(aDir.getPath()); //$NON-NLS-1$
+  }
+
+  /**
+   * Finds differences between the snapshot and the current state of the directories and returns the last
+   * added or modified files.
+   * 
+   * @return String[] the array of last added or modified files, or null if none
+   */
+  public String[] getDiff() {
+    final Map<String, Long> newIndex = new HashMap<String, Long>(jIndex.size() + 16);
+    for (final String dir : jDirs) {
+      indexFiles(new File(dir), newIndex);
+    }
+    final List<String> res = new ArrayList<String>();
+    for (final Map.Entry<String, Long> entry : newIndex.entrySet()) {
+      if (!entry.getValue().equals(jIndex.get(entry.getKey()))) {
+        res.add(entry.getKey());
+      }
+    }
+    if (res.isEmpty()) {
+      return null;
+    }
+    // keep a reproducible order
+    Collections.sort(res);
+    return res.toArray(new String[res.size()]);
+  }
+}
@@ -1,4 +1,4 @@
-package sf.eclipse.javacc.base;
+package sf.eclipse.javacc.tool;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -24,6 +24,16 @@ public class FileUtils {
   // MMa 08/2011 : javadoc revision
   // MMa 08/2011 : added getFileContentsSB() (but unused)
 
+  /** The line separator */
+  public static final String  LS          = System.getProperty("line.separator"); //$NON-NLS-1$
+
+  /** The algorithm used to digest the files contents */
+  static final String         DIGEST_ALGO = "SHA-256";                            //$NON-NLS-1$
+
+  /** Array of hexadecimal characters */
+  private static final char[] HEX_DIGITS  = new char[] {
+      '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+
   /**
    * Reads a file contents. Unused.
    * 
@@ -42,14 +52,14 @@ public class FileUtils {
       sb.append(buf);
       return sb;
     } catch (final IOException e) {
-      AbstractActivator.logBug(e);
+      ToolLog.logBug(e);
       throw new RuntimeException(e);
     } finally {
       if (r != null) {
         try {
           r.close();
         } catch (final IOException e) {
-          AbstractActivator.logBug(e);
+          ToolLog.logBug(e);
         }
       }
     }
@@ -73,14 +83,14 @@ public class FileUtils {
       }
       return w.toString();
     } catch (final IOException e) {
-      AbstractActivator.logBug(e);
+      ToolLog.logBug(e);
       throw new RuntimeException(e);
     } finally {
       if (r != null) {
         try {
           r.close();
         } catch (final IOException e) {
-          AbstractActivator.logBug(e);
+          ToolLog.logBug(e);
         }
       }
     }
@@ -98,14 +108,14 @@ public class FileUtils {
       w = new FileWriter(aFileName);
       w.write(aStr);
     } catch (final IOException e) {
-      AbstractActivator.logBug(e);
+      ToolLog.logBug(e);
       throw new RuntimeException(e);
     } finally {
       if (w != null) {
         try {
           w.close();
         } catch (final IOException e) {
-          AbstractActivator.logBug(e);
+          ToolLog.logBug(e);
         }
       }
     }
@@ -123,17 +133,33 @@ public class FileUtils {
       w = new FileWriter(aFileName);
       w.append(aStr);
     } catch (final IOException e) {
-      AbstractActivator.logBug(e);
+      ToolLog.logBug(e);
       throw new RuntimeException(e);
     } finally {
       if (w != null) {
         try {
           w.close();
         } catch (final IOException e) {
-          AbstractActivator.logBug(e);
+          ToolLog.logBug(e);
         }
       }
     }
   }
 
+  /**
+   * Converts a byte array into an hexadecimal string.
+   * 
+   * @param aBytes - a byte array
+   * @return the hexadecimal string
+   */
+  public static String toHexString(final byte[] aBytes) {
+    // not a shared buffer, as the digests are computed in the worker threads
+    final StringBuilder sb = new StringBuilder(2 * aBytes.length);
+    for (int i = 0; i < aBytes.length; i++) {
+      final byte b = aBytes[i];
+      sb.append(HEX_DIGITS[(b & 0xF0) >> 4]).append(HEX_DIGITS[b & 0x0F]);
+    }
+    return sb.toString();
+  }
+
 }
@@ -0,0 +1,160 @@
+package sf.eclipse.javacc.tool;
+
+import static sf.eclipse.javacc.tool.FileUtils.LS;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Adds the <code>@SuppressWarnings("all")</code> annotation to the class declarations of a generated java
+ * file and recomputes its JavaCC checksum line, in one pass over the file bytes.<br>
+ * For the charsets where the ASCII characters are single bytes (UTF-8, ISO-8859-x, ...), the bytes are matched
+ * as ISO-8859-1 characters (so the match offsets are the byte offsets) and copied untouched, as the
+ * declarations and the checksum line are ASCII ; for the other charsets the file is decoded and encoded with
+ * the given charset.<br>
+ * The checksum (the MD5 digest of the bytes before the checksum line, as JavaCC computes it) is computed on
+ * the assembled new contents, and the file is rewritten only if the contents change, so the files that
+ * JavaCC keeps from a previous compilation (like Token.java) are not touched again.<br>
+ * Static and stateless, so the files can be altered concurrently.
+ * 
+ * @since 1.5.34
+ */
+public class GenFileAlterer {
+
+  /**
+   * Regular expression to capture the class declaration, including potential @SuppressWarnings annotations.<br>
+   * (?:@SuppressWarnings\\(\\\"(?:all|serial|unused)\\\"\\)..?)? : non capturing group, once or not at all.<br>
+   * ((?:public )?(?:final )?(?:class|interface|enum)) : capturing group $1.<br>
+   * This group $1 will by prefixed by a new line containing <code>@SuppressWarnings(\"all\")</code> and will
+   * replace the whole string (group $0).
+   */
+  static final String          sClassDeclRegExpr = "^(?:@SuppressWarnings\\(\\\"(?:all|serial|unused)\\\"\\).?.?)?" //$NON-NLS-1$
+                                                   + "((?:public )?(?:final )?(?:class|interface|enum))"; //$NON-NLS-1$
+  /** Corresponding pattern */
+  static final Pattern         sClassDeclPatt    = Pattern.compile(sClassDeclRegExpr, Pattern.MULTILINE
+                                                                                      | Pattern.DOTALL);
+
+  /**
+   * The algorithm used by JavaCC to compute the checksum.<br>
+   * Duplicated from JavaCC 5.0 org.javacc.parser.OutputFile constant
+   */
+  static final String          MD5_ALGO          = "MD5";                                                //$NON-NLS-1$
+  /**
+   * Beginning of the checksum line generated by JavaCC.<br>
+   * Duplicated from JavaCC 5.0 org.javacc.parser.OutputFile.MD5_LINE_PART_1
+   */
+  static final String          MD5_LINE_PART_1   = "/* JavaCC - OriginalChecksum=";                      //$NON-NLS-1$
+  /**
+   * End of the checksum line generated by JavaCC.<br>
+   * Duplicated from JavaCC 5.0 org.javacc.parser.OutputFile.MD5_LINE_PART_2
+   */
+  static final String          MD5_LINE_PART_2   = " (do not edit this line) */";                        //$NON-NLS-1$
+
+  /** The annotation */
+  static final String          ANNOTATION        = "@SuppressWarnings(\"all\")";  //$NON-NLS-1$
+
+  /** The charset used to map the bytes one to one to characters */
+  private static final Charset LATIN_1           = Charset.forName("ISO-8859-1"); //$NON-NLS-1$
+
+  /** The charset used to check the ASCII compatibility */
+  private static final Charset ASCII             = Charset.forName("US-ASCII");   //$NON-NLS-1$
+
+  /** The ASCII characters which must be single bytes for the bytes to be matched directly */
+  private static final String  ASCII_TEST        = "@\r\n\t (){}\"/*=_azAZ09";    //$NON-NLS-1$
+
+  /**
+   * Alters a generated java file.
+   * 
+   * @param aFile - the file
+   * @param aCharset - the file charset
+   * @return true if the file has been rewritten, false if it had no class declaration or was already altered
+   * @throws IOException if the file cannot be read or written
+   */
+  public static boolean alter(final File aFile, final Charset aCharset) throws IOException {
+    final byte[] src = Files.readAllBytes(aFile.toPath());
+    final boolean direct = isAsciiCompatible(aCharset);
+    final String text = new String(src, direct ? LATIN_1 : aCharset);
+    final int ck = text.indexOf(MD5_LINE_PART_1);
+    final int end = ck < 0 ? text.length() : ck;
+    final Matcher matcher = sClassDeclPatt.matcher(text);
+    matcher.region(0, end);
+    if (!matcher.find()) {
+      return false;
+    }
+
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance(MD5_ALGO);
+    } catch (final NoSuchAlgorithmException e) {
+      ToolLog.logErr("No MD5 implementation (should not happen as JavaCC should use it also)"); //$NON-NLS-1$
+      return false;
+    }
+    // the new contents before the checksum line : the bytes, or the text for a charset not ASCII compatible
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream(src.length + 64);
+    final StringBuilder sb = direct ? null : new StringBuilder(text.length() + 64);
+    boolean changed = false;
+    int from = 0;
+    do {
+      final String repl = ANNOTATION + LS + matcher.group(1);
+      if (!repl.equals(matcher.group())) {
+        if (direct) {
+          baos.write(src, from, matcher.start() - from);
+          baos.write(repl.getBytes(ASCII));
+        }
+        else {
+          sb.append(text, from, matcher.start()).append(repl);
+        }
+        from = matcher.end();
+        changed = true;
+      }
+    } while (matcher.find());
+    if (direct) {
+      baos.write(src, from, end - from);
+    }
+    else {
+      // encoded at once (a charset may add a byte order mark)
+      sb.append(text, from, end);
+      baos.write(sb.toString().getBytes(aCharset));
+    }
+    if (ck >= 0) {
+      // the checksum line replaces the old one and whatever followed it
+      final String line = MD5_LINE_PART_1 + FileUtils.toHexString(digest.digest(baos.toByteArray()))
+                          + MD5_LINE_PART_2 + LS;
+      changed |= !line.equals(text.substring(ck));
+      if (direct) {
+        baos.write(line.getBytes(ASCII));
+      }
+      else {
+        baos.reset();
+        baos.write(sb.append(line).toString().getBytes(aCharset));
+      }
+    }
+    if (!changed) {
+      return false;
+    }
+    Files.write(aFile.toPath(), baos.toByteArray());
+    return true;
+  }
+
+  /**
+   * @param aCharset - a charset
+   * @return true if the charset encodes characters on single bytes and the ASCII characters as ASCII does, or
+   *         is UTF-8 (the multi bytes sequences have no ASCII bytes), false otherwise
+   */
+  static boolean isAsciiCompatible(final Charset aCharset) {
+    if (!"UTF-8".equals(aCharset.name()) //$NON-NLS-1$
+        && (!aCharset.canEncode() || aCharset.newEncoder().maxBytesPerChar() != 1.0f)) {
+      return false;
+    }
+    return Arrays.equals(ASCII_TEST.getBytes(aCharset), ASCII_TEST.getBytes(ASCII));
+  }
+
+}
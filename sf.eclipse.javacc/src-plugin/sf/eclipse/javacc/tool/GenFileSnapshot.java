@@ -0,0 +1,146 @@
+package sf.eclipse.javacc.tool;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A snapshot of the files a grammar has generated (as recorded by the plugin in its
+ * sf.eclipse.javacc.base.GrammarGraph), taken before the tool runs again : for each file its date, its size
+ * and the digest of its contents.<br>
+ * The tools rewrite all their files (the parser, the token manager, the constants, the JTB visitors and
+ * syntax tree classes...) on each run, so after the run the files which have been rewritten with the same
+ * contents get back their previous date : the workspace refresh then sees no change for them and the java
+ * builder does not recompile them (and the classes depending on them).<br>
+ * A generated java file altered by the previous compilation (see {@link GenFileAlterer}) is altered the same
+ * way before being compared if the alteration is still asked, so the later alteration does not rewrite it.<br>
+ * The plugin build cache uses it the same way for the files it restores.
+ * 
+ * @since 1.5.34
+ */
+public class GenFileSnapshot {
+
+  /** The charset used to map the bytes one to one to characters */
+  private static final Charset      LATIN_1 = Charset.forName("ISO-8859-1"); //$NON-NLS-1$
+
+  /** The snapshot : key = file absolute path, val = file state */
+  private final Map<String, State>  jStates;
+
+  /**
+   * The state of a file.
+   */
+  private static class State {
+
+    /** The file modification date */
+    final long    jDate;
+    /** The file size */
+    final long    jSize;
+    /** The digest of the file contents */
+    final byte[]  jDigest;
+    /** True if the file has been altered (it holds the {@link GenFileAlterer#ANNOTATION}), false otherwise */
+    final boolean jAltered;
+
+    /**
+     * Standard constructor.
+     * 
+     * @param aDate - the file modification date
+     * @param aSize - the file size
+     * @param aDigest - the digest of the file contents
+     * @param aAltered - true if the file has been altered, false otherwise
+     */
+    State(final long aDate, final long aSize, final byte[] aDigest, final boolean aAltered) {
+      jDate = aDate;
+      jSize = aSize;
+      jDigest = aDigest;
+      jAltered = aAltered;
+    }
+  }
+
+  /**
+   * Standard constructor. Takes the snapshot of the existing files.
+   * 
+   * @param aGenerated - the generated files absolute paths
+   */
+  public GenFileSnapshot(final Collection<String> aGenerated) {
+    jStates = new HashMap<String, State>(aGenerated.size() * 2);
+    for (final String gen : aGenerated) {
+      final File file = new File(gen);
+      final long date = file.lastModified();
+      if (date == 0) {
+        // no longer existing
+        continue;
+      }
+      try {
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        jStates.put(file.getPath(), new State(date, bytes.length, digest(bytes), isAltered(bytes)));
+      } catch (final IOException e) {
+        // not kept
+      }
+    }
+  }
+
+  /**
+   * Gives back their previous date to the files rewritten with the same contents.
+   * 
+   * @param aFiles - the added or modified files absolute paths (from a {@link DirList} or a cache restore)
+   * @param aCharset - the charset of the generated java files
+   * @param aAlter - true to alter again the files which had been altered, false otherwise (when the
+   *          alteration is no longer asked)
+   * @return the number of files which got back their date
+   */
+  public int restoreUnchanged(final String[] aFiles, final Charset aCharset, final boolean aAlter) {
+    if (jStates.isEmpty()) {
+      return 0;
+    }
+    int nb = 0;
+    for (final String path : aFiles) {
+      final File file = new File(path);
+      final State state = jStates.get(file.getPath());
+      if (state == null) {
+        continue;
+      }
+      try {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        if (aAlter && state.jAltered && !isAltered(bytes) && GenFileAlterer.alter(file, aCharset)) {
+          bytes = Files.readAllBytes(file.toPath());
+        }
+        if (bytes.length == state.jSize && Arrays.equals(digest(bytes), state.jDigest)
+            && file.setLastModified(state.jDate)) {
+          nb++;
+        }
+      } catch (final IOException e) {
+        ToolLog.logBug(e, path);
+      }
+    }
+    return nb;
+  }
+
+  /**
+   * @param aBytes - a file contents
+   * @return true if the file has been altered, false otherwise
+   */
+  private static boolean isAltered(final byte[] aBytes) {
+    return new String(aBytes, LATIN_1).indexOf(GenFileAlterer.ANNOTATION) >= 0;
+  }
+
+  /**
+   * @param aBytes - a file contents
+   * @return the digest of the contents, or the contents themselves if the digest algorithm is not available
+   */
+  private static byte[] digest(final byte[] aBytes) {
+    try {
+      return MessageDigest.getInstance(FileUtils.DIGEST_ALGO).digest(aBytes);
+    } catch (final NoSuchAlgorithmException e) {
+      ToolLog.logBug(e, FileUtils.DIGEST_ALGO);
+      return aBytes;
+    }
+  }
+
+}
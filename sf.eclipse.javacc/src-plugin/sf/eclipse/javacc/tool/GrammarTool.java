@@ -0,0 +1,335 @@
+package sf.eclipse.javacc.tool;
+
+import static sf.eclipse.javacc.tool.ToolConstants.*;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The workbench independent core of a grammar compilation : it runs JavaCC, JJTree or JTB on a grammar file
+ * with given arguments and tool jar (in-process if allowed and possible, otherwise in an external JVM), and
+ * returns a {@link ToolResult} with the tool output, the problems reported in it, the generated files and
+ * the timings.<br>
+ * This package uses no Eclipse nor OSGi class (its constants are in {@link ToolConstants}), so it can be
+ * compiled and run without them, in unit tests, benchmarks (see sf.eclipse.javacc.bench.ToolBench) or other
+ * build tools, and concurrently for grammars writing in distinct directories. The plugin
+ * {@link sf.eclipse.javacc.base.Compiler} is an adapter which computes the arguments from the project
+ * preferences, runs this core (or restores the generated files from the build cache), then reports the
+ * results in the console and the workspace.
+ * 
+ * @since 1.5.34
+ */
+public class GrammarTool {
+
+  /**
+   * A cancellation indicator, polled while the tool runs.
+   */
+  public interface ICancelable {
+
+    /**
+     * @return true if the run must be stopped, false otherwise
+     */
+    boolean isCanceled();
+  }
+
+  /** The grammar file */
+  private final File          jGrammar;
+
+  /** The grammar file extension (jj, jjt or jtb) */
+  private final String        jExt;
+
+  /** The tool command line arguments (the options then the grammar file name) */
+  private final String[]      jArgs;
+
+  /** The tool jar file */
+  private final String        jJarFile;
+
+  /** The (trimmed) JVM options */
+  private String              jJvmOptions   = "";                            //$NON-NLS-1$
+
+  /** The directories where the tool may write */
+  private String[]            jOutDirs;
+
+  /** The directories not to descend into (absolute paths) */
+  private Set<String>         jPrunedDirs   = Collections.<String> emptySet();
+
+  /** The files generated by the previous run (absolute paths) */
+  private Collection<String>  jPrevious     = Collections.<String> emptySet();
+
+  /** The charset of the generated java files */
+  private Charset             jCharset      = Charset.defaultCharset();
+
+  /** True to alter again the previous files which had been altered before comparing them, false otherwise */
+  private boolean             jAlter;
+
+  /** True to run the tool in-process if possible, false otherwise */
+  private boolean             jInProcess;
+
+  /** The directory of the class data sharing archives (null for none) */
+  private File                jCdsDir;
+
+  /** True to start an external JVM with the fast start options, false otherwise */
+  private boolean             jFastStart;
+
+  /** The time limit in milliseconds (0 for none) */
+  private long                jTimeoutMillis;
+
+  /** The cancellation indicator (null if none) */
+  private ICancelable         jCancelable;
+
+  /**
+   * Standard constructor.
+   * 
+   * @param aGrammar - the grammar file (.jj, .jjt or .jtb)
+   * @param aArgs - the tool command line arguments (the options then the grammar file name, as given by
+   *          {@link sf.eclipse.javacc.base.OptionSet#tokenize(String)})
+   * @param aJarFile - the tool jar file (JavaCC for .jj and .jjt files, JTB for .jtb files)
+   */
+  public GrammarTool(final File aGrammar, final String[] aArgs, final String aJarFile) {
+    jGrammar = aGrammar;
+    final String name = aGrammar.getName();
+    jExt = name.substring(name.lastIndexOf('.') + 1);
+    jArgs = aArgs;
+    jJarFile = aJarFile;
+    jOutDirs = new String[] {
+      aGrammar.getAbsoluteFile().getParent() };
+  }
+
+  /**
+   * @param aJvmOptions - the JVM options of an external launch (none by default)
+   */
+  public void setJvmOptions(final String aJvmOptions) {
+    jJvmOptions = aJvmOptions == null ? "" : aJvmOptions.trim(); //$NON-NLS-1$
+  }
+
+  /**
+   * @param aOutDirs - the directories where the tool may write, none being under another one (by default the
+   *          grammar directory)
+   * @param aPrunedDirs - the directories not to descend into (absolute paths, none by default)
+   */
+  public void setOutputDirs(final String[] aOutDirs, final Set<String> aPrunedDirs) {
+    jOutDirs = aOutDirs;
+    jPrunedDirs = aPrunedDirs;
+  }
+
+  /**
+   * @param aPrevious - the files generated by the previous run (absolute paths) : those the run rewrites with
+   *          the same contents keep their date (none by default)
+   * @param aCharset - the charset of the generated java files
+   * @param aAlter - true if the generated java files are to be altered (see {@link GenFileAlterer}), so the
+   *          previous files which had been altered are altered again before being compared, false otherwise
+   */
+  public void setPreviousFiles(final Collection<String> aPrevious, final Charset aCharset,
+                               final boolean aAlter) {
+    jPrevious = aPrevious;
+    jCharset = aCharset;
+    jAlter = aAlter;
+  }
+
+  /**
+   * @param aInProcess - true to run JavaCC and JJTree in-process when there are no JVM options and the
+   *          grammar allows it, false to always launch an external JVM (the default)
+   */
+  public void setInProcess(final boolean aInProcess) {
+    jInProcess = aInProcess;
+  }
+
+  /**
+   * @param aFastStart - true to start an external JVM with the fast start options, false otherwise (the
+   *          default)
+   * @param aCdsDir - the directory where to keep the class data sharing archives, or null for none
+   */
+  public void setFastStart(final boolean aFastStart, final File aCdsDir) {
+    jFastStart = aFastStart;
+    jCdsDir = aCdsDir;
+  }
+
+  /**
+   * @param aTimeoutMillis - the time limit in milliseconds (0 for none, the default)
+   * @param aCancelable - the cancellation indicator (null for none, the default)
+   */
+  public void setStop(final long aTimeoutMillis, final ICancelable aCancelable) {
+    jTimeoutMillis = aTimeoutMillis;
+    jCancelable = aCancelable;
+  }
+
+  /**
+   * @return the grammar file extension (jj, jjt or jtb)
+   */
+  public String getExtension() {
+    return jExt;
+  }
+
+  /**
+   * @return the command line of an external launch (without the fast start options)
+   */
+  public List<String> getCommand() {
+    final List<String> cmd = new ArrayList<String>(6 + jArgs.length);
+    cmd.add(JarLauncher.sJavaCmd);
+    if (jJvmOptions.length() > 0) {
+      cmd.add(jJvmOptions);
+    }
+    if ("jtb".equals(jExt)) { //$NON-NLS-1$
+      cmd.add(JAR_ARG);
+      cmd.add(jJarFile);
+    }
+    else {
+      cmd.add(CLASSPATH_ARG);
+      cmd.add(jJarFile);
+      cmd.add("jjt".equals(jExt) ? JJTREE_ARG : JAVACC_ARG); //$NON-NLS-1$
+    }
+    for (final String arg : jArgs) {
+      cmd.add(arg);
+    }
+    return cmd;
+  }
+
+  /**
+   * Runs the tool.
+   * 
+   * @return the result
+   */
+  public ToolResult run() {
+    final ToolResult res = new ToolResult(jGrammar);
+    final ToolWatchdog watchdog = new ToolWatchdog(jCancelable, jTimeoutMillis);
+    if (watchdog.isCanceled()) {
+      res.jState = ToolWatchdog.CANCELED;
+      return res;
+    }
+    final OutputSink sink = new OutputSink();
+    final ProblemParser parser = new ProblemParser("jtb".equals(jExt)); //$NON-NLS-1$
+    sink.addListener(parser);
+    final String path = jGrammar.getAbsolutePath();
+    final String dir = jGrammar.getAbsoluteFile().getParent();
+
+    long t = System.nanoTime();
+    final DirList dirList = new DirList(jOutDirs, jPrunedDirs);
+    final GenFileSnapshot snapshot = new GenFileSnapshot(jPrevious);
+    t = lap(res, ToolResult.SNAPSHOT, t);
+
+    res.jCommand = getCommand();
+    if (launchInProcess(path, dir, sink, watchdog)) {
+      res.jLaunch = ToolResult.IN_PROCESS;
+    }
+    else if (launchInDaemon(path, dir, sink, watchdog)) {
+      res.jLaunch = ToolResult.DAEMON;
+    }
+    else {
+      final JvmProfile profile = JvmProfile.get(jJvmOptions, jJarFile, jFastStart, jCdsDir);
+      res.jCommand = profile.apply(res.jCommand);
+      res.jExitValue = JarLauncher.pb_launch(res.jCommand, dir, sink, watchdog);
+      profile.end(res.jExitValue, watchdog.isStopped());
+      res.jLaunch = ToolResult.EXTERNAL;
+    }
+    t = lap(res, ToolResult.TOOL, t);
+
+    res.jState = watchdog.isTimedOut() ? ToolWatchdog.TIMED_OUT
+                                      : watchdog.isStopped() ? ToolWatchdog.CANCELED : ToolWatchdog.RUNNING;
+    final String[] generated = dirList.getDiff();
+    if (generated != null) {
+      res.jGenerated = generated;
+      if (!watchdog.isStopped()) {
+        // the files rewritten with the same contents keep their date
+        res.jUnchanged = snapshot.restoreUnchanged(generated, jCharset, jAlter);
+      }
+    }
+    lap(res, ToolResult.DIFF, t);
+
+    res.jProblems = parser.end();
+    res.jOutput = sink.toByteArray();
+    res.jTruncated = sink.isTruncated();
+    return res;
+  }
+
+  /**
+   * Runs JavaCC or JJTree in-process if allowed and if the grammar allows it.
+   * 
+   * @param aPath - the grammar file path
+   * @param aDir - the grammar file directory
+   * @param aOut - the stream where to write the tool output
+   * @param aWatchdog - the watchdog of the run
+   * @return true if the tool has been run in-process, false if it must be launched in another JVM
+   */
+  private boolean launchInProcess(final String aPath, final String aDir, final OutputStream aOut,
+                                  final ToolWatchdog aWatchdog) {
+    if (!jInProcess || "jtb".equals(jExt) || jJvmOptions.length() > 0) { //$NON-NLS-1$
+      return false;
+    }
+    if (!InProcessLauncher.canLaunch(jExt, FileUtils.getFileContents(aPath))) {
+      return false;
+    }
+    return InProcessLauncher.ip_launch(jExt, jJarFile, jArgs, aDir, aOut, aWatchdog);
+  }
+
+  /**
+   * Runs JavaCC or JJTree in a reusable JVM if the grammar can be compiled outside its directory.
+   * 
+   * @param aPath - the grammar file path
+   * @param aDir - the grammar file directory
+   * @param aOut - the stream where to write the tool output
+   * @param aWatchdog - the watchdog of the run
+   * @return true if the tool has been run in a reusable JVM, false if it must be launched externally
+   */
+  private boolean launchInDaemon(final String aPath, final String aDir, final OutputStream aOut,
+                                 final ToolWatchdog aWatchdog) {
+    if ("jtb".equals(jExt)) { //$NON-NLS-1$
+      return false;
+    }
+    if (!InProcessLauncher.canLaunch(jExt, FileUtils.getFileContents(aPath))) {
+      return false;
+    }
+    final boolean isJjt = "jjt".equals(jExt); //$NON-NLS-1$
+    return launchInDaemon(isJjt, jJarFile, jJvmOptions, InProcessLauncher.absolutizeArgs(jArgs, aDir, isJjt),
+                          aOut, aWatchdog);
+  }
+
+  /**
+   * Runs JavaCC or JJTree in a reusable JVM ; none here, overridden by the plugin which manages the tool
+   * daemons.
+   * 
+   * @param aIsJjt - true for JJTree, false for JavaCC
+   * @param aJarFile - the tool jar file
+   * @param aJvmOptions - the (trimmed) JVM options
+   * @param aArgs - the command line arguments, with absolute paths (as the reusable JVM does not run in the
+   *          grammar's directory)
+   * @param aOut - the stream where to write the tool output
+   * @param aWatchdog - the watchdog of the run, to give the action stopping the run to
+   * @return true if the tool has been run (or stopped) in a reusable JVM, false if it must be launched
+   *         externally
+   */
+  @SuppressWarnings("unused")
+  protected boolean launchInDaemon(final boolean aIsJjt, final String aJarFile, final String aJvmOptions,
+                                   final String[] aArgs, final OutputStream aOut,
+                                   final ToolWatchdog aWatchdog) {
+    return false;
+  }
+
+  /**
+   * Closes the cached tool class loaders and restores the standard streams, when the core is no longer used
+   * (on plugin stop).
+   */
+  public static void clearCaches() {
+    InProcessLauncher.clearLoaders();
+  }
+
+  /**
+   * Adds the time elapsed in a phase.
+   * 
+   * @param aRes - the result
+   * @param aPhase - the phase
+   * @param aFrom - the phase start (System.nanoTime())
+   * @return the phase end
+   */
+  private static long lap(final ToolResult aRes, final int aPhase, final long aFrom) {
+    final long now = System.nanoTime();
+    aRes.jNanos[aPhase] += now - aFrom;
+    return now;
+  }
+
+}
@@ -0,0 +1,526 @@
+package sf.eclipse.javacc.tool;
+
+import static sf.eclipse.javacc.tool.ToolConstants.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process launcher for JavaCC and JJTree.<br>
+ * The tool jar is loaded in an isolated {@link URLClassLoader}, cached and reused as long as the jar file is
+ * not modified, and the tool entry point is invoked by reflection inside the Eclipse JVM, which saves a JVM
+ * startup for each grammar. The tools keep their state in static fields, so a loader runs one tool at a time :
+ * concurrent runs (of the build workers) get distinct loaders, and the idle loaders are kept for the next
+ * runs.<br>
+ * The tools print on the standard streams : a dispatching stream is installed once in place of System.out
+ * and System.err, which writes the output of a thread running a tool to the stream of its run, and the output
+ * of the other threads to the original streams, so the standard streams are never swapped.<br>
+ * Used only by {@link GrammarTool}, which falls back to {@link JarLauncher} when this launcher declines.
+ * 
+ * @since 1.5.34
+ */
+class InProcessLauncher {
+
+  /** The option giving the output directory */
+  static final String                    OUT_DIR_OPT   = "OUTPUT_DIRECTORY";            //$NON-NLS-1$
+  /** The JJTree option giving the output directory */
+  static final String                    JJT_DIR_OPT   = "JJTREE_OUTPUT_DIRECTORY";     //$NON-NLS-1$
+
+  /** The cache of the idle tool class loaders : key = jar path, val = the loaders not running a tool */
+  private static final Map<String, List<ToolLoader>> sLoaders    = new HashMap<String, List<ToolLoader>>(4);
+
+  /** The generation of the cached loaders (a loader of a previous generation is closed when released) */
+  private static int                                 sGeneration;
+
+  /** The output stream of the run of the current thread (set only while the thread runs a tool) */
+  private static final ThreadLocal<OutputStream>     sCapture    = new ThreadLocal<OutputStream>();
+
+  /** The dispatching standard output stream (null if not installed) */
+  private static Dispatcher                          sOut;
+
+  /** The dispatching standard error stream (null if not installed) */
+  private static Dispatcher                          sErr;
+
+  /** The pool of threads running the watched runs */
+  private static final ExecutorService               sRunners;
+
+  static {
+    sRunners = Executors.newCachedThreadPool(new ThreadFactory() {
+
+      /** {@inheritDoc} */
+      @Override
+      public Thread newThread(final Runnable aRunnable) {
+        final Thread t = new Thread(aRunnable, "JavaCC in-process runner"); //$NON-NLS-1$
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  /**
+   * A class loader on a tool jar, with the jar modification time it was created for.<br>
+   * JavaCC and JJTree keep their state in static fields, so a loader runs one invocation at a time.
+   */
+  static class ToolLoader {
+
+    /** The jar path */
+    final String         jJar;
+    /** The jar modification time when the loader was created */
+    final long           jMtime;
+    /** The cache generation when the loader was created */
+    final int            jGeneration;
+    /** The class loader */
+    final URLClassLoader jLoader;
+
+    /**
+     * Standard constructor.
+     * 
+     * @param aJar - the jar path
+     * @param aMtime - the jar modification time
+     * @param aGeneration - the cache generation
+     * @throws IOException - if the jar path cannot be converted to an URL
+     */
+    ToolLoader(final String aJar, final long aMtime, final int aGeneration) throws IOException {
+      jJar = aJar;
+      jMtime = aMtime;
+      jGeneration = aGeneration;
+      // the parent is the platform / extension class loader, so no Eclipse class is visible to the tool
+      jLoader = new URLClassLoader(new URL[] {
+        new File(aJar).toURI().toURL() }, ClassLoader.getSystemClassLoader().getParent());
+    }
+
+    /** Closes the class loader */
+    void close() {
+      try {
+        jLoader.close();
+      } catch (final IOException e) {
+        ToolLog.logBug(e, jJar);
+      }
+    }
+  }
+
+  /**
+   * A standard stream installed in place of System.out or System.err : it writes the output of a thread running
+   * a tool to the output stream of its run, and the output of the other threads to the original stream.<br>
+   * The text methods of {@link PrintStream} encode the characters then write the bytes through
+   * {@link #write(byte[], int, int)}, so overriding the byte methods dispatches everything.
+   */
+  static final class Dispatcher extends PrintStream {
+
+    /** The original standard stream */
+    final PrintStream jOriginal;
+
+    /**
+     * Standard constructor.
+     * 
+     * @param aOriginal - the original standard stream
+     */
+    Dispatcher(final PrintStream aOriginal) {
+      super(aOriginal, true);
+      jOriginal = aOriginal;
+    }
+
+    /**
+     * @return the output stream of the run of the current thread, or the original stream
+     */
+    private OutputStream target() {
+      final OutputStream os = sCapture.get();
+      return os == null ? jOriginal : os;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(final int aByte) {
+      try {
+        target().write(aByte);
+      } catch (final IOException e) {
+        setError();
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(final byte[] aBuf, final int aOff, final int aLen) {
+      try {
+        target().write(aBuf, aOff, aLen);
+      } catch (final IOException e) {
+        setError();
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void flush() {
+      try {
+        target().flush();
+      } catch (final IOException e) {
+        setError();
+      }
+    }
+  }
+
+  /**
+   * The output stream of a watched run : it writes to the run output until the run is abandoned, then drops
+   * what the abandoned tool still prints.
+   */
+  static final class RunOutput extends OutputStream {
+
+    /** The run output (null once the run is abandoned) */
+    private volatile OutputStream jTarget;
+
+    /**
+     * Standard constructor.
+     * 
+     * @param aTarget - the run output
+     */
+    RunOutput(final OutputStream aTarget) {
+      jTarget = aTarget;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(final int aByte) throws IOException {
+      final OutputStream os = jTarget;
+      if (os != null) {
+        os.write(aByte);
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(final byte[] aBuf, final int aOff, final int aLen) throws IOException {
+      final OutputStream os = jTarget;
+      if (os != null) {
+        os.write(aBuf, aOff, aLen);
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void flush() throws IOException {
+      final OutputStream os = jTarget;
+      if (os != null) {
+        os.flush();
+      }
+    }
+
+    /** Drops the next writes */
+    void detach() {
+      jTarget = null;
+    }
+  }
+
+  /**
+   * Installs the dispatching standard streams, if they are not (or no longer) the current ones.
+   */
+  private static synchronized void installStreams() {
+    if (System.out != sOut) {
+      sOut = new Dispatcher(System.out);
+      System.setOut(sOut);
+    }
+    if (System.err != sErr) {
+      sErr = new Dispatcher(System.err);
+      System.setErr(sErr);
+    }
+  }
+
+  /**
+   * Restores the original standard streams, if the dispatching streams are still the current ones.
+   */
+  private static synchronized void uninstallStreams() {
+    if (sOut != null && System.out == sOut) {
+      System.setOut(sOut.jOriginal);
+    }
+    if (sErr != null && System.err == sErr) {
+      System.setErr(sErr.jOriginal);
+    }
+    sOut = null;
+    sErr = null;
+  }
+
+  /**
+   * Takes an idle cached class loader for a jar, or creates one if there is none or if the jar has been
+   * modified since they were created. The loader must be given back with {@link #releaseLoader(ToolLoader)}.
+   * 
+   * @param aJar - the jar path
+   * @return the class loader, or null if the jar does not exist or cannot be loaded
+   */
+  static ToolLoader acquireLoader(final String aJar) {
+    final File jar = new File(aJar);
+    if (!jar.isFile()) {
+      return null;
+    }
+    final long mtime = jar.lastModified();
+    final int generation;
+    synchronized (sLoaders) {
+      final List<ToolLoader> idle = sLoaders.get(aJar);
+      while (idle != null && !idle.isEmpty()) {
+        final ToolLoader tl = idle.remove(idle.size() - 1);
+        if (tl.jMtime == mtime) {
+          return tl;
+        }
+        // the jar has changed : forget the old classes
+        tl.close();
+      }
+      generation = sGeneration;
+    }
+    try {
+      return new ToolLoader(aJar, mtime, generation);
+    } catch (final IOException e) {
+      ToolLog.logBug(e, aJar);
+      return null;
+    }
+  }
+
+  /**
+   * Gives back a class loader which has ended its run, to be reused by the next runs.
+   * 
+   * @param aTl - the tool class loader
+   */
+  static void releaseLoader(final ToolLoader aTl) {
+    synchronized (sLoaders) {
+      if (aTl.jGeneration == sGeneration) {
+        List<ToolLoader> idle = sLoaders.get(aTl.jJar);
+        if (idle == null) {
+          idle = new ArrayList<ToolLoader>(4);
+          sLoaders.put(aTl.jJar, idle);
+        }
+        idle.add(aTl);
+        return;
+      }
+    }
+    // cleared in the meantime
+    aTl.close();
+  }
+
+  /**
+   * Closes and forgets all the cached class loaders (those running a tool are closed when released) and
+   * restores the standard streams (called on plugin stop).
+   */
+  static void clearLoaders() {
+    synchronized (sLoaders) {
+      for (final List<ToolLoader> idle : sLoaders.values()) {
+        for (final ToolLoader tl : idle) {
+          tl.close();
+        }
+      }
+      sLoaders.clear();
+      sGeneration++;
+    }
+    uninstallStreams();
+  }
+
+  /**
+   * Tells whether a grammar can be compiled in-process : only .jj and .jjt files are, and only if the grammar
+   * does not set its output directory in its options section, as a relative path there would be resolved
+   * against the Eclipse working directory and not against the grammar's directory.
+   * 
+   * @param aExt - the grammar file extension
+   * @param aGrammar - the grammar file contents
+   * @return true if the grammar can be compiled in-process, false otherwise
+   */
+  static boolean canLaunch(final String aExt, final String aGrammar) {
+    if (!"jj".equals(aExt) && !"jjt".equals(aExt)) { //$NON-NLS-1$ //$NON-NLS-2$
+      return false;
+    }
+    return aGrammar.toUpperCase(Locale.ENGLISH).indexOf(OUT_DIR_OPT) < 0;
+  }
+
+  /**
+   * Launches JavaCC or JJTree in-process. The tool output is captured for this invocation only, straight into
+   * a given stream : the thread running the tool writes to it through the dispatching standard streams, while
+   * the output of the other threads still goes to the original streams.<br>
+   * Concurrent runs use distinct class loaders, so they do not wait for each other.<br>
+   * When there is something to watch, the tool runs in a runner thread while the calling thread waits for it
+   * or for the watchdog. The tools do not check for interruptions, so a stopped run is interrupted and
+   * abandoned : its output is dropped and its class loader is closed when it ends (the next runs get other
+   * loaders).
+   * 
+   * @param aExt - the grammar file extension ("jj" or "jjt")
+   * @param aJarFile - the tool jar file
+   * @param aArgs - the command line arguments (the last one being the grammar file name)
+   * @param aDir - the grammar's directory, in which an external launch would run
+   * @param aOut - the stream where to write the tool output
+   * @param aWatchdog - the watchdog
+   * @return true if the tool has been run (or stopped), false if it could not be loaded (the caller must fall
+   *         back to an external launch)
+   */
+  static boolean ip_launch(final String aExt, final String aJarFile, final String[] aArgs, final String aDir,
+                           final OutputStream aOut, final ToolWatchdog aWatchdog) {
+    final ToolLoader tl = acquireLoader(aJarFile);
+    if (tl == null) {
+      return false;
+    }
+    final boolean isJjt = "jjt".equals(aExt); //$NON-NLS-1$
+    final String[] args = absolutizeArgs(aArgs, aDir, isJjt);
+    installStreams();
+    if (!aWatchdog.isActive()) {
+      try {
+        return invoke(tl, isJjt, args, new PrintStream(aOut, true));
+      } finally {
+        releaseLoader(tl);
+      }
+    }
+    final RunOutput output = new RunOutput(aOut);
+    // the run state : 0 = pending, 1 = running, 2 = ended, 3 = given up before running, 4 = abandoned
+    final AtomicInteger state = new AtomicInteger();
+    final Future<Boolean> run = sRunners.submit(new Callable<Boolean>() {
+
+      /** {@inheritDoc} */
+      @Override
+      public Boolean call() {
+        if (!state.compareAndSet(0, 1)) {
+          return Boolean.FALSE;
+        }
+        try {
+          return Boolean.valueOf(invoke(tl, isJjt, args, new PrintStream(output, true)));
+        } finally {
+          if (state.compareAndSet(1, 2)) {
+            releaseLoader(tl);
+          }
+          else {
+            // abandoned : its static fields may be inconsistent
+            tl.close();
+          }
+        }
+      }
+    });
+    final ScheduledFuture<?> watch = aWatchdog.watch(new Runnable() {
+
+      /** {@inheritDoc} */
+      @Override
+      public void run() {
+        run.cancel(true);
+      }
+    });
+    try {
+      return run.get().booleanValue();
+    } catch (final CancellationException e) {
+      // stopped by the watchdog
+    } catch (final InterruptedException e) {
+      run.cancel(true);
+      Thread.currentThread().interrupt();
+    } catch (final ExecutionException e) {
+      ToolLog.logBug(e.getCause(), aJarFile);
+      return true;
+    } finally {
+      ToolWatchdog.unwatch(watch);
+    }
+    if (state.compareAndSet(0, 3)) {
+      // stopped before running
+      releaseLoader(tl);
+    }
+    else if (state.compareAndSet(1, 4)) {
+      // abandon the run (if it has not ended in the meantime)
+      output.detach();
+    }
+    return true;
+  }
+
+  /**
+   * Invokes JavaCC or JJTree, the standard streams of the current thread writing to the run output (the caller
+   * has acquired the class loader).
+   * 
+   * @param aTl - the tool class loader
+   * @param aIsJjt - true for JJTree, false for JavaCC
+   * @param aArgs - the command line arguments
+   * @param aCapture - the stream capturing the tool output
+   * @return true if the tool has been run, false if it could not be loaded
+   */
+  private static boolean invoke(final ToolLoader aTl, final boolean aIsJjt, final String[] aArgs,
+                                final PrintStream aCapture) {
+    final Thread thread = Thread.currentThread();
+    final ClassLoader tccl = thread.getContextClassLoader();
+    try {
+      final Class<?> main = Class.forName(aIsJjt ? JJTREE_MAIN : JAVACC_MAIN, true, aTl.jLoader);
+      thread.setContextClassLoader(aTl.jLoader);
+      sCapture.set(aCapture);
+      if (aIsJjt) {
+        final Method m = main.getMethod(JJTREE_METHOD, String[].class);
+        m.invoke(main.newInstance(), (Object) aArgs);
+      }
+      else {
+        final Method m = main.getMethod(JAVACC_METHOD, String[].class);
+        m.invoke(null, (Object) aArgs);
+      }
+    } catch (final ClassNotFoundException e) {
+      // not a JavaCC jar (or a too old one) : let the caller launch it externally
+      return false;
+    } catch (final NoSuchMethodException e) {
+      return false;
+    } catch (final InvocationTargetException e) {
+      // the tool failed : report it as the external process would have done
+      e.getCause().printStackTrace(aCapture);
+    } catch (final Exception e) {
+      ToolLog.logBug(e, aTl.jJar);
+      return false;
+    } finally {
+      sCapture.remove();
+      thread.setContextClassLoader(tccl);
+      aCapture.flush();
+    }
+    return true;
+  }
+
+  /**
+   * Makes the grammar file and the output directory absolute, as the tool does not run in the grammar's
+   * directory. Adds the output directory option if it is not set.
+   * 
+   * @param aArgs - the command line arguments (the last one being the grammar file name)
+   * @param aDir - the grammar's directory
+   * @param aIsJjt - true for JJTree, false for JavaCC
+   * @return the new arguments
+   */
+  static String[] absolutizeArgs(final String[] aArgs, final String aDir, final boolean aIsJjt) {
+    final List<String> list = new ArrayList<String>(aArgs.length + 1);
+    boolean hasOutDir = false;
+    for (int i = 0; i < aArgs.length - 1; i++) {
+      final String arg = aArgs[i];
+      final int ix = arg.indexOf('=');
+      final String name = ix < 0 ? "" : arg.substring(1, ix).toUpperCase(Locale.ENGLISH); //$NON-NLS-1$
+      if (name.equals(OUT_DIR_OPT) || (aIsJjt && name.equals(JJT_DIR_OPT))) {
+        hasOutDir |= name.equals(OUT_DIR_OPT);
+        list.add(arg.substring(0, ix + 1) + absolutize(arg.substring(ix + 1), aDir));
+      }
+      else {
+        list.add(arg);
+      }
+    }
+    if (!hasOutDir) {
+      list.add("-" + OUT_DIR_OPT + "=" + aDir); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+    list.add(absolutize(aArgs[aArgs.length - 1], aDir));
+    return list.toArray(new String[list.size()]);
+  }
+
+  /**
+   * @param aPath - a path
+   * @param aDir - the directory a relative path is relative to
+   * @return the absolute path
+   */
+  private static String absolutize(final String aPath, final String aDir) {
+    final File f = new File(aPath);
+    return f.isAbsolute() ? aPath : new File(aDir, aPath).getPath();
+  }
+
+}
@@ -1,33 +1,22 @@
-package sf.eclipse.javacc.base;
+package sf.eclipse.javacc.tool;
 
-import static sf.eclipse.javacc.base.IConstants.*;
+import static sf.eclipse.javacc.tool.ToolConstants.*;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Pattern;
 
-//import org.eclipse.core.runtime.CoreException;
-//import org.eclipse.debug.core.DebugPlugin;
-//import org.eclipse.debug.core.ILaunch;
-//import org.eclipse.debug.core.ILaunchConfiguration;
-//import org.eclipse.debug.core.ILaunchConfigurationType;
-//import org.eclipse.debug.core.ILaunchConfigurationWorkingCopy;
-//import org.eclipse.debug.core.ILaunchManager;
-//import org.eclipse.debug.core.Launch;
-//import org.eclipse.jdt.core.IJavaProject;
-//import org.eclipse.jdt.launching.IJavaLaunchConfigurationConstants;
-//import org.eclipse.jdt.launching.IVMInstall;
-//import org.eclipse.jdt.launching.IVMRunner;
-//import org.eclipse.jdt.launching.JavaRuntime;
-//import org.eclipse.jdt.launching.VMRunnerConfiguration;
-
 /**
  * Launcher for JavaCC.<br>
- * Used only by {@link Compiler}.
+ * Used by {@link GrammarTool} and by the plugin {@link sf.eclipse.javacc.base.Compiler}.
  * 
  * @author Remi Koutcherawy 2003-2010 CeCILL license http://www.cecill.info/index.en.html
  * @author Marc Mazas 2009-2010-2011-2012-2013-2014-2015
@@ -59,100 +48,163 @@ public class JarLauncher {
   /** The regex to split the JVM options string in a array */
   public static final Pattern patt = Pattern.compile("\\s"); //$NON-NLS-1$
 
+  /** The pool of threads reading the external processes outputs */
+  private static final ExecutorService sReaders;
+
+  static {
+    sReaders = Executors.newCachedThreadPool(new ThreadFactory() {
+
+      /** {@inheritDoc} */
+      @Override
+      public Thread newThread(final Runnable aRunnable) {
+        final Thread t = new Thread(aRunnable, "JavaCC output reader"); //$NON-NLS-1$
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
   /**
-   * A Thread to get Output from External Process.
+   * A task copying the output of an external process, chunk by chunk, to a stream.
    */
-  static class StreamGobbler extends Thread {
+  static class StreamGobbler implements Runnable {
+
+    /** The size of the chunks */
+    static final int       CHUNK_SIZE = 8192;
 
     /** The input stream */
-    protected InputStream is;
+    protected InputStream  is;
+
+    /** The stream where to copy the output */
+    protected OutputStream out;
 
     /**
-     * Standard constructor.
+     * Standard constructor (copies to {@link System#out}).
      * 
      * @param aIs - the input stream
      */
     StreamGobbler(final InputStream aIs) {
+      this(aIs, System.out);
+    }
+
+    /**
+     * Constructor copying to a given stream.
+     * 
+     * @param aIs - the input stream
+     * @param aOut - the stream where to copy the output
+     */
+    StreamGobbler(final InputStream aIs, final OutputStream aOut) {
       is = aIs;
+      out = aOut;
     }
 
     /** {@inheritDoc} */
     @Override
     public void run() {
       try {
-        final InputStreamReader isr = new InputStreamReader(is);
-        // JavaCC / JJTree / JTB use PrintStream (System.out) to print,
-        //  in a JVM (like IBM 160 JVM) that may use the native code page(850 on Windows)
-        //  (Sun 160 JVM seems to use Cp1252 to print)
-        // Here the InputStreamReader use a default charset (usually Cp1252 on Eclipse)
-        //  this may lead to characters conversion
-        //  this can be seen with the IBM 160 JVM error messages (for wrong JVM options) on a French platform
-        final BufferedReader br = new BufferedReader(isr);
-        String line = null;
-        while ((line = br.readLine()) != null) {
-          System.out.println(line);
+        // the bytes are copied as they are, so the (platform) encoding of the tool is kept until the text
+        //  is decoded by the console
+        final byte[] buf = new byte[CHUNK_SIZE];
+        int len;
+        while ((len = is.read(buf)) >= 0) {
+          if (len > 0) {
+            out.write(buf, 0, len);
+          }
         }
-        br.close();
+        out.flush();
+        is.close();
       } catch (final Throwable t) {
-        AbstractActivator.logBug(t);
+        ToolLog.logBug(t);
       }
     }
   }
 
   /**
-   * Launches a command with ProcessBuilder.start().
+   * Launches a command with ProcessBuilder.start(), copying its output to a given stream.
+   * 
+   * @param aCmd - the command to launch
+   * @param aDir - the directory where to launch the command
+   * @param aOut - the stream where to copy the command output
+   * @return the command exit value, or -1 if the launch failed
+   */
+  public static int pb_launch(final List<String> aCmd, final String aDir, final OutputStream aOut) {
+    return pb_launch(aCmd, aDir, aOut, null);
+  }
+
+  /**
+   * Launches a command with ProcessBuilder.start(), copying its output to a given stream, under the watch of
+   * a watchdog which destroys the process if the build is canceled or if the time limit is exceeded (the tool
+   * JVM does not start other processes, so destroying it stops the whole run).
    * 
    * @param aCmd - the command to launch
    * @param aDir - the directory where to launch the command
+   * @param aOut - the stream where to copy the command output
+   * @param aWatchdog - the watchdog, or null if none
+   * @return the command exit value, or -1 if the launch failed or if the waiting thread has been interrupted
+   *         (the process is then destroyed, and the thread interrupt status is kept)
    */
-  static void pb_launch(final List<String> aCmd, final String aDir) {
-    int rc = 0;
+  static int pb_launch(final List<String> aCmd, final String aDir, final OutputStream aOut,
+                       final ToolWatchdog aWatchdog) {
+    ScheduledFuture<?> watch = null;
+    Process proc = null;
+    Future<?> out = null;
     try {
       final ProcessBuilder pb = new ProcessBuilder(aCmd);
       pb.redirectErrorStream(true);
       pb.directory(new File(aDir));
-      final Process proc = pb.start();
-      final StreamGobbler out = new StreamGobbler(proc.getInputStream());
-      out.start();
-      rc = proc.waitFor();
-    } catch (final Throwable t) {
-      if (rc == 0) {
-        AbstractActivator.logInfo("proc.waitFor() interrupted and returned 0"); //$NON-NLS-1$
-      }
-      else {
-        AbstractActivator.logErr("proc.waitFor() interrupted and returned " + rc); //$NON-NLS-1$
+      final Process started = pb.start();
+      proc = started;
+      out = sReaders.submit(new StreamGobbler(started.getInputStream(), aOut));
+      if (aWatchdog != null) {
+        watch = aWatchdog.watch(new Runnable() {
+
+          /** {@inheritDoc} */
+          @Override
+          public void run() {
+            started.destroy();
+          }
+        });
       }
+      final int rc = started.waitFor();
+      ToolWatchdog.unwatch(watch);
+      // wait for the whole output to be copied
+      out.get();
+      return rc;
+    } catch (final InterruptedException e) {
+      // the build thread is interrupted : do not leave the process running, and keep the interrupt status
+      stop(proc, out, watch);
+      Thread.currentThread().interrupt();
+      ToolLog.logInfo("Interrupted while waiting for the end of " + aCmd.get(0) + ", process destroyed"); //$NON-NLS-1$ //$NON-NLS-2$
+      return -1;
+    } catch (final Throwable t) {
+      stop(proc, out, watch);
+      ToolLog.logBug(t, aCmd.toString());
+      return -1;
     }
   }
 
-  //  @SuppressWarnings("javadoc")
-  //  static void launch1(final IJavaProject proj, final String main) throws CoreException {
-  //    IVMInstall vm = JavaRuntime.getVMInstall(proj);
-  //    if (vm == null) {
-  //      vm = JavaRuntime.getDefaultVMInstall();
-  //    }
-  //    final IVMRunner vmr = vm.getVMRunner(ILaunchManager.RUN_MODE);
-  //    final String[] cp = JavaRuntime.computeDefaultRuntimeClassPath(proj);
-  //    final VMRunnerConfiguration config = new VMRunnerConfiguration(main, cp);
-  //    final ILaunch launch = new Launch(null, ILaunchManager.RUN_MODE, null);
-  //    vmr.run(config, launch, null);
-  //  }
-  //
-  //  @SuppressWarnings("javadoc")
-  //  static void launch2(final IJavaProject proj, final String cfg, final String main) throws CoreException {
-  //    final ILaunchManager lm = DebugPlugin.getDefault().getLaunchManager();
-  //    final ILaunchConfigurationType t = lm.getLaunchConfigurationType(IJavaLaunchConfigurationConstants.ID_JAVA_APPLICATION);
-  //    final ILaunchConfigurationWorkingCopy wc = t.newInstance(null, cfg);
-  //    wc.setAttribute(IJavaLaunchConfigurationConstants.ATTR_PROJECT_NAME, proj.getElementName());
-  //    wc.setAttribute(IJavaLaunchConfigurationConstants.ATTR_MAIN_TYPE_NAME, main);
-  //    final ILaunchConfiguration config = wc.doSave();
-  //    config.launch(ILaunchManager.RUN_MODE, null);
-  //  }
+  /**
+   * Stops a launched process, the copy of its output and its watch.
+   * 
+   * @param aProc - the process, or null if not started
+   * @param aOut - the output copy task, or null if not submitted
+   * @param aWatch - the watch, or null if none
+   */
+  private static void stop(final Process aProc, final Future<?> aOut, final ScheduledFuture<?> aWatch) {
+    ToolWatchdog.unwatch(aWatch);
+    if (aProc != null) {
+      // this also ends the output copy (end of stream)
+      aProc.destroy();
+    }
+    if (aOut != null) {
+      aOut.cancel(true);
+    }
+  }
 
   /**
    * @return the {@link ProcessBuilder} environment
    */
-  static Map<String, String> getPbEnv() {
+  public static Map<String, String> getPbEnv() {
     final ProcessBuilder pb = new ProcessBuilder();
     return pb.environment();
   }
@@ -168,13 +220,11 @@ public class JarLauncher {
     final Runtime rt = Runtime.getRuntime();
     try {
       final Process proc = rt.exec(aCmd, null, new File(aDir));
-      final StreamGobbler err = new StreamGobbler(proc.getErrorStream());
-      final StreamGobbler out = new StreamGobbler(proc.getInputStream());
-      err.start();
-      out.start();
+      sReaders.submit(new StreamGobbler(proc.getErrorStream()));
+      sReaders.submit(new StreamGobbler(proc.getInputStream()));
       proc.waitFor();
     } catch (final Throwable t) {
-      AbstractActivator.logBug(t);
+      ToolLog.logBug(t);
     }
   }
 
@@ -0,0 +1,318 @@
+package sf.eclipse.javacc.tool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The JVM options added to the command line of a tool (JavaCC / JJTree / JTB / JJDoc) launched in an
+ * external JVM, to cut its startup time, which is most of a short run :
+ * <ul>
+ * <li>a short lived process profile (client compiler only, serial garbage collector), only when the user has
+ * not set JVM options</li>
+ * <li>an application class data sharing (AppCDS) archive of the tool classes, dumped at the exit of the
+ * first run with a tool jar and a Java runtime (on a Java 13 or higher runtime) and used by the following
+ * runs</li>
+ * </ul>
+ * The archives are stored in a given directory (the plugin one is under its state location), named after the
+ * jar and a digest of the jar and of the Java runtime (path, date, size and version), so an archive is
+ * rebuilt when the jar or the runtime changes (and the stale archive of the same jar is deleted). A dumped
+ * archive is checked by the runtime before being used, as the JVM does not recover from a damaged archive.
+ * The CDS logging is turned off, so the tool output does not change.<br>
+ * The options are opt-in (see {@link GrammarTool#setFastStart(boolean, File)}) and are shown in the console
+ * command line.
+ * 
+ * @since 1.5.34
+ */
+public class JvmProfile {
+
+  /** The plugin archives directory name (under the plugin state location) */
+  public static final String                 CDS_DIR            = "cds";                               //$NON-NLS-1$
+  /** The short lived process options */
+  static final String[]                      FAST_START_OPTIONS = {
+      "-XX:TieredStopAtLevel=1", "-XX:+UseSerialGC" };                                               //$NON-NLS-1$ //$NON-NLS-2$
+  /** The option turning off the CDS logging */
+  static final String                        CDS_LOG_OFF        = "-Xlog:cds=off,cds+dynamic=off";     //$NON-NLS-1$
+  /** The minimum runtime version supporting the dynamic archives */
+  static final int                           MIN_CDS_VERSION    = 13;
+
+  /** The pattern of the runtime version in the "java -version" output */
+  private static final Pattern               VERSION_PATT       = Pattern.compile("version \"(\\d+)(?:\\.(\\d+))?"); //$NON-NLS-1$
+
+  /** The runtimes : key = java command path, val = { length, date, version, runtime id } */
+  private static final Map<String, Object[]> sRuntimes          = new HashMap<String, Object[]>(2);
+
+  /** The archives being dumped */
+  private static final Set<String>           sDumping           = new HashSet<String>(2);
+
+  /** The options to add */
+  private final List<String>                 jOptions           = new ArrayList<String>(4);
+
+  /** The java command path (null if not found) */
+  private String                             jJava;
+
+  /** The tool jar */
+  private final String                       jJarFile;
+
+  /** The archives directory (null for none) */
+  private final File                         jDir;
+
+  /** The archive (null if none) */
+  private File                               jArchive;
+
+  /** The temporary archive dumped by the run (null if none) */
+  private File                               jDump;
+
+  /**
+   * Standard constructor.
+   * 
+   * @param aJarFile - the tool jar
+   * @param aDir - the archives directory (null for none)
+   */
+  private JvmProfile(final String aJarFile, final File aDir) {
+    jJarFile = aJarFile;
+    jDir = aDir;
+  }
+
+  /**
+   * Computes the options to add for a tool launch.
+   * 
+   * @param aJvmOptions - the JVM options set by the user (trimmed)
+   * @param aJarFile - the tool jar
+   * @param aEnabled - true if the fast start option is set, false otherwise (then no option is added)
+   * @param aDir - the archives directory (created if needed), or null for no archive
+   * @return the profile (to give the run result to, see {@link #end(int, boolean)})
+   */
+  public static JvmProfile get(final String aJvmOptions, final String aJarFile, final boolean aEnabled,
+                        final File aDir) {
+    // the tools run in the grammar directory
+    final JvmProfile profile = new JvmProfile(aJarFile, aDir == null ? null : aDir.getAbsoluteFile());
+    if (!aEnabled) {
+      return profile;
+    }
+    if (aJvmOptions.length() == 0) {
+      for (final String opt : FAST_START_OPTIONS) {
+        profile.jOptions.add(opt);
+      }
+    }
+    // the user may have chosen the class data sharing options
+    if (aDir != null && aJvmOptions.indexOf("Xshare") < 0 && aJvmOptions.indexOf("SharedArchiveFile") < 0 //$NON-NLS-1$ //$NON-NLS-2$
+        && aJvmOptions.indexOf("ArchiveClassesAtExit") < 0) { //$NON-NLS-1$
+      try {
+        profile.addArchiveOptions();
+      } catch (final IOException e) {
+        ToolLog.logBug(e, aJarFile);
+      }
+    }
+    return profile;
+  }
+
+  /**
+   * Adds the options using the archive of the tool jar and the runtime, or the options dumping it if it does
+   * not exist and is not being dumped.
+   * 
+   * @throws IOException - if the archives directory cannot be created
+   */
+  private void addArchiveOptions() throws IOException {
+    jJava = findJava();
+    if (jJava == null) {
+      return;
+    }
+    Files.createDirectories(jDir.toPath());
+    final Object[] runtime = getRuntime(jJava, jDir);
+    if (((Integer) runtime[2]).intValue() < MIN_CDS_VERSION) {
+      return;
+    }
+    final File jar = new File(jJarFile);
+    final File archive = new File(jDir, getPrefix() + digest(jJarFile + "|" + jar.length() + "|" //$NON-NLS-1$ //$NON-NLS-2$
+                                                             + jar.lastModified() + "|" + runtime[3]) //$NON-NLS-1$
+                                        + ".jsa"); //$NON-NLS-1$
+    if (archive.isFile()) {
+      jArchive = archive;
+      jOptions.add("-XX:SharedArchiveFile=" + archive.getPath()); //$NON-NLS-1$
+      jOptions.add(CDS_LOG_OFF);
+      return;
+    }
+    synchronized (sDumping) {
+      if (!sDumping.add(archive.getPath())) {
+        return;
+      }
+    }
+    jArchive = archive;
+    jDump = new File(jDir, archive.getName() + "." + System.nanoTime() + ".tmp"); //$NON-NLS-1$ //$NON-NLS-2$
+    jOptions.add("-XX:ArchiveClassesAtExit=" + jDump.getPath()); //$NON-NLS-1$
+    jOptions.add(CDS_LOG_OFF);
+  }
+
+  /**
+   * @return the prefix of the archives names of the tool jar
+   */
+  private String getPrefix() {
+    return new File(jJarFile).getName() + "-" + Integer.toHexString(jJarFile.hashCode()) + "-"; //$NON-NLS-1$ //$NON-NLS-2$
+  }
+
+  /**
+   * Inserts the options in a command line.
+   * 
+   * @param aCmd - the command line (the java command first)
+   * @return the command line with the options, or the same command line if there is no option
+   */
+  public List<String> apply(final List<String> aCmd) {
+    if (jOptions.isEmpty()) {
+      return aCmd;
+    }
+    final List<String> cmd = new ArrayList<String>(aCmd.size() + jOptions.size());
+    cmd.add(aCmd.get(0));
+    // before the user options, which so win
+    cmd.addAll(jOptions);
+    cmd.addAll(aCmd.subList(1, aCmd.size()));
+    return cmd;
+  }
+
+  /**
+   * Ends a run : publishes the dumped archive if the run succeeded and the archive is usable by the runtime,
+   * otherwise deletes it.
+   * 
+   * @param aRc - the return code of the run
+   * @param aStopped - true if the run has been stopped, false otherwise
+   */
+  public void end(final int aRc, final boolean aStopped) {
+    if (jDump == null) {
+      return;
+    }
+    try {
+      if (aRc == 0 && !aStopped && jDump.length() > 0 && check(jDump)) {
+        final File[] stale = jArchive.getParentFile().listFiles();
+        if (stale != null) {
+          final String prefix = getPrefix();
+          for (final File f : stale) {
+            if (f.getName().startsWith(prefix) && f.getName().endsWith(".jsa")) { //$NON-NLS-1$
+              f.delete();
+            }
+          }
+        }
+        Files.move(jDump.toPath(), jArchive.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (final IOException e) {
+      ToolLog.logBug(e, jArchive.getPath());
+    } finally {
+      jDump.delete();
+      synchronized (sDumping) {
+        sDumping.remove(jArchive.getPath());
+      }
+    }
+  }
+
+  /**
+   * Checks that the runtime can map an archive with the tool jar.
+   * 
+   * @param aArchive - the archive
+   * @return true if the archive is usable, false otherwise
+   */
+  private boolean check(final File aArchive) {
+    final List<String> cmd = new ArrayList<String>(6);
+    cmd.add(jJava);
+    cmd.add("-XX:SharedArchiveFile=" + aArchive.getPath()); //$NON-NLS-1$
+    cmd.add("-Xshare:on"); //$NON-NLS-1$
+    cmd.add(CDS_LOG_OFF);
+    cmd.add(ToolConstants.CLASSPATH_ARG);
+    cmd.add(jJarFile);
+    cmd.add("-version"); //$NON-NLS-1$
+    return JarLauncher.pb_launch(cmd, aArchive.getParent(), new ByteArrayOutputStream(256)) == 0;
+  }
+
+  /**
+   * Finds the java command in the path.
+   * 
+   * @return the canonical path of the java command, or null if not found
+   */
+  static String findJava() {
+    final String path = System.getenv("PATH"); //$NON-NLS-1$
+    if (path == null) {
+      return null;
+    }
+    for (final String dir : path.split(File.pathSeparator)) {
+      for (final String name : new String[] {
+          JarLauncher.sJavaCmd, JarLauncher.sJavaCmd + ".exe" }) { //$NON-NLS-1$
+        final File f = new File(dir, name);
+        if (f.isFile()) {
+          try {
+            // resolves the links (like the alternatives), which so change with the runtime
+            return f.getCanonicalPath();
+          } catch (final IOException e) {
+            return f.getAbsolutePath();
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Retrieves (and caches) the version and the id of a runtime.
+   * 
+   * @param aJava - the java command path
+   * @param aDir - the archives directory (existing)
+   * @return { length, date, version (0 if unknown), runtime id }
+   */
+  static Object[] getRuntime(final String aJava, final File aDir) {
+    final File java = new File(aJava);
+    final Long len = Long.valueOf(java.length());
+    final Long date = Long.valueOf(java.lastModified());
+    synchronized (sRuntimes) {
+      final Object[] rt = sRuntimes.get(aJava);
+      if (rt != null && len.equals(rt[0]) && date.equals(rt[1])) {
+        return rt;
+      }
+    }
+    final List<String> cmd = new ArrayList<String>(2);
+    cmd.add(aJava);
+    cmd.add("-version"); //$NON-NLS-1$
+    final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+    JarLauncher.pb_launch(cmd, aDir.getPath(), out);
+    final String str = new String(out.toByteArray(), Charset.defaultCharset());
+    int version = 0;
+    final Matcher m = VERSION_PATT.matcher(str);
+    if (m.find()) {
+      version = Integer.parseInt(m.group(1));
+      if (version == 1 && m.group(2) != null) {
+        // 1.8 and before
+        version = Integer.parseInt(m.group(2));
+      }
+    }
+    final Object[] rt = new Object[] {
+        len, date, Integer.valueOf(version), aJava + "|" + len + "|" + date + "|" + str.trim() }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    synchronized (sRuntimes) {
+      sRuntimes.put(aJava, rt);
+    }
+    return rt;
+  }
+
+  /**
+   * @param aStr - a string
+   * @return the first 16 hexadecimal digits of the digest of the string
+   */
+  static String digest(final String aStr) {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance(FileUtils.DIGEST_ALGO);
+      return FileUtils.toHexString(digest.digest(aStr.getBytes(Charset.forName("UTF-8")))).substring(0, 16); //$NON-NLS-1$
+    } catch (final NoSuchAlgorithmException e) {
+      ToolLog.logBug(e, FileUtils.DIGEST_ALGO);
+      return Integer.toHexString(aStr.hashCode());
+    }
+  }
+
+}
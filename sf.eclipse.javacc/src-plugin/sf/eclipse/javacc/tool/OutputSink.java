@@ -0,0 +1,131 @@
+package sf.eclipse.javacc.tool;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The output of one tool invocation.<br>
+ * The output is written in chunks, by one thread at a time (the in-process tool or the thread reading the
+ * external process output), and kept in a lock-free queue, up to a maximum size above which it is truncated ;
+ * the listeners receive every chunk as it arrives (even past the maximum size), in the writing thread.<br>
+ * The bytes are kept as written (no charset decoding / encoding nor line splitting).
+ * 
+ * @since 1.5.34
+ */
+public class OutputSink extends OutputStream {
+
+  /** The maximum number of bytes kept */
+  public static final int                     MAX_SIZE   = 16 * 1024 * 1024;
+
+  /** A listener receiving the chunks as they arrive */
+  public interface Listener {
+
+    /**
+     * Receives a chunk of output.
+     * 
+     * @param aBuf - the buffer (not to be kept, as it may be reused)
+     * @param aOff - the chunk offset in the buffer
+     * @param aLen - the chunk length
+     */
+    void chunk(byte[] aBuf, int aOff, int aLen);
+  }
+
+  /** The kept chunks */
+  private final ConcurrentLinkedQueue<byte[]> jChunks    = new ConcurrentLinkedQueue<byte[]>();
+
+  /** The number of bytes kept */
+  private final AtomicInteger                 jSize      = new AtomicInteger();
+
+  /** True if bytes have been dropped, false otherwise */
+  private volatile boolean                    jTruncated;
+
+  /** The listeners */
+  private final List<Listener>                jListeners = new CopyOnWriteArrayList<Listener>();
+
+  /**
+   * Adds a listener.
+   * 
+   * @param aListener - the listener
+   */
+  public void addListener(final Listener aListener) {
+    jListeners.add(aListener);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void write(final int aByte) {
+    write(new byte[] {
+      (byte) aByte }, 0, 1);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void write(final byte[] aBuf, final int aOff, final int aLen) {
+    if (aLen <= 0) {
+      return;
+    }
+    for (final Listener listener : jListeners) {
+      listener.chunk(aBuf, aOff, aLen);
+    }
+    final int room = MAX_SIZE - jSize.get();
+    final int len = Math.min(room, aLen);
+    if (len < aLen) {
+      jTruncated = true;
+    }
+    if (len <= 0) {
+      return;
+    }
+    final byte[] chunk = new byte[len];
+    System.arraycopy(aBuf, aOff, chunk, 0, len);
+    jChunks.add(chunk);
+    jSize.addAndGet(len);
+  }
+
+  /**
+   * @return the number of bytes kept
+   */
+  int size() {
+    return jSize.get();
+  }
+
+  /**
+   * @return true if bytes have been dropped as the output exceeded {@link #MAX_SIZE}, false otherwise
+   */
+  public boolean isTruncated() {
+    return jTruncated;
+  }
+
+  /**
+   * @return the bytes kept
+   */
+  public byte[] toByteArray() {
+    final byte[] bytes = new byte[jSize.get()];
+    int off = 0;
+    for (final Iterator<byte[]> it = jChunks.iterator(); it.hasNext() && off < bytes.length;) {
+      final byte[] chunk = it.next();
+      final int len = Math.min(chunk.length, bytes.length - off);
+      System.arraycopy(chunk, 0, bytes, off, len);
+      off += len;
+    }
+    return bytes;
+  }
+
+  /**
+   * Writes the bytes kept to a stream, chunk by chunk.
+   * 
+   * @param aOut - the stream
+   * @throws IOException - if the stream cannot be written
+   */
+  public void writeTo(final OutputStream aOut) throws IOException {
+    for (final byte[] chunk : jChunks) {
+      aOut.write(chunk, 0, chunk.length);
+    }
+    aOut.flush();
+  }
+
+}
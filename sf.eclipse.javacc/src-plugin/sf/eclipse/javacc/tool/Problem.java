@@ -0,0 +1,100 @@
+package sf.eclipse.javacc.tool;
+
+/**
+ * A problem (info / warning / error) reported by JavaCC / JJTree / JTB / JJDoc in its output, found while
+ * the tool runs (see {@link ProblemParser}) and given to the plugin console with the report (see
+ * sf.eclipse.javacc.base.IConsole).
+ * 
+ * @since 1.5.34
+ */
+public class Problem {
+
+  /** The information severity (the value of the marker one) */
+  public static final int INFO    = 0;
+  /** The warning severity (the value of the marker one) */
+  public static final int WARNING = 1;
+  /** The error severity (the value of the marker one) */
+  public static final int ERROR   = 2;
+
+  /** The severity ({@link #INFO}, {@link #WARNING} or {@link #ERROR}) */
+  private final int    jSeverity;
+
+  /** The line number (1 based), or 0 if the problem is not related to a line */
+  private final int    jLine;
+
+  /** The column number (1 based), or 0 if not known */
+  private final int    jColumn;
+
+  /** The message */
+  private final String jMessage;
+
+  /** The offset of the part of the output to link to the problem location (from the output beginning) */
+  private final int    jOffset;
+
+  /** The length of the part of the output to link to the problem location */
+  private final int    jLength;
+
+  /**
+   * Standard constructor.
+   * 
+   * @param aSeverity - the severity
+   * @param aLine - the line number, or 0 if the problem is not related to a line
+   * @param aColumn - the column number, or 0 if not known
+   * @param aMessage - the message
+   * @param aOffset - the offset of the part of the output to link
+   * @param aLength - the length of the part of the output to link
+   */
+  Problem(final int aSeverity, final int aLine, final int aColumn, final String aMessage, final int aOffset,
+          final int aLength) {
+    jSeverity = aSeverity;
+    jLine = aLine;
+    jColumn = aColumn;
+    jMessage = aMessage;
+    jOffset = aOffset;
+    jLength = aLength;
+  }
+
+  /**
+   * @return the severity ({@link #INFO}, {@link #WARNING} or {@link #ERROR}, the values of the marker ones)
+   */
+  public int getSeverity() {
+    return jSeverity;
+  }
+
+  /**
+   * @return the line number (1 based), or 0 if the problem is not related to a line
+   */
+  public int getLine() {
+    return jLine;
+  }
+
+  /**
+   * @return the column number (1 based), or 0 if not known
+   */
+  public int getColumn() {
+    return jColumn;
+  }
+
+  /**
+   * @return the message
+   */
+  public String getMessage() {
+    return jMessage;
+  }
+
+  /**
+   * @return the offset (in characters, from the tool output beginning) of the part of the output to link to
+   *         the problem location
+   */
+  public int getOffset() {
+    return jOffset;
+  }
+
+  /**
+   * @return the length of the part of the output to link to the problem location
+   */
+  public int getLength() {
+    return jLength;
+  }
+
+}
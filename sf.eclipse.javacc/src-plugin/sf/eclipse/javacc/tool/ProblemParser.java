@@ -0,0 +1,281 @@
+package sf.eclipse.javacc.tool;
+
+import static sf.eclipse.javacc.tool.FileUtils.LS;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Streaming parser of a tool output : it receives the output chunks as they are written (see
+ * {@link OutputSink.Listener}), decodes them, splits them in lines and turns the lines reporting problems
+ * into {@link Problem}s, so the problems are found while the tool runs and the whole output never needs to be
+ * parsed again.<br>
+ * The output is decoded with the platform charset, as the console does.
+ * 
+ * @since 1.5.34
+ */
+public class ProblemParser implements OutputSink.Listener {
+
+  /*
+   *  .jj or .jjt file or .jtb file for the parser phase : we get outputs like :
+   */
+  // -- messages with line and column numbers
+  //  (from JavaCCErrors parse_error, semantic_error & warning methods)
+  // Warning: Line 83, Column 13: Encountered LOOKAHEAD(...) at a non-choice location.  This will be ignored.
+  // Error: Line 61, Column 5: Undefined lexical token name "HEX_LITERA".
+  //  (from JavaCCErrors methods and direct println() calls in LookaheadCalc)
+  // Warning: Choice conflict in (...)* construct at line 99, column 3.
+  // Warning: Choice conflict involving two expansions at
+  //          line 99, column 3 and line 109, column 22 respectively.
+  //  (from direct println(ex.toString()) calls in Main after a ParseException or Exception from JavaCCParser)
+  // Exception in thread "main" org.javacc.jjtree.TokenMgrError: Lexical error at line 40, column 6.  Encountered: "\r" (13), after : "\"\\t"
+  //  (from direct io.getMsg().println(("Error parsing input: " + ex.toString())) calls in JJTree after a ParseException or Exception from JJTreeParser)
+  // Error parsing input: org.javacc.jjtree.ParseException: Encountered " "static" "static "" at line 8, column 3.
+  // -- messages without line and column numbers (not always at the end of the report)
+  // Warning: Lookahead adequacy checking not being performed since option LOOKAHEAD is more than 1.  Set option FORCE_LA_CHECK to true to force checking.
+  // Warning: ParseException.java: File is obsolete.  Please rename or delete this file so that a new one can be generated for you.
+  /*
+   *  .jtb file for the pure JTB phase : we get outputs like :
+   */
+  // new.jtb (406,3):  warning:  Non initialized user variable 'isTypedef'. May lead to compiler error(s) (specially for 'Token' variables). Check in generated parser.
+  // new.jtb (461,2):  info:  Non "void" BNFProduction. Result type 'boolean' will be changed into 'type_modifiers', and a parser class variable 'jtbrt_type_modifiers' of type 'boolean' will be added to hold the return values.
+  // new.jtb (340,3):  soft error:  Empty BNF expansion in "<production>()", 345
+  // new.jtb (234,8):  unexpected program error:  <exception / throwable message>
+
+  /** Pattern to find the Error or Warning or ParseException message in JavaCC / JJTree compilation messages */
+  private final static Pattern  sJjPbPattern    = Pattern.compile("(^Error:|^Warning:|^Error parsing input|Lexical error|Encountered[: ])(.+)$");    //$NON-NLS-1$
+
+  /** Pattern to find the line and column numbers in a JavaCC / JJTree compilation messages line */
+  private final static Pattern  sLineColPattern = Pattern.compile("[lL]ine (\\d+), [cC]olumn (\\d+)");                                               //$NON-NLS-1$
+
+  /** Pattern to find the Info or Warning or Error message in a JTB compilation messages line */
+  private final static Pattern  sJtbPbPattern   = Pattern.compile("\\((\\d+),(\\d+)\\):  (warning|info|soft error|unexpected program error):  (.*)"); //$NON-NLS-1$
+
+  /** The beginning of the lookahead conflict messages whose line and column numbers are on the next line */
+  private final static String   TWO_EXPANSIONS  = "Warning: Choice conflict involving";                                                                //$NON-NLS-1$
+
+  /** The number of lines following the line and column numbers which are added to the two expansions message */
+  private final static int      NB_EXTRA_LINES  = 2;
+
+  /** True if the JTB messages must be looked for, false otherwise */
+  private final boolean         jIsJtb;
+
+  /** The decoder of the output */
+  private final CharsetDecoder  jDecoder        = Charset.defaultCharset().newDecoder()
+                                                         .onMalformedInput(CodingErrorAction.REPLACE)
+                                                         .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+  /** The bytes of a character split between two chunks, or null if none */
+  private ByteBuffer            jCarry          = null;
+
+  /** The current (not yet terminated) line */
+  private final StringBuilder   jLine           = new StringBuilder(256);
+
+  /** The offset of the current line beginning */
+  private int                   jLineOffset     = 0;
+
+  /** The offset of the next character */
+  private int                   jOffset         = 0;
+
+  /** True if the last character was a carriage return, false otherwise */
+  private boolean               jAfterCR        = false;
+
+  /** The two expansions message waiting for its following lines, or null if none */
+  private StringBuilder         jPending        = null;
+
+  /** The severity of the pending message */
+  private int                   jPendingSev;
+
+  /** The line and column numbers occurrences of the pending message : { line, column, offset, length } */
+  private final List<int[]>     jPendingLocs    = new ArrayList<int[]>(2);
+
+  /** The number of lines the pending message is waiting for (its location line, then the extra lines) */
+  private int                   jPendingLines;
+
+  /** The problems found */
+  private final List<Problem>   jProblems       = new ArrayList<Problem>();
+
+  /**
+   * Standard constructor.
+   * 
+   * @param aIsJtb - true if the output is a JTB one, false otherwise
+   */
+  public ProblemParser(final boolean aIsJtb) {
+    jIsJtb = aIsJtb;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void chunk(final byte[] aBuf, final int aOff, final int aLen) {
+    ByteBuffer in = ByteBuffer.wrap(aBuf, aOff, aLen);
+    if (jCarry != null) {
+      final ByteBuffer joined = ByteBuffer.allocate(jCarry.remaining() + aLen);
+      joined.put(jCarry).put(in).flip();
+      in = joined;
+      jCarry = null;
+    }
+    decode(in, false);
+    if (in.hasRemaining()) {
+      jCarry = ByteBuffer.allocate(in.remaining());
+      jCarry.put(in).flip();
+    }
+  }
+
+  /**
+   * Ends the parsing (when the tool has finished) : processes the last line and the pending message.
+   * 
+   * @return the problems found
+   */
+  public List<Problem> end() {
+    decode(jCarry == null ? ByteBuffer.allocate(0) : jCarry, true);
+    jCarry = null;
+    final CharBuffer out = CharBuffer.allocate(16);
+    jDecoder.flush(out);
+    out.flip();
+    feed(out);
+    if (jLine.length() > 0) {
+      processLine(jLine.toString(), jLineOffset);
+      jLine.setLength(0);
+    }
+    flushPending();
+    return jProblems;
+  }
+
+  /**
+   * Decodes bytes and feeds the characters.
+   * 
+   * @param aIn - the bytes
+   * @param aEnd - true if there is no more bytes
+   */
+  private void decode(final ByteBuffer aIn, final boolean aEnd) {
+    final CharBuffer out = CharBuffer.allocate((int) (aIn.remaining() * jDecoder.maxCharsPerByte()) + 2);
+    jDecoder.decode(aIn, out, aEnd);
+    out.flip();
+    feed(out);
+  }
+
+  /**
+   * Splits characters in lines and processes the complete ones (the line terminators being "\n", "\r" and
+   * "\r\n").
+   * 
+   * @param aChars - the characters
+   */
+  private void feed(final CharBuffer aChars) {
+    while (aChars.hasRemaining()) {
+      final char c = aChars.get();
+      jOffset++;
+      if (c == '\n' && jAfterCR) {
+        // end of a "\r\n" terminator, the line has been processed on the '\r'
+        jAfterCR = false;
+        jLineOffset = jOffset;
+        continue;
+      }
+      jAfterCR = c == '\r';
+      if (c == '\n' || c == '\r') {
+        processLine(jLine.toString(), jLineOffset);
+        jLine.setLength(0);
+        jLineOffset = jOffset;
+      }
+      else {
+        jLine.append(c);
+      }
+    }
+  }
+
+  /**
+   * Finds the problems in a line.
+   * 
+   * @param aLine - the line (without terminator)
+   * @param aLineOffset - the offset of the line beginning
+   */
+  private void processLine(final String aLine, final int aLineOffset) {
+    if (jPending != null) {
+      if (jPendingLocs.isEmpty()) {
+        // the line with the line and column numbers of the two expansions message
+        final Matcher lineColumnMatcher = sLineColPattern.matcher(aLine);
+        while (lineColumnMatcher.find()) {
+          jPendingLocs.add(new int[] {
+              Integer.parseInt(lineColumnMatcher.group(1)), Integer.parseInt(lineColumnMatcher.group(2)),
+              aLineOffset + lineColumnMatcher.start(), lineColumnMatcher.end() - lineColumnMatcher.start() });
+        }
+        if (jPendingLocs.isEmpty()) {
+          // not the expected message : forget it
+          jPending = null;
+          return;
+        }
+      }
+      // add the line to the message
+      jPending.append(LS).append(aLine);
+      if (--jPendingLines == 0) {
+        flushPending();
+      }
+      return;
+    }
+
+    final Matcher jjPbMatcher = sJjPbPattern.matcher(aLine);
+    if (jjPbMatcher.find()) {
+      final int severity = (jjPbMatcher.group().indexOf("arning") != -1) ? Problem.WARNING //$NON-NLS-1$
+                                                                        : Problem.ERROR;
+      final Matcher lineColumnMatcher = sLineColPattern.matcher(aLine);
+      if (lineColumnMatcher.find()) {
+        // one problem for each line and column group in the message
+        do {
+          final int start = lineColumnMatcher.start();
+          jProblems.add(new Problem(severity, Integer.parseInt(lineColumnMatcher.group(1)),
+                                    Integer.parseInt(lineColumnMatcher.group(2)), aLine, aLineOffset + start,
+                                    lineColumnMatcher.end() - start));
+        } while (lineColumnMatcher.find());
+      }
+      else if (aLine.startsWith(TWO_EXPANSIONS)) {
+        // the line and column numbers are in the next line
+        jPending = new StringBuilder(aLine);
+        jPendingSev = severity;
+        jPendingLocs.clear();
+        jPendingLines = 1 + NB_EXTRA_LINES;
+      }
+      else if (!aLine.contains(":  Encountered error(s) during parsing.")) { //$NON-NLS-1$
+        // a problem not related to a line
+        final int start = jjPbMatcher.start();
+        jProblems.add(new Problem(severity, 0, 0, aLine, aLineOffset + start, jjPbMatcher.end(1) - start));
+      }
+    }
+
+    if (jIsJtb) {
+      final Matcher jtbPbMatcher = sJtbPbPattern.matcher(aLine);
+      while (jtbPbMatcher.find()) {
+        final String sevStr = jtbPbMatcher.group(3);
+        final int severity = "info".equals(sevStr) ? Problem.INFO //$NON-NLS-1$
+                                                  : "warning".equals(sevStr) ? Problem.WARNING //$NON-NLS-1$
+                                                                            : Problem.ERROR;
+        // the link goes only up to "info" or "warning" or "error" to increase the console readability
+        final int start = jtbPbMatcher.start();
+        jProblems.add(new Problem(severity, Integer.parseInt(jtbPbMatcher.group(1)),
+                                  Integer.parseInt(jtbPbMatcher.group(2)), jtbPbMatcher.group(),
+                                  aLineOffset + start, jtbPbMatcher.end(3) - start));
+      }
+    }
+  }
+
+  /**
+   * Adds the problems of the pending two expansions message, if any.
+   */
+  private void flushPending() {
+    if (jPending == null) {
+      return;
+    }
+    final String msg = jPending.toString();
+    for (final int[] loc : jPendingLocs) {
+      jProblems.add(new Problem(jPendingSev, loc[0], loc[1], msg, loc[2], loc[3]));
+    }
+    jPending = null;
+    jPendingLocs.clear();
+  }
+
+}
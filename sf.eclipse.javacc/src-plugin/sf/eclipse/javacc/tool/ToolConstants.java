@@ -0,0 +1,39 @@
+package sf.eclipse.javacc.tool;
+
+/**
+ * The constants of the tools command lines, shared by the workbench independent core (see
+ * {@link GrammarTool}) and the plugin (which gets them through {@link sf.eclipse.javacc.base.IConstants}).
+ * <br>
+ * It is a plain Java interface, so the core can be compiled and run without the Eclipse and OSGi classes.
+ * 
+ * @since 1.5.34
+ */
+public interface ToolConstants {
+
+  /*
+   *  Arguments
+   */
+  /** Argument for javacc compiling */
+  static final String JAVACC_ARG    = "javacc";                   //$NON-NLS-1$
+  /** Argument for jjtree compiling */
+  static final String JJTREE_ARG    = "jjtree";                   //$NON-NLS-1$
+  /** Argument for jjdoc compiling */
+  static final String JJDOC_ARG     = "jjdoc";                    //$NON-NLS-1$
+  /** Argument for javacc & jjtree compiling */
+  static final String CLASSPATH_ARG = "-classpath";               //$NON-NLS-1$
+  /** Argument for jtb compiling */
+  static final String JAR_ARG       = "-jar";                     //$NON-NLS-1$
+
+  /*
+   *  Tools entry points
+   */
+  /** The JavaCC main class */
+  static final String JAVACC_MAIN   = "org.javacc.parser.Main";   //$NON-NLS-1$
+  /** The JavaCC main method (does not call System.exit()) */
+  static final String JAVACC_METHOD = "mainProgram";              //$NON-NLS-1$
+  /** The JJTree main class */
+  static final String JJTREE_MAIN   = "org.javacc.jjtree.JJTree"; //$NON-NLS-1$
+  /** The JJTree main (instance) method (does not call System.exit()) */
+  static final String JJTREE_METHOD = "main";                     //$NON-NLS-1$
+
+}
@@ -0,0 +1,105 @@
+package sf.eclipse.javacc.tool;
+
+/**
+ * The log of the workbench independent classes (see {@link GrammarTool}) : the messages go to the standard
+ * error stream, or to the plugin log once the plugin has installed its logger (see
+ * {@link sf.eclipse.javacc.base.AbstractActivator#start(org.osgi.framework.BundleContext)}).
+ * 
+ * @since 1.5.34
+ */
+public final class ToolLog {
+
+  /**
+   * A logger.
+   */
+  public interface ILogger {
+
+    /**
+     * @param aTh - the exception for which the stacktrace is to be logged
+     * @param aStringData - the context data to log at the end of the message
+     */
+    void logBug(Throwable aTh, String... aStringData);
+
+    /**
+     * @param aMsg - the message to log as an error
+     */
+    void logErr(String aMsg);
+
+    /**
+     * @param aMsg - the message to log as an information
+     */
+    void logInfo(String aMsg);
+  }
+
+  /**
+   * The logger writing to the standard error stream.
+   */
+  private static class StdErrLogger implements ILogger {
+
+    /** {@inheritDoc} */
+    @Override
+    public void logBug(final Throwable aTh, final String... aStringData) {
+      final StringBuilder sb = new StringBuilder("Bug"); //$NON-NLS-1$
+      for (final String s : aStringData) {
+        sb.append(" <").append(s).append('>'); //$NON-NLS-1$
+      }
+      System.err.println(sb);
+      aTh.printStackTrace();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void logErr(final String aMsg) {
+      System.err.println(aMsg);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void logInfo(final String aMsg) {
+      System.err.println(aMsg);
+    }
+  }
+
+  /** The logger writing to the standard error stream */
+  private static final ILogger    STD_ERR = new StdErrLogger();
+
+  /** The current logger */
+  private static volatile ILogger sLogger = STD_ERR;
+
+  /**
+   * Not instantiable.
+   */
+  private ToolLog() {
+    // static methods only
+  }
+
+  /**
+   * @param aLogger - the new logger (null for the standard error stream)
+   */
+  public static void setLogger(final ILogger aLogger) {
+    sLogger = aLogger == null ? STD_ERR : aLogger;
+  }
+
+  /**
+   * @param aTh - the exception for which the stacktrace is to be logged
+   * @param aStringData - the context data to log at the end of the message
+   */
+  static void logBug(final Throwable aTh, final String... aStringData) {
+    sLogger.logBug(aTh, aStringData);
+  }
+
+  /**
+   * @param aMsg - the message to log as an error
+   */
+  static void logErr(final String aMsg) {
+    sLogger.logErr(aMsg);
+  }
+
+  /**
+   * @param aMsg - the message to log as an information
+   */
+  static void logInfo(final String aMsg) {
+    sLogger.logInfo(aMsg);
+  }
+
+}
@@ -0,0 +1,179 @@
+package sf.eclipse.javacc.tool;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of a grammar compilation run by a {@link GrammarTool} : the tool output and the problems
+ * reported in it, the generated files, how the tool was run and how long each phase took.
+ * 
+ * @since 1.5.34
+ */
+public class ToolResult {
+
+  /** The phases : the snapshot of the output directories and of the previously generated files */
+  public static final int SNAPSHOT   = 0;
+  /** The phases : the tool run */
+  public static final int TOOL       = 1;
+  /** The phases : the search of the generated files */
+  public static final int DIFF       = 2;
+  /** The number of phases */
+  public static final int NB_PHASES  = 3;
+
+  /** The launch kinds : not run (canceled before the run) */
+  public static final int NONE       = 0;
+  /** The launch kinds : in the current JVM */
+  public static final int IN_PROCESS = 1;
+  /** The launch kinds : in a reusable tool JVM */
+  public static final int DAEMON     = 2;
+  /** The launch kinds : in a new JVM */
+  public static final int EXTERNAL   = 3;
+
+  /** The grammar file */
+  final File              jGrammar;
+  /** The launch kind */
+  int                     jLaunch    = NONE;
+  /** The command line launched (with the fast start options of an external JVM), or null if not run */
+  List<String>            jCommand;
+  /** The exit value of an external JVM (-1 if it could not be run, 0 for the other launch kinds) */
+  int                     jExitValue;
+  /** The stop reason (see {@link ToolWatchdog}) */
+  int                     jState     = ToolWatchdog.RUNNING;
+  /** The tool output */
+  byte[]                  jOutput    = new byte[0];
+  /** True if the tool output has been truncated, false otherwise */
+  boolean                 jTruncated;
+  /** The problems reported in the tool output */
+  List<Problem>           jProblems  = Collections.<Problem> emptyList();
+  /** The added or modified files absolute paths, or null if none */
+  String[]                jGenerated;
+  /** The number of files rewritten with the same contents, which kept their date */
+  int                     jUnchanged;
+  /** The phases durations in nanoseconds */
+  final long[]            jNanos     = new long[NB_PHASES];
+
+  /**
+   * Standard constructor.
+   * 
+   * @param aGrammar - the grammar file
+   */
+  ToolResult(final File aGrammar) {
+    jGrammar = aGrammar;
+  }
+
+  /**
+   * @return the grammar file
+   */
+  public File getGrammar() {
+    return jGrammar;
+  }
+
+  /**
+   * @return the launch kind ({@link #NONE}, {@link #IN_PROCESS}, {@link #DAEMON} or {@link #EXTERNAL})
+   */
+  public int getLaunch() {
+    return jLaunch;
+  }
+
+  /**
+   * @return the exit value of an external JVM (-1 if it could not be run, 0 for the other launch kinds)
+   */
+  public int getExitValue() {
+    return jExitValue;
+  }
+
+  /**
+   * @return true if the run has been canceled (before or while the tool ran), false otherwise
+   */
+  public boolean isCanceled() {
+    return jState == ToolWatchdog.CANCELED;
+  }
+
+  /**
+   * @return true if the run has been stopped after the time limit, false otherwise
+   */
+  public boolean isTimedOut() {
+    return jState == ToolWatchdog.TIMED_OUT;
+  }
+
+  /**
+   * @return true if the run has been canceled or stopped after the time limit (its generated files may then
+   *         be incomplete), false otherwise
+   */
+  public boolean isStopped() {
+    return jState != ToolWatchdog.RUNNING;
+  }
+
+  /**
+   * @return the command line launched (for an external JVM with the fast start options it has been given ; for
+   *         the other launch kinds the equivalent external command line), or null if the tool has not been run
+   */
+  public List<String> getCommand() {
+    return jCommand;
+  }
+
+  /**
+   * @return the tool output (the bytes written by the tool, in the platform charset)
+   */
+  public byte[] getOutput() {
+    return jOutput;
+  }
+
+  /**
+   * @return the tool output as a string
+   */
+  public String getOutputString() {
+    return new String(jOutput, Charset.defaultCharset());
+  }
+
+  /**
+   * @return true if the tool output has been truncated (see {@link OutputSink#MAX_SIZE}), false otherwise
+   */
+  public boolean isTruncated() {
+    return jTruncated;
+  }
+
+  /**
+   * @return the problems reported in the tool output
+   */
+  public List<Problem> getProblems() {
+    return jProblems;
+  }
+
+  /**
+   * @return true if an error has been reported in the tool output, false otherwise
+   */
+  public boolean hasErrors() {
+    for (final Problem pb : jProblems) {
+      if (pb.getSeverity() == Problem.ERROR) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the added or modified files absolute paths, or null if none
+   */
+  public String[] getGenerated() {
+    return jGenerated;
+  }
+
+  /**
+   * @return the number of files rewritten with the same contents, which kept their date
+   */
+  public int getUnchanged() {
+    return jUnchanged;
+  }
+
+  /**
+   * @param aPhase - the phase ({@link #SNAPSHOT}, {@link #TOOL} or {@link #DIFF})
+   * @return the phase duration in nanoseconds
+   */
+  public long getNanos(final int aPhase) {
+    return jNanos[aPhase];
+  }
+
+}
@@ -0,0 +1,152 @@
+package sf.eclipse.javacc.tool;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The watchdog of a tool run (in-process, in a daemon or in an external JVM) : while the tool runs it polls
+ * the cancellation indicator of the build and the elapsed time, and stops the run (through a given action,
+ * like destroying the process) when the build is canceled or when the run exceeds the grammar compilation
+ * time limit.
+ * 
+ * @since 1.5.34
+ */
+public class ToolWatchdog {
+
+  /** The polling period */
+  static final long                             POLL_MILLIS = 100;
+
+  /** The stop reasons : not stopped */
+  static final int                              RUNNING     = 0;
+  /** The stop reasons : the build has been canceled */
+  static final int                              CANCELED    = 1;
+  /** The stop reasons : the time limit has been exceeded */
+  static final int                              TIMED_OUT   = 2;
+
+  /** The timer polling the watched runs */
+  private static final ScheduledExecutorService sTimer;
+
+  static {
+    sTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+      /** {@inheritDoc} */
+      @Override
+      public Thread newThread(final Runnable aRunnable) {
+        final Thread t = new Thread(aRunnable, "JavaCC tool watchdog"); //$NON-NLS-1$
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  /** The cancellation indicator of the build, or null if none */
+  private final GrammarTool.ICancelable         jCancelable;
+
+  /** The time limit in milliseconds (0 for none) */
+  private final long                            jLimitMillis;
+
+  /** The stop reason */
+  private volatile int                          jState      = RUNNING;
+
+  /**
+   * Standard constructor.
+   * 
+   * @param aCancelable - the cancellation indicator of the build, or null if none
+   * @param aLimitMillis - the time limit in milliseconds (0 for none)
+   */
+  public ToolWatchdog(final GrammarTool.ICancelable aCancelable, final long aLimitMillis) {
+    jCancelable = aCancelable;
+    jLimitMillis = aLimitMillis;
+  }
+
+  /**
+   * @return true if there is something to watch (a cancellation indicator or a time limit), false otherwise
+   */
+  boolean isActive() {
+    return jCancelable != null || jLimitMillis > 0;
+  }
+
+  /**
+   * @return true if the build is canceled (checked before a run, to not start it), false otherwise
+   */
+  boolean isCanceled() {
+    if (jCancelable != null && jCancelable.isCanceled()) {
+      jState = CANCELED;
+    }
+    return jState == CANCELED;
+  }
+
+  /**
+   * @return true if a run has been stopped, false otherwise
+   */
+  public boolean isStopped() {
+    return jState != RUNNING;
+  }
+
+  /**
+   * @return true if a run has been stopped because it exceeded the time limit, false otherwise
+   */
+  boolean isTimedOut() {
+    return jState == TIMED_OUT;
+  }
+
+  /**
+   * @return the time limit in milliseconds (0 for none)
+   */
+  long getLimitMillis() {
+    return jLimitMillis;
+  }
+
+  /**
+   * Starts watching a run.
+   * 
+   * @param aStop - the action stopping the run (called at most once, in the timer thread)
+   * @return the watch to give to {@link #unwatch(ScheduledFuture)} when the run ends, or null if there is
+   *         nothing to watch
+   */
+  public ScheduledFuture<?> watch(final Runnable aStop) {
+    if (!isActive()) {
+      return null;
+    }
+    final long deadline = jLimitMillis > 0 ? System.nanoTime() + jLimitMillis * 1000000L : 0;
+    return sTimer.scheduleWithFixedDelay(new Runnable() {
+
+      /** {@inheritDoc} */
+      @Override
+      public void run() {
+        if (jState != RUNNING) {
+          return;
+        }
+        if (jCancelable != null && jCancelable.isCanceled()) {
+          jState = CANCELED;
+        }
+        else if (deadline != 0 && System.nanoTime() - deadline > 0) {
+          jState = TIMED_OUT;
+        }
+        else {
+          return;
+        }
+        try {
+          aStop.run();
+        } catch (final Exception e) {
+          ToolLog.logBug(e);
+        }
+      }
+    }, POLL_MILLIS, POLL_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops watching a run.
+   * 
+   * @param aWatch - the watch returned by {@link #watch(Runnable)} (may be null)
+   */
+  public static void unwatch(final ScheduledFuture<?> aWatch) {
+    if (aWatch != null) {
+      aWatch.cancel(false);
+    }
+  }
+
+}